@@ -9,10 +9,11 @@ import java.lang.annotation.Target;
 import com.github.sourguice.value.ValueConstants;
 
 /**
- * Annotation that annotate any method whose response is to be cached
+ * Annotation that annotate any method whose response is to be cached.
+ * On a controller class, it applies to all its public methods that are not annotated themselves.
  */
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.METHOD)
+@Target({ElementType.METHOD, ElementType.TYPE})
 @Documented
 public @interface CacheInClient {
 
@@ -56,6 +57,36 @@ public @interface CacheInClient {
 	 */
 	public int SMaxAge() default -1;
 
+	/**
+	 * @return The stale-while-revalidate value (number of seconds a cache may serve stale content while it revalidates it)
+	 */
+	public int StaleWhileRevalidate() default -1;
+
+	/**
+	 * @return If true, set the immutable flag (the content never changes while it is fresh)
+	 */
+	public boolean Immutable() default false;
+
+	/**
+	 * @return If true and a max-age is set, set the Expires header to now + max-age (for HTTP/1.0 caches)
+	 */
+	public boolean Expires() default false;
+
+	/**
+	 * @return The headers to add to the Vary header
+	 */
+	public String[] Vary() default {};
+
+	/**
+	 * @return The Surrogate-Key header values, used by CDNs to purge content by key
+	 */
+	public String[] SurrogateKeys() default {};
+
+	/**
+	 * @return The max-age of the Surrogate-Control header (number of seconds a CDN may cache the content)
+	 */
+	public int SurrogateMaxAge() default -1;
+
 	/**
 	 * @return Any extension to the Cache-Control calue
 	 */
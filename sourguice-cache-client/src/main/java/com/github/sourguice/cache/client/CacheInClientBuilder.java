@@ -16,6 +16,12 @@ public class CacheInClientBuilder {
 	protected int valueMaxAge = -1;
 	protected int valueSMaxAge = -1;
 	protected String valueExtension = "";
+	protected int valueStaleWhileRevalidate = -1;
+	protected boolean flagImmutable = false;
+	protected boolean flagExpires = false;
+	protected String[] valueVary = {};
+	protected String[] valueSurrogateKeys = {};
+	protected int valueSurrogateMaxAge = -1;
 
 	public CacheInClientBuilder Public(final boolean flag) {
 		this.flagPublic = flag;
@@ -70,6 +76,35 @@ public class CacheInClientBuilder {
 		return this;
 	}
 
+	public CacheInClientBuilder StaleWhileRevalidate(final int value) {
+		this.valueStaleWhileRevalidate = value;
+		return this;
+	}
+
+	public CacheInClientBuilder Immutable(final boolean flag) {
+		this.flagImmutable = flag;
+		return this;
+	}
+
+	public CacheInClientBuilder Expires(final boolean flag) {
+		this.flagExpires = flag;
+		return this;
+	}
+
+	public CacheInClientBuilder Vary(final String... values) {
+		this.valueVary = values.clone();
+		return this;
+	}
+
+	public CacheInClientBuilder SurrogateKeys(final String... values) {
+		this.valueSurrogateKeys = values.clone();
+		return this;
+	}
+
+	public CacheInClientBuilder SurrogateMaxAge(final int value) {
+		this.valueSurrogateMaxAge = value;
+		return this;
+	}
 
 	public CacheInClient build() {
 		return new CacheInClient() {
@@ -83,6 +118,12 @@ public class CacheInClientBuilder {
 			@Override public int MaxAge() { return CacheInClientBuilder.this.valueMaxAge; }
 			@Override public int SMaxAge() { return CacheInClientBuilder.this.valueSMaxAge; }
 			@Override public String Extension() { return CacheInClientBuilder.this.valueExtension; }
+			@Override public int StaleWhileRevalidate() { return CacheInClientBuilder.this.valueStaleWhileRevalidate; }
+			@Override public boolean Immutable() { return CacheInClientBuilder.this.flagImmutable; }
+			@Override public boolean Expires() { return CacheInClientBuilder.this.flagExpires; }
+			@Override public String[] Vary() { return CacheInClientBuilder.this.valueVary.clone(); }
+			@Override public String[] SurrogateKeys() { return CacheInClientBuilder.this.valueSurrogateKeys.clone(); }
+			@Override public int SurrogateMaxAge() { return CacheInClientBuilder.this.valueSurrogateMaxAge; }
 		};
 	}
 }
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.github.sourguice.cache.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.value.ValueConstants;
+
+/**
+ * The HTTP caching headers of a {@link CacheInClient} declaration, compiled once.
+ *
+ * All header values (Cache-Control, Pragma, Vary, Surrogate-Control, Surrogate-Key) are computed when the policy is compiled,
+ * which happens when the interceptor is bound or a rule is registered.
+ * Applying a policy to a response only sets these precomputed strings, except for the Expires date which depends on the current time.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class CachePolicy {
+
+	/**
+	 * The names of the headers to set
+	 */
+	private final String[] names;
+
+	/**
+	 * The values of the headers to set (same index as {@link #names})
+	 */
+	private final String[] values;
+
+	/**
+	 * The values of the Vary header to add
+	 */
+	private final String[] vary;
+
+	/**
+	 * The number of milliseconds to add to the current time to get the Expires header, or -1 for no Expires header
+	 */
+	private final long expiresIn;
+
+	/**
+	 * Constructor
+	 *
+	 * @param names The names of the headers to set
+	 * @param values The values of the headers to set
+	 * @param vary The values of the Vary header to add
+	 * @param expiresIn The number of milliseconds before the response expires, or -1
+	 */
+	private CachePolicy(final String[] names, final String[] values, final String[] vary, final long expiresIn) {
+		this.names = names;
+		this.values = values;
+		this.vary = vary;
+		this.expiresIn = expiresIn;
+	}
+
+	/**
+	 * Compiles the headers of a declaration
+	 *
+	 * @param info The annotation
+	 * @return The compiled policy
+	 */
+	public static CachePolicy compile(final CacheInClient info) {
+		final List<String> names = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
+
+		final StringBuilder cacheControl = new StringBuilder();
+		final String pragma = protection(cacheControl, info);
+		if (info.NoStore()) {
+			append(cacheControl, "no-store");
+		}
+		if (info.NoTransform()) {
+			append(cacheControl, "no-transform");
+		}
+		if (info.MustRevalidate()) {
+			append(cacheControl, "must-revalidate");
+		}
+		if (info.MaxAge() >= 0) {
+			append(cacheControl, "max-age=" + info.MaxAge());
+		}
+		if (info.SMaxAge() >= 0) {
+			append(cacheControl, "s-maxage=" + info.SMaxAge());
+		}
+		if (info.StaleWhileRevalidate() >= 0) {
+			append(cacheControl, "stale-while-revalidate=" + info.StaleWhileRevalidate());
+		}
+		if (info.Immutable()) {
+			append(cacheControl, "immutable");
+		}
+		if (!info.Extension().isEmpty()) {
+			append(cacheControl, info.Extension());
+		}
+		names.add("Cache-Control");
+		values.add(cacheControl.toString());
+
+		if (pragma != null) {
+			names.add("Pragma");
+			values.add(pragma);
+		}
+
+		if (info.SurrogateMaxAge() >= 0) {
+			names.add("Surrogate-Control");
+			values.add("max-age=" + info.SurrogateMaxAge());
+		}
+
+		if (info.SurrogateKeys().length > 0) {
+			final StringBuilder keys = new StringBuilder();
+			for (final String key : info.SurrogateKeys()) {
+				if (keys.length() > 0) {
+					keys.append(' ');
+				}
+				keys.append(key);
+			}
+			names.add("Surrogate-Key");
+			values.add(keys.toString());
+		}
+
+		final long expiresIn = info.Expires() && info.MaxAge() >= 0 ? info.MaxAge() * 1000L : -1;
+
+		return new CachePolicy(names.toArray(new String[names.size()]), values.toArray(new String[values.size()]), info.Vary().clone(), expiresIn);
+	}
+
+	/**
+	 * Adds the protection-related entry to the cache-control value
+	 *
+	 * @param cacheControl The cache-control value
+	 * @param info The annotation
+	 * @return The value of the Pragma header, or null if there is none
+	 */
+	@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+	private static @CheckForNull String protection(final StringBuilder cacheControl, final CacheInClient info) {
+		if (info.NoCache().isEmpty()) {
+			append(cacheControl, "no-cache");
+			return "no-cache";
+		}
+		else if (!info.NoCache().equals(ValueConstants.DEFAULT_NONE)) {
+			append(cacheControl, "no-cache=\"" + info.NoCache() + "\"");
+			return "no-cache";
+		}
+
+		if (info.Private().isEmpty()) {
+			append(cacheControl, "private");
+			return "private";
+		}
+		else if (!info.Private().equals(ValueConstants.DEFAULT_NONE)) {
+			append(cacheControl, "private=\"" + info.Private() + "\"");
+			return "private";
+		}
+		else if (info.Public()) {
+			append(cacheControl, "public");
+			return "public";
+		}
+		return null;
+	}
+
+	/**
+	 * Appends an entry to the cache-control value
+	 *
+	 * @param cacheControl The cache-control value
+	 * @param entry The entry to append
+	 */
+	private static void append(final StringBuilder cacheControl, final String entry) {
+		if (cacheControl.length() > 0) {
+			cacheControl.append(',');
+		}
+		cacheControl.append(entry);
+	}
+
+	/**
+	 * Sets the headers of this policy on a response.
+	 * Headers that were set by a previous policy are replaced, except for Vary whose values are added.
+	 *
+	 * @param response The response to set the headers on
+	 */
+	public void apply(final HttpServletResponse response) {
+		for (int i = 0; i < this.names.length; ++i) {
+			response.setHeader(this.names[i], this.values[i]);
+		}
+		for (final String value : this.vary) {
+			response.addHeader("Vary", value);
+		}
+		if (this.expiresIn >= 0) {
+			response.setDateHeader("Expires", System.currentTimeMillis() + this.expiresIn);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package com.github.sourguice.cache.client;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that applies the policy of the first {@link CacheRules} rule that matches the request URI.
+ *
+ * The policy is applied before the request is handled, so that the headers are set before the response is committed.
+ * The {@link HttpClientCache} interceptor then replaces them if the handling method (or its class) declares its own.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class CachePolicyFilter implements Filter {
+
+	/**
+	 * The rules, in order
+	 */
+	private final CacheRules.Rule[] rules;
+
+	/**
+	 * Constructor
+	 *
+	 * @param rules The rules to apply
+	 */
+	CachePolicyFilter(final CacheRules rules) {
+		this.rules = rules.getRules();
+	}
+
+	@Override
+	public void init(final FilterConfig filterConfig) {
+		// Nothing to initialize
+	}
+
+	@Override
+	public void doFilter(final ServletRequest req, final ServletResponse res, final FilterChain chain) throws IOException, ServletException {
+		if (req instanceof HttpServletRequest && res instanceof HttpServletResponse) {
+			final HttpServletRequest request = (HttpServletRequest) req;
+			final String uri = request.getRequestURI();
+			final int start = request.getContextPath().length();
+			for (final CacheRules.Rule rule : this.rules) {
+				if (rule.matches(uri, start)) {
+					rule.policy.apply((HttpServletResponse) res);
+					break ;
+				}
+			}
+		}
+		chain.doFilter(req, res);
+	}
+
+	@Override
+	public void destroy() {
+		// Nothing to destroy
+	}
+}
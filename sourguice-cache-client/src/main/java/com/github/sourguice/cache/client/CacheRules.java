@@ -0,0 +1,109 @@
+package com.github.sourguice.cache.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * URL based HTTP caching rules, to be given to {@link HttpClientCache#module(CacheRules)}.
+ *
+ * A rule applies its {@link CacheInClient} declaration to every response whose URI (without the context path) matches its pattern.
+ * A pattern is either an exact URI ("/about"), a prefix ("/static/*") or an extension ("*.css").
+ * When multiple rules match, the first added wins.
+ * A method or class annotated with {@link CacheInClient} always overrides the rule that matches its URI.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class CacheRules {
+
+	/**
+	 * A pattern and its compiled policy
+	 */
+	static final class Rule {
+		/**
+		 * The URI if the rule is exact, the prefix if the rule is a prefix, the suffix if the rule is an extension
+		 */
+		final String match;
+
+		/**
+		 * Whether the pattern is a prefix ("/static/*")
+		 */
+		final boolean prefix;
+
+		/**
+		 * Whether the pattern is an extension ("*.css")
+		 */
+		final boolean suffix;
+
+		/**
+		 * The compiled policy
+		 */
+		final CachePolicy policy;
+
+		/**
+		 * Constructor
+		 *
+		 * @param pattern The URL pattern
+		 * @param policy The compiled policy
+		 */
+		Rule(final String pattern, final CachePolicy policy) {
+			this.prefix = pattern.endsWith("/*");
+			this.suffix = !this.prefix && pattern.startsWith("*");
+			if (this.prefix) {
+				this.match = pattern.substring(0, pattern.length() - 1);
+			}
+			else if (this.suffix) {
+				this.match = pattern.substring(1);
+			}
+			else {
+				this.match = pattern;
+			}
+			this.policy = policy;
+		}
+
+		/**
+		 * Checks whether a path matches this rule, without creating any object
+		 *
+		 * @param uri The request URI
+		 * @param start The index where the path starts in the URI (the length of the context path)
+		 * @return Whether the path matches
+		 */
+		boolean matches(final String uri, final int start) {
+			final int length = uri.length() - start;
+			if (this.prefix) {
+				return uri.startsWith(this.match, start)
+					|| (length == this.match.length() - 1 && uri.regionMatches(start, this.match, 0, length));
+			}
+			if (this.suffix) {
+				return length >= this.match.length() && uri.endsWith(this.match);
+			}
+			return length == this.match.length() && uri.startsWith(this.match, start);
+		}
+	}
+
+	/**
+	 * The rules, in the order they were added
+	 */
+	private final List<Rule> rules = new ArrayList<>();
+
+	/**
+	 * Adds a rule
+	 *
+	 * @param pattern The URL pattern ("/about", "/static/*" or "*.css")
+	 * @param info The caching declaration to apply to the matching responses (can be built with a {@link CacheInClientBuilder})
+	 * @return itself to permit command chain
+	 */
+	public CacheRules add(final String pattern, final CacheInClient info) {
+		if (pattern.isEmpty() || (pattern.indexOf('*') >= 0 && !pattern.endsWith("/*") && !pattern.startsWith("*."))) {
+			throw new IllegalArgumentException("Invalid URL pattern: " + pattern);
+		}
+		this.rules.add(new Rule(pattern, CachePolicy.compile(info)));
+		return this;
+	}
+
+	/**
+	 * @return The rules, in the order they were added
+	 */
+	Rule[] getRules() {
+		return this.rules.toArray(new Rule[this.rules.size()]);
+	}
+}
@@ -1,7 +1,9 @@
 package com.github.sourguice.cache.client;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.CheckForNull;
 import javax.inject.Inject;
@@ -11,19 +13,45 @@ import javax.servlet.http.HttpServletResponse;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 
-import com.github.sourguice.value.ValueConstants;
 import com.google.inject.AbstractModule;
 import com.google.inject.Module;
+import com.google.inject.matcher.AbstractMatcher;
 import com.google.inject.matcher.Matchers;
+import com.google.inject.servlet.ServletModule;
 
 /**
  * Interceptor that will automatically add Cache-Control header to the HTTP response
- * so that the response may be cached by the client or by a caching proxy
+ * so that the response may be cached by the client or by a caching proxy.
+ *
+ * The {@link CacheInClient} declaration of a method (or of its class) is compiled into a {@link CachePolicy}
+ * when the interceptor is bound, so intercepting a call only sets precomputed header values.
  *
  * @author Salomon BRYS <salomon.brys@gmail.com>
  */
 public class HttpClientCache implements MethodInterceptor {
 
+	/**
+	 * The compiled policies, by intercepted method
+	 */
+	private static final ConcurrentMap<Method, CachePolicy> POLICIES = new ConcurrentHashMap<>();
+
+	/**
+	 * Matches the public methods that are annotated with {@link CacheInClient} or declared by an annotated class.
+	 * The policy of each matched method is compiled while matching, that is when Guice binds the interceptor.
+	 */
+	private static final AbstractMatcher<Method> MATCHER = new AbstractMatcher<Method>() {
+		@Override public boolean matches(final Method method) {
+			final CacheInClient info = declarationOf(method);
+			if (info == null) {
+				return false;
+			}
+			if (!POLICIES.containsKey(method)) {
+				POLICIES.put(method, CachePolicy.compile(info));
+			}
+			return true;
+		}
+	};
+
 	/**
 	 * Guice provider for the current HTTP Response
 	 */
@@ -38,115 +66,68 @@ public class HttpClientCache implements MethodInterceptor {
 			@Override protected void configure() {
 				final HttpClientCache interceptor = new HttpClientCache();
 				requestInjection(interceptor);
-				bindInterceptor(Matchers.any(), Matchers.annotatedWith(CacheInClient.class), interceptor);
+				bindInterceptor(Matchers.any(), MATCHER, interceptor);
 			}
 		};
 	}
 
 	/**
-	 * Add protection-related entries to the cache-control list
-	 *
-	 * @param cacheControl The list to add entries
-	 * @param info The annotation
-	 * @param response Response used to write Pragma header
-	 */
-	@SuppressWarnings("PMD.AvoidDuplicateLiterals")
-	private static void setCacheControlProtection(final List<String>cacheControl, final CacheInClient info, final HttpServletResponse response) {
-		if (info.NoCache().isEmpty()) {
-			cacheControl.add("no-cache");
-			response.addHeader("Pragma", "no-cache");
-			return ;
-		}
-		else if (!info.NoCache().equals(ValueConstants.DEFAULT_NONE)) {
-			cacheControl.add("no-cache=\"" + info.NoCache() + "\"");
-			response.addHeader("Pragma", "no-cache");
-			return ;
-		}
-
-		if (info.Private().isEmpty()) {
-			cacheControl.add("private");
-			response.addHeader("Pragma", "private");
-		}
-		else if (!info.Private().equals(ValueConstants.DEFAULT_NONE)) {
-			cacheControl.add("private=\"" + info.Private() + "\"");
-			response.addHeader("Pragma", "private");
-		}
-		else if (info.Public()) {
-			cacheControl.add("public");
-			response.addHeader("Pragma", "public");
-		}
-	}
-
-	/**
-	 * Add flag entries to the cache-control list
+	 * Creates the module that enables this interceptor and applies URL based rules.
+	 * The rules are applied by a filter on every request, a method or class annotated with {@link CacheInClient} overrides them.
 	 *
-	 * @param cacheControl The list to add entries
-	 * @param info The annotation
+	 * @param rules The URL based rules
+	 * @return The module to install
 	 */
-	private static void setFlags(final List<String>cacheControl, final CacheInClient info) {
-		if (info.NoStore()) {
-			cacheControl.add("no-store");
-		}
-
-		if (info.NoTransform()) {
-			cacheControl.add("no-transform");
-		}
-
-		if (info.MustRevalidate()) {
-			cacheControl.add("must-revalidate");
-		}
+	public static Module module(final CacheRules rules) {
+		return new ServletModule() {
+			@Override protected void configureServlets() {
+				filter("/*").through(new CachePolicyFilter(rules));
+				install(HttpClientCache.module());
+			}
+		};
 	}
 
 	/**
-	 * Add age entries to the cache-control list
+	 * Gets the declaration that applies to a method: its own annotation or, for a public method, the annotation of its class
 	 *
-	 * @param cacheControl The list to add entries
-	 * @param info The annotation
+	 * @param method The method
+	 * @return The declaration, or null if none applies
 	 */
-	private static void setAge(final List<String>cacheControl, final CacheInClient info) {
-		if (info.MaxAge() >= 0) {
-			cacheControl.add("max-age=" + info.MaxAge());
+	static @CheckForNull CacheInClient declarationOf(final Method method) {
+		final CacheInClient info = method.getAnnotation(CacheInClient.class);
+		if (info != null) {
+			return info;
 		}
-
-		if (info.SMaxAge() >= 0) {
-			cacheControl.add("s-maxage=" + info.SMaxAge());
+		if (!Modifier.isPublic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+			return null;
 		}
+		return method.getDeclaringClass().getAnnotation(CacheInClient.class);
 	}
 
 	/**
-	 * Set the cache-control & pragma headers
+	 * Set the cache-control & pragma headers.
+	 * The declaration is compiled on each call: to set the same headers often, compile it once with {@link CachePolicy#compile(CacheInClient)}.
 	 *
 	 * @param info The annotation
 	 * @param response The response to set the header on
 	 */
 	public static void setCacheControl(final HttpServletResponse response, final CacheInClient info) {
-		final List<String> cacheControl = new ArrayList<>();
-
-		setCacheControlProtection(cacheControl, info, response);
-		setFlags(cacheControl, info);
-		setAge(cacheControl, info);
-
-		if (!info.Extension().isEmpty()) {
-			cacheControl.add(info.Extension());
-		}
-
-		final StringBuilder cacheControlHeader = new StringBuilder();
-		String coma = "";
-		for (final String value : cacheControl) {
-			cacheControlHeader.append(coma);
-			cacheControlHeader.append(value);
-			coma = ",";
-		}
-		response.addHeader("Cache-Control", cacheControlHeader.toString());
+		CachePolicy.compile(info).apply(response);
 	}
 
 	@Override
 	public Object invoke(final MethodInvocation invocation) throws Throwable {
 		final Object ret = invocation.proceed();
 
-		final CacheInClient info = invocation.getMethod().getAnnotation(CacheInClient.class);
-		if (info == null) {
-			return ret;
+		final Method method = invocation.getMethod();
+		CachePolicy policy = POLICIES.get(method);
+		if (policy == null) {
+			final CacheInClient info = declarationOf(method);
+			if (info == null) {
+				return ret;
+			}
+			policy = CachePolicy.compile(info);
+			POLICIES.putIfAbsent(method, policy);
 		}
 
 		if (this.responseProvider == null) {
@@ -154,7 +135,7 @@ public class HttpClientCache implements MethodInterceptor {
 		}
 		final HttpServletResponse response = this.responseProvider.get();
 
-		setCacheControl(response, info);
+		policy.apply(response);
 
 		return ret;
 	}
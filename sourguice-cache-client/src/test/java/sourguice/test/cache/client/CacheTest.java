@@ -1,6 +1,10 @@
 package sourguice.test.cache.client;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -13,6 +17,7 @@ import sourguice.test.mvc.TestBase;
 import com.github.sourguice.SourGuice;
 import com.github.sourguice.cache.client.CacheInClient;
 import com.github.sourguice.cache.client.CacheInClientBuilder;
+import com.github.sourguice.cache.client.CacheRules;
 import com.github.sourguice.cache.client.HttpClientCache;
 import com.github.sourguice.mvc.SourGuiceMvc;
 import com.github.sourguice.mvc.annotation.request.RequestMapping;
@@ -64,6 +69,44 @@ public class CacheTest extends TestBase {
 
 			return "Salomon:N";
 		}
+
+		@RequestMapping(value = "/client_policy")
+		@CacheInClient(MaxAge = 60, StaleWhileRevalidate = 30, Immutable = true, Expires = true,
+			Vary = {"Accept-Encoding", "Accept-Language"}, SurrogateKeys = {"page", "page-policy"}, SurrogateMaxAge = 3600)
+		@Writes
+		public String client_policy() {
+			return "Salomon:N";
+		}
+
+		@RequestMapping(value = "/static/logo")
+		@Writes
+		public String static_logo() {
+			return "Salomon:N";
+		}
+
+		@RequestMapping(value = "/style.css")
+		@Writes
+		public String style() {
+			return "Salomon:N";
+		}
+    }
+
+    @Singleton
+    @CacheInClient(Private = "", MaxAge = 30)
+    public static class ClassController {
+
+		@RequestMapping(value = "/page")
+		@Writes
+		public String page() {
+			return "Salomon:N";
+		}
+
+		@RequestMapping(value = "/override")
+		@CacheInClient(NoCache = "")
+		@Writes
+		public String override() {
+			return "Salomon:N";
+		}
     }
 
     // ===================== MODULE =====================
@@ -72,8 +115,13 @@ public class CacheTest extends TestBase {
         @Override
         protected void configureServlets() {
         	SourGuiceMvc mvc = new SourGuiceMvc(new SourGuice());
+        	mvc.control("/class/*").with(ClassController.class);
         	mvc.control("/*").with(Controller.class);
-            install(HttpClientCache.module());
+            install(HttpClientCache.module(new CacheRules()
+            	.add("/static/*", new CacheInClientBuilder().MaxAge(60 * 60 * 24).Immutable(true).build())
+            	.add("*.css", new CacheInClientBuilder().MaxAge(60).Vary("Accept-Encoding").build())
+            	.add("/client_cache", new CacheInClientBuilder().NoStore(false).MaxAge(1).build())
+            ));
             install(mvc.module());
         }
     }
@@ -119,5 +167,47 @@ public class CacheTest extends TestBase {
 		assertEquals(response.getHeader("Pragma"), "public");
 		assertEquals(response.getHeader("Cache-Control"), "public,no-transform,max-age=600");
 	}
-}
 
+	public void getClientPolicy() throws Exception {
+		HttpTester request = makeRequest("GET", "/client_policy");
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getHeader("Cache-Control"), "public,max-age=60,stale-while-revalidate=30,immutable");
+		assertEquals(response.getHeader("Surrogate-Control"), "max-age=3600");
+		assertEquals(response.getHeader("Surrogate-Key"), "page page-policy");
+		assertEquals(Collections.list(response.getHeaderValues("Vary")), Arrays.asList("Accept-Encoding", "Accept-Language"));
+		assertTrue(response.getDateHeader("Expires") > System.currentTimeMillis());
+	}
+
+	public void getClassPolicy() throws Exception {
+		HttpTester request = makeRequest("GET", "/class/page");
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getHeader("Pragma"), "private");
+		assertEquals(response.getHeader("Cache-Control"), "private,max-age=30");
+
+		request = makeRequest("GET", "/class/override");
+		response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getHeader("Pragma"), "no-cache");
+		assertEquals(response.getHeader("Cache-Control"), "no-cache");
+	}
+
+	public void getRulePolicy() throws Exception {
+		HttpTester request = makeRequest("GET", "/static/logo");
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getHeader("Cache-Control"), "public,max-age=86400,immutable");
+
+		request = makeRequest("GET", "/style.css");
+		response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getHeader("Cache-Control"), "public,max-age=60");
+		assertEquals(response.getHeader("Vary"), "Accept-Encoding");
+	}
+}
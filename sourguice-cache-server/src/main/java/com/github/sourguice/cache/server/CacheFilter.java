@@ -1,8 +1,13 @@
 package com.github.sourguice.cache.server;
 
 import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.inject.Singleton;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -19,17 +24,89 @@ import com.google.inject.servlet.GuiceFilter;
  * Any web app that uses the {@link CacheService} must use this filter.
  * This filter must be registered BEFORE the {@link GuiceFilter}
  *
+ * The response of a suspended request is saved once the request completes.
+ * For it to be captured, this filter must be async-supported and mapped for the ASYNC dispatcher (like the {@link GuiceFilter}):
+ * the response written after an asynchronous dispatch that did not go through this filter is not saved.
+ *
  * @author Salomon BRYS <salomon.brys@gmail.com>
  */
 @Singleton
 public class CacheFilter implements Filter {
 
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(CacheFilter.class.getName());
+
+	/**
+	 * Request attribute that holds the response wrapper of a suspended request, so that its asynchronous dispatch writes in it
+	 */
+	private static final String RESPONSE_ATTRIBUTE = "com.github.sourguice.cache.Response";
+
+	/**
+	 * Saves the response of a suspended request once it completes, if it was written through the response wrapper
+	 */
+	private static final class SaveOnComplete implements AsyncListener {
+		/**
+		 * The response wrapper of the suspended request
+		 */
+		private final SGResponse res;
+
+		/**
+		 * Whether the asynchronous dispatch has written the response through the wrapper
+		 */
+		volatile boolean dispatched = false;
+
+		/**
+		 * @param res The response wrapper of the suspended request
+		 */
+		SaveOnComplete(final SGResponse res) {
+			this.res = res;
+		}
+
+		@Override
+		public void onComplete(final AsyncEvent event) throws IOException {
+			final Cache cache = this.res.getCache();
+			if (cache == null) {
+				return ;
+			}
+			if (!this.dispatched) {
+				LOGGER.log(Level.FINE, "Response not saved: the asynchronous dispatch did not go through the CacheFilter");
+				return ;
+			}
+			cache.save(this.res);
+		}
+
+		@Override public void onStartAsync(final AsyncEvent event) { /* The filter registers again after the new dispatch */ }
+		@Override public void onTimeout(final AsyncEvent event) { /* Nothing to do */ }
+		@Override public void onError(final AsyncEvent event) { /* Nothing to do */ }
+	}
+
 	@Override
 	public void doFilter(final ServletRequest _req, final ServletResponse _res, final FilterChain chain) throws IOException, ServletException {
-		final SGResponse res = new SGResponse((HttpServletResponse) _res);
+		SGResponse res = null;
+		final Object pending = _req.getAttribute(RESPONSE_ATTRIBUTE);
+		if (pending instanceof SaveOnComplete && _req.getDispatcherType() == DispatcherType.ASYNC) {
+			// Asynchronous dispatch of a suspended request: the response is written in the wrapper of the first dispatch
+			final SaveOnComplete listener = (SaveOnComplete) pending;
+			listener.dispatched = true;
+			res = listener.res;
+		}
+		_req.removeAttribute(RESPONSE_ATTRIBUTE);
+		if (res == null) {
+			res = new SGResponse((HttpServletResponse) _res);
+		}
 
 		chain.doFilter(_req, res);
 
+		// The response of a suspended request is not written yet: it is saved once the request completes
+		if (_req.isAsyncStarted()) {
+			final SaveOnComplete listener = new SaveOnComplete(res);
+			_req.setAttribute(RESPONSE_ATTRIBUTE, listener);
+			_req.getAsyncContext().addListener(listener);
+			return ;
+		}
+
 		final Cache cache = res.getCache();
 		if (cache != null) {
 			cache.save(res);
@@ -0,0 +1,115 @@
+package com.github.sourguice.cache.server.bus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A message of the {@link InvalidationBus}: the invalidations published by a node at once.
+ *
+ * Each invalidation is a string whose first char is its kind, followed by its value.
+ * A batch without invalidation is a heartbeat, which carries the sequence number of the last batch sent by the node.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class InvalidationBatch {
+
+	/**
+	 * Kind of an invalidation that removes an URI
+	 */
+	static final char REMOVE = 'U';
+
+	/**
+	 * Kind of an invalidation that removes a tag
+	 */
+	static final char TAG = 'T';
+
+	/**
+	 * Kind of an invalidation that removes a prefix
+	 */
+	static final char PREFIX = 'P';
+
+	/**
+	 * The invalidation that removes everything
+	 */
+	static final String FLUSH = "F";
+
+	/**
+	 * Version of the message format
+	 */
+	private static final byte VERSION = 1;
+
+	/**
+	 * Identifier of the node that sent the batch
+	 */
+	final long nodeId;
+
+	/**
+	 * Sequence number of the batch, incremented by each batch that is not a heartbeat
+	 */
+	final long sequence;
+
+	/**
+	 * The invalidations
+	 */
+	final String[] invalidations;
+
+	/**
+	 * Constructor
+	 *
+	 * @param nodeId Identifier of the node that sent the batch
+	 * @param sequence Sequence number of the batch
+	 * @param invalidations The invalidations
+	 */
+	InvalidationBatch(final long nodeId, final long sequence, final String[] invalidations) {
+		this.nodeId = nodeId;
+		this.sequence = sequence;
+		this.invalidations = invalidations;
+	}
+
+	/**
+	 * @return Whether this batch is a heartbeat
+	 */
+	boolean isHeartbeat() {
+		return this.invalidations.length == 0;
+	}
+
+	/**
+	 * @return The message
+	 * @throws IOException If the batch could not be encoded
+	 */
+	byte[] encode() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + this.invalidations.length * 64);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(VERSION);
+		out.writeLong(this.nodeId);
+		out.writeLong(this.sequence);
+		out.writeInt(this.invalidations.length);
+		for (final String invalidation : this.invalidations) {
+			out.writeUTF(invalidation);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param message The message
+	 * @return The decoded batch
+	 * @throws IOException If the message is malformed
+	 */
+	static InvalidationBatch decode(final byte[] message) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+		if (in.readByte() != VERSION) {
+			throw new IOException("Unknown invalidation message version");
+		}
+		final long nodeId = in.readLong();
+		final long sequence = in.readLong();
+		final String[] invalidations = new String[in.readInt()];
+		for (int i = 0; i < invalidations.length; ++i) {
+			invalidations[i] = in.readUTF();
+		}
+		return new InvalidationBatch(nodeId, sequence, invalidations);
+	}
+}
@@ -0,0 +1,404 @@
+package com.github.sourguice.cache.server.bus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Propagates the invalidations of a local cache to the caches of the other nodes of a cluster.
+ *
+ * Published invalidations are not sent immediately: they are batched for {@link #setBatchDelay(int)} milliseconds
+ * and coalesced (duplicates are sent once, a prefix replaces the URIs and prefixes it covers, a flush replaces everything).
+ * Batches are then published through an {@link InvalidationTransport}.
+ *
+ * Every node applies the invalidations it receives from the other nodes to its {@link InvalidationListener}.
+ * Batches are numbered per node: a node that detects a gap in the sequence of another node has lost invalidations,
+ * so it flushes its whole cache.
+ * As the last batch before a silence could be lost without any gap being seen, idle nodes send heartbeats
+ * that carry their last sequence number.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class InvalidationBus implements Closeable {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(InvalidationBus.class.getName());
+
+	/**
+	 * The transport of the messages
+	 */
+	private final InvalidationTransport transport;
+
+	/**
+	 * Identifier of this node, random so that a restarted node is a new node with a new sequence
+	 */
+	private final long nodeId = UUID.randomUUID().getLeastSignificantBits();
+
+	/**
+	 * Time, in milliseconds, during which invalidations are batched
+	 */
+	private int batchDelay = 50;
+
+	/**
+	 * Time, in milliseconds, after which an idle node sends a heartbeat
+	 */
+	private int heartbeatInterval = 5000;
+
+	/**
+	 * Maximum number of invalidations in a batch
+	 */
+	private int maxBatchSize = 256;
+
+	/**
+	 * The invalidations waiting to be sent, in order
+	 */
+	private final Set<String> pending = new LinkedHashSet<>();
+
+	/**
+	 * The values of the pending prefix invalidations
+	 */
+	private final List<String> pendingPrefixes = new ArrayList<>();
+
+	/**
+	 * Lock that keeps the batches published in the order of their sequence numbers
+	 */
+	private final Object sendLock = new Object();
+
+	/**
+	 * Sequence number of the last batch sent by this node
+	 */
+	private long sequence = 0;
+
+	/**
+	 * Date, in milliseconds, at which the last batch was sent
+	 */
+	private long lastSent = 0;
+
+	/**
+	 * The last sequence number received from each other node
+	 */
+	private final Map<Long, Long> lastSequences = new HashMap<>();
+
+	/**
+	 * The listener that applies received invalidations
+	 */
+	private @CheckForNull InvalidationListener listener = null;
+
+	/**
+	 * The thread that sends the batches
+	 */
+	private @CheckForNull Thread sender = null;
+
+	/**
+	 * Number of sent invalidations
+	 */
+	private final AtomicLong sentCount = new AtomicLong();
+
+	/**
+	 * Number of applied invalidations received from the other nodes
+	 */
+	private final AtomicLong receivedCount = new AtomicLong();
+
+	/**
+	 * Number of batches that could not be published
+	 */
+	private final AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * Number of gaps detected in the sequences of the other nodes (which caused a flush)
+	 */
+	private final AtomicLong gapCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param transport The transport of the messages
+	 */
+	public InvalidationBus(final InvalidationTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * @param millis Time, in milliseconds, during which invalidations are batched
+	 * @return itself to permit command chain
+	 */
+	public InvalidationBus setBatchDelay(final int millis) {
+		this.batchDelay = millis;
+		return this;
+	}
+
+	/**
+	 * @param millis Time, in milliseconds, after which an idle node sends a heartbeat
+	 * @return itself to permit command chain
+	 */
+	public InvalidationBus setHeartbeatInterval(final int millis) {
+		this.heartbeatInterval = millis;
+		return this;
+	}
+
+	/**
+	 * @param size Maximum number of invalidations in a batch
+	 * @return itself to permit command chain
+	 */
+	public InvalidationBus setMaxBatchSize(final int size) {
+		this.maxBatchSize = size;
+		return this;
+	}
+
+	/**
+	 * Starts sending and receiving invalidations
+	 *
+	 * @param invalidationListener The listener that applies the invalidations received from the other nodes
+	 * @throws IOException If the transport could not be started
+	 */
+	public synchronized void start(final InvalidationListener invalidationListener) throws IOException {
+		if (this.listener != null) {
+			throw new IllegalStateException("Invalidation bus is already started");
+		}
+		this.listener = invalidationListener;
+		this.transport.start(new InvalidationTransport.Receiver() {
+			@Override public void receive(final byte[] message) {
+				InvalidationBus.this.receive(message);
+			}
+		});
+		final Thread thread = new Thread(new Runnable() {
+			@Override public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						Thread.sleep(InvalidationBus.this.batchDelay);
+						send();
+					}
+				}
+				catch (InterruptedException e) {
+					// Closed
+				}
+			}
+		}, "SourGuice-invalidation-bus");
+		thread.setDaemon(true);
+		thread.start();
+		this.sender = thread;
+	}
+
+	/**
+	 * Publishes the removal of all entries of an URI
+	 *
+	 * @param uri The URI whose entries to remove
+	 */
+	public void publishRemove(final String uri) {
+		publish(InvalidationBatch.REMOVE, uri);
+	}
+
+	/**
+	 * Publishes the removal of all entries that have been tagged with a tag
+	 *
+	 * @param tag The tag of the entries to remove
+	 */
+	public void publishTag(final String tag) {
+		publish(InvalidationBatch.TAG, tag);
+	}
+
+	/**
+	 * Publishes the removal of all entries whose URI starts with a prefix
+	 *
+	 * @param prefix The prefix of the URIs to remove
+	 */
+	public void publishPrefix(final String prefix) {
+		publish(InvalidationBatch.PREFIX, prefix);
+	}
+
+	/**
+	 * Publishes the removal of all entries
+	 */
+	public void publishFlush() {
+		synchronized (this.pending) {
+			this.pending.clear();
+			this.pendingPrefixes.clear();
+			this.pending.add(InvalidationBatch.FLUSH);
+		}
+	}
+
+	/**
+	 * Adds an invalidation to the pending ones, coalescing it with the invalidations it covers or that cover it
+	 *
+	 * @param kind The kind of the invalidation
+	 * @param value The value of the invalidation
+	 */
+	private void publish(final char kind, final String value) {
+		final String invalidation = kind + value;
+		synchronized (this.pending) {
+			if (this.pending.contains(InvalidationBatch.FLUSH) || this.pending.contains(invalidation)) {
+				return ;
+			}
+			if (kind != InvalidationBatch.TAG) {
+				for (final String prefix : this.pendingPrefixes) {
+					if (value.startsWith(prefix)) {
+						return ;
+					}
+				}
+			}
+			if (kind == InvalidationBatch.PREFIX) {
+				for (final Iterator<String> it = this.pending.iterator(); it.hasNext(); ) {
+					final String other = it.next();
+					if (other.charAt(0) != InvalidationBatch.TAG && other.startsWith(value, 1)) {
+						it.remove();
+					}
+				}
+				for (final Iterator<String> it = this.pendingPrefixes.iterator(); it.hasNext(); ) {
+					if (it.next().startsWith(value)) {
+						it.remove();
+					}
+				}
+				this.pendingPrefixes.add(value);
+			}
+			this.pending.add(invalidation);
+		}
+	}
+
+	/**
+	 * Sends the pending invalidations now (or a heartbeat if there are none and the heartbeat interval is over)
+	 */
+	public void send() {
+		synchronized (this.sendLock) {
+			while (true) {
+				final List<String> batch = new ArrayList<>();
+				synchronized (this.pending) {
+					for (final Iterator<String> it = this.pending.iterator(); it.hasNext() && batch.size() < this.maxBatchSize; ) {
+						final String invalidation = it.next();
+						it.remove();
+						batch.add(invalidation);
+						if (invalidation.charAt(0) == InvalidationBatch.PREFIX) {
+							this.pendingPrefixes.remove(invalidation.substring(1));
+						}
+					}
+				}
+				final long now = System.currentTimeMillis();
+				if (batch.isEmpty() && now - this.lastSent < this.heartbeatInterval) {
+					return ;
+				}
+				if (!batch.isEmpty()) {
+					++this.sequence;
+				}
+				this.lastSent = now;
+				try {
+					this.transport.publish(new InvalidationBatch(this.nodeId, this.sequence, batch.toArray(new String[batch.size()])).encode());
+					this.sentCount.addAndGet(batch.size());
+				}
+				catch (IOException e) {
+					// The other nodes will see a gap in the sequence
+					this.failedCount.incrementAndGet();
+					LOGGER.log(Level.WARNING, "Could not publish cache invalidations", e);
+				}
+				if (batch.size() < this.maxBatchSize) {
+					return ;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies a message received from the transport
+	 *
+	 * @param message The message
+	 */
+	void receive(final byte[] message) {
+		final InvalidationListener invalidationListener = this.listener;
+		if (invalidationListener == null) {
+			return ;
+		}
+		final InvalidationBatch batch;
+		try {
+			batch = InvalidationBatch.decode(message);
+		}
+		catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Received an unreadable cache invalidation message", e);
+			return ;
+		}
+		if (batch.nodeId == this.nodeId) {
+			return ;
+		}
+		synchronized (this.lastSequences) {
+			final Long last = this.lastSequences.get(Long.valueOf(batch.nodeId));
+			if (last != null) {
+				final long expected = batch.isHeartbeat() ? last.longValue() : last.longValue() + 1;
+				if (batch.sequence < expected) {
+					// Duplicate or late message
+					return ;
+				}
+				if (batch.sequence > expected) {
+					this.gapCount.incrementAndGet();
+					LOGGER.warning("Cache invalidations were lost, flushing the cache");
+					invalidationListener.flush();
+				}
+			}
+			this.lastSequences.put(Long.valueOf(batch.nodeId), Long.valueOf(batch.sequence));
+			for (final String invalidation : batch.invalidations) {
+				final String value = invalidation.substring(1);
+				switch (invalidation.charAt(0)) {
+					case InvalidationBatch.REMOVE: invalidationListener.remove(value); break ;
+					case InvalidationBatch.TAG: invalidationListener.invalidateTag(value); break ;
+					case InvalidationBatch.PREFIX: invalidationListener.invalidatePrefix(value); break ;
+					default: invalidationListener.flush(); break ;
+				}
+			}
+			this.receivedCount.addAndGet(batch.invalidations.length);
+		}
+	}
+
+	/**
+	 * @return Number of sent invalidations
+	 */
+	public long getSentCount() {
+		return this.sentCount.get();
+	}
+
+	/**
+	 * @return Number of applied invalidations received from the other nodes
+	 */
+	public long getReceivedCount() {
+		return this.receivedCount.get();
+	}
+
+	/**
+	 * @return Number of batches that could not be published
+	 */
+	public long getFailedCount() {
+		return this.failedCount.get();
+	}
+
+	/**
+	 * @return Number of gaps detected in the sequences of the other nodes (each one caused a flush)
+	 */
+	public long getGapCount() {
+		return this.gapCount.get();
+	}
+
+	/**
+	 * Sends the pending invalidations and closes the transport
+	 *
+	 * @throws IOException If the transport could not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		final Thread thread = this.sender;
+		if (thread != null) {
+			thread.interrupt();
+			this.sender = null;
+			send();
+		}
+		this.transport.close();
+	}
+}
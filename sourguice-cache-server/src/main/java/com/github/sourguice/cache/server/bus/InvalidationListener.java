@@ -0,0 +1,35 @@
+package com.github.sourguice.cache.server.bus;
+
+/**
+ * Applies the invalidations received by an {@link InvalidationBus} to a local cache
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public interface InvalidationListener {
+
+	/**
+	 * Removes all entries of an URI
+	 *
+	 * @param uri The URI whose entries to remove
+	 */
+	public void remove(String uri);
+
+	/**
+	 * Removes all entries that have been tagged with a tag
+	 *
+	 * @param tag The tag of the entries to remove
+	 */
+	public void invalidateTag(String tag);
+
+	/**
+	 * Removes all entries whose URI starts with a prefix
+	 *
+	 * @param prefix The prefix of the URIs to remove
+	 */
+	public void invalidatePrefix(String prefix);
+
+	/**
+	 * Removes all entries
+	 */
+	public void flush();
+}
@@ -0,0 +1,40 @@
+package com.github.sourguice.cache.server.bus;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Carries the messages of an {@link InvalidationBus} between nodes.
+ *
+ * A transport may lose messages: the bus detects it and recovers by flushing the local cache.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public interface InvalidationTransport extends Closeable {
+
+	/**
+	 * Receives the messages published by the other nodes
+	 */
+	public static interface Receiver {
+		/**
+		 * @param message A message published by another node (or possibly by this node)
+		 */
+		public void receive(byte[] message);
+	}
+
+	/**
+	 * Starts receiving messages
+	 *
+	 * @param receiver The receiver of the messages
+	 * @throws IOException If the transport could not be started
+	 */
+	public void start(Receiver receiver) throws IOException;
+
+	/**
+	 * Publishes a message to the other nodes
+	 *
+	 * @param message The message to publish
+	 * @throws IOException If the message could not be published to any node
+	 */
+	public void publish(byte[] message) throws IOException;
+}
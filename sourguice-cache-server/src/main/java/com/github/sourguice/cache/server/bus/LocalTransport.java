@@ -0,0 +1,67 @@
+package com.github.sourguice.cache.server.bus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * An {@link InvalidationTransport} between the buses of the same JVM (for example multiple applications of a container).
+ *
+ * All transports created on the same {@link Channel} receive the messages published by the others.
+ * Messages are delivered synchronously, on the publishing thread.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class LocalTransport implements InvalidationTransport {
+
+	/**
+	 * A group of transports that exchange messages
+	 */
+	public static final class Channel {
+		/**
+		 * The started transports of this channel
+		 */
+		final List<LocalTransport> members = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * The channel of this transport
+	 */
+	private final Channel channel;
+
+	/**
+	 * The receiver of the messages, once started
+	 */
+	private @CheckForNull Receiver receiver = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param channel The channel of this transport
+	 */
+	public LocalTransport(final Channel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public void start(final Receiver messageReceiver) {
+		this.receiver = messageReceiver;
+		this.channel.members.add(this);
+	}
+
+	@Override
+	public void publish(final byte[] message) {
+		for (final LocalTransport member : this.channel.members) {
+			final Receiver memberReceiver = member.receiver;
+			if (member != this && memberReceiver != null) {
+				memberReceiver.receive(message.clone());
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		this.channel.members.remove(this);
+	}
+}
@@ -0,0 +1,219 @@
+package com.github.sourguice.cache.server.bus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * An {@link InvalidationTransport} that sends each message as a length prefixed frame on a TCP connection to every peer.
+ *
+ * Connections are opened on first publication and re-opened after a failure.
+ * A message that cannot be sent to a peer is lost for this peer, which the {@link InvalidationBus} detects once
+ * the connection is back, through its sequence numbers.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class TcpTransport implements InvalidationTransport {
+
+	/**
+	 * Maximum size of a received message, bigger frames close the connection
+	 */
+	private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * The address on which this node accepts connections
+	 */
+	private final InetSocketAddress local;
+
+	/**
+	 * The addresses of the other nodes
+	 */
+	private final InetSocketAddress[] peers;
+
+	/**
+	 * The connection to each peer, null when not connected
+	 */
+	private final Socket[] connections;
+
+	/**
+	 * The output of each connection
+	 */
+	private final DataOutputStream[] outputs;
+
+	/**
+	 * Connect and write timeout, in milliseconds
+	 */
+	private int timeout = 1000;
+
+	/**
+	 * The server socket, once started
+	 */
+	private @CheckForNull ServerSocket server = null;
+
+	/**
+	 * The accepted connections
+	 */
+	private final List<Socket> accepted = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param local The address on which this node accepts connections (port 0 for any free port)
+	 * @param peers The addresses of the other nodes
+	 */
+	public TcpTransport(final InetSocketAddress local, final InetSocketAddress... peers) {
+		this.local = local;
+		this.peers = peers.clone();
+		this.connections = new Socket[peers.length];
+		this.outputs = new DataOutputStream[peers.length];
+	}
+
+	/**
+	 * @param millis Connect timeout, in milliseconds
+	 * @return itself to permit command chain
+	 */
+	public TcpTransport setTimeout(final int millis) {
+		this.timeout = millis;
+		return this;
+	}
+
+	/**
+	 * @return The port on which this node accepts connections, or -1 if the transport is not started
+	 */
+	public int getLocalPort() {
+		final ServerSocket serverSocket = this.server;
+		return serverSocket == null ? -1 : serverSocket.getLocalPort();
+	}
+
+	@Override
+	public void start(final Receiver receiver) throws IOException {
+		final ServerSocket serverSocket = new ServerSocket();
+		serverSocket.bind(this.local);
+		this.server = serverSocket;
+		daemon(new Runnable() {
+			@Override public void run() {
+				while (!serverSocket.isClosed()) {
+					try {
+						final Socket socket = serverSocket.accept();
+						TcpTransport.this.accepted.add(socket);
+						daemon(new Runnable() {
+							@Override public void run() {
+								read(socket, receiver);
+							}
+						});
+					}
+					catch (IOException e) {
+						// Closed
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Reads the frames of an accepted connection until it is closed
+	 *
+	 * @param socket The accepted connection
+	 * @param receiver The receiver of the messages
+	 */
+	void read(final Socket socket, final Receiver receiver) {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+			while (true) {
+				final int length = in.readInt();
+				if (length < 0 || length > MAX_MESSAGE_SIZE) {
+					return ;
+				}
+				final byte[] message = new byte[length];
+				in.readFully(message);
+				receiver.receive(message);
+			}
+		}
+		catch (IOException e) {
+			// Closed
+		}
+		finally {
+			this.accepted.remove(socket);
+		}
+	}
+
+	/**
+	 * @param runnable The code to run in a daemon thread
+	 */
+	private static void daemon(final Runnable runnable) {
+		final Thread thread = new Thread(runnable, "SourGuice-invalidation-tcp");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public synchronized void publish(final byte[] message) throws IOException {
+		IOException failure = null;
+		int sent = 0;
+		for (int i = 0; i < this.peers.length; ++i) {
+			try {
+				DataOutputStream out = this.outputs[i];
+				if (out == null) {
+					final Socket socket = new Socket();
+					socket.setTcpNoDelay(true);
+					socket.connect(this.peers[i], this.timeout);
+					this.connections[i] = socket;
+					out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+					this.outputs[i] = out;
+				}
+				out.writeInt(message.length);
+				out.write(message);
+				out.flush();
+				++sent;
+			}
+			catch (IOException e) {
+				failure = e;
+				disconnect(i);
+			}
+		}
+		if (failure != null && sent == 0) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Closes the connection to a peer, it will be re-opened on the next publication
+	 *
+	 * @param i The index of the peer
+	 */
+	private void disconnect(final int i) {
+		final Socket socket = this.connections[i];
+		this.connections[i] = null;
+		this.outputs[i] = null;
+		if (socket != null) {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (int i = 0; i < this.peers.length; ++i) {
+			disconnect(i);
+		}
+		final ServerSocket serverSocket = this.server;
+		if (serverSocket != null) {
+			serverSocket.close();
+		}
+		for (final Socket socket : this.accepted) {
+			socket.close();
+		}
+	}
+}
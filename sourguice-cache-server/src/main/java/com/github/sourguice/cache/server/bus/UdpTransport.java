@@ -0,0 +1,114 @@
+package com.github.sourguice.cache.server.bus;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * An {@link InvalidationTransport} that sends each message as an UDP datagram to every peer.
+ *
+ * UDP is cheap but unreliable: lost datagrams are detected by the {@link InvalidationBus} through its sequence numbers.
+ * A message must fit in a single datagram, so the bus batch size must be kept reasonable.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class UdpTransport implements InvalidationTransport {
+
+	/**
+	 * Maximum size of an UDP payload
+	 */
+	public static final int MAX_MESSAGE_SIZE = 65507;
+
+	/**
+	 * The address on which this node receives messages
+	 */
+	private final InetSocketAddress local;
+
+	/**
+	 * The addresses of the other nodes
+	 */
+	private final InetSocketAddress[] peers;
+
+	/**
+	 * The socket, once started
+	 */
+	private @CheckForNull DatagramSocket socket = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param local The address on which this node receives messages (port 0 for any free port)
+	 * @param peers The addresses of the other nodes
+	 */
+	public UdpTransport(final InetSocketAddress local, final InetSocketAddress... peers) {
+		this.local = local;
+		this.peers = peers.clone();
+	}
+
+	/**
+	 * @return The port on which this node receives messages, or -1 if the transport is not started
+	 */
+	public int getLocalPort() {
+		final DatagramSocket datagramSocket = this.socket;
+		return datagramSocket == null ? -1 : datagramSocket.getLocalPort();
+	}
+
+	@Override
+	public void start(final Receiver receiver) throws IOException {
+		final DatagramSocket datagramSocket = new DatagramSocket(this.local);
+		this.socket = datagramSocket;
+		final Thread thread = new Thread(new Runnable() {
+			@Override public void run() {
+				final DatagramPacket packet = new DatagramPacket(new byte[MAX_MESSAGE_SIZE], MAX_MESSAGE_SIZE);
+				while (!datagramSocket.isClosed()) {
+					try {
+						datagramSocket.receive(packet);
+						receiver.receive(Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength()));
+					}
+					catch (IOException e) {
+						// Closed, or a bad datagram that is ignored
+					}
+				}
+			}
+		}, "SourGuice-invalidation-udp");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void publish(final byte[] message) throws IOException {
+		final DatagramSocket datagramSocket = this.socket;
+		if (datagramSocket == null) {
+			throw new IOException("UDP transport is not started");
+		}
+		if (message.length > MAX_MESSAGE_SIZE) {
+			throw new IOException("Message is too big for a datagram: " + message.length + " bytes");
+		}
+		IOException failure = null;
+		int sent = 0;
+		for (final InetSocketAddress peer : this.peers) {
+			try {
+				datagramSocket.send(new DatagramPacket(message, message.length, peer));
+				++sent;
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+		}
+		if (failure != null && sent == 0) {
+			throw failure;
+		}
+	}
+
+	@Override
+	public void close() {
+		final DatagramSocket datagramSocket = this.socket;
+		if (datagramSocket != null) {
+			datagramSocket.close();
+		}
+	}
+}
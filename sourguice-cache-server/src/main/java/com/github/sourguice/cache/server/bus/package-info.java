@@ -0,0 +1,5 @@
+/**
+ * Propagation of cache invalidations between the nodes of a cluster
+ */
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.cache.server.bus;
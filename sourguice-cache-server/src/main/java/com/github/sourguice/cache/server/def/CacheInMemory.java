@@ -18,8 +18,35 @@ public @interface CacheInMemory {
 	 */
 	int seconds();
 
+	/**
+	 * @return Duration, after expiration, during which the expired entry is still served while it is refreshed in the background
+	 */
+	int grace() default 0;
+
+	/**
+	 * @return Whether the entry is stored gzip compressed and served compressed to clients that accept it
+	 */
+	boolean compress() default false;
+
 	/**
 	 * @return List of headers that are part of this cache's entry
 	 */
 	String[] headers() default {};
-}
\ No newline at end of file
+
+	/**
+	 * @return List of query parameters that are part of this cache's entry, {@link CacheRoute#ALL_PARAMS} for all of them.
+	 *         By default, the query string is not part of the entry.
+	 */
+	String[] params() default {};
+
+	/**
+	 * @return List of query parameters that are never part of this cache's entry (a name ending with * is a prefix)
+	 */
+	String[] ignoreParams() default { "utm_*" };
+
+	/**
+	 * @return Tags of this cache's entry, used to invalidate it with {@link InMemoryCache#invalidateTag(String)}.
+	 *         More tags can be added by the method with {@link InMemoryCache#addTags(String...)}.
+	 */
+	String[] tags() default {};
+}
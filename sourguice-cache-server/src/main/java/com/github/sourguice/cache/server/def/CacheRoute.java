@@ -0,0 +1,243 @@
+package com.github.sourguice.cache.server.def;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The cache declaration of a route (a cached URI), shared by all its entries.
+ *
+ * It holds the names of the headers the route's response varies on, so that the {@link InMemoryCache} key of a request
+ * can be computed before the request is executed: all entries of a route are indexed by a key that contains the route's URI
+ * and the values of the varied headers, which means that finding the entry of a request is a single hash lookup.
+ *
+ * A route can also make its key depend on the query string: the selected parameters are added to the key in a canonical
+ * (sorted) order, so that the same page requested with its parameters in a different order hits the same entry.
+ * Parameters that do not change the response (like tracking parameters) can be ignored.
+ * Path variables are part of the URI and therefore always part of the key.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class CacheRoute {
+
+	/**
+	 * Separates the URI and the varied header values in a key
+	 */
+	static final char SEPARATOR = '\u0000';
+
+	/**
+	 * Replaces the value of a varied header that is absent from the request
+	 */
+	private static final char ABSENT = '\u0001';
+
+	/**
+	 * Separates the varied header values and the canonical query string in a key
+	 */
+	private static final char QUERY = '?';
+
+	/**
+	 * Parameter name that selects all parameters of the query string
+	 */
+	public static final String ALL_PARAMS = "*";
+
+	/**
+	 * Orders name=value pairs by name
+	 */
+	private static final Comparator<String> NAME_ORDER = new Comparator<String>() {
+		@Override public int compare(final String p1, final String p2) {
+			return p1.substring(0, p1.indexOf('=')).compareTo(p2.substring(0, p2.indexOf('=')));
+		}
+	};
+
+	/**
+	 * Route that does not vary on any header nor on the query string
+	 */
+	static final CacheRoute SIMPLE = new CacheRoute();
+
+	/**
+	 * The lower case names of the headers the response varies on, sorted
+	 */
+	private final String[] headers;
+
+	/**
+	 * The names of the parameters that are part of the key, sorted, or {@link #ALL_PARAMS} alone
+	 */
+	private final String[] params;
+
+	/**
+	 * The names of the parameters that are never part of the key, sorted.
+	 * A name that ends with * is a prefix.
+	 */
+	private final String[] ignoredParams;
+
+	/**
+	 * Constructor of a route that ignores the query string
+	 *
+	 * @param headers The names of the headers the response varies on
+	 */
+	public CacheRoute(final String... headers) {
+		this(headers, new String[0], new String[0]);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param headers The names of the headers the response varies on
+	 * @param params The names of the query parameters the response varies on, {@link #ALL_PARAMS} for all of them
+	 * @param ignoredParams The names of the query parameters that never are part of the key (a name ending with * is a prefix)
+	 */
+	public CacheRoute(final String[] headers, final String[] params, final String[] ignoredParams) {
+		final TreeSet<String> names = new TreeSet<>();
+		for (final String header : headers) {
+			names.add(header.toLowerCase(Locale.ENGLISH));
+		}
+		this.headers = names.toArray(new String[names.size()]);
+
+		if (Arrays.asList(params).contains(ALL_PARAMS)) {
+			this.params = new String[] { ALL_PARAMS };
+		}
+		else {
+			this.params = new TreeSet<>(Arrays.asList(params)).toArray(new String[0]);
+		}
+		this.ignoredParams = new TreeSet<>(Arrays.asList(ignoredParams)).toArray(new String[0]);
+	}
+
+	/**
+	 * @return The lower case names of the headers the response varies on
+	 */
+	public String[] getHeaders() {
+		return this.headers.clone();
+	}
+
+	/**
+	 * @return The names of the query parameters the response varies on
+	 */
+	public String[] getParams() {
+		return this.params.clone();
+	}
+
+	/**
+	 * @return The names of the query parameters that never are part of the key
+	 */
+	public String[] getIgnoredParams() {
+		return this.ignoredParams.clone();
+	}
+
+	/**
+	 * @param key The key of an entry
+	 * @return The URI of the entry
+	 */
+	static String uriOf(final String key) {
+		final int end = key.indexOf(SEPARATOR);
+		return end < 0 ? key : key.substring(0, end);
+	}
+
+	/**
+	 * Computes the key of the entry that corresponds to this request
+	 *
+	 * @param uri The URI of the request
+	 * @param req The request
+	 * @return The key
+	 */
+	String key(final String uri, final HttpServletRequest req) {
+		final String query = this.params.length == 0 ? null : canonicalQuery(req.getQueryString());
+		if (this.headers.length == 0 && query == null) {
+			return uri;
+		}
+		final StringBuilder key = new StringBuilder(uri.length() + 16 * this.headers.length + (query == null ? 0 : query.length() + 2));
+		key.append(uri);
+		for (final String header : this.headers) {
+			key.append(SEPARATOR);
+			final String value = req.getHeader(header);
+			if (value == null) {
+				key.append(ABSENT);
+			}
+			else {
+				key.append(value);
+			}
+		}
+		if (query != null) {
+			key.append(SEPARATOR).append(QUERY).append(query);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Keeps only the parameters of the query string that are part of the key, sorted by name.
+	 * The values of a parameter keep their original order, as it may be significant.
+	 * The query string is parsed as is (not decoded) so that the request body is never read.
+	 *
+	 * @param queryString The query string of the request
+	 * @return The canonical query string, or null if no parameter is part of the key
+	 */
+	private @CheckForNull String canonicalQuery(final @CheckForNull String queryString) {
+		if (queryString == null || queryString.isEmpty()) {
+			return null;
+		}
+		final List<String> pairs = new ArrayList<>();
+		for (final String pair : queryString.split("&")) {
+			if (pair.isEmpty()) {
+				continue ;
+			}
+			final int eq = pair.indexOf('=');
+			if (isKeyParam(eq < 0 ? pair : pair.substring(0, eq))) {
+				pairs.add(eq < 0 ? pair + "=" : pair);
+			}
+		}
+		if (pairs.isEmpty()) {
+			return null;
+		}
+		// Stable sort on the name only: values of the same parameter keep their order
+		Collections.sort(pairs, NAME_ORDER);
+		final StringBuilder query = new StringBuilder(queryString.length());
+		for (final String pair : pairs) {
+			if (query.length() > 0) {
+				query.append('&');
+			}
+			query.append(pair);
+		}
+		return query.toString();
+	}
+
+	/**
+	 * @param name The name of a query parameter
+	 * @return Whether this parameter is part of the key
+	 */
+	private boolean isKeyParam(final String name) {
+		for (final String ignored : this.ignoredParams) {
+			if (ignored.endsWith("*") ? name.startsWith(ignored.substring(0, ignored.length() - 1)) : name.equals(ignored)) {
+				return false;
+			}
+		}
+		if (this.params[0].equals(ALL_PARAMS)) {
+			return true;
+		}
+		return Arrays.binarySearch(this.params, name) >= 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * (31 * Arrays.hashCode(this.headers) + Arrays.hashCode(this.params)) + Arrays.hashCode(this.ignoredParams);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		final CacheRoute other = (CacheRoute) obj;
+		return Arrays.equals(this.headers, other.headers)
+			&& Arrays.equals(this.params, other.params)
+			&& Arrays.equals(this.ignoredParams, other.ignoredParams);
+	}
+}
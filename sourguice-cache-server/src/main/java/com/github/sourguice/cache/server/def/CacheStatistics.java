@@ -0,0 +1,254 @@
+package com.github.sourguice.cache.server.def;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the {@link InMemoryCache}, either of the whole cache or of a single route.
+ *
+ * Counters are striped so that recording a hit or a miss on the request path does not contend between threads.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class CacheStatistics implements CacheStatisticsMXBean {
+
+	/**
+	 * Number of requests served by a fresh entry
+	 */
+	private final StripedCounter hits = new StripedCounter();
+
+	/**
+	 * Number of requests served by an expired entry in its grace period
+	 */
+	private final StripedCounter staleHits = new StripedCounter();
+
+	/**
+	 * Number of requests to a cached URI that had no valid entry
+	 */
+	private final StripedCounter misses = new StripedCounter();
+
+	/**
+	 * Number of evicted entries, by cause
+	 */
+	private final Map<EvictionCause, StripedCounter> evictions = new EnumMap<>(EvictionCause.class);
+
+	/**
+	 * Number of entries loaded from the remote store
+	 */
+	private final StripedCounter remoteLoads = new StripedCounter();
+
+	/**
+	 * Number of responses that were not cached because they exceeded the maximum entry size
+	 */
+	private final StripedCounter oversized = new StripedCounter();
+
+	/**
+	 * Number of bytes held by the entries
+	 */
+	private final StripedCounter bytes = new StripedCounter();
+
+	/**
+	 * Number of saved entries
+	 */
+	private final StripedCounter saves = new StripedCounter();
+
+	/**
+	 * Cumulated duration of all saves, in nanoseconds
+	 */
+	private final StripedCounter saveNanos = new StripedCounter();
+
+	/**
+	 * Longest duration of a save, in nanoseconds
+	 */
+	private final AtomicLong maxSaveNanos = new AtomicLong();
+
+	/**
+	 * Constructor
+	 */
+	CacheStatistics() {
+		for (final EvictionCause cause : EvictionCause.values()) {
+			this.evictions.put(cause, new StripedCounter());
+		}
+	}
+
+	/**
+	 * Records a request served by a fresh entry
+	 */
+	void hit() {
+		this.hits.increment();
+	}
+
+	/**
+	 * Records a request served by an expired entry in its grace period
+	 */
+	void staleHit() {
+		this.staleHits.increment();
+	}
+
+	/**
+	 * Records a request to a cached URI that had no valid entry
+	 */
+	void miss() {
+		this.misses.increment();
+	}
+
+	/**
+	 * Records a response that was not cached because it exceeded the maximum entry size
+	 */
+	void oversized() {
+		this.oversized.increment();
+	}
+
+	/**
+	 * Records a saved entry
+	 *
+	 * @param size Size of the entry in bytes
+	 * @param nanos Duration of the save in nanoseconds
+	 */
+	void save(final long size, final long nanos) {
+		this.saves.increment();
+		this.bytes.add(size);
+		this.saveNanos.add(nanos);
+		long max = this.maxSaveNanos.get();
+		while (nanos > max && !this.maxSaveNanos.compareAndSet(max, nanos)) {
+			max = this.maxSaveNanos.get();
+		}
+	}
+
+	/**
+	 * Records an entry loaded from the remote store
+	 *
+	 * @param size Size of the entry in bytes
+	 */
+	void remoteLoad(final long size) {
+		this.remoteLoads.increment();
+		this.bytes.add(size);
+	}
+
+	/**
+	 * Records an entry that left the cache
+	 *
+	 * @param size Size of the entry in bytes
+	 * @param cause Why the entry left the cache
+	 */
+	void evict(final long size, final EvictionCause cause) {
+		this.evictions.get(cause).increment();
+		this.bytes.add(-size);
+	}
+
+	/**
+	 * @param cause The eviction cause
+	 * @return Number of entries that left the cache for this cause
+	 */
+	public long getEvictionCount(final EvictionCause cause) {
+		return this.evictions.get(cause).sum();
+	}
+
+	@Override
+	public long getHitCount() {
+		return this.hits.sum();
+	}
+
+	@Override
+	public long getStaleHitCount() {
+		return this.staleHits.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return this.misses.sum();
+	}
+
+	@Override
+	public double getHitRatio() {
+		final long served = this.hits.sum() + this.staleHits.sum();
+		final long total = served + this.misses.sum();
+		if (total == 0) {
+			return 0;
+		}
+		return (double) served / total;
+	}
+
+	@Override
+	public long getRemoteLoadCount() {
+		return this.remoteLoads.sum();
+	}
+
+	@Override
+	public long getSizeEvictionCount() {
+		return getEvictionCount(EvictionCause.SIZE);
+	}
+
+	@Override
+	public long getReplacedEvictionCount() {
+		return getEvictionCount(EvictionCause.REPLACED);
+	}
+
+	@Override
+	public long getRemovedEvictionCount() {
+		return getEvictionCount(EvictionCause.REMOVED);
+	}
+
+	@Override
+	public long getInvalidatedEvictionCount() {
+		return getEvictionCount(EvictionCause.INVALIDATED);
+	}
+
+	@Override
+	public long getOversizedCount() {
+		return this.oversized.sum();
+	}
+
+	@Override
+	public long getBytes() {
+		return this.bytes.sum();
+	}
+
+	@Override
+	public long getSaveCount() {
+		return this.saves.sum();
+	}
+
+	@Override
+	public double getAverageSaveLatency() {
+		final long count = this.saves.sum();
+		if (count == 0) {
+			return 0;
+		}
+		return (double) this.saveNanos.sum() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	@Override
+	public double getMaxSaveLatency() {
+		return (double) this.maxSaveNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Writes these statistics as a JSON object
+	 *
+	 * @param out Where to write the JSON object
+	 */
+	void toJson(final StringBuilder out) {
+		out	.append("{\"hits\":").append(getHitCount())
+			.append(",\"staleHits\":").append(getStaleHitCount())
+			.append(",\"misses\":").append(getMissCount())
+			.append(",\"hitRatio\":").append(getHitRatio())
+			.append(",\"remoteLoads\":").append(getRemoteLoadCount())
+			.append(",\"evictions\":{");
+		for (final EvictionCause cause : EvictionCause.values()) {
+			if (cause.ordinal() > 0) {
+				out.append(',');
+			}
+			out.append('"').append(cause.name().toLowerCase(Locale.ENGLISH)).append("\":").append(getEvictionCount(cause));
+		}
+		out	.append("},\"oversized\":").append(getOversizedCount())
+			.append(",\"bytes\":").append(getBytes())
+			.append(",\"saves\":").append(getSaveCount())
+			.append(",\"averageSaveLatency\":").append(getAverageSaveLatency())
+			.append(",\"maxSaveLatency\":").append(getMaxSaveLatency())
+			.append('}');
+	}
+}
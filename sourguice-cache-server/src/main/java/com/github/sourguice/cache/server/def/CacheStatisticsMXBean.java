@@ -0,0 +1,79 @@
+package com.github.sourguice.cache.server.def;
+
+/**
+ * Management interface of the {@link CacheStatistics}
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public interface CacheStatisticsMXBean {
+
+	/**
+	 * @return Number of requests served by a fresh entry
+	 */
+	long getHitCount();
+
+	/**
+	 * @return Number of requests served by an expired entry in its grace period
+	 */
+	long getStaleHitCount();
+
+	/**
+	 * @return Number of requests to a cached URI that had no valid entry
+	 */
+	long getMissCount();
+
+	/**
+	 * @return Ratio of the requests to a cached URI that were served from the cache (stale hits included)
+	 */
+	double getHitRatio();
+
+	/**
+	 * @return Number of entries that were missing locally and were loaded from the remote store
+	 */
+	long getRemoteLoadCount();
+
+	/**
+	 * @return Number of entries evicted because the cache was full
+	 */
+	long getSizeEvictionCount();
+
+	/**
+	 * @return Number of entries replaced by a new entry with the same key
+	 */
+	long getReplacedEvictionCount();
+
+	/**
+	 * @return Number of entries removed by URI
+	 */
+	long getRemovedEvictionCount();
+
+	/**
+	 * @return Number of entries invalidated by tag or by prefix
+	 */
+	long getInvalidatedEvictionCount();
+
+	/**
+	 * @return Number of responses that were not cached because they exceeded the maximum entry size
+	 */
+	long getOversizedCount();
+
+	/**
+	 * @return Number of bytes held by the entries
+	 */
+	long getBytes();
+
+	/**
+	 * @return Number of saved entries
+	 */
+	long getSaveCount();
+
+	/**
+	 * @return Average duration of an entry save, in milliseconds
+	 */
+	double getAverageSaveLatency();
+
+	/**
+	 * @return Longest duration of an entry save, in milliseconds
+	 */
+	double getMaxSaveLatency();
+}
@@ -0,0 +1,171 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.sourguice.cache.server.def.InMemoryCache.CacheEntry;
+
+/**
+ * A fragment of a page (a part of a view) that is cached in the {@link InMemoryCache}, while the rest of the page is not.
+ *
+ * This allows to cache the stable parts of a page that also has dynamic parts (like a per-user header):
+ * the view renders its dynamic parts on each request and delegates the rendering of its stable parts to cached fragments.
+ * A fragment is identified by its name and keyed by explicit parameters (the values its content depends on):
+ * <pre>
+ * new CachedFragment("menu", category).setExpiration(60).render(out, new CachedFragment.Renderer() {
+ *     public void render(Writer out) throws IOException { ... }
+ * });
+ * </pre>
+ *
+ * Fragments share the entries, the bound and the statistics of the {@link InMemoryCache}:
+ * their key is their name prefixed by {@value #PREFIX}, followed by their parameters.
+ * Therefore, all variants of a fragment can be removed with {@link #invalidate(String)} and tagged fragments
+ * are invalidated by {@link InMemoryCache#invalidateTag(String)}.
+ * Fragments are local to the node: they are not written to the cache store.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class CachedFragment {
+
+	/**
+	 * Prefix of the keys of fragments, which cannot be confused with the URIs of requests
+	 */
+	public static final String PREFIX = "#";
+
+	/**
+	 * Renders the content of a fragment
+	 */
+	public static interface Renderer {
+		/**
+		 * @param out Where to write the content of the fragment
+		 * @throws IOException If an output exception occurred
+		 */
+		public void render(Writer out) throws IOException;
+	}
+
+	/**
+	 * The statistics name of the fragment
+	 */
+	private final String name;
+
+	/**
+	 * The key of this variant of the fragment
+	 */
+	private final String key;
+
+	/**
+	 * Duration, in seconds, during which the fragment is cached
+	 */
+	private int seconds = 60;
+
+	/**
+	 * The tags of the fragment
+	 */
+	private final Set<String> tags = new LinkedHashSet<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param name The name of the fragment
+	 * @param params The values the content of the fragment depends on
+	 */
+	public CachedFragment(final String name, final Object... params) {
+		this.name = PREFIX + name;
+		final StringBuilder builder = new StringBuilder(this.name);
+		for (final Object param : params) {
+			builder.append(CacheRoute.SEPARATOR).append(param);
+		}
+		this.key = builder.toString();
+	}
+
+	/**
+	 * @param expiration Duration, in seconds, during which the fragment is cached
+	 * @return itself to permit command chain
+	 */
+	public CachedFragment setExpiration(final int expiration) {
+		this.seconds = expiration;
+		return this;
+	}
+
+	/**
+	 * @param fragmentTags Tags to add to the fragment, so that it can be invalidated with {@link InMemoryCache#invalidateTag(String)}
+	 * @return itself to permit command chain
+	 */
+	public CachedFragment addTags(final String... fragmentTags) {
+		Collections.addAll(this.tags, fragmentTags);
+		return this;
+	}
+
+	/**
+	 * Writes the cached content of the fragment, or renders it (and caches it) if it is not cached
+	 *
+	 * @param out Where to write the content of the fragment
+	 * @param renderer Renders the content of the fragment if it is not cached
+	 * @return Whether the content was served from the cache
+	 * @throws IOException If an output exception occurred
+	 */
+	public boolean render(final Writer out, final Renderer renderer) throws IOException {
+		final Map<String, CacheEntry> cache = InMemoryCache.lruCache;
+		if (cache == null) {
+			renderer.render(out);
+			return false;
+		}
+
+		final CacheEntry cached = cache.get(this.key);
+		final char[][] charData = cached != null ? cached.charData : null;
+		if (cached != null && charData != null && cached.expires.getTime() > System.currentTimeMillis()) {
+			InMemoryCacheStatistics.hit(this.name);
+			++cached.hits;
+			for (final char[] segment : charData) {
+				out.write(segment);
+			}
+			return true;
+		}
+
+		InMemoryCacheStatistics.miss(this.name);
+		final long start = System.nanoTime();
+		final CaptureWriter capture = new CaptureWriter(InMemoryCache.maxEntrySize);
+		renderer.render(new Writer() {
+			@Override public void write(final char[] cbuf, final int off, final int len) throws IOException {
+				out.write(cbuf, off, len);
+				capture.write(cbuf, off, len);
+			}
+			@Override public void flush() throws IOException {
+				out.flush();
+			}
+			@Override public void close() {
+				// The fragment's writer is not closed by the fragment
+			}
+		});
+		final char[][] captured = capture.toSegments();
+		if (captured == null) {
+			InMemoryCacheStatistics.oversized(this.name);
+			return false;
+		}
+
+		final CacheEntry entry = new CacheEntry();
+		entry.expires = new Date(System.currentTimeMillis() + this.seconds * 1000L);
+		entry.staleUntil = entry.expires;
+		entry.tags = this.tags.toArray(new String[this.tags.size()]);
+		entry.requestURI = this.name;
+		entry.charData = captured;
+		entry.computeValidators();
+		InMemoryCache.putEntry(cache, this.key, entry);
+		InMemoryCacheStatistics.save(this.name, entry.size(), System.nanoTime() - start);
+		return false;
+	}
+
+	/**
+	 * Removes all variants of a fragment from the cache
+	 *
+	 * @param name The name of the fragment
+	 */
+	public static void invalidate(final String name) {
+		InMemoryCache.remove(PREFIX + name);
+	}
+}
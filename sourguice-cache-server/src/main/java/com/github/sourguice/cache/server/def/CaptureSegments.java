@@ -0,0 +1,204 @@
+package com.github.sourguice.cache.server.def;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Segmented buffer shared by the {@link CaptureStream} (byte segments) and the {@link CaptureWriter} (char segments).
+ *
+ * Data is stored in a list of segments whose size grows geometrically,
+ * so capturing never copies what has already been captured.
+ * Once the captured data exceeds the maximum size, capture stops, the segments are released
+ * and the buffer is marked as overflowed: the response cannot be cached.
+ *
+ * @param <A> The array type of a segment (byte[] or char[])
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+abstract class CaptureSegments<A> {
+
+	/**
+	 * Size of the first segment
+	 */
+	private static final int FIRST_SEGMENT = 1024;
+
+	/**
+	 * Maximum size of a segment
+	 */
+	private static final int MAX_SEGMENT = 64 * 1024;
+
+	/**
+	 * Maximum number of elements that can be captured
+	 */
+	private final long max;
+
+	/**
+	 * The full segments, null once overflowed
+	 */
+	private @CheckForNull List<A> segments = new ArrayList<>();
+
+	/**
+	 * The segment being filled, null until the first element is captured
+	 */
+	private @CheckForNull A current = null;
+
+	/**
+	 * Length of the segment being filled
+	 */
+	private int capacity = 0;
+
+	/**
+	 * Number of elements in the segment being filled
+	 */
+	private int position = 0;
+
+	/**
+	 * Total number of captured elements
+	 */
+	private long count = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param max Maximum number of elements that can be captured
+	 */
+	CaptureSegments(final long max) {
+		this.max = max;
+	}
+
+	/**
+	 * @param size The size of the segment
+	 * @return A new segment
+	 */
+	abstract A newSegment(int size);
+
+	/**
+	 * @param size The number of segments
+	 * @return A new array of segments
+	 */
+	abstract A[] newSegments(int size);
+
+	/**
+	 * Sets an element of a segment
+	 *
+	 * @param segment The segment
+	 * @param index The index of the element in the segment
+	 * @param value The element
+	 */
+	abstract void set(A segment, int index, int value);
+
+	/**
+	 * Checks that the given number of elements can be captured, and stops capturing if they cannot
+	 *
+	 * @param len The number of elements to capture
+	 * @return Whether the elements can be captured
+	 */
+	private boolean reserve(final int len) {
+		if (this.segments == null) {
+			return false;
+		}
+		if (this.count + len > this.max) {
+			overflow();
+			return false;
+		}
+		this.count += len;
+		return true;
+	}
+
+	/**
+	 * Makes sure the segment being filled has room for at least one element
+	 *
+	 * @param list The full segments
+	 * @return The segment being filled
+	 */
+	private A room(final List<A> list) {
+		A segment = this.current;
+		if (segment == null || this.position == this.capacity) {
+			if (segment != null) {
+				list.add(segment);
+			}
+			this.capacity = Math.min(MAX_SEGMENT, Math.max(FIRST_SEGMENT, this.capacity * 2));
+			segment = newSegment(this.capacity);
+			this.current = segment;
+			this.position = 0;
+		}
+		return segment;
+	}
+
+	/**
+	 * Captures one element
+	 *
+	 * @param value The element
+	 */
+	final void write(final int value) {
+		final List<A> list = this.segments;
+		if (list == null || !reserve(1)) {
+			return ;
+		}
+		set(room(list), this.position++, value);
+	}
+
+	/**
+	 * Captures a part of an array
+	 *
+	 * @param buf The array
+	 * @param off The offset of the first element to capture
+	 * @param len The number of elements to capture
+	 */
+	final void write(final A buf, final int off, final int len) {
+		final List<A> list = this.segments;
+		if (list == null || !reserve(len)) {
+			return ;
+		}
+		int offset = off;
+		int remaining = len;
+		while (remaining > 0) {
+			final A segment = room(list);
+			final int chunk = Math.min(remaining, this.capacity - this.position);
+			System.arraycopy(buf, offset, segment, this.position, chunk);
+			this.position += chunk;
+			offset += chunk;
+			remaining -= chunk;
+		}
+	}
+
+	/**
+	 * Stops capturing and releases the captured data
+	 */
+	private void overflow() {
+		this.segments = null;
+		this.current = null;
+		this.capacity = 0;
+		this.position = 0;
+	}
+
+	/**
+	 * @return Whether the captured data has exceeded the maximum size
+	 */
+	final boolean isOverflowed() {
+		return this.segments == null;
+	}
+
+	/**
+	 * Gives the captured segments.
+	 * Only the last segment is copied (to its exact length), the others are handed over as is.
+	 *
+	 * @return The captured segments, or null if the capture has overflowed
+	 */
+	final @CheckForNull A[] toSegments() {
+		final List<A> list = this.segments;
+		if (list == null) {
+			return null;
+		}
+		final A segment = this.current;
+		final A[] result = list.toArray(newSegments(list.size() + (this.position > 0 ? 1 : 0)));
+		if (segment != null && this.position > 0) {
+			final A last = newSegment(this.position);
+			System.arraycopy(segment, 0, last, 0, this.position);
+			result[list.size()] = last;
+		}
+		return result;
+	}
+}
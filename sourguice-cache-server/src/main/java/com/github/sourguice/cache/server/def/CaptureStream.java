@@ -0,0 +1,80 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.OutputStream;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Stream that captures a response's bytes for the {@link InMemoryCache}.
+ *
+ * Bytes are stored in {@link CaptureSegments}, so capturing never copies what has already been captured
+ * (unlike a {@link java.io.ByteArrayOutputStream}).
+ * Once the captured data exceeds the maximum size, capture stops, the segments are released
+ * and the stream is marked as overflowed: the response cannot be cached.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class CaptureStream extends OutputStream {
+
+	/**
+	 * The captured bytes
+	 */
+	private final CaptureSegments<byte[]> segments;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxBytes Maximum size, in bytes, of the captured data
+	 */
+	CaptureStream(final long maxBytes) {
+		super();
+		this.segments = new CaptureSegments<byte[]>(maxBytes) {
+			@Override byte[] newSegment(final int size) {
+				return new byte[size];
+			}
+			@Override byte[][] newSegments(final int size) {
+				return new byte[size][];
+			}
+			@Override void set(final byte[] segment, final int index, final int value) {
+				segment[index] = (byte) value;
+			}
+		};
+	}
+
+	@Override
+	public void write(final int byt) {
+		this.segments.write(byt);
+	}
+
+	@Override
+	public void write(final byte[] buf, final int off, final int len) {
+		this.segments.write(buf, off, len);
+	}
+
+	/**
+	 * @return Whether the captured data has exceeded the maximum size
+	 */
+	boolean isOverflowed() {
+		return this.segments.isOverflowed();
+	}
+
+	/**
+	 * Gives the captured segments.
+	 * Only the last segment is copied (to its exact length), the others are handed over as is.
+	 *
+	 * @return The captured segments, or null if the capture has overflowed
+	 */
+	@CheckForNull byte[][] toSegments() {
+		return this.segments.toSegments();
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to do
+	}
+
+	@Override
+	public void close() {
+		// Nothing to do
+	}
+}
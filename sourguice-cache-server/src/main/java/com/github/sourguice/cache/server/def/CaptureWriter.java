@@ -0,0 +1,80 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.Writer;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Writer that captures a response's characters for the {@link InMemoryCache}.
+ *
+ * Characters are stored in {@link CaptureSegments}, so capturing never copies what has already been captured
+ * (unlike a {@link java.io.CharArrayWriter}).
+ * Once the captured data exceeds the maximum size, capture stops, the segments are released
+ * and the writer is marked as overflowed: the response cannot be cached.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class CaptureWriter extends Writer {
+
+	/**
+	 * The captured chars
+	 */
+	private final CaptureSegments<char[]> segments;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxBytes Maximum size, in bytes, of the captured data
+	 */
+	CaptureWriter(final long maxBytes) {
+		super();
+		this.segments = new CaptureSegments<char[]>(maxBytes / 2) {
+			@Override char[] newSegment(final int size) {
+				return new char[size];
+			}
+			@Override char[][] newSegments(final int size) {
+				return new char[size][];
+			}
+			@Override void set(final char[] segment, final int index, final int value) {
+				segment[index] = (char) value;
+			}
+		};
+	}
+
+	@Override
+	public void write(final int chr) {
+		this.segments.write(chr);
+	}
+
+	@Override
+	public void write(final char[] cbuf, final int off, final int len) {
+		this.segments.write(cbuf, off, len);
+	}
+
+	/**
+	 * @return Whether the captured data has exceeded the maximum size
+	 */
+	boolean isOverflowed() {
+		return this.segments.isOverflowed();
+	}
+
+	/**
+	 * Gives the captured segments.
+	 * Only the last segment is copied (to its exact length), the others are handed over as is.
+	 *
+	 * @return The captured segments, or null if the capture has overflowed
+	 */
+	@CheckForNull char[][] toSegments() {
+		return this.segments.toSegments();
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to do
+	}
+
+	@Override
+	public void close() {
+		// Nothing to do
+	}
+}
@@ -0,0 +1,285 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.cache.server.def.InMemoryCache.CacheEntry;
+
+/**
+ * Encodes {@link CacheEntry} and {@link CacheRoute} instances to bytes so they can be shared through a
+ * {@link com.github.sourguice.cache.server.store.CacheStore}, and decodes them back.
+ *
+ * Every record starts with a version byte: a record written by another version of the codec is rejected,
+ * which the cache handles as a miss.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class EntryCodec {
+
+	/**
+	 * Version of the entry records
+	 */
+	private static final byte ENTRY_VERSION = 1;
+
+	/**
+	 * Version of the route records
+	 */
+	private static final byte ROUTE_VERSION = 1;
+
+	/**
+	 * Kinds of entry data
+	 */
+	private static final byte NO_DATA = 0, CHAR_DATA = 1, BYTE_DATA = 2, GZIP_DATA = 3;
+
+	/**
+	 * The charset of the strings
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * This is a utility class
+	 */
+	private EntryCodec() {}
+
+	/**
+	 * @param entry The entry to encode
+	 * @return The entry record
+	 * @throws IOException If the entry could not be encoded
+	 */
+	static byte[] encode(final CacheEntry entry) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(entry.size() + 512, Integer.MAX_VALUE));
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ENTRY_VERSION);
+		out.writeLong(entry.expires.getTime());
+		out.writeLong(entry.staleUntil.getTime());
+		out.writeLong(entry.lastModified);
+		writeString(out, entry.etag);
+		writeString(out, entry.requestURI);
+		writeNullableString(out, entry.queryString);
+		writeNullableString(out, entry.contentType);
+		writeStrings(out, entry.tags);
+		out.writeInt(entry.variedHeaders.size());
+		for (final Map.Entry<String, String> header : entry.variedHeaders.entrySet()) {
+			writeString(out, header.getKey());
+			writeString(out, header.getValue());
+		}
+		if (entry.charData != null) {
+			out.writeByte(CHAR_DATA);
+			out.writeInt(entry.charData.length);
+			for (final char[] segment : entry.charData) {
+				out.writeInt(segment.length);
+				final byte[] buf = new byte[segment.length * 2];
+				for (int i = 0; i < segment.length; ++i) {
+					buf[2 * i] = (byte) (segment[i] >>> 8);
+					buf[2 * i + 1] = (byte) segment[i];
+				}
+				out.write(buf);
+			}
+		}
+		else if (entry.byteData != null) {
+			out.writeByte(BYTE_DATA);
+			writeSegments(out, entry.byteData);
+		}
+		else if (entry.gzipData != null) {
+			out.writeByte(GZIP_DATA);
+			writeSegments(out, entry.gzipData);
+		}
+		else {
+			out.writeByte(NO_DATA);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param record The entry record
+	 * @return The decoded entry
+	 * @throws IOException If the record is malformed or has been written by another version of the codec
+	 */
+	static CacheEntry decodeEntry(final byte[] record) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		if (in.readByte() != ENTRY_VERSION) {
+			throw new IOException("Unknown cache entry version");
+		}
+		final CacheEntry entry = new CacheEntry();
+		entry.expires = new Date(in.readLong());
+		entry.staleUntil = new Date(in.readLong());
+		entry.lastModified = in.readLong();
+		entry.etag = readString(in);
+		entry.requestURI = readString(in);
+		entry.queryString = readNullableString(in);
+		entry.contentType = readNullableString(in);
+		entry.tags = readStrings(in);
+		final int headerCount = in.readInt();
+		if (headerCount > 0) {
+			entry.variedHeaders = new LinkedHashMap<>();
+			for (int i = 0; i < headerCount; ++i) {
+				entry.variedHeaders.put(readString(in), readString(in));
+			}
+		}
+		switch (in.readByte()) {
+			case CHAR_DATA:
+				final char[][] charData = new char[in.readInt()][];
+				for (int s = 0; s < charData.length; ++s) {
+					final byte[] buf = new byte[in.readInt() * 2];
+					in.readFully(buf);
+					final char[] segment = new char[buf.length / 2];
+					for (int i = 0; i < segment.length; ++i) {
+						segment[i] = (char) (((buf[2 * i] & 0xff) << 8) | (buf[2 * i + 1] & 0xff));
+					}
+					charData[s] = segment;
+				}
+				entry.charData = charData;
+				break ;
+			case BYTE_DATA:
+				entry.byteData = readSegments(in);
+				break ;
+			case GZIP_DATA:
+				entry.gzipData = readSegments(in);
+				break ;
+			case NO_DATA:
+				break ;
+			default:
+				throw new IOException("Unknown cache entry data kind");
+		}
+		return entry;
+	}
+
+	/**
+	 * @param route The route to encode
+	 * @return The route record
+	 * @throws IOException If the route could not be encoded
+	 */
+	static byte[] encode(final CacheRoute route) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ROUTE_VERSION);
+		writeStrings(out, route.getHeaders());
+		writeStrings(out, route.getParams());
+		writeStrings(out, route.getIgnoredParams());
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @param record The route record
+	 * @return The decoded route
+	 * @throws IOException If the record is malformed or has been written by another version of the codec
+	 */
+	static CacheRoute decodeRoute(final byte[] record) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+		if (in.readByte() != ROUTE_VERSION) {
+			throw new IOException("Unknown cache route version");
+		}
+		final String[] headers = readStrings(in);
+		final String[] params = readStrings(in);
+		final String[] ignoredParams = readStrings(in);
+		return new CacheRoute(headers, params, ignoredParams);
+	}
+
+	/**
+	 * @param out Where to write
+	 * @param segments The segments to write
+	 * @throws IOException If an output exception occurred
+	 */
+	private static void writeSegments(final DataOutputStream out, final byte[][] segments) throws IOException {
+		out.writeInt(segments.length);
+		for (final byte[] segment : segments) {
+			out.writeInt(segment.length);
+			out.write(segment);
+		}
+	}
+
+	/**
+	 * @param in Where to read
+	 * @return The read segments
+	 * @throws IOException If an input exception occurred
+	 */
+	private static byte[][] readSegments(final DataInputStream in) throws IOException {
+		final byte[][] segments = new byte[in.readInt()][];
+		for (int s = 0; s < segments.length; ++s) {
+			segments[s] = new byte[in.readInt()];
+			in.readFully(segments[s]);
+		}
+		return segments;
+	}
+
+	/**
+	 * Writes a string of any length (writeUTF is limited to 64K bytes)
+	 *
+	 * @param out Where to write
+	 * @param str The string to write
+	 * @throws IOException If an output exception occurred
+	 */
+	private static void writeString(final DataOutputStream out, final String str) throws IOException {
+		final byte[] buf = str.getBytes(UTF8);
+		out.writeInt(buf.length);
+		out.write(buf);
+	}
+
+	/**
+	 * @param in Where to read
+	 * @return The read string
+	 * @throws IOException If an input exception occurred
+	 */
+	private static String readString(final DataInputStream in) throws IOException {
+		final byte[] buf = new byte[in.readInt()];
+		in.readFully(buf);
+		return new String(buf, UTF8);
+	}
+
+	/**
+	 * @param out Where to write
+	 * @param str The string to write, may be null
+	 * @throws IOException If an output exception occurred
+	 */
+	private static void writeNullableString(final DataOutputStream out, final @CheckForNull String str) throws IOException {
+		out.writeBoolean(str != null);
+		if (str != null) {
+			writeString(out, str);
+		}
+	}
+
+	/**
+	 * @param in Where to read
+	 * @return The read string, may be null
+	 * @throws IOException If an input exception occurred
+	 */
+	private static @CheckForNull String readNullableString(final DataInputStream in) throws IOException {
+		return in.readBoolean() ? readString(in) : null;
+	}
+
+	/**
+	 * @param out Where to write
+	 * @param strs The strings to write
+	 * @throws IOException If an output exception occurred
+	 */
+	private static void writeStrings(final DataOutputStream out, final String[] strs) throws IOException {
+		out.writeInt(strs.length);
+		for (final String str : strs) {
+			writeString(out, str);
+		}
+	}
+
+	/**
+	 * @param in Where to read
+	 * @return The read strings
+	 * @throws IOException If an input exception occurred
+	 */
+	private static String[] readStrings(final DataInputStream in) throws IOException {
+		final String[] strs = new String[in.readInt()];
+		for (int i = 0; i < strs.length; ++i) {
+			strs[i] = readString(in);
+		}
+		return strs;
+	}
+}
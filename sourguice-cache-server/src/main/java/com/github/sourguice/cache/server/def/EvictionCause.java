@@ -0,0 +1,29 @@
+package com.github.sourguice.cache.server.def;
+
+/**
+ * The reasons why an entry leaves the {@link InMemoryCache}
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public enum EvictionCause {
+
+	/**
+	 * The entry was the least recently used when the cache was full
+	 */
+	SIZE,
+
+	/**
+	 * The entry was replaced by a new entry with the same key
+	 */
+	REPLACED,
+
+	/**
+	 * The entry was removed with {@link InMemoryCache#remove(String)}
+	 */
+	REMOVED,
+
+	/**
+	 * The entry was invalidated with {@link InMemoryCache#invalidateTag(String)} or {@link InMemoryCache#invalidatePrefix(String)}
+	 */
+	INVALIDATED
+}
@@ -0,0 +1,136 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.SequenceInputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Compresses and decompresses {@link InMemoryCache} entry data, which is stored in segments
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class GzipSegments {
+
+	/**
+	 * Size of the buffers used to compress and decompress
+	 */
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	/**
+	 * This is a static class
+	 */
+	private GzipSegments() {}
+
+	/**
+	 * @param chars The char segments to compress
+	 * @param charset The charset in which to encode the chars
+	 * @return The compressed segments
+	 * @throws IOException If the charset is not supported
+	 */
+	static byte[][] compress(final char[][] chars, final String charset) throws IOException {
+		final CaptureStream out = new CaptureStream(Long.MAX_VALUE);
+		try (final Writer writer = new OutputStreamWriter(new GZIPOutputStream(out, BUFFER_SIZE), charset)) {
+			for (final char[] segment : chars) {
+				writer.write(segment);
+			}
+		}
+		return segmentsOf(out);
+	}
+
+	/**
+	 * @param bytes The byte segments to compress
+	 * @return The compressed segments
+	 * @throws IOException Never, as data is compressed in memory
+	 */
+	static byte[][] compress(final byte[][] bytes) throws IOException {
+		final CaptureStream out = new CaptureStream(Long.MAX_VALUE);
+		try (final OutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+			for (final byte[] segment : bytes) {
+				gzip.write(segment);
+			}
+		}
+		return segmentsOf(out);
+	}
+
+	/**
+	 * @param out A stream that cannot overflow
+	 * @return The stream's segments
+	 */
+	private static byte[][] segmentsOf(final CaptureStream out) {
+		final byte[][] segments = out.toSegments();
+		if (segments == null) {
+			throw new IllegalStateException("An unlimited capture cannot overflow");
+		}
+		return segments;
+	}
+
+	/**
+	 * Decompresses segments into a stream
+	 *
+	 * @param gzip The compressed segments
+	 * @param out Where to write the decompressed data
+	 * @throws IOException If an input or output exception occurred
+	 */
+	static void decompress(final byte[][] gzip, final OutputStream out) throws IOException {
+		final List<InputStream> streams = new ArrayList<>(gzip.length);
+		for (final byte[] segment : gzip) {
+			streams.add(new ByteArrayInputStream(segment));
+		}
+		try (final InputStream in = new GZIPInputStream(new SequenceInputStream(Collections.enumeration(streams)), BUFFER_SIZE)) {
+			final byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * @param acceptEncoding The Accept-Encoding header of a request
+	 * @return Whether this header accepts gzip
+	 */
+	static boolean accepts(final @CheckForNull String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (final String coding : acceptEncoding.split(",")) {
+			final int semicolon = coding.indexOf(';');
+			final String name = (semicolon < 0 ? coding : coding.substring(0, semicolon)).trim().toLowerCase(Locale.ENGLISH);
+			if (name.equals("gzip") || name.equals("x-gzip") || name.equals("*")) {
+				return semicolon < 0 || !isZeroQuality(coding.substring(semicolon + 1));
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param params The parameters of a coding in an Accept-Encoding header
+	 * @return Whether these parameters give a quality of 0 (not acceptable)
+	 */
+	private static boolean isZeroQuality(final String params) {
+		for (final String param : params.split(";")) {
+			final String trimmed = param.trim();
+			if (trimmed.startsWith("q=")) {
+				try {
+					return Double.parseDouble(trimmed.substring(2)) == 0;
+				}
+				catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+}
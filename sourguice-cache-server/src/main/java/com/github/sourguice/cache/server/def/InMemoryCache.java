@@ -1,18 +1,26 @@
 package com.github.sourguice.cache.server.def;
 
-import java.io.ByteArrayOutputStream;
-import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.CheckForNull;
 import javax.inject.Inject;
@@ -20,6 +28,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.github.sourguice.cache.server.Cache;
+import com.github.sourguice.cache.server.bus.InvalidationBus;
+import com.github.sourguice.cache.server.bus.InvalidationListener;
+import com.github.sourguice.cache.server.store.CacheStore;
 import com.google.inject.matcher.Matchers;
 import com.google.inject.servlet.RequestScoped;
 import com.google.inject.servlet.ServletModule;
@@ -31,12 +42,36 @@ import com.google.inject.servlet.ServletModule;
  * You should use caches that are based on real caching systems like Guava Cache, EHCache, Memcache, Cache2K, JCS, etc.
  *
  * This cache is based on a synchronized LRU {@link LinkedHashMap}. You must first call {@link #initialize(int)}.
+ * Entries are keyed by their URI and the values of the headers their {@link CacheRoute} varies on,
+ * so a request is matched to its entry with a single lookup, whatever the number of variants of its URI.
+ * Entries can be tagged, and all entries with a given tag or whose key starts with a given prefix can be invalidated
+ * in a time that only depends on the number of invalidated entries.
+ * Hits, misses, evictions, stored bytes and save latency are recorded for the whole cache and for each route
+ * (see {@link #getStatistics()}, {@link #registerMBeans()} and {@link #statisticsModule(String)}).
+ * Parts of pages can be cached with {@link CachedFragment}, in the same entries.
+ * The requests of the most hit entries can be dumped with {@link #dumpMostHit(Writer, int)} to warm the next process up.
+ *
+ * A remote {@link CacheStore} can be set with {@link #setStore(CacheStore)}: this cache then becomes a near cache of the store.
+ * Saved entries are written to the store, and a request that misses this cache looks the store up before being executed,
+ * so that a response computed by one node of a cluster is served by all the others.
+ * An {@link InvalidationBus} can be set with {@link #setInvalidationBus(InvalidationBus)} so that the invalidations
+ * of this cache are applied to the caches of the other nodes.
  *
  * @author Salomon BRYS <salomon.brys@gmail.com>
  */
 @RequestScoped
 public class InMemoryCache implements Cache {
 
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(InMemoryCache.class.getName());
+
+	/**
+	 * Prefix of the store keys of the route records
+	 */
+	private static final String ROUTE_PREFIX = "route:";
+
 	/**
 	 * Date used to define that the expiration date has not been set
 	 */
@@ -45,12 +80,12 @@ public class InMemoryCache implements Cache {
 	/**
 	 * The writer in which the response will be written
 	 */
-	private @CheckForNull CharArrayWriter writer = null;
+	private @CheckForNull CaptureWriter writer = null;
 
 	/**
-	 * The writer in which the response will be written
+	 * The stream in which the response will be written
 	 */
-	private @CheckForNull ByteArrayOutputStream stream = null;
+	private @CheckForNull CaptureStream stream = null;
 
 	/**
 	 * Current cache entry
@@ -63,9 +98,96 @@ public class InMemoryCache implements Cache {
 	private @CheckForNull HttpServletRequest request = null;
 
 	/**
-	 * The LRU cache
+	 * Duration, in seconds, during which the entry may be served after its expiration
+	 */
+	private int grace = 0;
+
+	/**
+	 * Whether this request's entry is stored compressed
+	 */
+	private boolean compressed = false;
+
+	/**
+	 * The route of this request, if it has been declared
+	 */
+	private @CheckForNull CacheRoute route = null;
+
+	/**
+	 * The headers added with {@link #putHeader(String)}, used when no route has been declared
+	 */
+	private final List<String> headers = new ArrayList<>();
+
+	/**
+	 * The tags of this request's entry
 	 */
-	protected static @CheckForNull Map<String, Set<CacheEntry>> lruCache;
+	private final Set<String> tags = new HashSet<>();
+
+	/**
+	 * The LRU cache, keyed by entry key (see {@link CacheRoute})
+	 */
+	protected static @CheckForNull Map<String, CacheEntry> lruCache;
+
+	/**
+	 * The routes of the cached URIs
+	 */
+	protected static @CheckForNull Map<String, CacheRoute> routes;
+
+	/**
+	 * The sorted keys of the LRU cache, so that all variants of an URI can be found without scanning the cache
+	 */
+	protected static final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+
+	/**
+	 * The keys of the entries that have a tag, by tag
+	 */
+	protected static final ConcurrentMap<String, Set<String>> tagIndex = new ConcurrentHashMap<>();
+
+	/**
+	 * Default maximum size, in bytes, of an entry
+	 */
+	public static final long DEFAULT_MAX_ENTRY_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * Maximum size, in bytes, of an entry: responses that are bigger are not cached
+	 */
+	protected static long maxEntrySize = DEFAULT_MAX_ENTRY_SIZE;
+
+	/**
+	 * Default time, in milliseconds, a request waits for a concurrent identical request to fill the cache
+	 */
+	public static final int DEFAULT_COALESCE_TIMEOUT = 3000;
+
+	/**
+	 * Time, in milliseconds, a request waits for a concurrent identical request to fill the cache.
+	 * 0 means that concurrent misses are not coalesced.
+	 */
+	protected static int coalesceTimeout = DEFAULT_COALESCE_TIMEOUT;
+
+	/**
+	 * Misses that are currently being computed, associated to the latch that is released once they are done
+	 */
+	protected static final ConcurrentMap<String, CountDownLatch> pendingMisses = new ConcurrentHashMap<>();
+
+	/**
+	 * The remote store this cache is a near cache of, if any
+	 */
+	protected static @CheckForNull CacheStore store = null;
+
+	/**
+	 * The bus through which invalidations are published to the other nodes, if any
+	 */
+	protected static @CheckForNull InvalidationBus bus = null;
+
+	/**
+	 * Applies the invalidations received from the other nodes to this cache only:
+	 * they are neither published again nor deleted from the store (which the publishing node did)
+	 */
+	private static final InvalidationListener REMOTE_INVALIDATIONS = new InvalidationListener() {
+		@Override public void remove(final String uri) { removeUri(uri, null); }
+		@Override public void invalidateTag(final String tag) { removeTag(tag, null); }
+		@Override public void invalidatePrefix(final String prefix) { removePrefix(prefix, null); }
+		@Override public void flush() { removePrefix("", null); }
+	};
 
 	/**
 	 * A cache entry
@@ -77,46 +199,115 @@ public class InMemoryCache implements Cache {
 		protected Date expires = EPOCH;
 
 		/**
-		 * Headers that are part of this cache entry
+		 * Date until which the entry may be served (and refreshed in the background) after its expiration
 		 */
-		protected final Map<String, String> headers = new HashMap<>();
+		protected Date staleUntil = EPOCH;
 
 		/**
-		 * Entry char data
+		 * Entry tags
 		 */
-		protected @CheckForNull char[] charData = null;
+		protected String[] tags = new String[0];
 
 		/**
-		 * Entry byte data
+		 * URI of the request that created the entry, so it can be replayed
 		 */
-		protected @CheckForNull byte[] byteData = null;
+		protected String requestURI = "";
 
-		@Override
-		public int hashCode() {
-			return this.headers.hashCode();
-		}
+		/**
+		 * Query string of the request that created the entry, so it can be replayed
+		 */
+		protected @CheckForNull String queryString = null;
 
-		@Override
-		public boolean equals(final Object obj) {
-			if (this == obj) {
-				return true;
-			}
-			if (obj == null) {
-				return false;
+		/**
+		 * Values of the headers the entry varies on, so it can be replayed
+		 */
+		protected Map<String, String> variedHeaders = Collections.emptyMap();
+
+		/**
+		 * Number of hits of this entry.
+		 * It is incremented without synchronization: it is approximate, but only used to rank entries.
+		 */
+		protected int hits = 0;
+
+		/**
+		 * Strong entity tag of the entry data, quoted
+		 */
+		protected String etag = "\"\"";
+
+		/**
+		 * Date at which the entry was saved, rounded to the second as HTTP dates are
+		 */
+		protected long lastModified = 0;
+
+		/**
+		 * Entry char data, in segments
+		 */
+		protected @CheckForNull char[][] charData = null;
+
+		/**
+		 * Entry byte data, in segments
+		 */
+		protected @CheckForNull byte[][] byteData = null;
+
+		/**
+		 * Entry gzip compressed data, in segments (replaces the char or byte data)
+		 */
+		protected @CheckForNull byte[][] gzipData = null;
+
+		/**
+		 * Content type of the response, needed to serve compressed data
+		 */
+		protected @CheckForNull String contentType = null;
+
+		/**
+		 * Computes the entity tag and the last modification date of the entry, once its data has been set.
+		 * The entity tag is a FNV-1a hash of the data and its size, computed without copying the data.
+		 */
+		protected void computeValidators() {
+			long hash = 0xcbf29ce484222325L;
+			if (this.charData != null) {
+				for (final char[] segment : this.charData) {
+					for (final char c : segment) {
+						hash = (hash ^ c) * 0x100000001b3L;
+					}
+				}
 			}
-			if (getClass() != obj.getClass()) {
-				return false;
+			else {
+				final byte[][] data = this.byteData != null ? this.byteData : this.gzipData;
+				if (data != null) {
+					for (final byte[] segment : data) {
+						for (final byte b : segment) {
+							hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+						}
+					}
+				}
 			}
-			final CacheEntry other = (CacheEntry) obj;
+			this.etag = "\"" + Long.toHexString(hash) + "-" + Long.toHexString(size()) + "\"";
+			this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+		}
 
-			if (!this.headers.equals(other.headers)) {
-				return false;
+		/**
+		 * @return Size of the entry data in bytes
+		 */
+		protected long size() {
+			long size = 0;
+			if (this.charData != null) {
+				for (final char[] segment : this.charData) {
+					size += segment.length * 2L;
+				}
 			}
-
-			return true;
+			else if (this.byteData != null) {
+				for (final byte[] segment : this.byteData) {
+					size += segment.length;
+				}
+			}
+			else if (this.gzipData != null) {
+				for (final byte[] segment : this.gzipData) {
+					size += segment.length;
+				}
+			}
+			return size;
 		}
-
-
 	}
 
 	/**
@@ -128,10 +319,28 @@ public class InMemoryCache implements Cache {
 	 */
 	@SuppressWarnings("serial")
 	static public ServletModule initialize(final int maxSize, final boolean registerFilter) {
-		lruCache = Collections.synchronizedMap(new LinkedHashMap<String, Set<CacheEntry>>(maxSize + 1, .75f, true) {
+		keys.clear();
+		tagIndex.clear();
+		InMemoryCacheStatistics.clear();
+		lruCache = Collections.synchronizedMap(new LinkedHashMap<String, CacheEntry>(maxSize + 1, .75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CacheEntry> eldest) {
+				if (size() > maxSize) {
+					unindex(eldest.getKey(), eldest.getValue());
+					InMemoryCacheStatistics.evict(CacheRoute.uriOf(eldest.getKey()), eldest.getValue().size(), EvictionCause.SIZE);
+					return true;
+				}
+				return false;
+			}
+		});
+		routes = Collections.synchronizedMap(new LinkedHashMap<String, CacheRoute>(maxSize + 1, .75f, true) {
 			@Override
-			protected boolean removeEldestEntry(final Map.Entry<String, Set<CacheEntry>> eldest) {
-				return size() > maxSize;
+			protected boolean removeEldestEntry(final Map.Entry<String, CacheRoute> eldest) {
+				if (size() > maxSize) {
+					InMemoryCacheStatistics.forget(eldest.getKey());
+					return true;
+				}
+				return false;
 			}
 		});
 
@@ -161,6 +370,123 @@ public class InMemoryCache implements Cache {
 		return initialize(maxSize, false);
 	}
 
+	/**
+	 * Sets the time a request that misses the cache waits for a concurrent identical request to compute and cache the response.
+	 * Requests that time out are executed normally.
+	 *
+	 * @param millis The maximum waiting time in milliseconds, 0 to disable miss coalescing
+	 */
+	public static void setCoalesceTimeout(final int millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("Coalesce timeout cannot be negative");
+		}
+		coalesceTimeout = millis;
+	}
+
+	/**
+	 * Sets the maximum size of an entry.
+	 * The capture of a response stops as soon as it exceeds this size, and the response is not cached.
+	 * Chars count as two bytes.
+	 *
+	 * @param bytes The maximum size of an entry, in bytes
+	 */
+	public static void setMaxEntrySize(final long bytes) {
+		if (bytes < 0) {
+			throw new IllegalArgumentException("Maximum entry size cannot be negative");
+		}
+		maxEntrySize = bytes;
+	}
+
+	/**
+	 * Configures the pool on which stale entries are refreshed in the background.
+	 * When the pool and its queue are full, refreshes are dropped.
+	 *
+	 * @param threads Number of threads refreshing entries
+	 * @param queueSize Number of refreshes that can wait for a thread
+	 */
+	public static void setRefreshPool(final int threads, final int queueSize) {
+		InMemoryCacheRefresher.setPool(threads, queueSize);
+	}
+
+	/**
+	 * Sets the remote store this cache is a near cache of.
+	 * When the store cannot be reached, the cache keeps working locally.
+	 * The previous store, if any, is not closed.
+	 *
+	 * @param cacheStore The remote store, or null to stop using a store
+	 */
+	public static void setStore(final @CheckForNull CacheStore cacheStore) {
+		store = cacheStore;
+	}
+
+	/**
+	 * Sets the bus through which the invalidations of this cache are published to the other nodes of a cluster.
+	 * The bus is started: the invalidations published by the other nodes are applied to this cache.
+	 * The previous bus, if any, is not closed.
+	 *
+	 * @param invalidationBus The invalidation bus, or null to stop publishing invalidations
+	 * @throws IOException If the bus could not be started
+	 */
+	public static void setInvalidationBus(final @CheckForNull InvalidationBus invalidationBus) throws IOException {
+		if (invalidationBus != null) {
+			invalidationBus.start(REMOTE_INVALIDATIONS);
+		}
+		bus = invalidationBus;
+	}
+
+	/**
+	 * @return Statistics of the background refreshes of stale entries
+	 */
+	public static RefreshStatistics getRefreshStatistics() {
+		return InMemoryCacheRefresher.statistics;
+	}
+
+	/**
+	 * @return Statistics of the whole cache
+	 */
+	public static CacheStatistics getStatistics() {
+		return InMemoryCacheStatistics.total;
+	}
+
+	/**
+	 * @param uri The URI of a route
+	 * @return Statistics of this route, or null if the route has not been cached
+	 */
+	public static @CheckForNull CacheStatistics getStatistics(final String uri) {
+		return InMemoryCacheStatistics.get(uri);
+	}
+
+	/**
+	 * Registers the statistics of the whole cache and of each route as MXBeans in the platform MBean server
+	 */
+	public static void registerMBeans() {
+		InMemoryCacheStatistics.enableJmx();
+	}
+
+	/**
+	 * Unregisters all statistics MXBeans from the platform MBean server
+	 */
+	public static void unregisterMBeans() {
+		InMemoryCacheStatistics.disableJmx();
+	}
+
+	/**
+	 * Creates the module that serves the cache statistics as JSON with the {@link InMemoryCacheStatisticsServlet}
+	 *
+	 * @param path The path on which to serve the statistics
+	 * @return The module to install
+	 */
+	public static ServletModule statisticsModule(final String path) {
+		return new ServletModule() {
+			@Override
+			protected void configureServlets() {
+				super.configureServlets();
+
+				serve(path).with(InMemoryCacheStatisticsServlet.class);
+			}
+		};
+	}
+
 	/**
 	 * Constructor
 	 *
@@ -181,7 +507,7 @@ public class InMemoryCache implements Cache {
 	@Override
 	public Writer getWriter() {
 		if (this.writer == null) {
-			this.writer = new CharArrayWriter();
+			this.writer = new CaptureWriter(maxEntrySize);
 		}
 		return this.writer;
 	}
@@ -189,7 +515,7 @@ public class InMemoryCache implements Cache {
 	@Override
 	public @CheckForNull OutputStream getStream() {
 		if (this.stream == null) {
-			this.stream = new ByteArrayOutputStream();
+			this.stream = new CaptureStream(maxEntrySize);
 		}
 		return this.stream;
 	}
@@ -210,6 +536,27 @@ public class InMemoryCache implements Cache {
 		setExpiration(calendar.getTime());
 	}
 
+	/**
+	 * Sets the grace period of this request's cache.
+	 * During this period after expiration, the expired entry is still served immediately
+	 * while the request is re-executed in the background to refresh it.
+	 *
+	 * @param seconds The grace period in seconds
+	 */
+	public void setGrace(final int seconds) {
+		this.grace = seconds;
+	}
+
+	/**
+	 * Sets whether this request's entry is stored gzip compressed.
+	 * A compressed entry is served as is to clients that accept gzip, and decompressed for the others.
+	 *
+	 * @param compressed Whether to compress the entry
+	 */
+	public void setCompressed(final boolean compressed) {
+		this.compressed = compressed;
+	}
+
 	/**
 	 * Add a header into the cache definition of thgis request.
 	 *
@@ -218,18 +565,66 @@ public class InMemoryCache implements Cache {
 	 * @param header The header to add to definition
 	 */
 	public void putHeader(final String header) {
+		checkMethod();
+		this.headers.add(header);
+	}
+
+	/**
+	 * Adds tags to this request's entry, so that it can be invalidated with {@link #invalidateTag(String)}
+	 *
+	 * @param entryTags The tags to add
+	 */
+	public void addTags(final String... entryTags) {
+		Collections.addAll(this.tags, entryTags);
+	}
+
+	/**
+	 * Declares the route of this request, which replaces the headers added with {@link #putHeader(String)}.
+	 * As a route does not depend on the request, the same route instance should be shared by all requests to the same URI.
+	 *
+	 * @param route The route of this request
+	 */
+	public void setRoute(final CacheRoute route) {
+		checkMethod();
+		this.route = route;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException If this request cannot be cached
+	 */
+	private void checkMethod() throws UnsupportedOperationException {
 		if (this.request == null) {
 			throw new UnsupportedOperationException("Cache has not been registered for this request");
 		}
 		if (this.request.getMethod().equalsIgnoreCase("POST")) {
 			throw new UnsupportedOperationException("POST requests cannot be cached");
 		}
-		this.entry.headers.put(header, this.request.getHeader(header));
+	}
+
+	/**
+	 * Finds the key of the entry that corresponds to the given request
+	 *
+	 * @param req The request
+	 * @return The key of the entry, or null if the request's URI is not cached
+	 */
+	static @CheckForNull String keyOf(final HttpServletRequest req) {
+		final Map<String, CacheRoute> cacheRoutes = routes;
+		if (cacheRoutes == null) {
+			return null;
+		}
+		final String requestURI = req.getRequestURI();
+		final CacheRoute cacheRoute = cacheRoutes.get(requestURI);
+		if (cacheRoute == null) {
+			return null;
+		}
+		return cacheRoute.key(requestURI, req);
 	}
 
 	@Override
 	public void save(final HttpServletResponse res) throws IOException {
-		if (lruCache == null) {
+		final long start = System.nanoTime();
+		final Map<String, CacheEntry> cache = lruCache;
+		if (cache == null) {
 			throw new UnsupportedOperationException("InMemoryCache is not initialized");
 		}
 		if (this.entry.expires.equals(EPOCH)) {
@@ -238,31 +633,377 @@ public class InMemoryCache implements Cache {
 		if (this.request == null) {
 			throw new UnsupportedOperationException("Cache has not been registered for this request");
 		}
+		this.entry.staleUntil = new Date(this.entry.expires.getTime() + this.grace * 1000L);
 		final String requestURI = this.request.getRequestURI();
-		Set<CacheEntry> set = lruCache.get(requestURI);
-		if (set == null) {
-			set = new HashSet<>();
-			lruCache.put(requestURI, set);
+		final CaptureWriter captureWriter = this.writer;
+		final CaptureStream captureStream = this.stream;
+		if ((captureWriter != null && captureWriter.isOverflowed()) || (captureStream != null && captureStream.isOverflowed())) {
+			// The response is too big to be cached
+			InMemoryCacheStatistics.oversized(requestURI);
+			return ;
+		}
+		// The captured segments are handed over to the entry without being copied
+		if (captureWriter != null) {
+			this.entry.charData = captureWriter.toSegments();
+		}
+		else if (captureStream != null) {
+			this.entry.byteData = captureStream.toSegments();
+		}
+		if (this.compressed) {
+			final char[][] charData = this.entry.charData;
+			final byte[][] byteData = this.entry.byteData;
+			if (charData != null) {
+				this.entry.gzipData = GzipSegments.compress(charData, res.getCharacterEncoding());
+			}
+			else if (byteData != null) {
+				this.entry.gzipData = GzipSegments.compress(byteData);
+			}
+			this.entry.charData = null;
+			this.entry.byteData = null;
+			this.entry.contentType = res.getContentType();
+		}
+		this.entry.computeValidators();
+
+		CacheRoute cacheRoute = this.route;
+		if (cacheRoute == null) {
+			cacheRoute = this.headers.isEmpty() ? CacheRoute.SIMPLE : new CacheRoute(this.headers.toArray(new String[this.headers.size()]));
 		}
-		if (this.writer != null) {
-			this.entry.charData = this.writer.toCharArray();
-			this.writer.close();
+		final String key = cacheRoute.key(requestURI, this.request);
+		final Map<String, CacheRoute> cacheRoutes = routes;
+		if (cacheRoutes != null && !cacheRoute.equals(cacheRoutes.get(requestURI))) {
+			cacheRoutes.put(requestURI, cacheRoute);
 		}
-		else if (this.stream != null) {
-			this.entry.byteData = this.stream.toByteArray();
-			this.stream.close();
+		this.entry.tags = this.tags.toArray(new String[this.tags.size()]);
+		this.entry.requestURI = requestURI;
+		this.entry.queryString = this.request.getQueryString();
+		final String[] varied = cacheRoute.getHeaders();
+		if (varied.length > 0) {
+			this.entry.variedHeaders = new LinkedHashMap<>();
+			for (final String header : varied) {
+				final String value = this.request.getHeader(header);
+				if (value != null) {
+					this.entry.variedHeaders.put(header, value);
+				}
+			}
+		}
+		putEntry(cache, key, this.entry);
+		InMemoryCacheStatistics.save(requestURI, this.entry.size(), System.nanoTime() - start);
+
+		final CacheStore cacheStore = store;
+		if (cacheStore != null) {
+			final int ttl = (int) ((this.entry.staleUntil.getTime() - System.currentTimeMillis()) / 1000) + 1;
+			if (ttl > 0) {
+				cacheStore.set(ROUTE_PREFIX + requestURI, EntryCodec.encode(cacheRoute), ttl);
+				cacheStore.set(key, EntryCodec.encode(this.entry), ttl);
+			}
 		}
-		set.add(this.entry);
 	}
 
 	/**
-	 * Removes the cache for a specific URI
+	 * Puts an entry in the cache and in the indexes
+	 *
+	 * @param cache The LRU cache
+	 * @param key The key of the entry
+	 * @param cacheEntry The entry
+	 */
+	static void putEntry(final Map<String, CacheEntry> cache, final String key, final CacheEntry cacheEntry) {
+		for (final String tag : cacheEntry.tags) {
+			Set<String> tagKeys = tagIndex.get(tag);
+			if (tagKeys == null) {
+				final Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				tagKeys = tagIndex.putIfAbsent(tag, created);
+				if (tagKeys == null) {
+					tagKeys = created;
+				}
+			}
+			tagKeys.add(key);
+		}
+		keys.add(key);
+		final CacheEntry previous = cache.put(key, cacheEntry);
+		if (previous != null) {
+			final List<String> entryTags = Arrays.asList(cacheEntry.tags);
+			for (final String tag : previous.tags) {
+				if (!entryTags.contains(tag)) {
+					unindexTag(tag, key);
+				}
+			}
+			InMemoryCacheStatistics.evict(CacheRoute.uriOf(key), previous.size(), EvictionCause.REPLACED);
+		}
+	}
+
+	/**
+	 * Looks the remote store up for the entry of a request that missed this cache.
+	 * If the URI's route is not known locally, it is loaded from the store along with the entry of the URI itself,
+	 * which is the entry's key for routes that do not vary.
+	 * A valid entry that is found is put in this cache.
+	 *
+	 * @param req The request
+	 * @param knownKey The key of the request's entry, or null if the URI's route is not known locally
+	 * @return The key of the request's entry, or null if the URI is not cached, neither locally nor remotely
+	 */
+	static @CheckForNull String loadRemote(final HttpServletRequest req, final @CheckForNull String knownKey) {
+		final CacheStore cacheStore = store;
+		final Map<String, CacheEntry> cache = lruCache;
+		final Map<String, CacheRoute> cacheRoutes = routes;
+		if (cacheStore == null || cache == null || cacheRoutes == null) {
+			return knownKey;
+		}
+		final String requestURI = req.getRequestURI();
+		String key = knownKey;
+		try {
+			byte[] record;
+			if (key == null) {
+				// Both records are fetched in a single round trip
+				final Map<String, byte[]> records = cacheStore.getMulti(Arrays.asList(ROUTE_PREFIX + requestURI, requestURI));
+				final byte[] routeRecord = records.get(ROUTE_PREFIX + requestURI);
+				if (routeRecord == null) {
+					return null;
+				}
+				final CacheRoute cacheRoute = EntryCodec.decodeRoute(routeRecord);
+				if (!cacheRoute.equals(cacheRoutes.get(requestURI))) {
+					cacheRoutes.put(requestURI, cacheRoute);
+				}
+				key = cacheRoute.key(requestURI, req);
+				record = key.equals(requestURI) ? records.get(requestURI) : cacheStore.getMulti(Collections.singleton(key)).get(key);
+			}
+			else {
+				record = cacheStore.getMulti(Collections.singleton(key)).get(key);
+			}
+			if (record == null) {
+				return key;
+			}
+			final CacheEntry cacheEntry = EntryCodec.decodeEntry(record);
+			if (cacheEntry.staleUntil.getTime() > System.currentTimeMillis()) {
+				putEntry(cache, key, cacheEntry);
+				InMemoryCacheStatistics.remoteLoad(requestURI, cacheEntry.size());
+			}
+		}
+		catch (IOException e) {
+			// The store is unreachable or holds an unreadable record: the request is handled locally
+			LOGGER.log(Level.FINE, "Could not load " + requestURI + " from the cache store", e);
+		}
+		return key;
+	}
+
+	/**
+	 * Removes a key from the tag index
+	 *
+	 * @param tag The tag of the entry
+	 * @param key The key of the entry
+	 */
+	private static void unindexTag(final String tag, final String key) {
+		final Set<String> tagKeys = tagIndex.get(tag);
+		if (tagKeys != null) {
+			tagKeys.remove(key);
+			if (tagKeys.isEmpty()) {
+				tagIndex.remove(tag, tagKeys);
+			}
+		}
+	}
+
+	/**
+	 * Removes an entry that is no longer in the LRU cache from the indexes
+	 *
+	 * @param key The key of the entry
+	 * @param cacheEntry The entry
+	 */
+	static void unindex(final String key, final CacheEntry cacheEntry) {
+		keys.remove(key);
+		for (final String tag : cacheEntry.tags) {
+			unindexTag(tag, key);
+		}
+	}
+
+	/**
+	 * Removes an entry from the cache and from the indexes
+	 *
+	 * @param cache The LRU cache
+	 * @param key The key of the entry
+	 * @param cause Why the entry is removed
+	 * @param cacheStore The store from which to delete the entry, if any
+	 * @return Whether an entry was removed
+	 */
+	private static boolean removeKey(final Map<String, CacheEntry> cache, final String key, final EvictionCause cause, final @CheckForNull CacheStore cacheStore) {
+		if (cacheStore != null) {
+			cacheStore.delete(key);
+		}
+		final CacheEntry removed = cache.remove(key);
+		if (removed == null) {
+			keys.remove(key);
+			return false;
+		}
+		unindex(key, removed);
+		InMemoryCacheStatistics.evict(CacheRoute.uriOf(key), removed.size(), cause);
+		return true;
+	}
+
+	/**
+	 * Removes the cache for a specific URI.
+	 * If a store is set, the entries of this URI that are known locally are also deleted from the store.
+	 * If an invalidation bus is set, the removal is published to the other nodes.
 	 *
 	 * @param uri The URI to remove from the cache
 	 */
 	public static void remove(final String uri) {
-		if (lruCache != null) {
-			lruCache.remove(uri);
+		removeUri(uri, store);
+		final InvalidationBus invalidationBus = bus;
+		if (invalidationBus != null) {
+			invalidationBus.publishRemove(uri);
+		}
+	}
+
+	/**
+	 * Removes the cache for a specific URI
+	 *
+	 * @param uri The URI to remove from the cache
+	 * @param cacheStore The store from which to delete the entries, if any
+	 */
+	private static void removeUri(final String uri, final @CheckForNull CacheStore cacheStore) {
+		final Map<String, CacheEntry> cache = lruCache;
+		if (cache == null) {
+			return ;
+		}
+		// The keys of an URI are the URI itself or the URI followed by the separator, which is the lowest char
+		final NavigableSet<String> variants = keys.subSet(uri, true, uri + (char) (CacheRoute.SEPARATOR + 1), false);
+		boolean removedUri = false;
+		for (final String key : variants) {
+			removedUri |= key.equals(uri);
+			removeKey(cache, key, EvictionCause.REMOVED, cacheStore);
+		}
+		if (cacheStore != null && !removedUri) {
+			// The entry of a route that does not vary may be in the store without being known locally
+			cacheStore.delete(uri);
+		}
+	}
+
+	/**
+	 * Removes all entries that have been tagged with the given tag.
+	 * If an invalidation bus is set, the invalidation is published to the other nodes.
+	 *
+	 * @param tag The tag of the entries to remove
+	 * @return The number of removed entries
+	 */
+	public static int invalidateTag(final String tag) {
+		final int count = removeTag(tag, store);
+		final InvalidationBus invalidationBus = bus;
+		if (invalidationBus != null) {
+			invalidationBus.publishTag(tag);
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all entries that have been tagged with the given tag
+	 *
+	 * @param tag The tag of the entries to remove
+	 * @param cacheStore The store from which to delete the entries, if any
+	 * @return The number of removed entries
+	 */
+	private static int removeTag(final String tag, final @CheckForNull CacheStore cacheStore) {
+		final Map<String, CacheEntry> cache = lruCache;
+		final Set<String> tagKeys = tagIndex.remove(tag);
+		if (cache == null || tagKeys == null) {
+			return 0;
+		}
+		int count = 0;
+		for (final String key : tagKeys) {
+			if (removeKey(cache, key, EvictionCause.INVALIDATED, cacheStore)) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all entries whose URI starts with the given prefix (for example /products/ removes all products pages).
+	 * If an invalidation bus is set, the invalidation is published to the other nodes.
+	 *
+	 * @param prefix The prefix of the URIs to remove
+	 * @return The number of removed entries
+	 */
+	public static int invalidatePrefix(final String prefix) {
+		final int count = removePrefix(prefix, store);
+		final InvalidationBus invalidationBus = bus;
+		if (invalidationBus != null) {
+			invalidationBus.publishPrefix(prefix);
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all entries whose URI starts with the given prefix
+	 *
+	 * @param prefix The prefix of the URIs to remove
+	 * @param cacheStore The store from which to delete the entries, if any
+	 * @return The number of removed entries
+	 */
+	private static int removePrefix(final String prefix, final @CheckForNull CacheStore cacheStore) {
+		final Map<String, CacheEntry> cache = lruCache;
+		if (cache == null) {
+			return 0;
+		}
+		int count = 0;
+		for (final String key : keys.tailSet(prefix, true)) {
+			if (!key.startsWith(prefix)) {
+				break ;
+			}
+			if (removeKey(cache, key, EvictionCause.INVALIDATED, cacheStore)) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Removes all entries of this cache (the store, if any, is left untouched).
+	 * If an invalidation bus is set, the flush is published to the other nodes.
+	 *
+	 * @return The number of removed entries
+	 */
+	public static int clear() {
+		final int count = removePrefix("", null);
+		final InvalidationBus invalidationBus = bus;
+		if (invalidationBus != null) {
+			invalidationBus.publishFlush();
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the requests of the most hit entries as a warm-up manifest (see {@link InMemoryCacheWarmer}).
+	 * Request URIs are written as they were received, including the context path.
+	 * This is meant to be called when the application shuts down, so that the next process can warm its cache up.
+	 *
+	 * @param out Where to write the manifest
+	 * @param max Maximum number of requests to write
+	 * @return The number of written requests
+	 * @throws IOException If an output exception occurred
+	 */
+	public static int dumpMostHit(final Writer out, final int max) throws IOException {
+		final Map<String, CacheEntry> cache = lruCache;
+		if (cache == null) {
+			return 0;
+		}
+		final List<CacheEntry> entries;
+		synchronized (cache) {
+			entries = new ArrayList<>(cache.values());
+		}
+		Collections.sort(entries, new Comparator<CacheEntry>() {
+			@Override public int compare(final CacheEntry e1, final CacheEntry e2) {
+				return Integer.compare(e2.hits, e1.hits);
+			}
+		});
+		int count = 0;
+		for (int i = 0; i < entries.size() && count < max; ++i) {
+			final CacheEntry cacheEntry = entries.get(i);
+			if (cacheEntry.requestURI.startsWith(CachedFragment.PREFIX)) {
+				// Fragments are not requests and cannot be replayed
+				continue ;
+			}
+			InMemoryCacheWarmer.writeLine(out, cacheEntry.requestURI, cacheEntry.queryString, cacheEntry.variedHeaders);
+			++count;
 		}
+		out.flush();
+		return count;
 	}
 }
@@ -1,11 +1,16 @@
 package com.github.sourguice.cache.server.def;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -13,16 +18,85 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import com.github.sourguice.cache.server.def.InMemoryCache.CacheEntry;
+import com.github.sourguice.cache.server.replay.ReplayRequest;
 
 /**
  * Filter that must be use to serve request that where cached whit {@link InMemoryCache}
  *
+ * When a cached URI has no valid entry, concurrent requests to this URI are coalesced:
+ * the first one is executed while the others wait (at most {@link InMemoryCache#setCoalesceTimeout(int)} milliseconds)
+ * to be served from the freshly saved entry.
+ * For this to work, this filter must be registered BEFORE the {@link com.github.sourguice.cache.server.CacheFilter}.
+ * The response of a suspended request is saved once it completes, so the requests that wait for it are released then:
+ * like the {@link com.github.sourguice.cache.server.CacheFilter}, this filter must be async-supported and mapped for the ASYNC dispatcher.
+ *
+ * A request is matched to its entry with a single lookup of the key computed by the {@link CacheRoute} of its URI.
+ * URIs that have no route are not cached and go straight to the chain.
+ *
+ * Entries carry an entity tag and a last modification date: HEAD requests are answered with headers only
+ * and conditional requests whose validators match get a 304, without the body being written.
+ *
+ * Compressed entries are served as is to clients that accept gzip, and decompressed for the others.
+ *
+ * An expired entry that is still in its grace period is served immediately and refreshed in the background.
+ *
+ * When the cache has a remote store, a request that misses the local cache looks the store up before being executed.
+ *
  * @author Salomon BRYS <salomon.brys@gmail.com>
  */
 public class InMemoryCacheFilter implements Filter {
 
+	/**
+	 * Request attribute that holds the pending miss computed by a suspended request, so that its asynchronous dispatch goes straight to the chain
+	 */
+	private static final String PENDING_MISS_ATTRIBUTE = "com.github.sourguice.cache.PendingMiss";
+
+	/**
+	 * A variant being computed by a request.
+	 * The requests that wait for it are released once its response has been saved, which, for a suspended request, is when it completes.
+	 */
+	private static final class PendingMiss implements AsyncListener {
+		/**
+		 * The key of the variant
+		 */
+		private final String key;
+
+		/**
+		 * The latch on which the requests that wait for the variant are blocked
+		 */
+		private final CountDownLatch latch;
+
+		/**
+		 * @param key The key of the variant
+		 * @param latch The latch on which the requests that wait for the variant are blocked
+		 */
+		PendingMiss(final String key, final CountDownLatch latch) {
+			this.key = key;
+			this.latch = latch;
+		}
+
+		/**
+		 * Releases the requests that wait for the variant
+		 */
+		void release() {
+			InMemoryCache.pendingMisses.remove(this.key, this.latch);
+			this.latch.countDown();
+		}
+
+		@Override
+		public void onComplete(final AsyncEvent event) {
+			// Registered after the CacheFilter's listener: the response has been saved
+			release();
+		}
+
+		@Override public void onStartAsync(final AsyncEvent event) { /* The filter registers again after the new dispatch */ }
+		@Override public void onTimeout(final AsyncEvent event) { /* The request completes afterwards */ }
+		@Override public void onError(final AsyncEvent event) { /* The request completes afterwards */ }
+	}
+
 	@Override
 	public void init(final FilterConfig filterConfig) throws ServletException {
 		// Nothing to do
@@ -34,52 +108,262 @@ public class InMemoryCacheFilter implements Filter {
 	}
 
 	/**
-	 * Check whether all requested headers are in the request
+	 * Writes the entry of the given key if it is valid.
+	 * If the entry is stale, schedules its refresh.
 	 *
 	 * @param req The request
-	 * @param cacheHeaders The headers and their values
-	 * @return True if headers match, fale if not
+	 * @param res The response on which to write the entry
+	 * @param key The key of the request's entry
+	 * @param record Whether to record the hit in the statistics
+	 * @return Whether an entry was found and written
+	 * @throws IOException If an input or output exception occurred
 	 */
-	private static boolean checkHeaders(final HttpServletRequest req, final Map<String, String> cacheHeaders) {
-		for (final Map.Entry<String, String> cacheHeader : cacheHeaders.entrySet()) {
-			final String reqHeaderValue = req.getHeader(cacheHeader.getKey());
-			if (reqHeaderValue == null || !reqHeaderValue.equals(cacheHeader.getValue())) {
-				return false;
+	private static boolean serve(final HttpServletRequest req, final ServletResponse res, final String key, final boolean record) throws IOException {
+		final Map<String, CacheEntry> cache = InMemoryCache.lruCache;
+		if (cache == null) {
+			return false;
+		}
+		final CacheEntry cacheEntry = cache.get(key);
+		if (cacheEntry == null) {
+			return false;
+		}
+
+		final Date now = new Date();
+		if (!cacheEntry.staleUntil.after(now)) {
+			return false;
+		}
+		if (!cacheEntry.expires.after(now)) {
+			if (record) {
+				InMemoryCacheStatistics.staleHit(req.getRequestURI());
 			}
+			InMemoryCacheRefresher.refresh(key, req);
+		}
+		else if (record) {
+			InMemoryCacheStatistics.hit(req.getRequestURI());
 		}
+		++cacheEntry.hits;
+		write(req, (HttpServletResponse) res, cacheEntry);
 		return true;
 	}
 
+	/**
+	 * Writes an entry, or only its headers if the request is a HEAD or if the client's copy is still valid
+	 *
+	 * @param req The request
+	 * @param res The response on which to write the entry
+	 * @param cacheEntry The entry to write
+	 * @throws IOException If an input or output exception occurred
+	 */
+	private static void write(final HttpServletRequest req, final HttpServletResponse res, final CacheEntry cacheEntry) throws IOException {
+		final byte[][] gzipData = cacheEntry.gzipData;
+		final boolean gzip = gzipData != null && GzipSegments.accepts(req.getHeader("Accept-Encoding"));
+
+		// The compressed representation needs its own strong entity tag
+		final String etag = gzip ? cacheEntry.etag.substring(0, cacheEntry.etag.length() - 1) + "-gz\"" : cacheEntry.etag;
+		res.setHeader("ETag", etag);
+		res.setDateHeader("Last-Modified", cacheEntry.lastModified);
+		if (gzipData != null) {
+			res.addHeader("Vary", "Accept-Encoding");
+		}
+
+		if (isNotModified(req, etag, cacheEntry.lastModified)) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return ;
+		}
+
+		final boolean head = "HEAD".equalsIgnoreCase(req.getMethod());
+
+		final char[][] charData = cacheEntry.charData;
+		if (charData != null) {
+			if (head) {
+				res.setContentLength(encodedLength(charData, res.getCharacterEncoding()));
+				return ;
+			}
+			final Writer writer = res.getWriter();
+			for (final char[] segment : charData) {
+				writer.write(segment);
+			}
+		}
+		else if (cacheEntry.byteData != null) {
+			if (head) {
+				res.setContentLength((int) cacheEntry.size());
+				return ;
+			}
+			final OutputStream stream = res.getOutputStream();
+			for (final byte[] segment : cacheEntry.byteData) {
+				stream.write(segment);
+			}
+		}
+		else if (gzipData != null) {
+			if (cacheEntry.contentType != null) {
+				res.setContentType(cacheEntry.contentType);
+			}
+			if (gzip) {
+				res.setHeader("Content-Encoding", "gzip");
+				if (head) {
+					res.setContentLength((int) cacheEntry.size());
+					return ;
+				}
+				final OutputStream stream = res.getOutputStream();
+				for (final byte[] segment : gzipData) {
+					stream.write(segment);
+				}
+			}
+			else if (!head) {
+				// Rare client that does not accept gzip
+				GzipSegments.decompress(gzipData, res.getOutputStream());
+			}
+		}
+	}
+
+	/**
+	 * Computes the length of char data once encoded, as it would be written by the response's writer
+	 *
+	 * @param charData The char data, in segments
+	 * @param encoding The character encoding of the response
+	 * @return The number of bytes of the encoded data
+	 * @throws IOException If the encoding is not supported
+	 */
+	private static int encodedLength(final char[][] charData, final String encoding) throws IOException {
+		final int[] length = { 0 };
+		final Writer counter = new OutputStreamWriter(new OutputStream() {
+			@Override public void write(final int b) {
+				++length[0];
+			}
+			@Override public void write(final byte[] b, final int off, final int len) {
+				length[0] += len;
+			}
+		}, encoding);
+		for (final char[] segment : charData) {
+			counter.write(segment);
+		}
+		counter.close();
+		return length[0];
+	}
+
+	/**
+	 * Checks the validators of a conditional request.
+	 * If-None-Match takes precedence over If-Modified-Since, as specified by HTTP.
+	 *
+	 * @param req The request
+	 * @param etag The entity tag of the entry
+	 * @param lastModified The last modification date of the entry
+	 * @return Whether the client's copy is still valid
+	 */
+	private static boolean isNotModified(final HttpServletRequest req, final String etag, final long lastModified) {
+		final String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (final String tag : ifNoneMatch.split(",")) {
+				String trimmed = tag.trim();
+				if (trimmed.startsWith("W/")) {
+					trimmed = trimmed.substring(2);
+				}
+				if (trimmed.equals("*") || trimmed.equals(etag)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (req.getHeader("If-Modified-Since") == null) {
+			return false;
+		}
+		try {
+			final long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			return ifModifiedSince >= lastModified;
+		}
+		catch (IllegalArgumentException e) {
+			// Unparsable date: the condition is ignored
+			return false;
+		}
+	}
+
+	/**
+	 * Executes the request that computes a variant.
+	 * If the request is suspended, the requests that wait for the variant are released when it completes, otherwise they are released immediately.
+	 *
+	 * @param miss The variant computed by the request
+	 * @param req The request
+	 * @param res The response
+	 * @param chain The filter chain
+	 * @throws IOException If an input or output exception occurred
+	 * @throws ServletException If the chain failed
+	 */
+	private static void compute(final PendingMiss miss, final ServletRequest req, final ServletResponse res, final FilterChain chain) throws IOException, ServletException {
+		boolean suspended = false;
+		try {
+			chain.doFilter(req, res);
+			if (req.isAsyncStarted()) {
+				req.setAttribute(PENDING_MISS_ATTRIBUTE, miss);
+				req.getAsyncContext().addListener(miss);
+				suspended = true;
+			}
+		}
+		finally {
+			if (!suspended) {
+				miss.release();
+			}
+		}
+	}
+
 	@Override
 	public void doFilter(final ServletRequest _req, final ServletResponse _res, final FilterChain chain) throws IOException, ServletException {
-		if (InMemoryCache.lruCache == null) {
+		if (InMemoryCache.lruCache == null || _req.getAttribute(ReplayRequest.ATTRIBUTE) != null) {
 			chain.doFilter(_req, _res);
 			return ;
 		}
 
+		final Object pendingMiss = _req.getAttribute(PENDING_MISS_ATTRIBUTE);
+		if (pendingMiss instanceof PendingMiss) {
+			// Asynchronous dispatch of a suspended request that computes a variant
+			_req.removeAttribute(PENDING_MISS_ATTRIBUTE);
+			compute((PendingMiss) pendingMiss, _req, _res, chain);
+			return ;
+		}
+
 		final HttpServletRequest req = (HttpServletRequest) _req;
-		final Set<CacheEntry> set = InMemoryCache.lruCache.get(req.getRequestURI());
+		String key = InMemoryCache.keyOf(req);
+
+		if (key != null && serve(req, _res, key, true)) {
+			return ;
+		}
+
+		if (InMemoryCache.store != null) {
+			// Another node may have computed this request
+			key = InMemoryCache.loadRemote(req, key);
+			if (key != null && serve(req, _res, key, true)) {
+				return ;
+			}
+		}
 
-		if (set == null) {
+		if (key == null) {
 			chain.doFilter(_req, _res);
 			return ;
 		}
 
-		final Date now = new Date();
+		InMemoryCacheStatistics.miss(req.getRequestURI());
 
-		final Iterator<CacheEntry> iter = set.iterator();
-		while (iter.hasNext()) {
-			final CacheEntry cacheEntry = iter.next();
-			if (cacheEntry.expires.after(now) && checkHeaders(req, cacheEntry.headers)) {
-				if (cacheEntry.charData != null) {
-					_res.getWriter().write(cacheEntry.charData);
-				}
-				else if (cacheEntry.byteData != null) {
-					_res.getOutputStream().write(cacheEntry.byteData);
-				}
+		if (InMemoryCache.coalesceTimeout == 0) {
+			chain.doFilter(_req, _res);
+			return ;
+		}
+
+		// This variant is cached but has no valid entry: only one request computes it
+		final CountDownLatch latch = new CountDownLatch(1);
+		final CountDownLatch pending = InMemoryCache.pendingMisses.putIfAbsent(key, latch);
+		if (pending == null) {
+			compute(new PendingMiss(key, latch), _req, _res, chain);
+			return ;
+		}
+
+		// Another request is computing this variant, waits for it to be saved
+		try {
+			if (pending.await(InMemoryCache.coalesceTimeout, TimeUnit.MILLISECONDS) && serve(req, _res, key, false)) {
 				return ;
 			}
 		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 
 		chain.doFilter(_req, _res);
 	}
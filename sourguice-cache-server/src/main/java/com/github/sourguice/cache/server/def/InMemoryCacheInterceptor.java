@@ -1,5 +1,9 @@
 package com.github.sourguice.cache.server.def;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.annotation.CheckForNull;
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -26,6 +30,11 @@ public class InMemoryCacheInterceptor implements MethodInterceptor {
 	 */
 	private @CheckForNull @Inject Provider<InMemoryCache> cacheProvider;
 
+	/**
+	 * The route of each annotated method, built once from its annotation
+	 */
+	private final ConcurrentMap<Method, CacheRoute> routes = new ConcurrentHashMap<>();
+
 
 	@Override
 	public Object invoke(final MethodInvocation invocation) throws Throwable {
@@ -39,9 +48,15 @@ public class InMemoryCacheInterceptor implements MethodInterceptor {
 		if (info != null) {
 			final InMemoryCache cache = this.serviceProvider.get().cacheRequest(this.cacheProvider.get());
 			cache.setExpiration(info.seconds());
-			for (final String header : info.headers()) {
-				cache.putHeader(header);
+			cache.setGrace(info.grace());
+			cache.setCompressed(info.compress());
+			CacheRoute route = this.routes.get(invocation.getMethod());
+			if (route == null) {
+				route = new CacheRoute(info.headers(), info.params(), info.ignoreParams());
+				this.routes.put(invocation.getMethod(), route);
 			}
+			cache.setRoute(route);
+			cache.addTags(info.tags());
 		}
 		return ret;
 	}
@@ -0,0 +1,150 @@
+package com.github.sourguice.cache.server.def;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.cache.server.replay.ReplayRequest;
+import com.github.sourguice.cache.server.replay.RequestReplayer;
+
+/**
+ * Refreshes stale {@link InMemoryCache} entries in the background.
+ *
+ * Each refresh replays a copy of the request that hit the stale entry with the {@link RequestReplayer},
+ * which saves the new entry in place of the stale one.
+ * The copy does not carry the credentials nor the conditions of the original request, except the headers the route varies on.
+ * There is at most one refresh at a time for a given key and refreshes are executed on a bounded pool:
+ * when the pool is full, the refresh is dropped (the stale entry will be refreshed by a later hit).
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class InMemoryCacheRefresher {
+
+	/**
+	 * Default number of threads refreshing entries
+	 */
+	static final int DEFAULT_THREADS = 2;
+
+	/**
+	 * Default number of refreshes that can wait for a thread
+	 */
+	static final int DEFAULT_QUEUE_SIZE = 32;
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(InMemoryCacheRefresher.class.getName());
+
+	/**
+	 * Keys that are currently being refreshed
+	 */
+	private static final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Refresh statistics
+	 */
+	static final RefreshStatistics statistics = new RefreshStatistics();
+
+	/**
+	 * The pool on which refreshes are executed, created on first use
+	 */
+	private static @CheckForNull ThreadPoolExecutor executor = null;
+
+	/**
+	 * This is a static class
+	 */
+	private InMemoryCacheRefresher() {}
+
+	/**
+	 * Replaces the refresh pool
+	 *
+	 * @param threads Number of threads refreshing entries
+	 * @param queueSize Number of refreshes that can wait for a thread
+	 */
+	static synchronized void setPool(final int threads, final int queueSize) {
+		final ThreadPoolExecutor previous = executor;
+		executor = createExecutor(threads, queueSize);
+		if (previous != null) {
+			previous.shutdown();
+		}
+	}
+
+	/**
+	 * @return The refresh pool, created with default values if it has not been set
+	 */
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			executor = createExecutor(DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+		}
+		return executor;
+	}
+
+	/**
+	 * @param threads Number of threads refreshing entries
+	 * @param queueSize Number of refreshes that can wait for a thread
+	 * @return The refresh pool
+	 */
+	private static ThreadPoolExecutor createExecutor(final int threads, final int queueSize) {
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			@Override public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "SourGuice-cache-refresh-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Schedules the refresh of an entry, unless it is already being refreshed
+	 *
+	 * @param key The key of the stale entry
+	 * @param original The request that hit the stale entry
+	 */
+	static void refresh(final String key, final HttpServletRequest original) {
+		if (!refreshing.add(key)) {
+			return ;
+		}
+		// The copy keeps the credential and conditional headers only if the response varies on them
+		final Map<String, CacheRoute> cacheRoutes = InMemoryCache.routes;
+		final CacheRoute route = cacheRoutes == null ? null : cacheRoutes.get(CacheRoute.uriOf(key));
+		final ReplayRequest req = ReplayRequest.copyOf(original, route == null ? new String[0] : route.getHeaders());
+		try {
+			getExecutor().execute(new Runnable() {
+				@Override public void run() {
+					final long start = System.nanoTime();
+					boolean success = false;
+					try {
+						success = RequestReplayer.replay(req).getStatus() == HttpServletResponse.SC_OK;
+					}
+					catch (Exception e) {
+						LOGGER.log(Level.WARNING, "Could not refresh " + key, e);
+					}
+					finally {
+						refreshing.remove(key);
+						statistics.record(System.nanoTime() - start, success);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+			statistics.reject();
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package com.github.sourguice.cache.server.def;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Holds the statistics of the {@link InMemoryCache}: the statistics of the whole cache and those of each route (cached URI).
+ *
+ * When enabled, every statistics is registered as an MXBean in the platform MBean server,
+ * under the {@value #DOMAIN} domain.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class InMemoryCacheStatistics {
+
+	/**
+	 * The JMX domain of the statistics MXBeans
+	 */
+	static final String DOMAIN = "com.github.sourguice.cache";
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(InMemoryCacheStatistics.class.getName());
+
+	/**
+	 * Statistics of the whole cache
+	 */
+	static final CacheStatistics total = new CacheStatistics();
+
+	/**
+	 * Statistics of each route, by URI
+	 */
+	private static final ConcurrentMap<String, CacheStatistics> routes = new ConcurrentHashMap<>();
+
+	/**
+	 * The MBean server in which statistics are registered, if JMX is enabled
+	 */
+	private static @CheckForNull MBeanServer server = null;
+
+	/**
+	 * This is a static class
+	 */
+	private InMemoryCacheStatistics() {}
+
+	/**
+	 * Gets the statistics of a route, creating them if needed
+	 *
+	 * @param uri The URI of the route
+	 * @return The route's statistics
+	 */
+	static CacheStatistics of(final String uri) {
+		CacheStatistics statistics = routes.get(uri);
+		if (statistics == null) {
+			final CacheStatistics created = new CacheStatistics();
+			statistics = routes.putIfAbsent(uri, created);
+			if (statistics == null) {
+				statistics = created;
+				register(routeName(uri), created);
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * @param uri The URI of the route
+	 * @return The route's statistics, or null if the route has none
+	 */
+	static @CheckForNull CacheStatistics get(final String uri) {
+		return routes.get(uri);
+	}
+
+	/**
+	 * Forgets the statistics of a route that is no longer cached
+	 *
+	 * @param uri The URI of the route
+	 */
+	static void forget(final String uri) {
+		if (routes.remove(uri) != null) {
+			unregister(routeName(uri));
+		}
+	}
+
+	/**
+	 * Forgets the statistics of all routes
+	 */
+	static void clear() {
+		for (final String uri : routes.keySet()) {
+			forget(uri);
+		}
+	}
+
+	/**
+	 * Records a request served by a fresh entry
+	 *
+	 * @param uri The URI of the request
+	 */
+	static void hit(final String uri) {
+		total.hit();
+		of(uri).hit();
+	}
+
+	/**
+	 * Records a request served by an expired entry in its grace period
+	 *
+	 * @param uri The URI of the request
+	 */
+	static void staleHit(final String uri) {
+		total.staleHit();
+		of(uri).staleHit();
+	}
+
+	/**
+	 * Records a request to a cached URI that had no valid entry
+	 *
+	 * @param uri The URI of the request
+	 */
+	static void miss(final String uri) {
+		total.miss();
+		of(uri).miss();
+	}
+
+	/**
+	 * Records a saved entry
+	 *
+	 * @param uri The URI of the entry
+	 * @param size Size of the entry in bytes
+	 * @param nanos Duration of the save in nanoseconds
+	 */
+	static void save(final String uri, final long size, final long nanos) {
+		total.save(size, nanos);
+		of(uri).save(size, nanos);
+	}
+
+	/**
+	 * Records an entry loaded from the remote store
+	 *
+	 * @param uri The URI of the entry
+	 * @param size Size of the entry in bytes
+	 */
+	static void remoteLoad(final String uri, final long size) {
+		total.remoteLoad(size);
+		of(uri).remoteLoad(size);
+	}
+
+	/**
+	 * Records a response that was not cached because it exceeded the maximum entry size
+	 *
+	 * @param uri The URI of the response
+	 */
+	static void oversized(final String uri) {
+		total.oversized();
+		of(uri).oversized();
+	}
+
+	/**
+	 * Records an entry that left the cache
+	 *
+	 * @param uri The URI of the entry
+	 * @param size Size of the entry in bytes
+	 * @param cause Why the entry left the cache
+	 */
+	static void evict(final String uri, final long size, final EvictionCause cause) {
+		total.evict(size, cause);
+		final CacheStatistics statistics = routes.get(uri);
+		if (statistics != null) {
+			statistics.evict(size, cause);
+		}
+	}
+
+	/**
+	 * @param uri The URI of a route
+	 * @return The JMX name of the route's statistics
+	 */
+	private static String routeName(final String uri) {
+		return DOMAIN + ":type=InMemoryCache,route=" + ObjectName.quote(uri);
+	}
+
+	/**
+	 * @return The JMX name of the whole cache statistics
+	 */
+	private static String totalName() {
+		return DOMAIN + ":type=InMemoryCache,name=total";
+	}
+
+	/**
+	 * Registers all statistics, and those that will be created, in the platform MBean server
+	 */
+	static synchronized void enableJmx() {
+		if (server != null) {
+			return ;
+		}
+		server = ManagementFactory.getPlatformMBeanServer();
+		register(totalName(), total);
+		for (final Map.Entry<String, CacheStatistics> entry : routes.entrySet()) {
+			register(routeName(entry.getKey()), entry.getValue());
+		}
+	}
+
+	/**
+	 * Unregisters all statistics from the platform MBean server
+	 */
+	static synchronized void disableJmx() {
+		if (server == null) {
+			return ;
+		}
+		unregister(totalName());
+		for (final String uri : routes.keySet()) {
+			unregister(routeName(uri));
+		}
+		server = null;
+	}
+
+	/**
+	 * Registers statistics in the MBean server, if JMX is enabled
+	 *
+	 * @param name The JMX name of the statistics
+	 * @param statistics The statistics to register
+	 */
+	private static void register(final String name, final CacheStatistics statistics) {
+		final MBeanServer mbs = server;
+		if (mbs == null) {
+			return ;
+		}
+		try {
+			final ObjectName objectName = new ObjectName(name);
+			if (!mbs.isRegistered(objectName)) {
+				mbs.registerMBean(statistics, objectName);
+			}
+		}
+		catch (JMException e) {
+			LOGGER.log(Level.WARNING, "Could not register " + name, e);
+		}
+	}
+
+	/**
+	 * Unregisters statistics from the MBean server, if JMX is enabled
+	 *
+	 * @param name The JMX name of the statistics
+	 */
+	private static void unregister(final String name) {
+		final MBeanServer mbs = server;
+		if (mbs == null) {
+			return ;
+		}
+		try {
+			final ObjectName objectName = new ObjectName(name);
+			if (mbs.isRegistered(objectName)) {
+				mbs.unregisterMBean(objectName);
+			}
+		}
+		catch (JMException e) {
+			LOGGER.log(Level.WARNING, "Could not unregister " + name, e);
+		}
+	}
+
+	/**
+	 * Writes all statistics as a JSON object
+	 *
+	 * @param out Where to write the JSON object
+	 */
+	static void toJson(final StringBuilder out) {
+		out.append("{\"total\":");
+		total.toJson(out);
+		out.append(",\"routes\":{");
+		boolean first = true;
+		for (final Map.Entry<String, CacheStatistics> entry : new TreeMap<>(routes).entrySet()) {
+			if (!first) {
+				out.append(',');
+			}
+			first = false;
+			appendString(out, entry.getKey());
+			out.append(':');
+			entry.getValue().toJson(out);
+		}
+		out.append("}}");
+	}
+
+	/**
+	 * Writes a JSON string
+	 *
+	 * @param out Where to write the string
+	 * @param str The string to write
+	 */
+	private static void appendString(final StringBuilder out, final String str) {
+		out.append('"');
+		for (int i = 0; i < str.length(); ++i) {
+			final char c = str.charAt(i);
+			if (c == '"' || c == '\\') {
+				out.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				out.append(String.format("\\u%04x", Integer.valueOf(c)));
+			}
+			else {
+				out.append(c);
+			}
+		}
+		out.append('"');
+	}
+}
@@ -0,0 +1,30 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.IOException;
+
+import javax.inject.Singleton;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admin servlet that writes the {@link InMemoryCache} statistics (whole cache and per route) as JSON.
+ *
+ * It is not registered by default: use {@link InMemoryCache#statisticsModule(String)} to serve it.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+@Singleton
+public final class InMemoryCacheStatisticsServlet extends HttpServlet {
+	@SuppressWarnings("javadoc")
+	private static final long serialVersionUID = 2716582309573961735L;
+
+	@Override protected void doGet(final HttpServletRequest req, final HttpServletResponse res) throws IOException {
+		final StringBuilder json = new StringBuilder(1024);
+		InMemoryCacheStatistics.toJson(json);
+		res.setContentType("application/json");
+		res.setCharacterEncoding("UTF-8");
+		res.setHeader("Cache-Control", "no-cache");
+		res.getWriter().write(json.toString());
+	}
+}
@@ -0,0 +1,294 @@
+package com.github.sourguice.cache.server.def;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.cache.server.replay.ReplayRequest;
+import com.github.sourguice.cache.server.replay.RequestReplayer;
+
+/**
+ * Fills the {@link InMemoryCache} before the application starts serving, so that a new node joins hot.
+ *
+ * The requests to warm up are replayed through the Guice filter pipeline with the {@link RequestReplayer},
+ * with a bounded number of requests replayed at the same time.
+ * Requests are given one by one or read from a manifest, which is a text file in which each line is a request:
+ * a request URI (including the context path and followed by its query string, if any) optionally followed by headers,
+ * all separated by tabulations:
+ * <pre>
+ * # Comment
+ * /products?page=2
+ * /home	Accept-Language: fr
+ * </pre>
+ * {@link InMemoryCache#dumpMostHit(Writer, int)} writes such a manifest from the most hit entries.
+ *
+ * As requests are replayed through Guice, the warm-up must be started once the Guice filter has been initialized.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class InMemoryCacheWarmer {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(InMemoryCacheWarmer.class.getName());
+
+	/**
+	 * Maximum number of requests replayed at the same time
+	 */
+	private final int parallelism;
+
+	/**
+	 * The context path of the application
+	 */
+	private String contextPath = "";
+
+	/**
+	 * The requests to replay
+	 */
+	private final List<ReplayRequest> requests = new ArrayList<>();
+
+	/**
+	 * Released once all requests have been replayed
+	 */
+	private final CountDownLatch ready = new CountDownLatch(1);
+
+	/**
+	 * Number of requests whose response was successful
+	 */
+	private final AtomicInteger warmed = new AtomicInteger();
+
+	/**
+	 * Number of requests that failed (exception or non 200 response)
+	 */
+	private final AtomicInteger failed = new AtomicInteger();
+
+	/**
+	 * Whether the warm-up has been started
+	 */
+	private boolean started = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param parallelism Maximum number of requests replayed at the same time
+	 */
+	public InMemoryCacheWarmer(final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the context path of the application, with which manifest URIs must start.
+	 * Must be called before adding requests.
+	 *
+	 * @param contextPath The context path of the application
+	 * @return itself to permit command chain
+	 */
+	public InMemoryCacheWarmer setContextPath(final String contextPath) {
+		this.contextPath = contextPath;
+		return this;
+	}
+
+	/**
+	 * Adds a request to replay
+	 *
+	 * @param req The request to replay
+	 * @return itself to permit command chain
+	 */
+	public synchronized InMemoryCacheWarmer add(final ReplayRequest req) {
+		if (this.started) {
+			throw new IllegalStateException("Warm-up has already been started");
+		}
+		this.requests.add(req);
+		return this;
+	}
+
+	/**
+	 * Adds the requests of a manifest
+	 *
+	 * @param manifest The manifest to read (it is not closed)
+	 * @return itself to permit command chain
+	 * @throws IOException If an input exception occurred
+	 */
+	public InMemoryCacheWarmer addManifest(final Reader manifest) throws IOException {
+		final BufferedReader reader = new BufferedReader(manifest);
+		String line;
+		while ((line = reader.readLine()) != null) {
+			final ReplayRequest req = parseLine(line);
+			if (req != null) {
+				add(req);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @param line A manifest line
+	 * @return The request of this line, or null if the line is empty, a comment or an URI outside of the context path
+	 */
+	private @CheckForNull ReplayRequest parseLine(final String line) {
+		final String trimmed = line.trim();
+		if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+			return null;
+		}
+		final String[] parts = trimmed.split("\t");
+		final int question = parts[0].indexOf('?');
+		// Manifest URIs are request URIs, as written by InMemoryCache.dumpMostHit: they already contain the context path
+		final String uri = question < 0 ? parts[0] : parts[0].substring(0, question);
+		if (!uri.startsWith(this.contextPath)) {
+			LOGGER.warning("Ignoring " + uri + " which is not in context " + this.contextPath);
+			return null;
+		}
+		final String query = question < 0 ? null : parts[0].substring(question + 1);
+		final ReplayRequest req = new ReplayRequest("GET", uri, query).setContextPath(this.contextPath);
+		for (int i = 1; i < parts.length; ++i) {
+			final int colon = parts[i].indexOf(':');
+			if (colon > 0) {
+				req.addHeader(parts[i].substring(0, colon).trim(), parts[i].substring(colon + 1).trim());
+			}
+		}
+		return req;
+	}
+
+	/**
+	 * Writes a request as a manifest line
+	 *
+	 * @param out Where to write the line
+	 * @param requestURI The URI of the request
+	 * @param queryString The query string of the request, if any
+	 * @param headers The headers of the request
+	 * @throws IOException If an output exception occurred
+	 */
+	static void writeLine(final Writer out, final String requestURI, final @CheckForNull String queryString, final Map<String, String> headers) throws IOException {
+		out.write(requestURI);
+		if (queryString != null) {
+			out.write('?');
+			out.write(queryString);
+		}
+		for (final Map.Entry<String, String> header : headers.entrySet()) {
+			out.write('\t');
+			out.write(header.getKey());
+			out.write(": ");
+			out.write(header.getValue());
+		}
+		out.write('\n');
+	}
+
+	/**
+	 * Starts replaying the requests in the background.
+	 * Use {@link #isReady()} or {@link #awaitReady(long, TimeUnit)} to know when the cache is warm.
+	 *
+	 * @return itself to permit command chain
+	 */
+	public synchronized InMemoryCacheWarmer start() {
+		if (this.started) {
+			throw new IllegalStateException("Warm-up has already been started");
+		}
+		this.started = true;
+
+		if (this.requests.isEmpty()) {
+			this.ready.countDown();
+			return this;
+		}
+
+		final AtomicInteger count = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, this.requests.size()), new ThreadFactory() {
+			@Override public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "SourGuice-cache-warmer-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final CountDownLatch remaining = new CountDownLatch(this.requests.size());
+		for (final ReplayRequest req : this.requests) {
+			executor.execute(new Runnable() {
+				@Override public void run() {
+					try {
+						if (RequestReplayer.replay(req).getStatus() == HttpServletResponse.SC_OK) {
+							InMemoryCacheWarmer.this.warmed.incrementAndGet();
+						}
+						else {
+							InMemoryCacheWarmer.this.failed.incrementAndGet();
+						}
+					}
+					catch (Exception e) {
+						InMemoryCacheWarmer.this.failed.incrementAndGet();
+						LOGGER.log(Level.WARNING, "Could not warm " + req.getRequestURI() + " up", e);
+					}
+					finally {
+						remaining.countDown();
+						if (remaining.getCount() == 0) {
+							InMemoryCacheWarmer.this.ready.countDown();
+						}
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		return this;
+	}
+
+	/**
+	 * Starts replaying the requests and waits for all of them to be replayed
+	 *
+	 * @param timeout The maximum time to wait
+	 * @param unit The unit of the timeout
+	 * @return Whether the cache is warm (false if the timeout elapsed first)
+	 * @throws InterruptedException If the current thread was interrupted while waiting
+	 */
+	public boolean warm(final long timeout, final TimeUnit unit) throws InterruptedException {
+		start();
+		return awaitReady(timeout, unit);
+	}
+
+	/**
+	 * @return Whether all requests have been replayed
+	 */
+	public boolean isReady() {
+		return this.ready.getCount() == 0;
+	}
+
+	/**
+	 * Waits for all requests to be replayed
+	 *
+	 * @param timeout The maximum time to wait
+	 * @param unit The unit of the timeout
+	 * @return Whether the cache is warm (false if the timeout elapsed first)
+	 * @throws InterruptedException If the current thread was interrupted while waiting
+	 */
+	public boolean awaitReady(final long timeout, final TimeUnit unit) throws InterruptedException {
+		return this.ready.await(timeout, unit);
+	}
+
+	/**
+	 * @return Number of requests whose response was successful
+	 */
+	public int getWarmedCount() {
+		return this.warmed.get();
+	}
+
+	/**
+	 * @return Number of requests that failed (exception or non 200 response)
+	 */
+	public int getFailedCount() {
+		return this.failed.get();
+	}
+}
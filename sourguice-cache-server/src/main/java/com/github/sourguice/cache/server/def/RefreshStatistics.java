@@ -0,0 +1,103 @@
+package com.github.sourguice.cache.server.def;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of the background refreshes of stale {@link InMemoryCache} entries
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class RefreshStatistics {
+
+	/**
+	 * Number of refreshes that completed successfully
+	 */
+	private final AtomicLong successes = new AtomicLong();
+
+	/**
+	 * Number of refreshes that failed (exception or non 200 response)
+	 */
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Number of refreshes that were not executed because the refresh pool was full
+	 */
+	private final AtomicLong rejections = new AtomicLong();
+
+	/**
+	 * Cumulated duration of all executed refreshes, in nanoseconds
+	 */
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	/**
+	 * Longest duration of an executed refresh, in nanoseconds
+	 */
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records an executed refresh
+	 *
+	 * @param nanos Duration of the refresh in nanoseconds
+	 * @param success Whether the refresh succeeded
+	 */
+	void record(final long nanos, final boolean success) {
+		if (success) {
+			this.successes.incrementAndGet();
+		}
+		else {
+			this.failures.incrementAndGet();
+		}
+		this.totalNanos.addAndGet(nanos);
+		long max = this.maxNanos.get();
+		while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+			max = this.maxNanos.get();
+		}
+	}
+
+	/**
+	 * Records a refresh that was rejected because the refresh pool was full
+	 */
+	void reject() {
+		this.rejections.incrementAndGet();
+	}
+
+	/**
+	 * @return Number of refreshes that completed successfully
+	 */
+	public long getSuccessCount() {
+		return this.successes.get();
+	}
+
+	/**
+	 * @return Number of refreshes that failed (exception or non 200 response)
+	 */
+	public long getFailureCount() {
+		return this.failures.get();
+	}
+
+	/**
+	 * @return Number of refreshes that were not executed because the refresh pool was full
+	 */
+	public long getRejectionCount() {
+		return this.rejections.get();
+	}
+
+	/**
+	 * @return Average duration of an executed refresh, in milliseconds
+	 */
+	public double getAverageLatency() {
+		final long count = this.successes.get() + this.failures.get();
+		if (count == 0) {
+			return 0;
+		}
+		return (double) this.totalNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return Longest duration of an executed refresh, in milliseconds
+	 */
+	public double getMaxLatency() {
+		return (double) this.maxNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
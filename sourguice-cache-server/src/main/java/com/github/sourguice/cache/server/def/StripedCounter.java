@@ -0,0 +1,63 @@
+package com.github.sourguice.cache.server.def;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that is cheap to update from many threads at the same time.
+ *
+ * Instead of a single contended value, each thread updates one of several stripes that are padded so that
+ * they do not share a cache line. Reading the counter sums all stripes, which is slower but rarely done.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class StripedCounter {
+
+	/**
+	 * Number of longs between two stripes so that they are on different cache lines
+	 */
+	private static final int PADDING = 8;
+
+	/**
+	 * Number of stripes (a power of two)
+	 */
+	private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+	/**
+	 * The stripes
+	 */
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * @return The index of the stripe of the current thread
+	 */
+	private static int index() {
+		final long id = Thread.currentThread().getId();
+		final int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+		return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+	}
+
+	/**
+	 * @param delta The value to add to the counter
+	 */
+	void add(final long delta) {
+		this.cells.addAndGet(index(), delta);
+	}
+
+	/**
+	 * Adds one to the counter
+	 */
+	void increment() {
+		add(1);
+	}
+
+	/**
+	 * @return The current value of the counter (not an atomic snapshot when the counter is being updated)
+	 */
+	long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; ++i) {
+			sum += this.cells.get(i * PADDING);
+		}
+		return sum;
+	}
+}
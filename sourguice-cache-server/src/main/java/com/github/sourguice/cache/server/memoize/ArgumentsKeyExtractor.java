@@ -0,0 +1,55 @@
+package com.github.sourguice.cache.server.memoize;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * The default {@link KeyExtractor}: the key of a call is all its arguments (arrays are compared by content)
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class ArgumentsKeyExtractor implements KeyExtractor {
+
+	/**
+	 * The key of a call: its arguments
+	 */
+	private static final class ArgumentsKey {
+		/**
+		 * The arguments
+		 */
+		private final Object[] arguments;
+
+		/**
+		 * The hash code of the arguments, computed once
+		 */
+		private final int hash;
+
+		/**
+		 * @param arguments The arguments
+		 */
+		ArgumentsKey(final Object[] arguments) {
+			this.arguments = arguments.clone();
+			this.hash = Arrays.deepHashCode(this.arguments);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			return obj instanceof ArgumentsKey
+				&& this.hash == ((ArgumentsKey) obj).hash
+				&& Arrays.deepEquals(this.arguments, ((ArgumentsKey) obj).arguments);
+		}
+	}
+
+	@Override
+	public Object keyOf(final Method method, final Object[] arguments) {
+		if (arguments.length == 1 && arguments[0] != null && !arguments[0].getClass().isArray()) {
+			return arguments[0];
+		}
+		return new ArgumentsKey(arguments);
+	}
+}
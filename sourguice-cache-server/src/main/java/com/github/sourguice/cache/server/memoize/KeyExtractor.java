@@ -0,0 +1,18 @@
+package com.github.sourguice.cache.server.memoize;
+
+import java.lang.reflect.Method;
+
+/**
+ * Computes the key under which the result of a {@link Memoize} method call is cached
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public interface KeyExtractor {
+
+	/**
+	 * @param method The called method
+	 * @param arguments The arguments of the call
+	 * @return The key of the call, which must implement equals and hashCode (calls with equal keys share their result)
+	 */
+	public Object keyOf(Method method, Object[] arguments);
+}
@@ -0,0 +1,35 @@
+package com.github.sourguice.cache.server.memoize;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Method annotation that indicates that the results of this method should be cached by the {@link MemoizeInterceptor}.
+ *
+ * The method must be pure for {@link #ttl()} seconds: called with the same arguments, it returns the same result.
+ * Exceptions are not cached.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@Documented
+public @interface Memoize {
+	/**
+	 * @return Duration, in seconds, during which a result is cached
+	 */
+	int ttl();
+
+	/**
+	 * @return Maximum number of results cached for this method (the least recently used results are evicted)
+	 */
+	int maxEntries() default 1000;
+
+	/**
+	 * @return The class that computes the key of a call from its arguments (instantiated by Guice)
+	 */
+	Class<? extends KeyExtractor> key() default ArgumentsKeyExtractor.class;
+}
@@ -0,0 +1,184 @@
+package com.github.sourguice.cache.server.memoize;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+import com.google.inject.matcher.Matchers;
+
+/**
+ * Interceptor that caches the results of the {@link Memoize} annotated methods.
+ *
+ * Each method has its own bounded cache, keyed by the receiver of the call and the {@link KeyExtractor} of its annotation,
+ * and its own statistics (see {@link #getStatistics(Method)}).
+ * Caches belong to the interceptor, which is bound by {@link #module()}: two injectors never share results,
+ * and neither do two instances of the same class.
+ * As a cached result holds its receiver, receivers are released only when their results are evicted.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class MemoizeInterceptor implements MethodInterceptor {
+
+	/**
+	 * The key of a result: the receiver of the call, compared by identity, and the key given by the {@link KeyExtractor}
+	 */
+	private static final class ReceiverKey {
+		/**
+		 * The receiver of the call
+		 */
+		private final Object receiver;
+
+		/**
+		 * The key given by the key extractor
+		 */
+		private final Object key;
+
+		/**
+		 * @param receiver The receiver of the call
+		 * @param key The key given by the key extractor
+		 */
+		ReceiverKey(final Object receiver, final Object key) {
+			this.receiver = receiver;
+			this.key = key;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(this.receiver) + this.key.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof ReceiverKey)) {
+				return false;
+			}
+			final ReceiverKey other = (ReceiverKey) obj;
+			return this.receiver == other.receiver && this.key.equals(other.key);
+		}
+	}
+
+	/**
+	 * The cache of each annotated method, created on its first call
+	 */
+	private final ConcurrentMap<Method, MethodCache> caches = new ConcurrentHashMap<>();
+
+	/**
+	 * The key extractors, by class
+	 */
+	private final ConcurrentMap<Class<? extends KeyExtractor>, KeyExtractor> extractors = new ConcurrentHashMap<>();
+
+	/**
+	 * The injector that creates the key extractors
+	 */
+	@Inject
+	private @CheckForNull Injector injector;
+
+	/**
+	 * The interceptor is bound, so that its statistics can be obtained by injecting it.
+	 *
+	 * @return The module to install to enable this interceptor
+	 */
+	public static Module module() {
+		return new AbstractModule() {
+			@Override protected void configure() {
+				final MemoizeInterceptor interceptor = new MemoizeInterceptor();
+				bind(MemoizeInterceptor.class).toInstance(interceptor);
+				bindInterceptor(Matchers.any(), Matchers.annotatedWith(Memoize.class), interceptor);
+			}
+		};
+	}
+
+	/**
+	 * @param method A {@link Memoize} annotated method
+	 * @return The statistics of the method, or null if it has not been called yet
+	 */
+	public @CheckForNull MemoizeStatistics getStatistics(final Method method) {
+		final MethodCache cache = this.caches.get(method);
+		return cache == null ? null : cache.statistics;
+	}
+
+	/**
+	 * @return The statistics of all {@link Memoize} annotated methods that have been called
+	 */
+	public Map<Method, MemoizeStatistics> getStatistics() {
+		final Map<Method, MemoizeStatistics> statistics = new HashMap<>();
+		for (final Map.Entry<Method, MethodCache> entry : this.caches.entrySet()) {
+			statistics.put(entry.getKey(), entry.getValue().statistics);
+		}
+		return statistics;
+	}
+
+	/**
+	 * Removes all cached results of a method
+	 *
+	 * @param method A {@link Memoize} annotated method
+	 */
+	public void clear(final Method method) {
+		final MethodCache cache = this.caches.get(method);
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * @param type The class of a key extractor
+	 * @return The key extractor
+	 */
+	private KeyExtractor extractor(final Class<? extends KeyExtractor> type) {
+		KeyExtractor extractor = this.extractors.get(type);
+		if (extractor == null) {
+			if (this.injector == null) {
+				throw new UnsupportedOperationException("MemoizeInterceptor has not been injected");
+			}
+			extractor = this.injector.getInstance(type);
+			this.extractors.put(type, extractor);
+		}
+		return extractor;
+	}
+
+	@Override
+	public @CheckForNull Object invoke(final MethodInvocation invocation) throws Throwable {
+		final Method method = invocation.getMethod();
+		final Memoize info = method.getAnnotation(Memoize.class);
+		if (info == null) {
+			return invocation.proceed();
+		}
+
+		MethodCache cache = this.caches.get(method);
+		if (cache == null) {
+			final MethodCache created = new MethodCache(info);
+			cache = this.caches.putIfAbsent(method, created);
+			if (cache == null) {
+				cache = created;
+			}
+		}
+
+		final Object key = new ReceiverKey(invocation.getThis(), extractor(info.key()).keyOf(method, invocation.getArguments()));
+		return cache.get(key, new Callable<Object>() {
+			@Override public Object call() throws Exception {
+				try {
+					return invocation.proceed();
+				}
+				catch (Exception | Error e) {
+					throw e;
+				}
+				catch (Throwable t) {
+					throw new UndeclaredThrowableException(t);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,76 @@
+package com.github.sourguice.cache.server.memoize;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a {@link Memoize} method
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class MemoizeStatistics {
+
+	/**
+	 * Number of calls served by a cached result
+	 */
+	final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * Number of calls that executed the method
+	 */
+	final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Number of calls that waited for a concurrent identical call to execute the method
+	 */
+	final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Number of results evicted because the cache was full
+	 */
+	final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor
+	 */
+	MemoizeStatistics() {}
+
+	/**
+	 * @return Number of calls served by a cached result
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return Number of calls that executed the method
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return Number of calls that waited for a concurrent identical call to execute the method (and are not counted as hits)
+	 */
+	public long getCoalescedCount() {
+		return this.coalesced.get();
+	}
+
+	/**
+	 * @return Number of results evicted because the cache was full
+	 */
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * @return Ratio of the calls that did not execute the method
+	 */
+	public double getHitRatio() {
+		final long served = this.hits.get() + this.coalesced.get();
+		final long total = served + this.misses.get();
+		if (total == 0) {
+			return 0;
+		}
+		return (double) served / total;
+	}
+}
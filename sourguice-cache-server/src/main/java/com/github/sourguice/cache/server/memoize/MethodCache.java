@@ -0,0 +1,164 @@
+package com.github.sourguice.cache.server.memoize;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * The cached results of a {@link Memoize} method: a synchronized LRU map bounded to {@link Memoize#maxEntries()} results.
+ *
+ * Concurrent misses on the same key are coalesced: the first call executes the method while the others wait for its result.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class MethodCache {
+
+	/**
+	 * Replaces a null result in the cache
+	 */
+	private static final Object NULL = new Object();
+
+	/**
+	 * A cached result
+	 */
+	private static final class Result {
+		/**
+		 * The result, or {@link MethodCache#NULL}
+		 */
+		final Object value;
+
+		/**
+		 * Date, in milliseconds, at which the result expires
+		 */
+		final long expires;
+
+		/**
+		 * @param value The result, or {@link MethodCache#NULL}
+		 * @param expires Date, in milliseconds, at which the result expires
+		 */
+		Result(final Object value, final long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	/**
+	 * Duration, in milliseconds, during which a result is cached
+	 */
+	private final long ttl;
+
+	/**
+	 * The cached results, by key
+	 */
+	private final Map<Object, Result> results;
+
+	/**
+	 * The executions in progress, by key
+	 */
+	private final ConcurrentMap<Object, FutureTask<Object>> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * The statistics of the method
+	 */
+	final MemoizeStatistics statistics = new MemoizeStatistics();
+
+	/**
+	 * Constructor
+	 *
+	 * @param info The annotation of the method
+	 */
+	@SuppressWarnings("serial")
+	MethodCache(final Memoize info) {
+		this.ttl = info.ttl() * 1000L;
+		final int maxEntries = info.maxEntries();
+		this.results = Collections.synchronizedMap(new LinkedHashMap<Object, Result>(Math.min(maxEntries, 1024) + 1, .75f, true) {
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Object, Result> eldest) {
+				if (size() > maxEntries) {
+					MethodCache.this.statistics.evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * Gets the result of a call from the cache, or executes the call
+	 *
+	 * @param key The key of the call
+	 * @param call The call
+	 * @return The result of the call
+	 * @throws Throwable Whatever the call threw
+	 */
+	@CheckForNull Object get(final Object key, final Callable<Object> call) throws Throwable {
+		final Result cached = this.results.get(key);
+		if (cached != null && cached.expires > System.currentTimeMillis()) {
+			this.statistics.hits.incrementAndGet();
+			return unwrap(cached.value);
+		}
+
+		final FutureTask<Object> task = new FutureTask<>(call);
+		final FutureTask<Object> running = this.pending.putIfAbsent(key, task);
+		if (running != null) {
+			this.statistics.coalesced.incrementAndGet();
+			return unwrap(await(running));
+		}
+
+		this.statistics.misses.incrementAndGet();
+		try {
+			// The call is executed on the caller's thread
+			task.run();
+			final Object value = await(task);
+			this.results.put(key, new Result(value, System.currentTimeMillis() + this.ttl));
+			return unwrap(value);
+		}
+		finally {
+			this.pending.remove(key, task);
+		}
+	}
+
+	/**
+	 * Removes all cached results
+	 */
+	void clear() {
+		this.results.clear();
+	}
+
+	/**
+	 * @return Number of cached results (expired results included until they are replaced or evicted)
+	 */
+	int size() {
+		return this.results.size();
+	}
+
+	/**
+	 * @param task An execution
+	 * @return The result of the execution, or {@link #NULL}
+	 * @throws Throwable Whatever the execution threw
+	 */
+	private static Object await(final FutureTask<Object> task) throws Throwable {
+		try {
+			final Object value = task.get();
+			return value == null ? NULL : value;
+		}
+		catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * @param value A cached value
+	 * @return The result it represents
+	 */
+	private static @CheckForNull Object unwrap(final Object value) {
+		return value == NULL ? null : value;
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Caching of the results of pure methods of Guice managed services
+ */
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.cache.server.memoize;
@@ -0,0 +1,525 @@
+package com.github.sourguice.cache.server.replay;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpSession;
+
+/**
+ * A synthetic GET request that can be executed by the {@link RequestReplayer} outside of the servlet container.
+ *
+ * It only holds a method, an URI, a query string and headers: it has no body, no session and no cookies.
+ * Its parameters are parsed from the query string.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class ReplayRequest extends HttpServletRequestWrapper {
+
+	/**
+	 * Any request that is replayed has this attribute set, so filters can recognize it
+	 */
+	public static final String ATTRIBUTE = "com.github.sourguice.cache.Replay";
+
+	/**
+	 * Lower case names of the headers that are not copied by {@link #copyOf(HttpServletRequest, String...)}:
+	 * credentials would make the copy act on behalf of the original user,
+	 * and conditions would make it get a 304 or a partial response instead of the whole entry.
+	 */
+	private static final Set<String> STRIPPED_HEADERS = new HashSet<>(Arrays.asList(
+		"cookie", "authorization", "proxy-authorization",
+		"if-none-match", "if-modified-since", "if-match", "if-unmodified-since", "if-range", "range"
+	));
+
+	/**
+	 * The date formats accepted by HTTP: RFC 1123, RFC 1036 and ANSI C asctime
+	 */
+	private static final String[] DATE_FORMATS = {
+		"EEE, dd MMM yyyy HH:mm:ss zzz",
+		"EEEE, dd-MMM-yy HH:mm:ss zzz",
+		"EEE MMM d HH:mm:ss yyyy"
+	};
+
+	/**
+	 * The HTTP method
+	 */
+	private final String method;
+
+	/**
+	 * The request URI (including the context path)
+	 */
+	private final String requestURI;
+
+	/**
+	 * The query string, if any
+	 */
+	private final @CheckForNull String queryString;
+
+	/**
+	 * The context path
+	 */
+	private String contextPath = "";
+
+	/**
+	 * The headers, keyed by lower case name
+	 */
+	private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+	/**
+	 * The parameters, parsed from the query string
+	 */
+	private final Map<String, String[]> parameters = new TreeMap<>();
+
+	/**
+	 * The request attributes
+	 */
+	private final Map<String, Object> attributes = new HashMap<>();
+
+	/**
+	 * The request character encoding
+	 */
+	private @CheckForNull String characterEncoding = null;
+
+	/**
+	 * The scheme (http or https)
+	 */
+	private String scheme = "http";
+
+	/**
+	 * The server name
+	 */
+	private String serverName = "localhost";
+
+	/**
+	 * The server port
+	 */
+	private int serverPort = 80;
+
+	/**
+	 * Constructor
+	 *
+	 * @param method The HTTP method (should be GET or HEAD)
+	 * @param requestURI The request URI, including the context path
+	 * @param queryString The query string, if any
+	 */
+	public ReplayRequest(final String method, final String requestURI, final @CheckForNull String queryString) {
+		super(Unsupported.create(HttpServletRequest.class, "request"));
+		this.method = method;
+		this.requestURI = requestURI;
+		this.queryString = queryString;
+		this.attributes.put(ATTRIBUTE, Boolean.TRUE);
+		parseQueryString();
+	}
+
+	/**
+	 * Creates a replay request that is a copy of the given request.
+	 * The copy does not depend on the original request, so it can be used after the original request has been completed.
+	 *
+	 * Credential (Cookie, Authorization) and conditional (If-None-Match, If-Modified-Since, Range...) headers are not copied,
+	 * unless they are explicitly kept because the response varies on them.
+	 *
+	 * @param req The request to copy
+	 * @param keptHeaders The names of the headers that must be copied even if they are credentials or conditions
+	 * @return The copy
+	 */
+	public static ReplayRequest copyOf(final HttpServletRequest req, final String... keptHeaders) {
+		final Set<String> kept = new HashSet<>();
+		for (final String name : keptHeaders) {
+			kept.add(name.toLowerCase(Locale.ENGLISH));
+		}
+		final ReplayRequest copy = new ReplayRequest(req.getMethod(), req.getRequestURI(), req.getQueryString());
+		copy.contextPath = req.getContextPath();
+		copy.scheme = req.getScheme();
+		copy.serverName = req.getServerName();
+		copy.serverPort = req.getServerPort();
+		copy.characterEncoding = req.getCharacterEncoding();
+		final Enumeration<?> names = req.getHeaderNames();
+		while (names != null && names.hasMoreElements()) {
+			final String name = (String) names.nextElement();
+			final String key = name.toLowerCase(Locale.ENGLISH);
+			if (STRIPPED_HEADERS.contains(key) && !kept.contains(key)) {
+				continue ;
+			}
+			final Enumeration<?> values = req.getHeaders(name);
+			while (values != null && values.hasMoreElements()) {
+				copy.addHeader(name, (String) values.nextElement());
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Parses the query string into the parameter map
+	 */
+	private void parseQueryString() {
+		if (this.queryString == null || this.queryString.isEmpty()) {
+			return ;
+		}
+		final Map<String, List<String>> values = new LinkedHashMap<>();
+		for (final String pair : this.queryString.split("&")) {
+			if (pair.isEmpty()) {
+				continue ;
+			}
+			final int eq = pair.indexOf('=');
+			final String name = decode(eq < 0 ? pair : pair.substring(0, eq));
+			final String value = eq < 0 ? "" : decode(pair.substring(eq + 1));
+			List<String> list = values.get(name);
+			if (list == null) {
+				list = new ArrayList<>();
+				values.put(name, list);
+			}
+			list.add(value);
+		}
+		for (final Map.Entry<String, List<String>> entry : values.entrySet()) {
+			this.parameters.put(entry.getKey(), entry.getValue().toArray(new String[entry.getValue().size()]));
+		}
+	}
+
+	/**
+	 * @param str The URL encoded string
+	 * @return The decoded string
+	 */
+	private static String decode(final String str) {
+		try {
+			return URLDecoder.decode(str, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	/**
+	 * Adds a header to this request
+	 *
+	 * @param name The name of the header
+	 * @param value The value of the header
+	 * @return itself to permit command chain
+	 */
+	public ReplayRequest addHeader(final String name, final String value) {
+		final String key = name.toLowerCase(Locale.ENGLISH);
+		List<String> list = this.headers.get(key);
+		if (list == null) {
+			list = new ArrayList<>();
+			this.headers.put(key, list);
+		}
+		list.add(value);
+		return this;
+	}
+
+	/**
+	 * @param contextPath The context path of the application
+	 * @return itself to permit command chain
+	 */
+	public ReplayRequest setContextPath(final String contextPath) {
+		this.contextPath = contextPath;
+		return this;
+	}
+
+	@Override public String getMethod() { return this.method; }
+	@Override public String getRequestURI() { return this.requestURI; }
+	@Override public @CheckForNull String getQueryString() { return this.queryString; }
+	@Override public String getContextPath() { return this.contextPath; }
+	@Override public String getServletPath() { return ""; }
+	@Override public String getPathInfo() { return this.requestURI.substring(this.contextPath.length()); }
+	@Override public @CheckForNull String getPathTranslated() { return null; }
+	@Override public String getScheme() { return this.scheme; }
+	@Override public String getServerName() { return this.serverName; }
+	@Override public int getServerPort() { return this.serverPort; }
+	@Override public boolean isSecure() { return "https".equals(this.scheme); }
+	@Override public String getProtocol() { return "HTTP/1.1"; }
+	@Override public String getRemoteAddr() { return "127.0.0.1"; }
+	@Override public String getRemoteHost() { return "localhost"; }
+	@Override public int getRemotePort() { return 0; }
+	@Override public String getLocalAddr() { return "127.0.0.1"; }
+	@Override public String getLocalName() { return "localhost"; }
+	@Override public int getLocalPort() { return this.serverPort; }
+
+	@Override
+	public StringBuffer getRequestURL() {
+		final StringBuffer url = new StringBuffer();
+		url.append(this.scheme).append("://").append(this.serverName);
+		if (this.serverPort != 80 && this.serverPort != 443) {
+			url.append(':').append(this.serverPort);
+		}
+		return url.append(this.requestURI);
+	}
+
+	@Override
+	public @CheckForNull String getHeader(final String name) {
+		final List<String> list = this.headers.get(name.toLowerCase(Locale.ENGLISH));
+		if (list == null || list.isEmpty()) {
+			return null;
+		}
+		return list.get(0);
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(final String name) {
+		final List<String> list = this.headers.get(name.toLowerCase(Locale.ENGLISH));
+		if (list == null) {
+			return Collections.enumeration(Collections.<String>emptyList());
+		}
+		return Collections.enumeration(list);
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(this.headers.keySet());
+	}
+
+	@Override
+	public int getIntHeader(final String name) {
+		final String value = getHeader(name);
+		if (value == null) {
+			return -1;
+		}
+		return Integer.parseInt(value);
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the header's value is not an HTTP date
+	 */
+	@Override
+	public long getDateHeader(final String name) {
+		final String value = getHeader(name);
+		if (value == null) {
+			return -1;
+		}
+		for (final String pattern : DATE_FORMATS) {
+			final SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			try {
+				return format.parse(value.trim()).getTime();
+			}
+			catch (ParseException e) {
+				// Tries the next format
+			}
+		}
+		throw new IllegalArgumentException("Header " + name + " is not a date: " + value);
+	}
+
+	@Override
+	public @CheckForNull String getParameter(final String name) {
+		final String[] values = this.parameters.get(name);
+		if (values == null) {
+			return null;
+		}
+		return values[0];
+	}
+
+	@Override
+	public @CheckForNull String[] getParameterValues(final String name) {
+		final String[] values = this.parameters.get(name);
+		if (values == null) {
+			return null;
+		}
+		return values.clone();
+	}
+
+	@Override
+	public Map<String, String[]> getParameterMap() {
+		return Collections.unmodifiableMap(this.parameters);
+	}
+
+	@Override
+	public Enumeration<String> getParameterNames() {
+		return Collections.enumeration(this.parameters.keySet());
+	}
+
+	@Override
+	public @CheckForNull Object getAttribute(final String name) {
+		synchronized (this.attributes) {
+			return this.attributes.get(name);
+		}
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		synchronized (this.attributes) {
+			return Collections.enumeration(new ArrayList<>(this.attributes.keySet()));
+		}
+	}
+
+	@Override
+	public void setAttribute(final String name, final @CheckForNull Object value) {
+		synchronized (this.attributes) {
+			if (value == null) {
+				this.attributes.remove(name);
+			}
+			else {
+				this.attributes.put(name, value);
+			}
+		}
+	}
+
+	@Override
+	public void removeAttribute(final String name) {
+		synchronized (this.attributes) {
+			this.attributes.remove(name);
+		}
+	}
+
+	@Override public @CheckForNull String getCharacterEncoding() { return this.characterEncoding; }
+	@Override public void setCharacterEncoding(final String env) { this.characterEncoding = env; }
+	@Override public @CheckForNull String getContentType() { return null; }
+	@Override public int getContentLength() { return -1; }
+
+	@Override
+	public ServletInputStream getInputStream() {
+		final InputStream empty = new ByteArrayInputStream(new byte[0]);
+		return new ServletInputStream() {
+			@Override public int read() throws IOException {
+				return empty.read();
+			}
+		};
+	}
+
+	@Override
+	public BufferedReader getReader() {
+		return new BufferedReader(new StringReader(""));
+	}
+
+	/**
+	 * Parses the Accept-Language headers, as the container does
+	 *
+	 * @return The accepted locales, by decreasing quality, or the default locale if none is accepted
+	 */
+	private List<Locale> locales() {
+		final List<String> values = this.headers.get("accept-language");
+		if (values == null) {
+			return Collections.singletonList(Locale.getDefault());
+		}
+		final TreeMap<Double, List<Locale>> byQuality = new TreeMap<>(Collections.reverseOrder());
+		for (final String value : values) {
+			for (final String range : value.split(",")) {
+				final String[] parts = range.split(";");
+				final String tag = parts[0].trim();
+				double quality = 1;
+				for (int i = 1; i < parts.length; ++i) {
+					final String param = parts[i].trim();
+					if (param.startsWith("q=")) {
+						try {
+							quality = Double.parseDouble(param.substring(2));
+						}
+						catch (NumberFormatException e) {
+							quality = 0;
+						}
+					}
+				}
+				if (tag.isEmpty() || "*".equals(tag) || quality <= 0) {
+					continue ;
+				}
+				List<Locale> locales = byQuality.get(Double.valueOf(quality));
+				if (locales == null) {
+					locales = new ArrayList<>();
+					byQuality.put(Double.valueOf(quality), locales);
+				}
+				locales.add(Locale.forLanguageTag(tag));
+			}
+		}
+		final List<Locale> locales = new ArrayList<>();
+		for (final List<Locale> sameQuality : byQuality.values()) {
+			locales.addAll(sameQuality);
+		}
+		if (locales.isEmpty()) {
+			locales.add(Locale.getDefault());
+		}
+		return locales;
+	}
+
+	@Override
+	public Locale getLocale() {
+		return locales().get(0);
+	}
+
+	@Override
+	public Enumeration<Locale> getLocales() {
+		return Collections.enumeration(locales());
+	}
+
+	@Override public @CheckForNull Cookie[] getCookies() { return null; }
+	@Override public @CheckForNull String getAuthType() { return null; }
+	@Override public @CheckForNull String getRemoteUser() { return null; }
+	@Override public @CheckForNull java.security.Principal getUserPrincipal() { return null; }
+	@Override public boolean isUserInRole(final String role) { return false; }
+	@Override public @CheckForNull String getRequestedSessionId() { return null; }
+	@Override public boolean isRequestedSessionIdValid() { return false; }
+	@Override public boolean isRequestedSessionIdFromCookie() { return false; }
+	@Override public boolean isRequestedSessionIdFromURL() { return false; }
+	@Override @Deprecated public boolean isRequestedSessionIdFromUrl() { return false; }
+
+	/**
+	 * A replayed request has no session
+	 *
+	 * @throws IllegalStateException if create is true
+	 */
+	@Override
+	public @CheckForNull HttpSession getSession(final boolean create) {
+		if (create) {
+			throw new IllegalStateException("A replayed request cannot create a session");
+		}
+		return null;
+	}
+
+	/**
+	 * A replayed request has no session
+	 *
+	 * @throws IllegalStateException always
+	 */
+	@Override
+	public HttpSession getSession() {
+		throw new IllegalStateException("A replayed request cannot create a session");
+	}
+
+	/**
+	 * A replayed request is not handled by the container and therefore cannot be processed asynchronously
+	 */
+	@Override
+	public boolean isAsyncSupported() {
+		return false;
+	}
+
+	@Override
+	public boolean isAsyncStarted() {
+		return false;
+	}
+
+	@Override
+	public DispatcherType getDispatcherType() {
+		return DispatcherType.REQUEST;
+	}
+
+	/**
+	 * A replayed request is not handled by the container and therefore cannot be dispatched
+	 */
+	@Override
+	public @CheckForNull RequestDispatcher getRequestDispatcher(final String path) {
+		return null;
+	}
+}
@@ -0,0 +1,171 @@
+package com.github.sourguice.cache.server.replay;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A synthetic response used by the {@link RequestReplayer}.
+ *
+ * It records the status and the headers but discards the body:
+ * a replayed request is only executed for its side effects (like filling a cache).
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class ReplayResponse extends HttpServletResponseWrapper {
+
+	/**
+	 * The response status
+	 */
+	private int status = SC_OK;
+
+	/**
+	 * The response headers, keyed by lower case name
+	 */
+	private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+	/**
+	 * The response content type
+	 */
+	private @CheckForNull String contentType = null;
+
+	/**
+	 * The response character encoding
+	 */
+	private String characterEncoding = "ISO-8859-1";
+
+	/**
+	 * The response locale
+	 */
+	private Locale locale = Locale.getDefault();
+
+	/**
+	 * The writer that discards everything
+	 */
+	private @CheckForNull PrintWriter writer = null;
+
+	/**
+	 * The stream that discards everything
+	 */
+	private @CheckForNull ServletOutputStream stream = null;
+
+	/**
+	 * Constructor
+	 */
+	public ReplayResponse() {
+		super(Unsupported.create(HttpServletResponse.class, "response"));
+	}
+
+	/**
+	 * @return The response status
+	 */
+	public int getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @param name The name of the header
+	 * @return The first value of the header, or null if it has not been set
+	 */
+	public @CheckForNull String getHeader(final String name) {
+		final List<String> list = this.headers.get(name.toLowerCase(Locale.ENGLISH));
+		if (list == null || list.isEmpty()) {
+			return null;
+		}
+		return list.get(0);
+	}
+
+	@Override
+	public PrintWriter getWriter() {
+		if (this.writer == null) {
+			this.writer = new PrintWriter(new Writer() {
+				@Override public void write(final char[] cbuf, final int off, final int len) { /* Discarded */ }
+				@Override public void flush() { /* Nothing to do */ }
+				@Override public void close() { /* Nothing to do */ }
+			});
+		}
+		return this.writer;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream() {
+		if (this.stream == null) {
+			this.stream = new ServletOutputStream() {
+				@Override public void write(final int byt) { /* Discarded */ }
+				@Override public void write(final byte[] buf, final int off, final int len) { /* Discarded */ }
+			};
+		}
+		return this.stream;
+	}
+
+	@Override public void setStatus(final int status) { this.status = status; }
+	@Override @Deprecated public void setStatus(final int status, final String message) { this.status = status; }
+	@Override public void sendError(final int status) { this.status = status; }
+	@Override public void sendError(final int status, final String message) { this.status = status; }
+
+	@Override
+	public void sendRedirect(final String location) {
+		this.status = SC_MOVED_TEMPORARILY;
+		setHeader("Location", location);
+	}
+
+	@Override
+	public void setHeader(final String name, final String value) {
+		final List<String> list = new ArrayList<>();
+		list.add(value);
+		this.headers.put(name.toLowerCase(Locale.ENGLISH), list);
+	}
+
+	@Override
+	public void addHeader(final String name, final String value) {
+		List<String> list = this.headers.get(name.toLowerCase(Locale.ENGLISH));
+		if (list == null) {
+			list = new ArrayList<>();
+			this.headers.put(name.toLowerCase(Locale.ENGLISH), list);
+		}
+		list.add(value);
+	}
+
+	@Override public void setIntHeader(final String name, final int value) { setHeader(name, String.valueOf(value)); }
+	@Override public void addIntHeader(final String name, final int value) { addHeader(name, String.valueOf(value)); }
+	@Override public void setDateHeader(final String name, final long date) { setHeader(name, String.valueOf(date)); }
+	@Override public void addDateHeader(final String name, final long date) { addHeader(name, String.valueOf(date)); }
+	@Override public boolean containsHeader(final String name) { return this.headers.containsKey(name.toLowerCase(Locale.ENGLISH)); }
+
+	@Override public @CheckForNull String getContentType() { return this.contentType; }
+	@Override public void setContentType(final String type) { this.contentType = type; }
+	@Override public String getCharacterEncoding() { return this.characterEncoding; }
+	@Override public void setCharacterEncoding(final String charset) { this.characterEncoding = charset; }
+	@Override public void setContentLength(final int len) { /* Nothing to do */ }
+	@Override public Locale getLocale() { return this.locale; }
+	@Override public void setLocale(final Locale loc) { this.locale = loc; }
+
+	@Override public void setBufferSize(final int size) { /* Nothing to do */ }
+	@Override public int getBufferSize() { return 0; }
+	@Override public void flushBuffer() throws IOException { /* Nothing to do */ }
+	@Override public void resetBuffer() { /* Nothing to do */ }
+	@Override public boolean isCommitted() { return false; }
+
+	@Override
+	public void reset() {
+		this.status = SC_OK;
+		this.headers.clear();
+	}
+
+	@Override public void addCookie(final Cookie cookie) { /* Discarded */ }
+	@Override public String encodeURL(final String url) { return url; }
+	@Override public String encodeRedirectURL(final String url) { return url; }
+	@Override @Deprecated public String encodeUrl(final String url) { return url; }
+	@Override @Deprecated public String encodeRedirectUrl(final String url) { return url; }
+}
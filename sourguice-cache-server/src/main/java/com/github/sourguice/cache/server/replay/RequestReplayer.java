@@ -0,0 +1,70 @@
+package com.github.sourguice.cache.server.replay;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.cache.server.Cache;
+import com.github.sourguice.cache.server.CacheFilter;
+import com.github.sourguice.cache.server.response.SGResponse;
+import com.google.inject.servlet.GuiceFilter;
+
+/**
+ * Executes a {@link ReplayRequest} through the Guice filter pipeline, outside of the servlet container.
+ *
+ * The request is handled exactly as the {@link CacheFilter} would: if the request asks to be cached
+ * and its response is successful, its cache is saved.
+ * This means that replaying a request is a way to (re)fill the cache from any thread.
+ *
+ * As replayed requests are not handled by the container, only Guice managed servlets and filters can serve them
+ * (request dispatching, like JSP rendering, is not available).
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class RequestReplayer {
+
+	/**
+	 * The Guice filter that gives access to the Guice filter pipeline
+	 */
+	private static final GuiceFilter GUICE_FILTER = new GuiceFilter();
+
+	/**
+	 * Chain that ends the replay of a request that has not been served by Guice
+	 */
+	private static final FilterChain NOT_FOUND = new FilterChain() {
+		@Override public void doFilter(final ServletRequest req, final ServletResponse res) throws IOException {
+			((HttpServletResponse) res).sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+	};
+
+	/**
+	 * This is a utility class
+	 */
+	private RequestReplayer() {}
+
+	/**
+	 * Executes the given request
+	 *
+	 * @param req The request to execute
+	 * @return The response of the execution (whose body has been discarded)
+	 * @throws IOException If an input or output exception occurred
+	 * @throws ServletException If the request could not be handled
+	 */
+	public static ReplayResponse replay(final ReplayRequest req) throws IOException, ServletException {
+		final ReplayResponse base = new ReplayResponse();
+		final SGResponse res = new SGResponse(base);
+
+		GUICE_FILTER.doFilter(req, res, NOT_FOUND);
+
+		final Cache cache = res.getCache();
+		if (cache != null && base.getStatus() == HttpServletResponse.SC_OK) {
+			cache.save(res);
+		}
+
+		return base;
+	}
+}
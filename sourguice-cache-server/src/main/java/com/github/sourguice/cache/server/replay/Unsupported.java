@@ -0,0 +1,42 @@
+package com.github.sourguice.cache.server.replay;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates implementations of servlet interfaces whose every method throws an {@link UnsupportedOperationException}.
+ *
+ * Used as the base object of the replay wrappers, so that any method they do not override fails explicitly
+ * instead of silently accessing a request that is not available.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class Unsupported implements InvocationHandler {
+
+	/**
+	 * Name of the replayed object, used in the exception message
+	 */
+	private final String name;
+
+	/**
+	 * @param name Name of the replayed object, used in the exception message
+	 */
+	private Unsupported(final String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Object invoke(final Object proxy, final Method method, final Object[] args) {
+		throw new UnsupportedOperationException(method.getName() + " is not available on a replayed " + this.name);
+	}
+
+	/**
+	 * @param cls The interface to implement
+	 * @param name Name of the replayed object, used in the exception message
+	 * @return An implementation of the interface whose every method throws an {@link UnsupportedOperationException}
+	 */
+	static <T> T create(final Class<T> cls, final String name) {
+		return cls.cast(Proxy.newProxyInstance(cls.getClassLoader(), new Class<?>[] { cls }, new Unsupported(name)));
+	}
+}
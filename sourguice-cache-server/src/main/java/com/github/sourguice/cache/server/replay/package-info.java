@@ -0,0 +1,5 @@
+/**
+ * Synthetic requests and responses used to execute requests outside of the servlet container (cache refresh, warm-up)
+ */
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.cache.server.replay;
@@ -46,6 +46,15 @@ public class SGResponseStream extends ServletOutputStream {
 		}
 	}
 
+	@Override
+	public void write(final byte[] buf, final int off, final int len) throws IOException {
+		this.base.write(buf, off, len);
+		this.hasWritten = true;
+		if (this.cacheStream != null) {
+			this.cacheStream.write(buf, off, len);
+		}
+	}
+
 	/**
 	 * @param cacheStream The stream of the cache
 	 */
@@ -0,0 +1,42 @@
+package com.github.sourguice.cache.server.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A remote key / value store in which a response cache can share its entries with other nodes.
+ *
+ * Reads are synchronous, as the request is waiting for them, but writes may be asynchronous:
+ * a write that is lost only means that another node will have to compute the response.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public interface CacheStore extends Closeable {
+
+	/**
+	 * Gets multiple values at once
+	 *
+	 * @param keys The keys of the values to get
+	 * @return The values that were found, by key (keys that were not found are absent)
+	 * @throws IOException If the store could not be reached
+	 */
+	public Map<String, byte[]> getMulti(Collection<String> keys) throws IOException;
+
+	/**
+	 * Sets a value, possibly asynchronously
+	 *
+	 * @param key The key of the value
+	 * @param value The value
+	 * @param ttl Time, in seconds, after which the value expires
+	 */
+	public void set(String key, byte[] value, int ttl);
+
+	/**
+	 * Deletes a value, possibly asynchronously
+	 *
+	 * @param key The key of the value
+	 */
+	public void delete(String key);
+}
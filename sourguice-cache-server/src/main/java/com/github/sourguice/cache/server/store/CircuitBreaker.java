@@ -0,0 +1,84 @@
+package com.github.sourguice.cache.server.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops calling a remote store that keeps failing, so that requests do not wait for it.
+ *
+ * After a number of consecutive failures, the circuit opens: calls are refused for a cool down period.
+ * Once this period is over, a single call is allowed to test the store:
+ * if it succeeds the circuit closes, if it fails the circuit opens for another period.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class CircuitBreaker {
+
+	/**
+	 * Number of consecutive failures that open the circuit
+	 */
+	private final int failureThreshold;
+
+	/**
+	 * Time, in milliseconds, during which an open circuit refuses calls
+	 */
+	private final long coolDown;
+
+	/**
+	 * Number of consecutive failures
+	 */
+	private final AtomicInteger failures = new AtomicInteger();
+
+	/**
+	 * Date, in milliseconds, until which calls are refused (0 when the circuit is closed)
+	 */
+	private final AtomicLong openUntil = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param failureThreshold Number of consecutive failures that open the circuit
+	 * @param coolDown Time, in milliseconds, during which an open circuit refuses calls
+	 */
+	public CircuitBreaker(final int failureThreshold, final long coolDown) {
+		this.failureThreshold = failureThreshold;
+		this.coolDown = coolDown;
+	}
+
+	/**
+	 * @return Whether a call may be made. When the cool down period is over, only one caller gets true.
+	 */
+	public boolean allow() {
+		final long until = this.openUntil.get();
+		if (until == 0) {
+			return true;
+		}
+		final long now = System.currentTimeMillis();
+		// The first caller after the cool down gets to test the store, the others wait for another period
+		return now >= until && this.openUntil.compareAndSet(until, now + this.coolDown);
+	}
+
+	/**
+	 * Records a successful call, which closes the circuit
+	 */
+	public void success() {
+		this.failures.set(0);
+		this.openUntil.set(0);
+	}
+
+	/**
+	 * Records a failed call, which opens the circuit if there were too many consecutive failures
+	 */
+	public void failure() {
+		if (this.failures.incrementAndGet() >= this.failureThreshold) {
+			this.openUntil.set(System.currentTimeMillis() + this.coolDown);
+		}
+	}
+
+	/**
+	 * @return Whether the circuit is open (calls are refused)
+	 */
+	public boolean isOpen() {
+		return this.openUntil.get() != 0;
+	}
+}
@@ -0,0 +1,585 @@
+package com.github.sourguice.cache.server.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * A {@link CacheStore} that speaks the memcached text protocol.
+ *
+ * <ul>
+ *   <li>Connections are pooled: at most {@link #setPoolSize(int)} connections are opened, and they are reused.</li>
+ *   <li>Multi-gets are pipelined: keys are sent in batches of {@value #GET_BATCH} keys, all batches are sent before any response is read.</li>
+ *   <li>Writes are asynchronous: they are queued and sent (without waiting for replies) by a background thread,
+ *       which sends all queued writes at once. When the queue is full, writes are dropped.</li>
+ *   <li>A {@link CircuitBreaker} stops calling the server when it keeps failing:
+ *       reads then find nothing and writes are dropped, which means the cache works in local-only mode.</li>
+ * </ul>
+ *
+ * As memcached keys are limited in size and cannot contain spaces nor control characters,
+ * keys are replaced by the hexadecimal SHA-1 of their UTF-8 bytes, prefixed by a namespace.
+ *
+ * The store must be configured before it is used.
+ * Once closed, the store cannot be used again: reads find nothing and writes are ignored.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class MemcachedStore implements CacheStore {
+
+	/**
+	 * Maximum number of keys in a single get command
+	 */
+	public static final int GET_BATCH = 64;
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(MemcachedStore.class.getName());
+
+	/**
+	 * The protocol charset (the protocol lines are ASCII)
+	 */
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * The UTF-8 charset, used to hash keys
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Longest relative expiration memcached accepts, in seconds: longer ones must be absolute dates
+	 */
+	private static final int MAX_RELATIVE_TTL = 30 * 24 * 3600;
+
+	/**
+	 * End of a protocol line
+	 */
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	/**
+	 * A connection to the server
+	 */
+	private static final class Connection {
+		/**
+		 * The socket
+		 */
+		final Socket socket;
+
+		/**
+		 * The socket's buffered input
+		 */
+		final InputStream in;
+
+		/**
+		 * The socket's buffered output
+		 */
+		final OutputStream out;
+
+		/**
+		 * @param socket The connected socket
+		 * @throws IOException If the socket's streams could not be opened
+		 */
+		Connection(final Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream());
+			this.out = new BufferedOutputStream(socket.getOutputStream());
+		}
+
+		/**
+		 * Closes the connection, ignoring errors
+		 */
+		void close() {
+			try {
+				this.socket.close();
+			}
+			catch (IOException e) {
+				// Nothing to do
+			}
+		}
+	}
+
+	/**
+	 * The address of the server
+	 */
+	private final InetSocketAddress address;
+
+	/**
+	 * Prefix of all keys
+	 */
+	private String namespace = "sg:";
+
+	/**
+	 * Maximum number of open connections
+	 */
+	private int poolSize = 4;
+
+	/**
+	 * Connection and read timeout, in milliseconds
+	 */
+	private int timeout = 200;
+
+	/**
+	 * Maximum number of writes waiting to be sent
+	 */
+	private int writeQueueSize = 1024;
+
+	/**
+	 * The circuit breaker
+	 */
+	private CircuitBreaker breaker = new CircuitBreaker(5, 5000);
+
+	/**
+	 * Idle connections
+	 */
+	private @CheckForNull BlockingQueue<Connection> idle = null;
+
+	/**
+	 * Permits to open connections
+	 */
+	private @CheckForNull Semaphore permits = null;
+
+	/**
+	 * Writes waiting to be sent
+	 */
+	private @CheckForNull BlockingQueue<byte[]> writes = null;
+
+	/**
+	 * The thread that sends the writes
+	 */
+	private @CheckForNull Thread writer = null;
+
+	/**
+	 * Whether the store has been closed, after which it is never started again
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Number of writes that were dropped (full queue, open circuit or failure)
+	 */
+	private final AtomicLong droppedWrites = new AtomicLong();
+
+	/**
+	 * Number of writes that are queued or being sent
+	 */
+	private final AtomicLong pendingWrites = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param host The host of the memcached server
+	 * @param port The port of the memcached server
+	 */
+	public MemcachedStore(final String host, final int port) {
+		this.address = new InetSocketAddress(host, port);
+	}
+
+	/**
+	 * @param namespace Prefix of all keys, which allows multiple applications to share a server
+	 * @return itself to permit command chain
+	 */
+	public MemcachedStore setNamespace(final String namespace) {
+		this.namespace = namespace;
+		return this;
+	}
+
+	/**
+	 * @param poolSize Maximum number of open connections
+	 * @return itself to permit command chain
+	 */
+	public MemcachedStore setPoolSize(final int poolSize) {
+		this.poolSize = poolSize;
+		return this;
+	}
+
+	/**
+	 * @param timeout Connection and read timeout, in milliseconds
+	 * @return itself to permit command chain
+	 */
+	public MemcachedStore setTimeout(final int timeout) {
+		this.timeout = timeout;
+		return this;
+	}
+
+	/**
+	 * @param writeQueueSize Maximum number of writes waiting to be sent
+	 * @return itself to permit command chain
+	 */
+	public MemcachedStore setWriteQueueSize(final int writeQueueSize) {
+		this.writeQueueSize = writeQueueSize;
+		return this;
+	}
+
+	/**
+	 * @param breaker The circuit breaker that protects the calls to the server
+	 * @return itself to permit command chain
+	 */
+	public MemcachedStore setCircuitBreaker(final CircuitBreaker breaker) {
+		this.breaker = breaker;
+		return this;
+	}
+
+	/**
+	 * @return The circuit breaker that protects the calls to the server
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return this.breaker;
+	}
+
+	/**
+	 * @return Number of writes that were dropped (full queue, open circuit or failure)
+	 */
+	public long getDroppedWriteCount() {
+		return this.droppedWrites.get();
+	}
+
+	/**
+	 * Creates the pool and the writer thread on first use, unless the store has been closed
+	 */
+	private synchronized void start() {
+		if (this.idle != null || this.closed) {
+			return ;
+		}
+		this.idle = new ArrayBlockingQueue<>(this.poolSize);
+		this.permits = new Semaphore(this.poolSize);
+		this.writes = new ArrayBlockingQueue<>(this.writeQueueSize);
+		final Thread thread = new Thread(new Runnable() {
+			@Override public void run() {
+				sendWrites();
+			}
+		}, "SourGuice-memcached-writer");
+		thread.setDaemon(true);
+		thread.start();
+		this.writer = thread;
+	}
+
+	/**
+	 * @param key A cache key
+	 * @return The memcached key
+	 */
+	private String memcachedKey(final String key) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF8));
+			final StringBuilder hex = new StringBuilder(this.namespace.length() + digest.length * 2);
+			hex.append(this.namespace);
+			for (final byte b : digest) {
+				hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening one if none is idle
+	 *
+	 * @return The connection
+	 * @throws IOException If no connection could be obtained
+	 */
+	private Connection borrow() throws IOException {
+		start();
+		final Semaphore sem = this.permits;
+		final BlockingQueue<Connection> queue = this.idle;
+		if (sem == null || queue == null) {
+			throw new IOException("Store is closed");
+		}
+		try {
+			if (!sem.tryAcquire(this.timeout, TimeUnit.MILLISECONDS)) {
+				throw new IOException("No memcached connection available");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a memcached connection", e);
+		}
+		final Connection idleConnection = queue.poll();
+		if (idleConnection != null) {
+			return idleConnection;
+		}
+		try {
+			final Socket socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(this.timeout);
+			socket.connect(this.address, this.timeout);
+			return new Connection(socket);
+		}
+		catch (IOException e) {
+			sem.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives a connection back to the pool
+	 *
+	 * @param connection The connection
+	 * @param healthy Whether the connection can be reused (false if an error occurred on it)
+	 */
+	private void release(final Connection connection, final boolean healthy) {
+		final BlockingQueue<Connection> queue = this.idle;
+		if (!healthy || queue == null || !queue.offer(connection)) {
+			connection.close();
+		}
+		final Semaphore sem = this.permits;
+		if (sem != null) {
+			sem.release();
+		}
+	}
+
+	@Override
+	public Map<String, byte[]> getMulti(final Collection<String> keys) throws IOException {
+		final Map<String, byte[]> result = new HashMap<>();
+		if (keys.isEmpty() || this.closed || !this.breaker.allow()) {
+			return result;
+		}
+
+		final Map<String, String> byMemcachedKey = new HashMap<>();
+		final List<String> memcachedKeys = new ArrayList<>(keys.size());
+		for (final String key : keys) {
+			final String memcachedKey = memcachedKey(key);
+			if (byMemcachedKey.put(memcachedKey, key) == null) {
+				memcachedKeys.add(memcachedKey);
+			}
+		}
+
+		final Connection connection;
+		try {
+			connection = borrow();
+		}
+		catch (IOException e) {
+			this.breaker.failure();
+			throw e;
+		}
+		boolean healthy = false;
+		try {
+			// Pipelining: all batches are sent before any response is read
+			int batches = 0;
+			for (int i = 0; i < memcachedKeys.size(); i += GET_BATCH) {
+				final StringBuilder command = new StringBuilder("get");
+				for (final String memcachedKey : memcachedKeys.subList(i, Math.min(i + GET_BATCH, memcachedKeys.size()))) {
+					command.append(' ').append(memcachedKey);
+				}
+				connection.out.write(command.toString().getBytes(ASCII));
+				connection.out.write(CRLF);
+				++batches;
+			}
+			connection.out.flush();
+
+			while (batches > 0) {
+				final String line = readLine(connection.in);
+				if (line.equals("END")) {
+					--batches;
+				}
+				else if (line.startsWith("VALUE ")) {
+					final String[] parts = line.split(" ");
+					final byte[] value = readBytes(connection.in, Integer.parseInt(parts[3]));
+					readLine(connection.in);
+					final String key = byMemcachedKey.get(parts[1]);
+					if (key != null) {
+						result.put(key, value);
+					}
+				}
+				else {
+					throw new IOException("Unexpected memcached response: " + line);
+				}
+			}
+			healthy = true;
+			this.breaker.success();
+			return result;
+		}
+		catch (IOException | RuntimeException e) {
+			this.breaker.failure();
+			throw e;
+		}
+		finally {
+			release(connection, healthy);
+		}
+	}
+
+	@Override
+	public void set(final String key, final byte[] value, final int ttl) {
+		final long exptime = ttl <= MAX_RELATIVE_TTL ? ttl : System.currentTimeMillis() / 1000 + ttl;
+		final ByteArrayOutputStream command = new ByteArrayOutputStream(value.length + 96);
+		final byte[] line = ("set " + memcachedKey(key) + " 0 " + exptime + " " + value.length + " noreply\r\n").getBytes(ASCII);
+		command.write(line, 0, line.length);
+		command.write(value, 0, value.length);
+		command.write(CRLF, 0, CRLF.length);
+		enqueue(command.toByteArray());
+	}
+
+	@Override
+	public void delete(final String key) {
+		enqueue(("delete " + memcachedKey(key) + " noreply\r\n").getBytes(ASCII));
+	}
+
+	/**
+	 * Queues a write, or drops it if the circuit is open or the queue is full
+	 *
+	 * @param command The write command
+	 */
+	private void enqueue(final byte[] command) {
+		if (this.closed) {
+			return ;
+		}
+		start();
+		final BlockingQueue<byte[]> queue = this.writes;
+		this.pendingWrites.incrementAndGet();
+		if (queue == null || this.breaker.isOpen() || !queue.offer(command)) {
+			this.pendingWrites.decrementAndGet();
+			this.droppedWrites.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Loop of the writer thread: sends all queued writes at once, on a single connection
+	 */
+	private void sendWrites() {
+		final List<byte[]> batch = new ArrayList<>();
+		while (true) {
+			final BlockingQueue<byte[]> queue = this.writes;
+			if (queue == null) {
+				return ;
+			}
+			try {
+				batch.add(queue.take());
+			}
+			catch (InterruptedException e) {
+				return ;
+			}
+			queue.drainTo(batch);
+			if (!this.breaker.allow()) {
+				this.droppedWrites.addAndGet(batch.size());
+				this.pendingWrites.addAndGet(-batch.size());
+				batch.clear();
+				continue ;
+			}
+			Connection connection = null;
+			boolean healthy = false;
+			try {
+				connection = borrow();
+				for (final byte[] command : batch) {
+					connection.out.write(command);
+				}
+				connection.out.flush();
+				healthy = true;
+				this.breaker.success();
+			}
+			catch (IOException e) {
+				this.breaker.failure();
+				this.droppedWrites.addAndGet(batch.size());
+				LOGGER.log(Level.FINE, "Could not write to memcached", e);
+			}
+			finally {
+				if (connection != null) {
+					release(connection, healthy);
+				}
+				this.pendingWrites.addAndGet(-batch.size());
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * Waits for all queued writes to be sent (or dropped)
+	 *
+	 * @param timeoutMillis The maximum time to wait, in milliseconds
+	 * @return Whether no write is pending anymore
+	 * @throws InterruptedException If the current thread was interrupted while waiting
+	 */
+	public boolean flush(final long timeoutMillis) throws InterruptedException {
+		final long end = System.currentTimeMillis() + timeoutMillis;
+		while (this.pendingWrites.get() > 0 && System.currentTimeMillis() < end) {
+			Thread.sleep(5);
+		}
+		return this.pendingWrites.get() == 0;
+	}
+
+	/**
+	 * Reads a protocol line
+	 *
+	 * @param in The input
+	 * @return The line, without its CRLF
+	 * @throws IOException If the line could not be read
+	 */
+	private static String readLine(final InputStream in) throws IOException {
+		final StringBuilder line = new StringBuilder(64);
+		int c;
+		while ((c = in.read()) != '\r') {
+			if (c < 0) {
+				throw new EOFException("Memcached connection closed");
+			}
+			line.append((char) c);
+		}
+		if (in.read() != '\n') {
+			throw new IOException("Malformed memcached line: " + line);
+		}
+		return line.toString();
+	}
+
+	/**
+	 * @param in The input
+	 * @param length Number of bytes to read
+	 * @return The bytes
+	 * @throws IOException If the bytes could not be read
+	 */
+	private static byte[] readBytes(final InputStream in, final int length) throws IOException {
+		final byte[] bytes = new byte[length];
+		int offset = 0;
+		while (offset < length) {
+			final int read = in.read(bytes, offset, length - offset);
+			if (read < 0) {
+				throw new EOFException("Memcached connection closed");
+			}
+			offset += read;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Closes the connections and stops the writer thread.
+	 * Later calls to the store are ignored.
+	 */
+	@Override
+	public synchronized void close() {
+		this.closed = true;
+		final Thread thread = this.writer;
+		if (thread != null) {
+			thread.interrupt();
+		}
+		final BlockingQueue<Connection> queue = this.idle;
+		if (queue != null) {
+			Connection connection;
+			while ((connection = queue.poll()) != null) {
+				connection.close();
+			}
+		}
+		this.writer = null;
+		this.writes = null;
+		this.idle = null;
+		this.permits = null;
+	}
+}
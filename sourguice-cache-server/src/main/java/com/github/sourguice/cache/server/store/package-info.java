@@ -0,0 +1,5 @@
+/**
+ * Remote stores that can back a response cache (shared between the nodes of a cluster)
+ */
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.cache.server.store;
@@ -1,25 +1,70 @@
 package sourguice.test.cache.server;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.testing.HttpTester;
 import org.eclipse.jetty.testing.ServletTester;
 import org.testng.annotations.Test;
 
+import sourguice.test.mvc.AsyncSupportFilter;
 import sourguice.test.mvc.TestBase;
 
 import com.github.sourguice.SourGuice;
+import com.github.sourguice.annotation.request.RequestHeader;
+import com.github.sourguice.annotation.request.RequestParam;
 import com.github.sourguice.cache.server.CacheFilter;
 import com.github.sourguice.cache.server.CacheService;
+import com.github.sourguice.cache.server.bus.InvalidationBus;
+import com.github.sourguice.cache.server.bus.InvalidationListener;
+import com.github.sourguice.cache.server.bus.InvalidationTransport;
+import com.github.sourguice.cache.server.bus.LocalTransport;
+import com.github.sourguice.cache.server.bus.TcpTransport;
+import com.github.sourguice.cache.server.bus.UdpTransport;
 import com.github.sourguice.cache.server.def.CacheInMemory;
+import com.github.sourguice.cache.server.def.CachedFragment;
+import com.github.sourguice.cache.server.def.CacheStatistics;
 import com.github.sourguice.cache.server.def.InMemoryCache;
 import com.github.sourguice.cache.server.def.InMemoryCacheFilter;
+import com.github.sourguice.cache.server.def.InMemoryCacheWarmer;
+import com.github.sourguice.cache.server.memoize.Memoize;
+import com.github.sourguice.cache.server.memoize.MemoizeInterceptor;
+import com.github.sourguice.cache.server.memoize.MemoizeStatistics;
+import com.github.sourguice.cache.server.replay.ReplayRequest;
+import com.github.sourguice.cache.server.store.CircuitBreaker;
+import com.github.sourguice.cache.server.store.MemcachedStore;
 import com.github.sourguice.mvc.SourGuiceMvc;
+import com.github.sourguice.mvc.annotation.request.PathVariable;
 import com.github.sourguice.mvc.annotation.request.RequestMapping;
 import com.github.sourguice.mvc.annotation.request.Writes;
+import com.github.sourguice.mvc.async.AsyncResult;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
 import com.google.inject.Module;
 import com.google.inject.Singleton;
 import com.google.inject.servlet.ServletModule;
@@ -37,6 +82,20 @@ public class CacheTest extends TestBase {
     	static int manualByteHit = 0;
     	static int autoHit = 0;
     	static int removeHit = 0;
+    	static int coalesceHit = 0;
+    	static int staleHit = 0;
+    	static int varyHit = 0;
+    	static int searchHit = 0;
+    	static int productHit = 0;
+    	static int countedHit = 0;
+    	static int bigHit = 0;
+    	static int gzipHit = 0;
+    	static int warmHit = 0;
+    	static int conditionalHit = 0;
+    	static int remoteHit = 0;
+    	static int busHit = 0;
+    	static int fragmentHit = 0;
+    	static int asyncHit = 0;
 
 		@RequestMapping(value = "/__startup")
 		public void startup() { /* startup */ }
@@ -79,6 +138,178 @@ public class CacheTest extends TestBase {
 		public void remove_2() {
 			InMemoryCache.remove("/remove_1");
 		}
+
+		@RequestMapping(value = "/coalesce")
+		@CacheInMemory(seconds = 1)
+		@Writes
+		public String coalesce() throws InterruptedException {
+			Thread.sleep(300);
+			++coalesceHit;
+
+			return "Salomon:O";
+		}
+
+		@RequestMapping(value = "/stale")
+		@CacheInMemory(seconds = 1, grace = 60)
+		@Writes
+		public String stale() {
+			++staleHit;
+
+			return "Salomon:" + staleHit;
+		}
+
+		@RequestMapping(value = "/vary")
+		@CacheInMemory(seconds = 2 * 60, headers = "Accept-Language")
+		@Writes
+		public String vary(@RequestHeader(value = "Accept-Language", defaultValue = "none") String lang) {
+			++varyHit;
+
+			return "Salomon:" + lang;
+		}
+
+		@RequestMapping(value = "/search")
+		@CacheInMemory(seconds = 2 * 60, params = "*")
+		@Writes
+		public String search(@RequestParam("q") String q, @RequestParam(value = "page", defaultValue = "1") String page) {
+			++searchHit;
+
+			return "Salomon:" + q + ":" + page;
+		}
+
+		@RequestMapping(value = "/product/{id}/{page}")
+		@CacheInMemory(seconds = 2 * 60, tags = "products")
+		public void product(CacheService cacheService, @PathVariable("id") String id) throws IOException {
+			cacheService.<InMemoryCache>cacheRequest().addTags("product:" + id);
+			++productHit;
+		}
+
+		@RequestMapping(value = "/counted")
+		@CacheInMemory(seconds = 2 * 60)
+		@Writes
+		public String counted() {
+			++countedHit;
+
+			return "Salomon:S";
+		}
+
+		@RequestMapping(value = "/gzip")
+		@CacheInMemory(seconds = 2 * 60, compress = true)
+		@Writes
+		public String gzip(HttpServletResponse res) {
+			res.setContentType("text/plain; charset=ISO-8859-1");
+			++gzipHit;
+
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 100; ++i) {
+				sb.append("Salomon:Z");
+			}
+			return sb.toString();
+		}
+
+		@RequestMapping(value = "/warm")
+		@CacheInMemory(seconds = 2 * 60, headers = "Accept-Language")
+		@Writes
+		public String warm(@RequestHeader(value = "Accept-Language", defaultValue = "none") String lang) {
+			++warmHit;
+
+			return "Salomon:W:" + lang;
+		}
+
+		@RequestMapping(value = "/conditional")
+		@CacheInMemory(seconds = 2 * 60)
+		@Writes
+		public String conditional() {
+			++conditionalHit;
+
+			return "Salomon:E";
+		}
+
+		@RequestMapping(value = "/head")
+		@CacheInMemory(seconds = 2 * 60)
+		@Writes
+		public String head() {
+			return "Salomon:H";
+		}
+
+		@RequestMapping(value = "/remote")
+		@CacheInMemory(seconds = 2 * 60)
+		@Writes
+		public String remote() {
+			++remoteHit;
+
+			return "Salomon:R";
+		}
+
+		@RequestMapping(value = "/bus")
+		@CacheInMemory(seconds = 2 * 60)
+		@Writes
+		public String bus() {
+			++busHit;
+
+			return "Salomon:B";
+		}
+
+		@RequestMapping(value = "/fragment")
+		public void fragment(@RequestParam("user") String user, @RequestParam("category") final String category, Writer out) throws IOException {
+			out.write("Hello " + user + "|");
+			new CachedFragment("menu", category).setExpiration(2 * 60).addTags("menus").render(out, new CachedFragment.Renderer() {
+				@Override public void render(Writer fragmentOut) throws IOException {
+					++fragmentHit;
+					fragmentOut.write("Menu:" + category);
+				}
+			});
+			out.write("|Bye " + user);
+		}
+
+		@RequestMapping(value = "/async")
+		@CacheInMemory(seconds = 2 * 60)
+		@Writes
+		public AsyncResult<String> async() {
+			++asyncHit;
+
+			final AsyncResult<String> result = new AsyncResult<>();
+			new Thread() {
+				@Override public void run() {
+					try {
+						Thread.sleep(50);
+					}
+					catch (InterruptedException e) {
+						return ;
+					}
+					result.set("Salomon:Y");
+				}
+			}.start();
+			return result;
+		}
+
+		@RequestMapping(value = "/big")
+		public void big(CacheService cacheService, OutputStream stream) throws IOException {
+			cacheService.<InMemoryCache>cacheRequest().setExpiration(2 * 60); // 2 minutes
+
+			++bigHit;
+
+			byte[] chunk = new byte[1000];
+			for (int i = 0; i < 300; ++i) {
+				stream.write(chunk);
+			}
+		}
+    }
+
+    public static class MemoService {
+    	static final AtomicInteger calls = new AtomicInteger();
+
+    	@Memoize(ttl = 60, maxEntries = 2)
+    	public String lookup(int id, String... names) throws InterruptedException {
+    		calls.incrementAndGet();
+    		Thread.sleep(100);
+    		return id + ":" + Arrays.toString(names);
+    	}
+
+    	@Memoize(ttl = 60)
+    	public String nothing() {
+    		calls.incrementAndGet();
+    		return null;
+    	}
     }
 
     // ===================== MODULE =====================
@@ -89,6 +320,8 @@ public class CacheTest extends TestBase {
         	SourGuiceMvc mvc = new SourGuiceMvc(new SourGuice());
         	mvc.control("/*").with(Controller.class);
             install(InMemoryCache.initialize(16));
+            InMemoryCache.setMaxEntrySize(256 * 1024);
+            install(InMemoryCache.statisticsModule("/__cache_stats"));
             install(mvc.module());
         }
     }
@@ -98,6 +331,11 @@ public class CacheTest extends TestBase {
         return new ControllerModule();
     }
 
+	@Override
+	protected boolean isAsyncSupported() {
+		return true;
+	}
+
 	@Override
 	protected void addServletTesterFilter(ServletTester tester) {
 		tester.addFilter(InMemoryCacheFilter.class, "/*", 0);
@@ -156,5 +394,663 @@ public class CacheTest extends TestBase {
 			getResponse(makeRequest("GET", "/remove_2"));
 		}
 	}
-}
 
+	public void getCoalesce() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			getResponse(makeRequest("GET", "/coalesce"));
+			Thread.sleep(1100); // Waits for the entry to expire
+
+			final int hit = Controller.coalesceHit;
+			final HttpTester[] responses = new HttpTester[3];
+			final Thread[] threads = new Thread[responses.length];
+			for (int i = 0; i < threads.length; ++i) {
+				final int n = i;
+				threads[i] = new Thread() {
+					@Override public void run() {
+						try {
+							responses[n] = getResponse(makeRequest("GET", "/coalesce"));
+						}
+						catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			for (HttpTester response : responses) {
+				assertEquals(response.getStatus(), 200);
+				assertEquals(response.getContent(), "Salomon:O");
+			}
+			assertEquals(Controller.coalesceHit, hit + 1);
+		}
+	}
+
+	// The response of a suspended request is saved once the request completes
+	public void getAsync() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			InMemoryCache.remove("/async");
+			final int hit = Controller.asyncHit;
+
+			HttpTester response = getResponse(makeRequest("GET", "/async"));
+			assertSuspended(response);
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent(), "Salomon:Y");
+
+			response = getResponse(makeRequest("GET", "/async"));
+			assertEquals(response.getHeader(AsyncSupportFilter.SUSPENDED_HEADER), null);
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent(), "Salomon:Y");
+			assertEquals(Controller.asyncHit, hit + 1);
+		}
+	}
+
+	// Requests that miss while a suspended request computes the entry wait for it to complete
+	public void getAsyncCoalesce() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			InMemoryCache.remove("/async");
+			final int hit = Controller.asyncHit;
+
+			final HttpTester[] responses = new HttpTester[3];
+			final Thread[] threads = new Thread[responses.length];
+			for (int i = 0; i < threads.length; ++i) {
+				final int n = i;
+				threads[i] = new Thread() {
+					@Override public void run() {
+						try {
+							responses[n] = getResponse(makeRequest("GET", "/async"));
+						}
+						catch (Exception e) {
+							throw new RuntimeException(e);
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			int suspended = 0;
+			for (HttpTester response : responses) {
+				assertEquals(response.getStatus(), 200);
+				assertEquals(response.getContent(), "Salomon:Y");
+				if (response.getHeader(AsyncSupportFilter.SUSPENDED_HEADER) != null) {
+					++suspended;
+				}
+			}
+			assertEquals(suspended, 1);
+			assertEquals(Controller.asyncHit, hit + 1);
+		}
+	}
+
+	public void getStale() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			getResponse(makeRequest("GET", "/stale"));
+			Thread.sleep(1100); // Waits for the entry to expire
+
+			final int hit = Controller.staleHit;
+			final long refreshes = InMemoryCache.getRefreshStatistics().getSuccessCount();
+
+			HttpTester response = getResponse(makeRequest("GET", "/stale"));
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent(), "Salomon:" + hit);
+
+			for (int i = 0; i < 50 && InMemoryCache.getRefreshStatistics().getSuccessCount() == refreshes; ++i) {
+				Thread.sleep(20);
+			}
+			assertEquals(Controller.staleHit, hit + 1);
+			assertEquals(InMemoryCache.getRefreshStatistics().getSuccessCount(), refreshes + 1);
+
+			response = getResponse(makeRequest("GET", "/stale"));
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent(), "Salomon:" + (hit + 1));
+			assertEquals(Controller.staleHit, hit + 1);
+		}
+	}
+
+	public void replayCopy() throws Exception {
+		ReplayRequest original = new ReplayRequest("GET", "/vary", "q=1")
+			.addHeader("Accept-Language", "fr")
+			.addHeader("Cookie", "session=secret")
+			.addHeader("Authorization", "Basic c2Fsb21vbg==")
+			.addHeader("If-None-Match", "\"etag\"")
+			.addHeader("If-Modified-Since", "Sun, 06 Nov 1994 08:49:37 GMT");
+
+		ReplayRequest copy = ReplayRequest.copyOf(original, "Authorization");
+		assertEquals(copy.getHeader("Accept-Language"), "fr");
+		assertEquals(copy.getHeader("Authorization"), "Basic c2Fsb21vbg==");
+		assertEquals(copy.getHeader("Cookie"), null);
+		assertEquals(copy.getHeader("If-None-Match"), null);
+		assertEquals(copy.getDateHeader("If-Modified-Since"), -1);
+		assertEquals(copy.getParameter("q"), "1");
+		assertEquals(copy.getLocale(), Locale.FRENCH);
+
+		ReplayRequest languages = new ReplayRequest("GET", "/", null).addHeader("Accept-Language", "en;q=0.5, fr-FR, *;q=0.1, de;q=0").addHeader("Accept-Language", "es;q=0.8");
+		assertEquals(languages.getLocale(), Locale.FRANCE);
+		assertEquals(Collections.list(languages.getLocales()), Arrays.asList(Locale.FRANCE, new Locale("es"), Locale.ENGLISH));
+		assertEquals(new ReplayRequest("GET", "/", null).getLocale(), Locale.getDefault());
+
+		assertEquals(original.getDateHeader("If-Modified-Since"), 784111777000L);
+		assertEquals(new ReplayRequest("GET", "/", null).addHeader("Date", "Sunday, 06-Nov-94 08:49:37 GMT").getDateHeader("Date"), 784111777000L);
+		assertEquals(new ReplayRequest("GET", "/", null).addHeader("Date", "Sun Nov  6 08:49:37 1994").getDateHeader("Date"), 784111777000L);
+		try {
+			new ReplayRequest("GET", "/", null).addHeader("Date", "yesterday").getDateHeader("Date");
+			throw new AssertionError("Unparsable date accepted");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void getVary() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final int hit = Controller.varyHit;
+			for (String lang : new String[] { "fr", "en", "fr", "en" }) {
+				HttpTester request = makeRequest("GET", "/vary");
+				request.setHeader("Accept-Language", lang);
+				HttpTester response = getResponse(request);
+				assertEquals(response.getStatus(), 200);
+				assertEquals(response.getContent(), "Salomon:" + lang);
+			}
+			HttpTester response = getResponse(makeRequest("GET", "/vary"));
+			assertEquals(response.getContent(), "Salomon:none");
+			response = getResponse(makeRequest("GET", "/vary"));
+			assertEquals(response.getContent(), "Salomon:none");
+
+			if (hit == 0) {
+				assertEquals(Controller.varyHit, 3);
+			}
+			else {
+				assertEquals(Controller.varyHit, hit);
+			}
+		}
+	}
+
+	public void getSearch() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final int hit = Controller.searchHit;
+			final String[][] queries = {
+				{ "/search?q=a", "Salomon:a:1" },
+				{ "/search?q=b", "Salomon:b:1" },
+				{ "/search?q=a&page=2", "Salomon:a:2" },
+				{ "/search?page=2&q=a", "Salomon:a:2" },
+				{ "/search?q=b&utm_source=mail", "Salomon:b:1" },
+				{ "/search?q=a", "Salomon:a:1" },
+			};
+			for (String[] query : queries) {
+				HttpTester response = getResponse(makeRequest("GET", query[0]));
+				assertEquals(response.getStatus(), 200);
+				assertEquals(response.getContent(), query[1]);
+			}
+
+			if (hit == 0) {
+				assertEquals(Controller.searchHit, 3);
+			}
+			else {
+				assertEquals(Controller.searchHit, hit);
+			}
+		}
+	}
+
+	public void getInvalidate() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final String[] uris = { "/product/1/detail", "/product/1/reviews", "/product/2/detail" };
+			for (String uri : uris) {
+				getResponse(makeRequest("GET", uri));
+			}
+			int hit = Controller.productHit;
+			for (String uri : uris) {
+				getResponse(makeRequest("GET", uri));
+			}
+			assertEquals(Controller.productHit, hit);
+
+			assertEquals(InMemoryCache.invalidateTag("product:1"), 2);
+			for (String uri : uris) {
+				getResponse(makeRequest("GET", uri));
+			}
+			assertEquals(Controller.productHit, hit + 2);
+
+			assertEquals(InMemoryCache.invalidatePrefix("/product/2/"), 1);
+			getResponse(makeRequest("GET", "/product/2/detail"));
+			assertEquals(Controller.productHit, hit + 3);
+
+			assertEquals(InMemoryCache.invalidateTag("products"), 3);
+			assertEquals(InMemoryCache.invalidateTag("products"), 0);
+		}
+	}
+
+	public void getStatistics() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			getResponse(makeRequest("GET", "/counted"));
+			CacheStatistics stats = InMemoryCache.getStatistics("/counted");
+			assertTrue(stats != null);
+			final long hits = stats.getHitCount();
+			getResponse(makeRequest("GET", "/counted"));
+			getResponse(makeRequest("GET", "/counted"));
+			assertEquals(stats.getHitCount(), hits + 2);
+			assertEquals(stats.getSaveCount(), 1);
+			assertEquals(stats.getBytes(), "Salomon:S".length() * 2);
+			assertEquals(Controller.countedHit, 1);
+
+			HttpTester response = getResponse(makeRequest("GET", "/__cache_stats"));
+			assertEquals(response.getStatus(), 200);
+			assertTrue(response.getContent().contains("\"/counted\":{\"hits\":" + (hits + 2) + ","), response.getContent());
+
+			InMemoryCache.registerMBeans();
+			try {
+				Object jmxHits = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName("com.github.sourguice.cache:type=InMemoryCache,route=\"/counted\""), "HitCount");
+				assertEquals(jmxHits, Long.valueOf(hits + 2));
+			}
+			finally {
+				InMemoryCache.unregisterMBeans();
+			}
+		}
+	}
+
+	public void getOversized() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final int hit = Controller.bigHit;
+			HttpTester response = getResponse(makeRequest("GET", "/big"));
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent().length(), 300 * 1000);
+			getResponse(makeRequest("GET", "/big"));
+			assertEquals(Controller.bigHit, hit + 2);
+			assertTrue(InMemoryCache.getStatistics("/big").getOversizedCount() >= 2);
+		}
+	}
+
+	// The tester decodes the raw response as ISO-8859-1 but then re-encodes its body in UTF-8 (and may truncate binary bodies)
+	private static byte[] rawContent(HttpTester response) throws IOException {
+		return new String(response.getContent().getBytes("ISO-8859-1"), "UTF-8").getBytes("ISO-8859-1");
+	}
+
+	public void getGzip() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			StringBuilder expected = new StringBuilder();
+			for (int i = 0; i < 100; ++i) {
+				expected.append("Salomon:Z");
+			}
+
+			HttpTester response = getResponse(makeRequest("GET", "/gzip"));
+			assertEquals(response.getContent(), expected.toString());
+			final int hit = Controller.gzipHit;
+
+			HttpTester request = makeRequest("GET", "/gzip");
+			request.setHeader("Accept-Encoding", "deflate, gzip;q=0.8");
+			response = getResponse(request);
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getHeader("Content-Encoding"), "gzip");
+			assertEquals(response.getHeader("Vary"), "Accept-Encoding");
+			assertTrue(response.getContent().length() < expected.length());
+			byte[] raw = rawContent(response);
+			assertEquals(raw[0], (byte) 0x1f); // gzip magic number
+			assertEquals(raw[1], (byte) 0x8b);
+
+			request = makeRequest("GET", "/gzip");
+			request.setHeader("Accept-Encoding", "gzip;q=0");
+			response = getResponse(request);
+			assertEquals(response.getHeader("Content-Encoding"), null);
+			assertEquals(response.getContent(), expected.toString());
+
+			assertEquals(Controller.gzipHit, hit);
+		}
+	}
+
+	public void getWarm() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final int hit = Controller.warmHit;
+			InMemoryCacheWarmer warmer = new InMemoryCacheWarmer(2)
+				.addManifest(new StringReader("# Warm-up\n/warm\n\n/warm\tAccept-Language: fr\n"));
+			assertTrue(warmer.warm(5, TimeUnit.SECONDS));
+			assertTrue(warmer.isReady());
+			assertEquals(warmer.getWarmedCount(), 2);
+			assertEquals(Controller.warmHit, hit + 2);
+
+			HttpTester response = getResponse(makeRequest("GET", "/warm"));
+			assertEquals(response.getContent(), "Salomon:W:none");
+			HttpTester request = makeRequest("GET", "/warm");
+			request.setHeader("Accept-Language", "fr");
+			response = getResponse(request);
+			assertEquals(response.getContent(), "Salomon:W:fr");
+			response = getResponse(request);
+			assertEquals(Controller.warmHit, hit + 2);
+
+			StringWriter dump = new StringWriter();
+			InMemoryCache.dumpMostHit(dump, 16);
+			assertTrue(dump.toString().contains("/warm\taccept-language: fr\n"), dump.toString());
+
+			// A dumped manifest is replayed as is in a non root context
+			warmer = new InMemoryCacheWarmer(1)
+				.setContextPath("/app")
+				.addManifest(new StringReader("/app/warm\tAccept-Language: de\n/warm\n"));
+			assertTrue(warmer.warm(5, TimeUnit.SECONDS));
+			assertEquals(warmer.getWarmedCount(), 1);
+			dump = new StringWriter();
+			InMemoryCache.dumpMostHit(dump, 16);
+			assertTrue(dump.toString().contains("/app/warm\taccept-language: de\n"), dump.toString());
+			assertTrue(!dump.toString().contains("/app/app/"), dump.toString());
+		}
+	}
+
+	public void getConditional() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			getResponse(makeRequest("GET", "/conditional"));
+			final int hit = Controller.conditionalHit;
+
+			HttpTester response = getResponse(makeRequest("GET", "/conditional"));
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent(), "Salomon:E");
+			final String etag = response.getHeader("ETag");
+			final String lastModified = response.getHeader("Last-Modified");
+			assertTrue(etag != null && etag.startsWith("\""), etag);
+			assertTrue(lastModified != null);
+
+			HttpTester request = makeRequest("GET", "/conditional");
+			request.setHeader("If-None-Match", "\"other\", " + etag);
+			response = getResponse(request);
+			assertEquals(response.getStatus(), 304);
+			assertEquals(response.getContent(), null);
+
+			request = makeRequest("GET", "/conditional");
+			request.setHeader("If-None-Match", "\"other\"");
+			response = getResponse(request);
+			assertEquals(response.getStatus(), 200);
+			assertEquals(response.getContent(), "Salomon:E");
+
+			request = makeRequest("GET", "/conditional");
+			request.setHeader("If-Modified-Since", lastModified);
+			response = getResponse(request);
+			assertEquals(response.getStatus(), 304);
+
+			String head = getRawResponse(makeRequest("HEAD", "/conditional"));
+			assertTrue(head.startsWith("HTTP/1.1 200"), head);
+			assertTrue(head.contains("\r\nETag: " + etag + "\r\n"), head);
+			assertTrue(head.endsWith("\r\n\r\n"), head);
+
+			assertEquals(Controller.conditionalHit, hit);
+		}
+	}
+
+	// A HEAD request on a Writer-produced entry gets the length of the encoded body
+	public void headChar() throws Exception {
+		HttpTester response = getResponse(makeRequest("GET", "/head"));
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "Salomon:H");
+
+		String head = getRawResponse(makeRequest("HEAD", "/head"));
+		assertTrue(head.startsWith("HTTP/1.1 200"), head);
+		assertTrue(head.contains("\r\nContent-Length: 9\r\n"), head);
+		assertTrue(head.endsWith("\r\n\r\n"), head);
+	}
+
+	public void closedStore() throws Exception {
+		try (MemcachedStandIn server = new MemcachedStandIn()) {
+			MemcachedStore store = new MemcachedStore("127.0.0.1", server.getPort()).setPoolSize(1);
+			store.set("closed", new byte[] { 42 }, 60);
+			assertTrue(store.flush(2000));
+			assertEquals(store.getMulti(Collections.singleton("closed")).size(), 1);
+
+			store.close();
+			store.set("closed", new byte[] { 21 }, 60);
+			assertTrue(store.flush(0));
+			assertEquals(store.getMulti(Collections.singleton("closed")).size(), 0);
+			assertEquals(store.getDroppedWriteCount(), 0);
+		}
+	}
+
+	public void getRemote() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			MemcachedStandIn server = new MemcachedStandIn();
+			MemcachedStore store = new MemcachedStore("127.0.0.1", server.getPort())
+				.setPoolSize(1)
+				.setCircuitBreaker(new CircuitBreaker(1, 60 * 1000));
+			InMemoryCache.remove("/remote");
+			InMemoryCache.setStore(store);
+			try {
+				getResponse(makeRequest("GET", "/remote"));
+				final int hit = Controller.remoteHit;
+				assertTrue(store.flush(2000));
+				// The single pooled connection is shared by writes and reads, so the entry is readable once the writes are sent
+				assertEquals(store.getMulti(Collections.singleton("/remote")).size(), 1);
+
+				// Simulates another node: the entry is in the store only
+				InMemoryCache.setStore(null);
+				InMemoryCache.remove("/remote");
+				InMemoryCache.setStore(store);
+				final long loads = InMemoryCache.getStatistics("/remote").getRemoteLoadCount();
+				HttpTester response = getResponse(makeRequest("GET", "/remote"));
+				assertEquals(response.getContent(), "Salomon:R");
+				assertEquals(Controller.remoteHit, hit);
+				assertEquals(InMemoryCache.getStatistics("/remote").getRemoteLoadCount(), loads + 1);
+
+				// Multi-get of more keys than a single get command holds
+				List<String> keys = new ArrayList<>();
+				for (int i = 0; i < 150; ++i) {
+					keys.add("key " + i);
+					store.set("key " + i, new byte[] { (byte) i }, 60);
+				}
+				assertTrue(store.flush(2000));
+				Map<String, byte[]> values = store.getMulti(keys);
+				assertEquals(values.size(), 150);
+				assertEquals(values.get("key 42")[0], (byte) 42);
+
+				// The store is down: the cache works locally
+				server.close();
+				InMemoryCache.setStore(null);
+				InMemoryCache.remove("/remote");
+				InMemoryCache.setStore(store);
+				response = getResponse(makeRequest("GET", "/remote"));
+				assertEquals(response.getContent(), "Salomon:R");
+				assertEquals(Controller.remoteHit, hit + 1);
+				assertTrue(store.getCircuitBreaker().isOpen());
+				assertEquals(store.getMulti(keys).size(), 0);
+				response = getResponse(makeRequest("GET", "/remote"));
+				assertEquals(response.getContent(), "Salomon:R");
+				assertEquals(Controller.remoteHit, hit + 1);
+			}
+			finally {
+				InMemoryCache.setStore(null);
+				store.close();
+				server.close();
+			}
+		}
+	}
+
+	static class RecordingListener implements InvalidationListener {
+		final List<String> log = new CopyOnWriteArrayList<>();
+		@Override public void remove(String uri) { this.log.add("remove " + uri); }
+		@Override public void invalidateTag(String tag) { this.log.add("tag " + tag); }
+		@Override public void invalidatePrefix(String prefix) { this.log.add("prefix " + prefix); }
+		@Override public void flush() { this.log.add("flush"); }
+
+		void await(int size) throws InterruptedException {
+			for (int i = 0; i < 200 && this.log.size() < size; ++i) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	static class LossyTransport implements InvalidationTransport {
+		final InvalidationTransport base;
+		volatile boolean drop = false;
+		LossyTransport(InvalidationTransport base) { this.base = base; }
+		@Override public void start(Receiver receiver) throws IOException { this.base.start(receiver); }
+		@Override public void publish(byte[] message) throws IOException { if (!this.drop) this.base.publish(message); }
+		@Override public void close() throws IOException { this.base.close(); }
+	}
+
+	public void getInvalidationBus() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			LocalTransport.Channel channel = new LocalTransport.Channel();
+			// Batches are only sent by explicit calls to send()
+			InvalidationBus nodeBus = new InvalidationBus(new LocalTransport(channel)).setBatchDelay(60 * 1000);
+			LossyTransport otherTransport = new LossyTransport(new LocalTransport(channel));
+			InvalidationBus otherBus = new InvalidationBus(otherTransport).setBatchDelay(60 * 1000);
+			RecordingListener other = new RecordingListener();
+			otherBus.start(other);
+			InMemoryCache.setInvalidationBus(nodeBus);
+			try {
+				getResponse(makeRequest("GET", "/bus"));
+				final int hit = Controller.busHit;
+
+				// Invalidation published by the other node
+				otherBus.publishRemove("/bus");
+				otherBus.send();
+				HttpTester response = getResponse(makeRequest("GET", "/bus"));
+				assertEquals(response.getContent(), "Salomon:B");
+				assertEquals(Controller.busHit, hit + 1);
+
+				// Invalidation published by this node, coalesced
+				InMemoryCache.remove("/bus/a");
+				InMemoryCache.invalidatePrefix("/bus");
+				InMemoryCache.remove("/bus/b");
+				InMemoryCache.invalidatePrefix("/bus");
+				nodeBus.send();
+				assertTrue(other.log.contains("prefix /bus"), other.log.toString());
+				assertTrue(!other.log.contains("remove /bus/a"), other.log.toString());
+				assertTrue(!other.log.contains("remove /bus/b"), other.log.toString());
+
+				// A lost message is detected by the next one, which flushes the cache
+				getResponse(makeRequest("GET", "/bus"));
+				assertEquals(Controller.busHit, hit + 2);
+				otherTransport.drop = true;
+				otherBus.publishTag("lost");
+				otherBus.send();
+				otherTransport.drop = false;
+				otherBus.publishTag("other");
+				otherBus.send();
+				assertEquals(nodeBus.getGapCount(), 1);
+				getResponse(makeRequest("GET", "/bus"));
+				assertEquals(Controller.busHit, hit + 3);
+			}
+			finally {
+				InMemoryCache.setInvalidationBus(null);
+				nodeBus.close();
+				otherBus.close();
+			}
+		}
+	}
+
+	public void getInvalidationTransports() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			InetSocketAddress any = new InetSocketAddress("127.0.0.1", 0);
+
+			UdpTransport udpReceiver = new UdpTransport(any);
+			InvalidationBus udpReceiverBus = new InvalidationBus(udpReceiver);
+			RecordingListener udpListener = new RecordingListener();
+			udpReceiverBus.start(udpListener);
+			InvalidationBus udpSenderBus = new InvalidationBus(new UdpTransport(any, new InetSocketAddress("127.0.0.1", udpReceiver.getLocalPort())));
+			udpSenderBus.start(new RecordingListener());
+
+			TcpTransport tcpReceiver = new TcpTransport(any);
+			InvalidationBus tcpReceiverBus = new InvalidationBus(tcpReceiver);
+			RecordingListener tcpListener = new RecordingListener();
+			tcpReceiverBus.start(tcpListener);
+			InvalidationBus tcpSenderBus = new InvalidationBus(new TcpTransport(any, new InetSocketAddress("127.0.0.1", tcpReceiver.getLocalPort())));
+			tcpSenderBus.start(new RecordingListener());
+
+			try {
+				udpSenderBus.publishRemove("/udp");
+				udpSenderBus.publishTag("udp");
+				udpSenderBus.send();
+				udpListener.await(2);
+				assertEquals(udpListener.log.toString(), "[remove /udp, tag udp]");
+
+				tcpSenderBus.publishPrefix("/tcp/");
+				tcpSenderBus.publishFlush();
+				tcpSenderBus.send();
+				tcpListener.await(1);
+				assertEquals(tcpListener.log.toString(), "[flush]");
+				assertEquals(tcpReceiverBus.getReceivedCount(), 1);
+			}
+			finally {
+				udpSenderBus.close();
+				udpReceiverBus.close();
+				tcpSenderBus.close();
+				tcpReceiverBus.close();
+			}
+		}
+	}
+
+	public void getFragment() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			CachedFragment.invalidate("menu");
+			final int hit = Controller.fragmentHit;
+
+			HttpTester response = getResponse(makeRequest("GET", "/fragment?user=Salomon&category=books"));
+			assertEquals(response.getContent(), "Hello Salomon|Menu:books|Bye Salomon");
+			response = getResponse(makeRequest("GET", "/fragment?user=Anna&category=books"));
+			assertEquals(response.getContent(), "Hello Anna|Menu:books|Bye Anna");
+			assertEquals(Controller.fragmentHit, hit + 1);
+
+			response = getResponse(makeRequest("GET", "/fragment?user=Anna&category=music"));
+			assertEquals(response.getContent(), "Hello Anna|Menu:music|Bye Anna");
+			assertEquals(Controller.fragmentHit, hit + 2);
+			assertTrue(InMemoryCache.getStatistics("#menu").getHitCount() >= 1);
+
+			assertEquals(InMemoryCache.invalidateTag("menus"), 2);
+			getResponse(makeRequest("GET", "/fragment?user=Salomon&category=books"));
+			assertEquals(Controller.fragmentHit, hit + 3);
+		}
+	}
+
+	public void getMemoize() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final Injector injector = Guice.createInjector(MemoizeInterceptor.module());
+			final MemoService service = injector.getInstance(MemoService.class);
+			final MemoizeInterceptor interceptor = injector.getInstance(MemoizeInterceptor.class);
+			Method lookup = MemoService.class.getMethod("lookup", int.class, String[].class);
+			final int calls = MemoService.calls.get();
+
+			assertEquals(service.lookup(1, "a", "b"), "1:[a, b]");
+			assertEquals(service.lookup(1, "a", "b"), "1:[a, b]");
+			assertEquals(MemoService.calls.get(), calls + 1);
+			MemoizeStatistics stats = interceptor.getStatistics(lookup);
+			assertTrue(stats != null);
+			final long hits = stats.getHitCount();
+			final long coalesced = stats.getCoalescedCount();
+
+			// Concurrent misses on the same key are executed once
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			try {
+				Callable<String> call = new Callable<String>() {
+					@Override public String call() throws Exception {
+						return service.lookup(2);
+					}
+				};
+				Future<String> first = executor.submit(call);
+				Future<String> second = executor.submit(call);
+				assertEquals(first.get(), "2:[]");
+				assertEquals(second.get(), "2:[]");
+			}
+			finally {
+				executor.shutdown();
+			}
+			assertEquals(MemoService.calls.get(), calls + 2);
+			assertEquals(stats.getHitCount() + stats.getCoalescedCount(), hits + coalesced + 1);
+
+			// Bounded to 2 entries: the least recently used is evicted
+			service.lookup(3);
+			service.lookup(1, "a", "b");
+			assertEquals(MemoService.calls.get(), calls + 4);
+
+			service.nothing();
+			assertEquals(service.nothing(), null);
+			assertEquals(MemoService.calls.get(), calls + 5); // null results are cached too
+
+			// Results are neither shared between instances nor between injectors
+			injector.getInstance(MemoService.class).nothing();
+			assertEquals(MemoService.calls.get(), calls + 6);
+			Guice.createInjector(MemoizeInterceptor.module()).getInstance(MemoService.class).nothing();
+			assertEquals(MemoService.calls.get(), calls + 7);
+
+			interceptor.clear(lookup);
+			service.lookup(3);
+			assertEquals(MemoService.calls.get(), calls + 8);
+		}
+	}
+}
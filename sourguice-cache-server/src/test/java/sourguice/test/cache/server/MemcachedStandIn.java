@@ -0,0 +1,130 @@
+package sourguice.test.cache.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A minimal in-process memcached server (get, set and delete of the text protocol), expiration is ignored
+ */
+@SuppressWarnings({"javadoc", "PMD"})
+public class MemcachedStandIn implements Closeable {
+
+	private final ServerSocket server;
+
+	private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+
+	private final List<Socket> clients = new CopyOnWriteArrayList<>();
+
+	public MemcachedStandIn() throws IOException {
+		this.server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+		daemon(new Runnable() {
+			@Override public void run() {
+				try {
+					while (true) {
+						final Socket client = MemcachedStandIn.this.server.accept();
+						MemcachedStandIn.this.clients.add(client);
+						daemon(new Runnable() {
+							@Override public void run() {
+								serve(client);
+							}
+						});
+					}
+				}
+				catch (IOException e) {
+					// Closed
+				}
+			}
+		});
+	}
+
+	private static void daemon(Runnable runnable) {
+		Thread thread = new Thread(runnable, "memcached-stand-in");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getPort() {
+		return this.server.getLocalPort();
+	}
+
+	void serve(Socket client) {
+		try {
+			InputStream in = new BufferedInputStream(client.getInputStream());
+			OutputStream out = new BufferedOutputStream(client.getOutputStream());
+			String line;
+			while ((line = readLine(in)) != null) {
+				String[] parts = line.split(" ");
+				if (parts[0].equals("get")) {
+					for (int i = 1; i < parts.length; ++i) {
+						byte[] value = this.values.get(parts[i]);
+						if (value != null) {
+							out.write(("VALUE " + parts[i] + " 0 " + value.length + "\r\n").getBytes("US-ASCII"));
+							out.write(value);
+							out.write("\r\n".getBytes("US-ASCII"));
+						}
+					}
+					out.write("END\r\n".getBytes("US-ASCII"));
+				}
+				else if (parts[0].equals("set")) {
+					byte[] value = new byte[Integer.parseInt(parts[4])];
+					int offset = 0;
+					while (offset < value.length) {
+						offset += in.read(value, offset, value.length - offset);
+					}
+					readLine(in);
+					this.values.put(parts[1], value);
+					if (parts.length < 6) {
+						out.write("STORED\r\n".getBytes("US-ASCII"));
+					}
+				}
+				else if (parts[0].equals("delete")) {
+					boolean deleted = this.values.remove(parts[1]) != null;
+					if (parts.length < 3) {
+						out.write((deleted ? "DELETED\r\n" : "NOT_FOUND\r\n").getBytes("US-ASCII"));
+					}
+				}
+				else {
+					out.write("ERROR\r\n".getBytes("US-ASCII"));
+				}
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		}
+		catch (IOException e) {
+			// Closed
+		}
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != '\r') {
+			if (c < 0) {
+				return null;
+			}
+			line.append((char) c);
+		}
+		in.read();
+		return line.toString();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.server.close();
+		for (Socket client : this.clients) {
+			client.close();
+		}
+	}
+}
@@ -28,4 +28,27 @@ public interface SGInvocation {
 	 */
 	public abstract Object invoke(Object controller, boolean throwWhenHandled) throws NoSuchRequestParameterException, InvocationTargetException, HandledException, IOException;
 
+	/**
+	 * Invokes the method as {@link #invoke(Object, boolean)} does, but without handling the exception it may throw.
+	 * This allows to call the method outside of the request thread and to handle its exception later, in the request thread,
+	 * with {@link #handle(InvocationTargetException, boolean)}, as exception handlers may need the request.
+	 *
+	 * @param controller The object that will receive the method call
+	 * @return What the method call returned
+	 * @throws NoSuchRequestParameterException In case of a parameter asked from request argument or path variable that does not exists
+	 * @throws InvocationTargetException Any thing that the method call might have thrown
+	 */
+	public abstract Object invokeUnhandled(Object controller) throws NoSuchRequestParameterException, InvocationTargetException;
+
+	/**
+	 * Handles an exception thrown by the method, as {@link #invoke(Object, boolean)} does
+	 *
+	 * @param exception The exception thrown by {@link #invokeUnhandled(Object)}
+	 * @param throwWhenHandled Whether to throw a {@link HandledException} when the exception has been handled
+	 * @throws HandledException If the exception has been handled and throwWhenHandled is true
+	 * @throws InvocationTargetException The given exception if it was not handled
+	 * @throws IOException IO failure while writing the response
+	 */
+	public abstract void handle(InvocationTargetException exception, boolean throwWhenHandled) throws HandledException, InvocationTargetException, IOException;
+
 }
@@ -47,6 +47,13 @@ public class GuiceTypedProvider<T> implements TypedProvider<T> {
 		return this.provider.get();
 	}
 
+	/**
+	 * @return The key to retrieve an instance in Guice
+	 */
+	public Key<T> getKey() {
+		return this.key;
+	}
+
 	@Override
 	public TypeLiteral<T> getTypeLiteral() {
 		return this.key.getTypeLiteral();
@@ -53,41 +53,36 @@ public final class SGInvocationImpl implements SGInvocation {
 
 	@Override
 	public @CheckForNull Object invoke(final Object controller, final boolean throwWhenHandled) throws NoSuchRequestParameterException, InvocationTargetException, HandledException, IOException {
+		try {
+			return invokeUnhandled(controller);
+		}
+		catch (InvocationTargetException exception) {
+			handle(exception, throwWhenHandled);
+			return null;
+		}
+	}
+
+	@Override
+	public @CheckForNull Object invokeUnhandled(final Object controller) throws NoSuchRequestParameterException, InvocationTargetException {
 
 		// Fetches all arguments
 		Object[] params = new Object[this.fetchers.length];
-		Object ret = null;
 		for (int n = 0; n < this.fetchers.length; ++n) {
 			params[n] = this.fetchers[n].getPrepared();
 		}
 
 		try {
-			// Calls the method
-			ret = this.method.invoke(controller, params);
+			// Calls the method and returns whatever it returned
+			return this.method.invoke(controller, params);
 		}
 		catch (IllegalAccessException e) {
 			throw new UnsupportedOperationException(e);
 		}
-		catch (InvocationTargetException exception) {
-			handleException(exception, throwWhenHandled);
-			return null;
-		}
-
-		// Returns whatever the method call returned
-		return ret;
 	}
 
-	/**
-	 * Handles any exception thrown by a method invocation
-	 *
-	 * @param invocException The exception to handle
-	 * @param throwWhenHandled Whether to throw a HandledException when the exception was handled
-	 * @throws HandledException If an exception was handled and throwWhenHandled is true
-	 * @throws InvocationTargetException The given exception if it was not handled
-	 * @throws IOException If an input or output exception occurs during response manipulation
-	 */
+	@Override
 	@SuppressWarnings({"PMD.SignatureDeclareThrowsException", "unchecked"})
-	private @CheckForNull void handleException(final InvocationTargetException invocException, final boolean throwWhenHandled) throws HandledException, InvocationTargetException, IOException {
+	public void handle(final InvocationTargetException invocException, final boolean throwWhenHandled) throws HandledException, InvocationTargetException, IOException {
 		final Throwable thrown = invocException.getCause();
 		if (!(thrown instanceof Exception)) {
 			throw invocException;
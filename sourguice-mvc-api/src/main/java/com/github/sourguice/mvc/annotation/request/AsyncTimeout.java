@@ -0,0 +1,31 @@
+package com.github.sourguice.mvc.annotation.request;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.annotation.Nonnegative;
+
+import com.github.sourguice.mvc.async.AsyncResult;
+
+/**
+ * Sets how long a request may wait for the asynchronous result of a controller method
+ * (an {@link AsyncResult} or any {@link java.util.concurrent.Future}).
+ * When the result is not completed in time, a 503 error is sent.
+ *
+ * Can be set on a method or on a controller class.
+ * Without this annotation, the timeout is 30 seconds.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface AsyncTimeout {
+	/**
+	 * @return The timeout, in milliseconds, 0 means no timeout
+	 */
+	public @Nonnegative long value();
+}
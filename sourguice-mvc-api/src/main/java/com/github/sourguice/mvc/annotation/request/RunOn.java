@@ -0,0 +1,29 @@
+package com.github.sourguice.mvc.annotation.request;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.github.sourguice.mvc.async.ControllerExecutors;
+
+/**
+ * Runs the annotated method (or all methods of the annotated controller) on a named executor instead of the container thread.
+ *
+ * The executor is the {@link java.util.concurrent.Executor} (or {@link java.util.concurrent.ExecutorService})
+ * bound in Guice with @Named and the given name.
+ * The request is suspended while the method runs, and the method runs in the scope of the request.
+ * The executors and their metrics are available from {@link ControllerExecutors}.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RunOn {
+	/**
+	 * @return The name of the executor
+	 */
+	public String value();
+}
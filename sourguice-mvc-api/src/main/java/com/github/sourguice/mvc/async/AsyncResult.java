@@ -0,0 +1,161 @@
+package com.github.sourguice.mvc.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * The result of a controller method that completes later, on another thread.
+ *
+ * When a controller method returns an AsyncResult (or any {@link Future}), the request is suspended and the container
+ * thread is released. When the result is set, the request is resumed and the result is processed like any value
+ * returned by the method (view, @Writes, redirection, etc.). When the result fails, its exception is handled like an
+ * exception thrown by the method.
+ *
+ * Unlike a plain {@link Future}, an AsyncResult notifies its listeners when it completes,
+ * so no thread at all is used while waiting for it.
+ *
+ * @param <T> The type of the result
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class AsyncResult<T> implements Future<T> {
+
+	/**
+	 * Released when the result completes
+	 */
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	/**
+	 * The listeners to run when the result completes, null once it has completed
+	 */
+	private @CheckForNull List<Runnable> listeners = new ArrayList<>();
+
+	/**
+	 * The result value
+	 */
+	private @CheckForNull T value = null;
+
+	/**
+	 * The failure, if the result failed
+	 */
+	private @CheckForNull Throwable failure = null;
+
+	/**
+	 * Whether the result was cancelled
+	 */
+	private boolean cancelled = false;
+
+	/**
+	 * Completes the result and runs its listeners
+	 *
+	 * @param value The value
+	 * @param failure The failure, or null
+	 * @param cancelled Whether the result is cancelled
+	 * @return Whether the result was completed by this call (false if it was already completed)
+	 */
+	private boolean complete(final @CheckForNull T value, final @CheckForNull Throwable failure, final boolean cancelled) {
+		final List<Runnable> toRun;
+		synchronized (this) {
+			if (this.listeners == null) {
+				return false;
+			}
+			this.value = value;
+			this.failure = failure;
+			this.cancelled = cancelled;
+			toRun = this.listeners;
+			this.listeners = null;
+		}
+		this.done.countDown();
+		for (final Runnable listener : toRun) {
+			listener.run();
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the value of the result
+	 *
+	 * @param value The value
+	 * @return Whether the value was set (false if the result was already completed)
+	 */
+	public boolean set(final @CheckForNull T value) {
+		return complete(value, null, false);
+	}
+
+	/**
+	 * Makes the result fail
+	 *
+	 * @param failure The cause of the failure
+	 * @return Whether the result failed (false if the result was already completed)
+	 */
+	public boolean fail(final Throwable failure) {
+		return complete(null, failure, false);
+	}
+
+	/**
+	 * Registers a listener that will be run when the result completes.
+	 * The listener is run by the thread that completes the result, or immediately if the result has already completed.
+	 *
+	 * @param listener The listener to run
+	 */
+	public void addListener(final Runnable listener) {
+		synchronized (this) {
+			if (this.listeners != null) {
+				this.listeners.add(listener);
+				return ;
+			}
+		}
+		listener.run();
+	}
+
+	@Override
+	public boolean cancel(final boolean mayInterruptIfRunning) {
+		return complete(null, null, true);
+	}
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	@Override
+	public synchronized boolean isDone() {
+		return this.listeners == null;
+	}
+
+	/**
+	 * @return The value of the completed result
+	 * @throws ExecutionException If the result failed
+	 */
+	private synchronized @CheckForNull T report() throws ExecutionException {
+		if (this.cancelled) {
+			throw new CancellationException();
+		}
+		if (this.failure != null) {
+			throw new ExecutionException(this.failure);
+		}
+		return this.value;
+	}
+
+	@Override
+	public @CheckForNull T get() throws InterruptedException, ExecutionException {
+		this.done.await();
+		return report();
+	}
+
+	@Override
+	public @CheckForNull T get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!this.done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return report();
+	}
+}
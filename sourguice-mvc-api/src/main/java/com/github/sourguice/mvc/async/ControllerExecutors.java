@@ -0,0 +1,121 @@
+package com.github.sourguice.mvc.async;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.github.sourguice.mvc.annotation.request.RunOn;
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+
+/**
+ * The executors on which @{@link RunOn} annotated controller methods run.
+ *
+ * An executor named "foo" is the {@link Executor} or {@link ExecutorService} bound in Guice with @Named("foo").
+ * Each executor is wrapped in a {@link MeteredExecutor} the first time it is used,
+ * so the metrics of all executors used by controllers can be read from this registry.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+@Singleton
+public class ControllerExecutors {
+
+	/**
+	 * The Guice injector in which the executors are bound
+	 */
+	private final Injector injector;
+
+	/**
+	 * The metered executors that have been used, by name
+	 */
+	private final ConcurrentMap<String, MeteredExecutor> executors = new ConcurrentHashMap<>();
+
+	/**
+	 * @param injector The Guice injector in which the executors are bound
+	 */
+	@Inject
+	public ControllerExecutors(final Injector injector) {
+		this.injector = injector;
+	}
+
+	/**
+	 * Creates an executor that runs each task in a new virtual thread when the JVM supports them (Java 21 and later),
+	 * or in a pooled platform thread otherwise.
+	 *
+	 * @return The executor
+	 */
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * @return Whether the JVM supports virtual threads, and therefore whether {@link #newVirtualThreadExecutor()} creates virtual threads
+	 */
+	public static boolean isVirtualThreadSupported() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		}
+		catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param name The name of an executor
+	 * @return The executor bound in Guice with this name, or null if there is none
+	 */
+	private @CheckForNull Executor lookup(final String name) {
+		final Binding<Executor> executor = this.injector.getExistingBinding(Key.get(Executor.class, Names.named(name)));
+		if (executor != null) {
+			return executor.getProvider().get();
+		}
+		final Binding<ExecutorService> service = this.injector.getExistingBinding(Key.get(ExecutorService.class, Names.named(name)));
+		if (service != null) {
+			return service.getProvider().get();
+		}
+		return null;
+	}
+
+	/**
+	 * @param name The name of an executor
+	 * @return The metered executor
+	 * @throws UnsupportedOperationException If no executor is bound with this name
+	 */
+	public MeteredExecutor get(final String name) {
+		MeteredExecutor metered = this.executors.get(name);
+		if (metered != null) {
+			return metered;
+		}
+		final Executor executor = lookup(name);
+		if (executor == null) {
+			throw new UnsupportedOperationException("No Executor or ExecutorService is bound with @Named(\"" + name + "\")");
+		}
+		metered = executor instanceof MeteredExecutor ? (MeteredExecutor) executor : new MeteredExecutor(executor);
+		final MeteredExecutor previous = this.executors.putIfAbsent(name, metered);
+		return previous != null ? previous : metered;
+	}
+
+	/**
+	 * @return The metered executors that have been used by controllers, by name
+	 */
+	public Map<String, MeteredExecutor> getUsedExecutors() {
+		return Collections.unmodifiableMap(new TreeMap<>(this.executors));
+	}
+}
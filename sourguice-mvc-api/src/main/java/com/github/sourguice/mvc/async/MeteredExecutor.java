@@ -0,0 +1,176 @@
+package com.github.sourguice.mvc.async;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An executor that measures the tasks it runs on another executor:
+ * how many tasks are waiting to start (the queue depth), how many are running,
+ * and how long they wait and run.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class MeteredExecutor implements Executor {
+
+	/**
+	 * The executor that actually runs the tasks
+	 */
+	private final Executor executor;
+
+	/**
+	 * Number of tasks submitted but not started yet
+	 */
+	private final AtomicLong queued = new AtomicLong();
+
+	/**
+	 * Number of tasks running
+	 */
+	private final AtomicLong active = new AtomicLong();
+
+	/**
+	 * Number of tasks that have finished
+	 */
+	private final AtomicLong completed = new AtomicLong();
+
+	/**
+	 * Number of tasks that the executor rejected
+	 */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Sum of the times the tasks waited before starting, in nanoseconds
+	 */
+	private final AtomicLong totalWait = new AtomicLong();
+
+	/**
+	 * Longest time a task waited before starting, in nanoseconds
+	 */
+	private final AtomicLong maxWait = new AtomicLong();
+
+	/**
+	 * Sum of the running times of the tasks, in nanoseconds
+	 */
+	private final AtomicLong totalRun = new AtomicLong();
+
+	/**
+	 * Longest running time of a task, in nanoseconds
+	 */
+	private final AtomicLong maxRun = new AtomicLong();
+
+	/**
+	 * @param executor The executor that actually runs the tasks
+	 */
+	public MeteredExecutor(final Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * @param max The maximum to update
+	 * @param value A new value
+	 */
+	private static void updateMax(final AtomicLong max, final long value) {
+		long current = max.get();
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		final long submitted = System.nanoTime();
+		this.queued.incrementAndGet();
+		try {
+			this.executor.execute(new Runnable() {
+				@Override public void run() {
+					final long started = System.nanoTime();
+					MeteredExecutor.this.queued.decrementAndGet();
+					MeteredExecutor.this.active.incrementAndGet();
+					MeteredExecutor.this.totalWait.addAndGet(started - submitted);
+					updateMax(MeteredExecutor.this.maxWait, started - submitted);
+					try {
+						task.run();
+					}
+					finally {
+						final long duration = System.nanoTime() - started;
+						MeteredExecutor.this.totalRun.addAndGet(duration);
+						updateMax(MeteredExecutor.this.maxRun, duration);
+						MeteredExecutor.this.active.decrementAndGet();
+						MeteredExecutor.this.completed.incrementAndGet();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e) {
+			this.queued.decrementAndGet();
+			this.rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The executor that actually runs the tasks
+	 */
+	public Executor getExecutor() {
+		return this.executor;
+	}
+
+	/**
+	 * @return The number of tasks submitted but not started yet
+	 */
+	public long getQueueDepth() {
+		return this.queued.get();
+	}
+
+	/**
+	 * @return The number of tasks running
+	 */
+	public long getActiveCount() {
+		return this.active.get();
+	}
+
+	/**
+	 * @return The number of tasks that have finished
+	 */
+	public long getCompletedCount() {
+		return this.completed.get();
+	}
+
+	/**
+	 * @return The number of tasks that the executor rejected
+	 */
+	public long getRejectedCount() {
+		return this.rejected.get();
+	}
+
+	/**
+	 * @return The average time the started tasks waited before starting, in milliseconds
+	 */
+	public double getAverageWaitMillis() {
+		final long count = this.completed.get() + this.active.get();
+		return count == 0 ? 0 : (double) this.totalWait.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return The longest time a task waited before starting, in milliseconds
+	 */
+	public double getMaxWaitMillis() {
+		return (double) this.maxWait.get() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return The average running time of the finished tasks, in milliseconds
+	 */
+	public double getAverageRunMillis() {
+		final long count = this.completed.get();
+		return count == 0 ? 0 : (double) this.totalRun.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * @return The longest running time of a task, in milliseconds
+	 */
+	public double getMaxRunMillis() {
+		return (double) this.maxRun.get() / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Results of controller methods that complete asynchronously
+ */
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.mvc.async;
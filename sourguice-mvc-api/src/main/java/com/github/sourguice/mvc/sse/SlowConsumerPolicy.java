@@ -0,0 +1,25 @@
+package com.github.sourguice.mvc.sse;
+
+/**
+ * What a {@link SseStream} does when an event is sent while its queue is full,
+ * which means that its client does not read the events as fast as they are produced
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public enum SlowConsumerPolicy {
+
+	/**
+	 * The oldest queued event is dropped to make room for the new one
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * The new event is dropped
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * The stream is closed: the queued events are discarded and the connection ends
+	 */
+	EVICT
+}
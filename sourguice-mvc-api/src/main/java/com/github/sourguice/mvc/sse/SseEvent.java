@@ -0,0 +1,61 @@
+package com.github.sourguice.mvc.sse;
+
+import java.nio.charset.Charset;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * A Server-Sent Event.
+ * The event is encoded once, when it is created, so that sending it to many streams always writes the same bytes.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class SseEvent {
+
+	/**
+	 * The encoded event
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * @param data The data of the event (may contain multiple lines)
+	 */
+	public SseEvent(final String data) {
+		this(null, null, data);
+	}
+
+	/**
+	 * @param name The name of the event (its "event" field), or null for the default "message" event
+	 * @param id The id of the event, or null
+	 * @param data The data of the event (may contain multiple lines)
+	 */
+	public SseEvent(final @CheckForNull String name, final @CheckForNull String id, final String data) {
+		final StringBuilder builder = new StringBuilder(data.length() + 16);
+		if (id != null) {
+			builder.append("id: ").append(singleLine(id)).append('\n');
+		}
+		if (name != null) {
+			builder.append("event: ").append(singleLine(name)).append('\n');
+		}
+		for (final String line : data.split("\r\n|\r|\n", -1)) {
+			builder.append("data: ").append(line).append('\n');
+		}
+		builder.append('\n');
+		this.bytes = builder.toString().getBytes(Charset.forName("UTF-8"));
+	}
+
+	/**
+	 * @param value A field value
+	 * @return The value, without its line breaks (a field cannot span multiple lines)
+	 */
+	private static String singleLine(final String value) {
+		return value.replace("\r", "").replace("\n", "");
+	}
+
+	/**
+	 * @return The encoded event (shared, must not be modified)
+	 */
+	byte[] bytes() {
+		return this.bytes;
+	}
+}
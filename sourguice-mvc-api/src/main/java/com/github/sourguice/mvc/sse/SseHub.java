@@ -0,0 +1,209 @@
+package com.github.sourguice.mvc.sse;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fan-out hub of Server-Sent Events: each event published to the hub is sent to all the streams subscribed to it.
+ *
+ * An event is encoded once, when it is created, and its bytes are shared by all the streams.
+ * Publishing never blocks: each stream has its own bounded queue and a slow client only affects its own stream,
+ * as decided by the {@link SlowConsumerPolicy} of the hub.
+ * A client that stops reading does not hold back the writes to the other streams,
+ * and its stream is evicted once a write to it has been blocked for the write timeout.
+ *
+ * The hub counts its connections and events, so that they can be exposed as metrics.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class SseHub {
+
+	/**
+	 * The currently open streams
+	 */
+	private final Set<SseStream> streams = Collections.newSetFromMap(new ConcurrentHashMap<SseStream, Boolean>());
+
+	/**
+	 * The capacity of the queue of each new stream
+	 */
+	private volatile int queueCapacity = SseStream.DEFAULT_CAPACITY;
+
+	/**
+	 * The policy of each new stream
+	 */
+	private volatile SlowConsumerPolicy policy = SlowConsumerPolicy.DROP_OLDEST;
+
+	/**
+	 * The heartbeat delay of each new stream, in milliseconds
+	 */
+	private volatile long heartbeat = SseStream.DEFAULT_HEARTBEAT;
+
+	/**
+	 * The write timeout of each new stream, in milliseconds
+	 */
+	private volatile long writeTimeout = SseStream.DEFAULT_WRITE_TIMEOUT;
+
+	/**
+	 * Number of streams ever subscribed
+	 */
+	private final AtomicLong totalConnections = new AtomicLong();
+
+	/**
+	 * Number of events published
+	 */
+	private final AtomicLong published = new AtomicLong();
+
+	/**
+	 * Number of events dropped because a queue was full
+	 */
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Number of streams closed because their client was too slow
+	 */
+	private final AtomicLong evicted = new AtomicLong();
+
+	/**
+	 * @param queueCapacity The maximum number of events waiting to be written to each stream
+	 * @return itself to permit command chain
+	 */
+	public SseHub setQueueCapacity(final int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("Queue capacity must be positive");
+		}
+		this.queueCapacity = queueCapacity;
+		return this;
+	}
+
+	/**
+	 * @param policy What to do when an event is published to a stream whose queue is full
+	 * @return itself to permit command chain
+	 */
+	public SseHub setSlowConsumerPolicy(final SlowConsumerPolicy policy) {
+		this.policy = policy;
+		return this;
+	}
+
+	/**
+	 * @param heartbeat The delay after which a heartbeat is written to an idle stream, in milliseconds
+	 * @return itself to permit command chain
+	 */
+	public SseHub setHeartbeat(final long heartbeat) {
+		if (heartbeat < 1) {
+			throw new IllegalArgumentException("Heartbeat must be positive");
+		}
+		this.heartbeat = heartbeat;
+		return this;
+	}
+
+	/**
+	 * @param writeTimeout The maximum time a write to a stream can be blocked by its client before the stream is evicted, in milliseconds
+	 * @return itself to permit command chain
+	 */
+	public SseHub setWriteTimeout(final long writeTimeout) {
+		if (writeTimeout < 1) {
+			throw new IllegalArgumentException("Write timeout must be positive");
+		}
+		this.writeTimeout = writeTimeout;
+		return this;
+	}
+
+	/**
+	 * Creates a stream that will receive all events published from now on.
+	 * The stream should be returned by a controller method, which will serve it to the client.
+	 *
+	 * @return The subscribed stream
+	 */
+	public SseStream subscribe() {
+		final SseStream stream = new SseStream(this, this.queueCapacity, this.policy, this.heartbeat, this.writeTimeout);
+		this.streams.add(stream);
+		this.totalConnections.incrementAndGet();
+		return stream;
+	}
+
+	/**
+	 * Sends an event to all subscribed streams
+	 *
+	 * @param event The event to publish
+	 * @return The number of streams that accepted the event
+	 */
+	public int publish(final SseEvent event) {
+		this.published.incrementAndGet();
+		int count = 0;
+		for (final SseStream stream : this.streams) {
+			if (stream.send(event)) {
+				++count;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Closes all subscribed streams
+	 */
+	public void closeAll() {
+		for (final SseStream stream : this.streams) {
+			stream.close();
+		}
+	}
+
+	/**
+	 * @param stream A stream that was closed
+	 */
+	void unsubscribe(final SseStream stream) {
+		this.streams.remove(stream);
+	}
+
+	/**
+	 * Called when a stream dropped an event
+	 */
+	void dropped() {
+		this.dropped.incrementAndGet();
+	}
+
+	/**
+	 * @param stream A stream that was closed because its client was too slow, or stopped reading
+	 */
+	void evicted(final SseStream stream) {
+		if (this.streams.remove(stream)) {
+			this.evicted.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The number of currently open streams
+	 */
+	public int getConnectionCount() {
+		return this.streams.size();
+	}
+
+	/**
+	 * @return The number of streams ever subscribed
+	 */
+	public long getTotalConnections() {
+		return this.totalConnections.get();
+	}
+
+	/**
+	 * @return The number of events published
+	 */
+	public long getPublishedCount() {
+		return this.published.get();
+	}
+
+	/**
+	 * @return The number of events dropped because the queue of a stream was full
+	 */
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * @return The number of streams closed because their client was too slow, or stopped reading
+	 */
+	public long getEvictedCount() {
+		return this.evicted.get();
+	}
+}
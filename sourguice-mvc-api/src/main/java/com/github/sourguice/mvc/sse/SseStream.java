@@ -0,0 +1,491 @@
+package com.github.sourguice.mvc.sse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A Server-Sent Events stream: when a controller method returns a stream, the response is kept open
+ * and each event sent to the stream is written to it, until the stream is closed or the client disconnects.
+ *
+ * Events are queued in a bounded queue.
+ * When the request supports asynchronous processing, it is suspended and the events are written by a pool of writer threads
+ * shared by all streams: a stream occupies a thread only while it is being written to.
+ * A write blocks while the client does not read: the pool grows so that such a client does not hold back the other streams,
+ * and a stream whose write has been blocked for the write timeout is evicted.
+ * Otherwise, the events are written by the request thread, which is blocked for the whole life of the stream.
+ * When the queue is full, the {@link SlowConsumerPolicy} of the stream decides what happens.
+ * When no event is written for the heartbeat delay, a comment line is written so that proxies keep the connection open
+ * and disconnected clients are detected.
+ *
+ * A stream can be created directly, or by subscribing to a {@link SseHub}.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class SseStream implements Closeable {
+
+	/**
+	 * Default capacity of the queue
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Default heartbeat delay, in milliseconds
+	 */
+	public static final long DEFAULT_HEARTBEAT = 15000;
+
+	/**
+	 * Default write timeout, in milliseconds
+	 */
+	public static final long DEFAULT_WRITE_TIMEOUT = 10000;
+
+	/**
+	 * The comment line written as heartbeat
+	 */
+	private static final byte[] HEARTBEAT = { ':', '\n', '\n' };
+
+	/**
+	 * The marker queued when the stream is closed
+	 */
+	private static final SseEvent CLOSE = new SseEvent("");
+
+	/**
+	 * The threads that write the events of the streams served asynchronously.
+	 * Idle threads are reused, and a new thread is started when they are all busy, so that blocked writes do not hold back the other streams.
+	 */
+	private static final ThreadPoolExecutor WRITERS = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		@Override public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "sourguice-sse-writer-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The thread that schedules the heartbeats of the streams served asynchronously and evicts those whose write is blocked.
+	 * It never writes to a response itself.
+	 */
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "sourguice-sse-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The events waiting to be written
+	 */
+	private final BlockingQueue<SseEvent> queue;
+
+	/**
+	 * What to do when the queue is full
+	 */
+	private final SlowConsumerPolicy policy;
+
+	/**
+	 * The heartbeat delay, in milliseconds
+	 */
+	private final long heartbeat;
+
+	/**
+	 * The maximum time a write can be blocked before the stream is evicted, in milliseconds
+	 */
+	private final long writeTimeout;
+
+	/**
+	 * The hub to which the stream is subscribed, or null
+	 */
+	private final @CheckForNull SseHub hub;
+
+	/**
+	 * Whether the stream was closed
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * The output of the response, once the stream is served asynchronously
+	 */
+	private volatile @CheckForNull OutputStream asyncOut = null;
+
+	/**
+	 * The asynchronous context of the suspended request, until the stream ends
+	 */
+	private volatile @CheckForNull AsyncContext context = null;
+
+	/**
+	 * The periodic check of the stream served asynchronously, which writes its heartbeats and evicts it if its write is blocked
+	 */
+	private volatile @CheckForNull ScheduledFuture<?> beat = null;
+
+	/**
+	 * Whether a writer thread is writing to the response (ensures that only one thread writes at a time).
+	 * It is never released once the stream has ended.
+	 */
+	private final AtomicBoolean writing = new AtomicBoolean(false);
+
+	/**
+	 * Date, in milliseconds, of the last write to the response
+	 */
+	private volatile long lastWrite = 0;
+
+	/**
+	 * Date, in milliseconds, at which the current write started, or 0 if no write is in progress
+	 */
+	private volatile long writeStart = 0;
+
+	/**
+	 * Creates a stream with the default capacity, policy ({@link SlowConsumerPolicy#DROP_OLDEST}), heartbeat delay and write timeout
+	 */
+	public SseStream() {
+		this(DEFAULT_CAPACITY, SlowConsumerPolicy.DROP_OLDEST, DEFAULT_HEARTBEAT);
+	}
+
+	/**
+	 * Creates a stream with the default write timeout
+	 *
+	 * @param capacity The maximum number of events waiting to be written
+	 * @param policy What to do when an event is sent while the queue is full
+	 * @param heartbeat The heartbeat delay, in milliseconds
+	 */
+	public SseStream(final int capacity, final SlowConsumerPolicy policy, final long heartbeat) {
+		this(null, capacity, policy, heartbeat, DEFAULT_WRITE_TIMEOUT);
+	}
+
+	/**
+	 * @param capacity The maximum number of events waiting to be written
+	 * @param policy What to do when an event is sent while the queue is full
+	 * @param heartbeat The heartbeat delay, in milliseconds
+	 * @param writeTimeout The maximum time a write can be blocked by the client before the stream is evicted, in milliseconds
+	 */
+	public SseStream(final int capacity, final SlowConsumerPolicy policy, final long heartbeat, final long writeTimeout) {
+		this(null, capacity, policy, heartbeat, writeTimeout);
+	}
+
+	/**
+	 * @param hub The hub to which the stream is subscribed
+	 * @param capacity The maximum number of events waiting to be written
+	 * @param policy What to do when an event is sent while the queue is full
+	 * @param heartbeat The heartbeat delay, in milliseconds
+	 * @param writeTimeout The maximum time a write can be blocked by the client before the stream is evicted, in milliseconds
+	 */
+	SseStream(final @CheckForNull SseHub hub, final int capacity, final SlowConsumerPolicy policy, final long heartbeat, final long writeTimeout) {
+		if (writeTimeout < 1) {
+			throw new IllegalArgumentException("Write timeout must be positive");
+		}
+		this.hub = hub;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.policy = policy;
+		this.heartbeat = heartbeat;
+		this.writeTimeout = writeTimeout;
+	}
+
+	/**
+	 * Queues an event to be written to the client.
+	 * This never blocks: if the queue is full, the {@link SlowConsumerPolicy} of the stream is applied.
+	 *
+	 * @param event The event to send
+	 * @return Whether the event was queued
+	 */
+	public boolean send(final SseEvent event) {
+		if (this.closed) {
+			return false;
+		}
+		while (!this.queue.offer(event)) {
+			switch (this.policy) {
+			case DROP_OLDEST:
+				if (this.queue.poll() != null && this.hub != null) {
+					this.hub.dropped();
+				}
+				break ;
+			case DROP_NEWEST:
+				if (this.hub != null) {
+					this.hub.dropped();
+				}
+				return false;
+			default:
+				evict();
+				return false;
+			}
+		}
+		wakeUp();
+		return true;
+	}
+
+	/**
+	 * Closes the stream because its client is too slow: queued events are discarded
+	 */
+	private void evict() {
+		this.closed = true;
+		this.queue.clear();
+		this.queue.offer(CLOSE);
+		if (this.hub != null) {
+			this.hub.evicted(this);
+		}
+		wakeUp();
+	}
+
+	/**
+	 * Closes the stream: the events that are already queued are written, then the response ends
+	 */
+	@Override
+	public void close() {
+		if (this.closed) {
+			return ;
+		}
+		this.closed = true;
+		// If the queue is full, the writing thread will see that the stream is closed once it has written the queue
+		this.queue.offer(CLOSE);
+		if (this.hub != null) {
+			this.hub.unsubscribe(this);
+		}
+		wakeUp();
+	}
+
+	/**
+	 * @return Whether the stream is still open
+	 */
+	public boolean isOpen() {
+		return !this.closed;
+	}
+
+	/**
+	 * Writes the events of the stream to the response until the stream is closed or the client disconnects.
+	 * This blocks the calling thread for the whole life of the stream:
+	 * use {@link #serve(AsyncContext, HttpServletResponse)} when the request can be suspended.
+	 *
+	 * @param res The response to write the events to
+	 * @throws IOException If the response could not be started
+	 */
+	public void serve(final HttpServletResponse res) throws IOException {
+		res.setContentType("text/event-stream");
+		res.setCharacterEncoding("UTF-8");
+		res.setHeader("Cache-Control", "no-cache");
+		final OutputStream out = res.getOutputStream();
+		try {
+			out.flush();
+			boolean open = true;
+			while (open) {
+				if (this.closed && this.queue.isEmpty()) {
+					break ;
+				}
+				SseEvent event = this.queue.poll(this.heartbeat, TimeUnit.MILLISECONDS);
+				if (event == null) {
+					if (this.closed) {
+						break ;
+					}
+					out.write(HEARTBEAT);
+				}
+				// Writes all available events before flushing, so that a burst of events is sent in one chunk
+				while (event != null) {
+					if (event == CLOSE) {
+						open = false;
+						break ;
+					}
+					out.write(event.bytes());
+					event = this.queue.poll();
+				}
+				out.flush();
+			}
+		}
+		catch (IOException e) {
+			// The client disconnected, which is the normal end of an event stream
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Writes the events of the stream to the response of a suspended request, until the stream is closed or the client disconnects.
+	 * This returns immediately: events are written by the shared writer threads, and the request is completed when the stream ends.
+	 * If a write is blocked for the write timeout (because the client does not read), the stream is evicted.
+	 *
+	 * @param asyncContext The asynchronous context of the suspended request
+	 * @param res The response to write the events to
+	 * @throws IOException If the response could not be started
+	 */
+	public void serve(final AsyncContext asyncContext, final HttpServletResponse res) throws IOException {
+		res.setContentType("text/event-stream");
+		res.setCharacterEncoding("UTF-8");
+		res.setHeader("Cache-Control", "no-cache");
+		final OutputStream out = res.getOutputStream();
+		out.flush();
+
+		// The stream lives until it is closed or its client disconnects
+		asyncContext.setTimeout(0);
+		asyncContext.addListener(new AsyncListener() {
+			@Override public void onComplete(final AsyncEvent event) { release(); }
+			@Override public void onTimeout(final AsyncEvent event) { end(); }
+			@Override public void onError(final AsyncEvent event) { release(); }
+			@Override public void onStartAsync(final AsyncEvent event) { /* Nothing to do */ }
+		});
+		this.context = asyncContext;
+		this.lastWrite = System.currentTimeMillis();
+		this.asyncOut = out;
+		final long period = Math.min(this.heartbeat, this.writeTimeout);
+		this.beat = TIMER.scheduleWithFixedDelay(new Runnable() {
+			@Override public void run() {
+				tick();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		// Writes the events that were sent before the stream was served
+		wakeUp();
+	}
+
+	/**
+	 * Schedules the writing of the queued events, if the stream is served asynchronously and no writer thread is already writing it
+	 */
+	private void wakeUp() {
+		if (this.asyncOut != null && this.writing.compareAndSet(false, true)) {
+			startWriter(false);
+		}
+	}
+
+	/**
+	 * Starts writing the response on a writer thread, once the writing flag has been acquired
+	 *
+	 * @param heartbeat Whether this is a heartbeat
+	 */
+	private void startWriter(final boolean heartbeat) {
+		WRITERS.execute(new Runnable() {
+			@Override public void run() {
+				write(heartbeat);
+			}
+		});
+	}
+
+	/**
+	 * Periodic check of a stream served asynchronously, on the timer thread:
+	 * evicts the stream if its write has been blocked for the write timeout, or starts a heartbeat if it is idle
+	 */
+	private void tick() {
+		final long now = System.currentTimeMillis();
+		final long started = this.writeStart;
+		if (started != 0) {
+			if (now - started >= this.writeTimeout) {
+				stalled();
+			}
+			return ;
+		}
+		if (now - this.lastWrite >= this.heartbeat && this.writing.compareAndSet(false, true)) {
+			startWriter(true);
+		}
+	}
+
+	/**
+	 * Evicts the stream because a write has been blocked for the write timeout: the client does not read anymore.
+	 * Completing the request makes the container close the connection, which eventually fails the blocked write.
+	 */
+	private void stalled() {
+		if (this.hub != null) {
+			this.hub.evicted(this);
+		}
+		end();
+	}
+
+	/**
+	 * Writes the queued events (or a heartbeat) to the response of a suspended request, on a writer thread
+	 *
+	 * @param heartbeat Whether this is a heartbeat, which writes a comment line if nothing has been written for the heartbeat delay
+	 */
+	private void write(final boolean heartbeat) {
+		final OutputStream out = this.asyncOut;
+		assert out != null;
+		this.writeStart = System.currentTimeMillis();
+		boolean open = true;
+		try {
+			boolean written = false;
+			SseEvent event;
+			while (open && (event = this.queue.poll()) != null) {
+				if (event == CLOSE) {
+					open = false;
+				}
+				else {
+					out.write(event.bytes());
+					written = true;
+				}
+			}
+			if (open && this.closed && this.queue.isEmpty()) {
+				open = false;
+			}
+			if (open && !written && heartbeat && System.currentTimeMillis() - this.lastWrite >= this.heartbeat) {
+				out.write(HEARTBEAT);
+				written = true;
+			}
+			// All available events are flushed at once, so that a burst of events is sent in one chunk
+			if (written) {
+				out.flush();
+				this.lastWrite = System.currentTimeMillis();
+			}
+		}
+		catch (IOException e) {
+			// The client disconnected, which is the normal end of an event stream
+			open = false;
+		}
+		this.writeStart = 0;
+		if (!open) {
+			// The writing flag is kept so that nothing is written anymore
+			end();
+			return ;
+		}
+		this.writing.set(false);
+		if (!this.queue.isEmpty()) {
+			wakeUp();
+		}
+	}
+
+	/**
+	 * Ends the stream served asynchronously and completes its request
+	 */
+	private void end() {
+		release();
+		final AsyncContext asyncContext = this.context;
+		this.context = null;
+		if (asyncContext != null) {
+			try {
+				asyncContext.complete();
+			}
+			catch (IllegalStateException e) {
+				// The request has already been completed by the container
+			}
+		}
+	}
+
+	/**
+	 * Releases the stream once it has ended: it cannot be sent events anymore
+	 */
+	private void release() {
+		this.closed = true;
+		this.queue.clear();
+		final ScheduledFuture<?> heartbeatTask = this.beat;
+		if (heartbeatTask != null) {
+			heartbeatTask.cancel(false);
+		}
+		if (this.hub != null) {
+			this.hub.unsubscribe(this);
+		}
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * Server-Sent Events streams, and hubs that fan events out to many streams
+ */
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.mvc.sse;
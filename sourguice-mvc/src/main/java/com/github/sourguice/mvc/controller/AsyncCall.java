@@ -0,0 +1,339 @@
+package com.github.sourguice.mvc.controller;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.mvc.async.AsyncResult;
+
+/**
+ * A controller call whose result is asynchronous: holds the invocation until its result completes or times out.
+ *
+ * The result of the invocation can be:
+ *  - An {@link AsyncResult}, which notifies its completion.
+ *  - A java.util.concurrent.CompletionStage (on Java 8 and later, accessed by reflection), which notifies its completion.
+ *  - Any other {@link Future}, which is polled by a single shared thread until it is done or the call times out
+ *    (the container thread is still released).
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class AsyncCall {
+
+	/**
+	 * The CompletionStage interface, or null if this JVM does not have it
+	 */
+	private static final @CheckForNull Class<?> COMPLETION_STAGE = classOrNull("java.util.concurrent.CompletionStage");
+
+	/**
+	 * The BiConsumer interface, or null if this JVM does not have it
+	 */
+	private static final @CheckForNull Class<?> BI_CONSUMER = classOrNull("java.util.function.BiConsumer");
+
+	/**
+	 * First delay, in milliseconds, between two polls of a plain future
+	 */
+	private static final long FIRST_POLL_DELAY = 1;
+
+	/**
+	 * Maximum delay, in milliseconds, between two polls of a plain future
+	 */
+	private static final long MAX_POLL_DELAY = 50;
+
+	/**
+	 * The thread that polls plain futures
+	 */
+	private static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+		@Override public Thread newThread(final Runnable runnable) {
+			final Thread thread = new Thread(runnable, "sourguice-async-poll-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The infos of the invocation that returned the asynchronous result
+	 */
+	final ControllerInvocationInfos infos;
+
+	/**
+	 * Whether the call has completed (or timed out)
+	 */
+	private final AtomicBoolean completed = new AtomicBoolean(false);
+
+	/**
+	 * The value of the result
+	 */
+	private volatile @CheckForNull Object value = null;
+
+	/**
+	 * The failure of the result, if it failed
+	 */
+	private volatile @CheckForNull Throwable failure = null;
+
+	/**
+	 * Whether the call timed out
+	 */
+	private volatile boolean timedOut = false;
+
+	/**
+	 * The next poll of a plain future, if one is scheduled
+	 */
+	private volatile @CheckForNull ScheduledFuture<?> poll = null;
+
+	/**
+	 * @param infos The infos of the invocation that returned the asynchronous result
+	 */
+	AsyncCall(final ControllerInvocationInfos infos) {
+		this.infos = infos;
+	}
+
+	/**
+	 * @param name The name of a class
+	 * @return The class, or null if it does not exist
+	 */
+	private static @CheckForNull Class<?> classOrNull(final String name) {
+		try {
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param ret What a controller method returned
+	 * @return Whether it is an asynchronous result
+	 */
+	static boolean isAsync(final @CheckForNull Object ret) {
+		return ret instanceof Future || (COMPLETION_STAGE != null && COMPLETION_STAGE.isInstance(ret));
+	}
+
+	/**
+	 * @param thrown A failure, as reported by a future or a completion stage
+	 * @return The actual failure
+	 */
+	private static Throwable unwrap(final Throwable thrown) {
+		final Throwable cause = thrown.getCause();
+		if (cause != null && (thrown instanceof ExecutionException || thrown.getClass().getName().equals("java.util.concurrent.CompletionException"))) {
+			return cause;
+		}
+		return thrown;
+	}
+
+	/**
+	 * Completes the call
+	 *
+	 * @param value The value of the result
+	 * @param failure The failure of the result, or null
+	 * @return Whether the call was completed by this call (false if it had already completed or timed out)
+	 */
+	boolean complete(final @CheckForNull Object value, final @CheckForNull Throwable failure) {
+		if (!this.completed.compareAndSet(false, true)) {
+			return false;
+		}
+		this.value = value;
+		this.failure = failure == null ? null : unwrap(failure);
+		return true;
+	}
+
+	/**
+	 * Marks the call as timed out and stops polling its result
+	 *
+	 * @return Whether the call timed out (false if it had already completed)
+	 */
+	boolean timeout() {
+		if (!this.completed.compareAndSet(false, true)) {
+			return false;
+		}
+		this.timedOut = true;
+		final ScheduledFuture<?> scheduled = this.poll;
+		if (scheduled != null) {
+			scheduled.cancel(false);
+		}
+		return true;
+	}
+
+	/**
+	 * Polls a plain future after the given delay, and again with a doubled delay until it is done or the call completes
+	 *
+	 * @param future The future to poll
+	 * @param delay The delay, in milliseconds, before the poll
+	 * @param onComplete Run when the future completes the call
+	 */
+	private void poll(final Future<?> future, final long delay, final Runnable onComplete) {
+		this.poll = POLLER.schedule(new Runnable() {
+			@Override public void run() {
+				if (AsyncCall.this.completed.get()) {
+					return ;
+				}
+				if (!future.isDone()) {
+					poll(future, Math.min(MAX_POLL_DELAY, delay * 2), onComplete);
+					return ;
+				}
+				if (completeFrom(future)) {
+					onComplete.run();
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Completes the call from a future that is done
+	 *
+	 * @param future The done future
+	 * @return Whether the call was completed by this call
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingGenericException")
+	private boolean completeFrom(final Future<?> future) {
+		try {
+			return complete(future.get(), null);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException | RuntimeException e) {
+			return complete(null, e);
+		}
+	}
+
+	/**
+	 * Registers the call on the asynchronous result, so that the result completes the call
+	 *
+	 * @param ret The asynchronous result
+	 * @param onComplete Run when the result completes the call
+	 */
+	void listen(final Object ret, final Runnable onComplete) {
+		if (ret instanceof AsyncResult) {
+			final AsyncResult<?> result = (AsyncResult<?>) ret;
+			result.addListener(new Runnable() {
+				@Override public void run() {
+					if (completeFrom(result)) {
+						onComplete.run();
+					}
+				}
+			});
+			return ;
+		}
+		if (COMPLETION_STAGE != null && BI_CONSUMER != null && COMPLETION_STAGE.isInstance(ret)) {
+			final Object consumer = Proxy.newProxyInstance(BI_CONSUMER.getClassLoader() == null ? AsyncCall.class.getClassLoader() : BI_CONSUMER.getClassLoader(), new Class<?>[] { BI_CONSUMER }, new InvocationHandler() {
+				@Override public @CheckForNull Object invoke(final Object proxy, final Method method, final @CheckForNull Object[] args) {
+					if (method.getName().equals("accept") && args != null && args.length == 2) {
+						if (complete(args[0], (Throwable) args[1])) {
+							onComplete.run();
+						}
+						return null;
+					}
+					if (method.getName().equals("equals") && args != null) {
+						return Boolean.valueOf(proxy == args[0]);
+					}
+					if (method.getName().equals("hashCode")) {
+						return Integer.valueOf(System.identityHashCode(proxy));
+					}
+					return "AsyncCall.Listener";
+				}
+			});
+			try {
+				COMPLETION_STAGE.getMethod("whenComplete", BI_CONSUMER).invoke(ret, consumer);
+			}
+			catch (InvocationTargetException e) {
+				if (complete(null, e.getCause())) {
+					onComplete.run();
+				}
+			}
+			catch (ReflectiveOperationException e) {
+				throw new UnsupportedOperationException(e);
+			}
+			return ;
+		}
+		final Future<?> future = (Future<?>) ret;
+		if (future.isDone()) {
+			if (completeFrom(future)) {
+				onComplete.run();
+			}
+			return ;
+		}
+		poll(future, FIRST_POLL_DELAY, onComplete);
+	}
+
+	/**
+	 * Waits, on the current thread, for the asynchronous result to complete the call.
+	 * Used when the request cannot be suspended.
+	 *
+	 * @param ret The asynchronous result
+	 * @param timeout The timeout, in milliseconds (0 means no timeout)
+	 */
+	void await(final Object ret, final long timeout) {
+		try {
+			if (ret instanceof Future && !(ret instanceof AsyncResult)) {
+				final Future<?> future = (Future<?>) ret;
+				complete(timeout == 0 ? future.get() : future.get(timeout, TimeUnit.MILLISECONDS), null);
+				return ;
+			}
+			final Object lock = new Object();
+			synchronized (lock) {
+				listen(ret, new Runnable() {
+					@Override public void run() {
+						synchronized (lock) {
+							lock.notifyAll();
+						}
+					}
+				});
+				final long end = System.currentTimeMillis() + timeout;
+				while (!this.completed.get()) {
+					final long left = end - System.currentTimeMillis();
+					if (timeout != 0 && left <= 0) {
+						break ;
+					}
+					lock.wait(timeout == 0 ? 0 : left);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | CancellationException e) {
+			complete(null, e);
+		}
+		catch (TimeoutException e) {
+			// The call is marked as timed out below
+		}
+		timeout();
+	}
+
+	/**
+	 * @return Whether the call timed out
+	 */
+	boolean isTimedOut() {
+		return this.timedOut;
+	}
+
+	/**
+	 * @return The failure of the result, if it failed
+	 */
+	@CheckForNull Throwable getFailure() {
+		return this.failure;
+	}
+
+	/**
+	 * @return The value of the result
+	 */
+	@CheckForNull Object getValue() {
+		return this.value;
+	}
+}
@@ -18,9 +18,11 @@ import com.github.sourguice.call.ArgumentFetcherFactory;
 import com.github.sourguice.call.SGInvocation;
 import com.github.sourguice.call.SGInvocationFactory;
 import com.github.sourguice.mvc.annotation.controller.HttpError;
+import com.github.sourguice.mvc.annotation.request.AsyncTimeout;
 import com.github.sourguice.mvc.annotation.request.PathVariable;
 import com.github.sourguice.mvc.annotation.request.Redirects;
 import com.github.sourguice.mvc.annotation.request.RequestMapping;
+import com.github.sourguice.mvc.annotation.request.RunOn;
 import com.github.sourguice.mvc.annotation.request.View;
 import com.github.sourguice.mvc.annotation.request.Writes;
 import com.github.sourguice.mvc.controller.fetchers.PathVariableArgumentFetcher;
@@ -76,6 +78,16 @@ public final class ControllerInvocation implements ArgumentFetcherFactory {
 	 */
 	private final @CheckForNull Redirects redirects;
 
+	/**
+	 * AsyncTimeout annotation if defined on the method or on its controller
+	 */
+	private final @CheckForNull AsyncTimeout asyncTimeout;
+
+	/**
+	 * RunOn annotation if defined on the method or on its controller
+	 */
+	private final @CheckForNull RunOn runOn;
+
 	/**
 	 * The reference of each path variable name and their position in the url regex
 	 */
@@ -112,6 +124,10 @@ public final class ControllerInvocation implements ArgumentFetcherFactory {
 
 		this.redirects = Annotations.getOneRecursive(Redirects.class, method.getAnnotations());
 
+		this.asyncTimeout = Annotations.getOneTree(AsyncTimeout.class, method);
+
+		this.runOn = Annotations.getOneTree(RunOn.class, method);
+
 		// Transform URL like "/foo-{bar}" into /foo-[^/]+ and registers "bar" as match 1
 		for (String location : this.mapping.value()) {
 			final Matcher matcher = SEARCH.matcher(location);
@@ -260,6 +276,20 @@ public final class ControllerInvocation implements ArgumentFetcherFactory {
 		return this.redirects;
 	}
 
+	/**
+	 * @return AsyncTimeout annotation if defined on the method or on its controller
+	 */
+	public @CheckForNull AsyncTimeout getAsyncTimeout() {
+		return this.asyncTimeout;
+	}
+
+	/**
+	 * @return RunOn annotation if defined on the method or on its controller
+	 */
+	public @CheckForNull RunOn getRunOn() {
+		return this.runOn;
+	}
+
 	@Override
 	public ArgumentFetcher<?> create(final Method method, final int position, final TypeLiteral<?> argType) {
 		final PathVariable pathVariable = Annotations.fromArray(method.getParameterAnnotations()[position]).getAnnotation(PathVariable.class);
@@ -8,19 +8,32 @@ import java.lang.reflect.InvocationTargetException;
 import java.nio.CharBuffer;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.CheckForNull;
 import javax.inject.Inject;
 import javax.inject.Provider;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.github.sourguice.exception.ExceptionHandler;
+import com.github.sourguice.exception.ExceptionService;
 import com.github.sourguice.mvc.annotation.controller.HttpError;
+import com.github.sourguice.mvc.annotation.request.AsyncTimeout;
 import com.github.sourguice.mvc.annotation.request.Redirects;
+import com.github.sourguice.mvc.annotation.request.RunOn;
 import com.github.sourguice.mvc.annotation.request.View;
 import com.github.sourguice.mvc.annotation.request.Writes;
+import com.github.sourguice.mvc.async.AsyncResult;
+import com.github.sourguice.mvc.async.ControllerExecutors;
 import com.github.sourguice.mvc.request.NoJsessionidHttpRequest;
+import com.github.sourguice.mvc.sse.SseStream;
 import com.github.sourguice.mvc.view.NoViewRendererException;
 import com.github.sourguice.mvc.view.ViewRenderingException;
 import com.github.sourguice.throwable.invocation.HandledException;
@@ -31,6 +44,16 @@ import com.github.sourguice.throwable.invocation.NoSuchRequestParameterException
  * As each controller is registered to a URL pattern, for each URL pattern there is a  ControllersServlet.
  * One ControllersServlet may have multiple controllers if multiple controllers are registered on the same URL pattern.
  *
+ * When an invocation returns an asynchronous result ({@link AsyncResult}, CompletionStage or any {@link java.util.concurrent.Future}),
+ * the request is suspended with Servlet 3 asynchronous processing and the container thread is released.
+ * When the result completes, the request is dispatched again to the container, which runs it through the filters
+ * (and therefore the Guice request scope) again, and the result is then processed as if it had been returned synchronously.
+ * For this, the GuiceFilter must be declared with async-supported and must be mapped for the ASYNC dispatcher.
+ * When the request does not support asynchronous processing, the result is waited for on the container thread.
+ *
+ * An invocation annotated with @{@link RunOn} is run, in the request scope, on the named executor
+ * and its result is then processed like an asynchronous result.
+ *
  * @author Salomon BRYS <salomon.brys@gmail.com>
  */
 public final class ControllersServer {
@@ -40,6 +63,16 @@ public final class ControllersServer {
 	 */
 	public static final String MATCH_RESULT_REQUEST_ATTRIBUTE = "com.github.sourguice.MatchResult";
 
+	/**
+	 * The pending asynchronous call of a suspended request is stored in this request attribute
+	 */
+	public static final String ASYNC_CALL_REQUEST_ATTRIBUTE = "com.github.sourguice.AsyncCall";
+
+	/**
+	 * Timeout of asynchronous results, in milliseconds, when there is no {@link AsyncTimeout} annotation
+	 */
+	public static final long DEFAULT_ASYNC_TIMEOUT = 30000;
+
 	/**
 	 * List of {@link ControllerHandler}s registered for the path that this servlet handles
 	 */
@@ -51,6 +84,18 @@ public final class ControllersServer {
 	@Inject
 	private @CheckForNull Provider<PathVariablesHolder> pathVariablesProvider;
 
+	/**
+	 * The exception service, to handle the failures of asynchronous results
+	 */
+	@Inject
+	private @CheckForNull Provider<ExceptionService> exceptionServiceProvider;
+
+	/**
+	 * The executors on which @{@link RunOn} annotated invocations run
+	 */
+	@Inject
+	private @CheckForNull Provider<ControllerExecutors> executorsProvider;
+
 	/**
 	 * Adds a controller to this servlet's path
 	 * This means that the given controller is registered on the same path as the servlet
@@ -165,6 +210,31 @@ public final class ControllersServer {
 		return true;
 	}
 
+	/**
+	 * Check if the invocation being processed has returned a {@link SseStream} and serves it.
+	 * The request is suspended while the stream lives, unless the container does not support it.
+	 *
+	 * @param ret Whatever the invocation has returned
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @return Whether a stream was returned and served, or not.
+	 * @throws IOException IO failure while manipulating the response
+	 */
+	private static boolean checkSse(final @CheckForNull Object ret, final HttpServletRequest req, final HttpServletResponse res) throws IOException {
+		if (!(ret instanceof SseStream)) {
+			return false;
+		}
+		final SseStream stream = (SseStream) ret;
+		final AsyncContext context = startAsync(req);
+		if (context == null) {
+			stream.serve(res);
+		}
+		else {
+			stream.serve(context, res);
+		}
+		return true;
+	}
+
 	/**
 	 * Check if the invocation being processed has a {@link View} annotation and handles the request accordingly
 	 *
@@ -202,10 +272,30 @@ public final class ControllersServer {
 		return false;
 	}
 
+	/**
+	 * Processes whatever an invocation has returned
+	 *
+	 * @param infos The infos of the invocation
+	 * @param ret Whatever the invocation has returned
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws NoViewRendererException If the invocation gave a view that no view renderer could render
+	 * @throws ViewRenderingException If the invocation gave a view that fail to render
+	 * @throws IOException IO failure while manipulating the response
+	 */
+	private static void processResult(final ControllerInvocationInfos infos, final @CheckForNull Object ret, final HttpServletRequest req, final HttpServletResponse res) throws NoViewRendererException, ViewRenderingException, IOException {
+		if (checkSse(ret, req, res)) { return ; }
+		if (checkView(infos, ret)) { return ; }
+		if (checkWrites(infos, ret, res)) { return ; }
+		if (checkRedirects(infos, ret, res)) { return ; }
+		if (checkHttpError(infos, ret, res)) { return ; }
+	}
+
 	/**
 	 * Excecutes the call on the given invocation
 	 *
 	 * @param infos The infos of the invocation to call
+	 * @param req The current HTTP request
 	 * @param res The current HTTP response
 	 * @throws HandledException If an exception was thrown and handled
 	 * @throws NoViewRendererException If the invocation gave a view that no view renderer could render
@@ -214,19 +304,249 @@ public final class ControllersServer {
 	 * @throws NoSuchRequestParameterException If a parameter could not be found
 	 * @throws InvocationTargetException Any exception thrown by the method being called
 	 */
-	private void makeCall(final ControllerInvocationInfos infos, final HttpServletResponse res) throws HandledException, NoViewRendererException, ViewRenderingException, IOException, InvocationTargetException, NoSuchRequestParameterException {
+	private void makeCall(final ControllerInvocationInfos infos, final HttpServletRequest req, final HttpServletResponse res) throws HandledException, NoViewRendererException, ViewRenderingException, IOException, InvocationTargetException, NoSuchRequestParameterException {
 		assert infos.urlMatch != null;
 		assert this.pathVariablesProvider != null;
 
 		this.pathVariablesProvider.get().set(infos.urlMatch, infos.invocation.matchRef);
 
+		// If the invocation must run on an executor, and if the request context can be carried to it, runs it there
+		final RunOn runOn = infos.invocation.getRunOn();
+		if (runOn != null) {
+			final RequestContextTransfer context = RequestContextTransfer.capture();
+			if (context != null) {
+				offload(infos, runOn.value(), context, req, res);
+				return ;
+			}
+		}
+
 		// Invoke the invocation using the MethodCaller registered in Guice
 		final Object ret = infos.invocation.invoke(true);
 
-		if (checkView(infos, ret)) { return ; }
-		if (checkWrites(infos, ret, res)) { return ; }
-		if (checkRedirects(infos, ret, res)) { return ; }
-		if (checkHttpError(infos, ret, res)) { return ; }
+		if (ret != null && AsyncCall.isAsync(ret)) {
+			suspend(new AsyncCall(infos), ret, req, res);
+			return ;
+		}
+
+		processResult(infos, ret, req, res);
+	}
+
+	/**
+	 * Runs an invocation on a named executor and suspends the request until it has run.
+	 *
+	 * The request is suspended before the task is submitted, so the task never completes a request that is not suspended yet.
+	 * The task is bound to the lifetime of the request: once the request times out or completes, the task is cancelled
+	 * (interrupted if it is running) and the transferred request context is invalidated.
+	 *
+	 * @param infos The infos of the invocation to run
+	 * @param name The name of the executor
+	 * @param context The request context in which to run the invocation
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws HandledException If the invocation threw an exception that was handled
+	 * @throws NoViewRendererException If the invocation gave a view that no view renderer could render
+	 * @throws ViewRenderingException If the invocation gave a view that fail to render
+	 * @throws IOException IO failure while manipulating the response
+	 * @throws InvocationTargetException Any exception thrown by the invocation, if it was not handled
+	 * @throws NoSuchRequestParameterException If a parameter could not be found
+	 */
+	private void offload(final ControllerInvocationInfos infos, final String name, final RequestContextTransfer context, final HttpServletRequest req, final HttpServletResponse res) throws HandledException, NoViewRendererException, ViewRenderingException, IOException, InvocationTargetException, NoSuchRequestParameterException {
+		assert this.executorsProvider != null;
+		final Executor executor = this.executorsProvider.get().get(name);
+
+		final AsyncContext async = startAsync(req);
+
+		final AsyncResult<Object> result = new AsyncResult<>();
+		final FutureTask<Void> task = new FutureTask<>(context.wrap(new Runnable() {
+			@SuppressWarnings("PMD.AvoidCatchingThrowable")
+			@Override public void run() {
+				try {
+					result.set(infos.invocation.invoke(true));
+				}
+				catch (Throwable e) {
+					result.fail(e);
+				}
+			}
+		}), null);
+
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			context.invalidate();
+			res.sendError(503, "Executor " + name + " rejected the request");
+			if (async != null) {
+				async.complete();
+			}
+			return ;
+		}
+
+		if (async == null) {
+			try {
+				suspend(new AsyncCall(infos), result, null, req, res);
+			}
+			finally {
+				task.cancel(true);
+				context.invalidate();
+			}
+			return ;
+		}
+
+		suspend(new AsyncCall(infos), result, async, req, res);
+
+		// Registered after the listener of the call, so that on timeout or error the call is marked as timed out
+		// before the task is cancelled (otherwise the interrupted task would fail the call first)
+		async.addListener(new AsyncListener() {
+			private void release() {
+				task.cancel(true);
+				context.invalidate();
+			}
+			@Override public void onTimeout(final AsyncEvent event) { release(); }
+			@Override public void onError(final AsyncEvent event) { release(); }
+			@Override public void onComplete(final AsyncEvent event) { release(); }
+			@Override public void onStartAsync(final AsyncEvent event) {
+				// The request is suspended again (the invocation returned an asynchronous result): follows the new cycle
+				final AsyncContext restarted = event.getAsyncContext();
+				if (restarted != null) {
+					restarted.addListener(this);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Suspends the request until the asynchronous result of its invocation completes
+	 * (or waits for it if the request does not support asynchronous processing)
+	 *
+	 * @param call The call that returned the asynchronous result
+	 * @param ret The asynchronous result
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws HandledException If the result failed and its exception was handled
+	 * @throws NoViewRendererException If the result is a view that no view renderer could render
+	 * @throws ViewRenderingException If the result is a view that fail to render
+	 * @throws IOException IO failure while manipulating the response
+	 * @throws InvocationTargetException The failure of the result, if it was not handled
+	 */
+	private void suspend(final AsyncCall call, final Object ret, final HttpServletRequest req, final HttpServletResponse res) throws HandledException, NoViewRendererException, ViewRenderingException, IOException, InvocationTargetException, NoSuchRequestParameterException {
+		suspend(call, ret, startAsync(req), req, res);
+	}
+
+	/**
+	 * Suspends the request until the asynchronous result of its invocation completes
+	 * (or waits for it if the request has not been suspended)
+	 *
+	 * @param call The call that returned the asynchronous result
+	 * @param ret The asynchronous result
+	 * @param context The asynchronous context of the suspended request, or null if it could not be suspended
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws HandledException If the result failed and its exception was handled
+	 * @throws NoViewRendererException If the result is a view that no view renderer could render
+	 * @throws ViewRenderingException If the result is a view that fail to render
+	 * @throws IOException IO failure while manipulating the response
+	 * @throws InvocationTargetException The failure of the result, if it was not handled
+	 */
+	private void suspend(final AsyncCall call, final Object ret, final @CheckForNull AsyncContext context, final HttpServletRequest req, final HttpServletResponse res) throws HandledException, NoViewRendererException, ViewRenderingException, IOException, InvocationTargetException, NoSuchRequestParameterException {
+		final AsyncTimeout asyncTimeout = call.infos.invocation.getAsyncTimeout();
+		final long timeout = asyncTimeout == null ? DEFAULT_ASYNC_TIMEOUT : asyncTimeout.value();
+
+		if (context == null) {
+			call.await(ret, timeout);
+			resume(call, req, res);
+			return ;
+		}
+
+		req.setAttribute(ASYNC_CALL_REQUEST_ATTRIBUTE, call);
+		context.setTimeout(timeout);
+		context.addListener(new AsyncListener() {
+			@Override public void onTimeout(final AsyncEvent event) {
+				if (call.timeout()) {
+					context.dispatch();
+				}
+			}
+			@Override public void onStartAsync(final AsyncEvent event) { /* Nothing to do */ }
+			@Override public void onError(final AsyncEvent event) {
+				// The container completes the request: stops waiting for the result
+				call.timeout();
+			}
+			@Override public void onComplete(final AsyncEvent event) { /* Nothing to do */ }
+		});
+		call.listen(ret, new Runnable() {
+			@Override public void run() {
+				context.dispatch();
+			}
+		});
+	}
+
+	/**
+	 * Suspends a request, if it supports asynchronous processing
+	 *
+	 * @param req The request to suspend
+	 * @return The asynchronous context of the suspended request, or null if it could not be suspended
+	 */
+	private static @CheckForNull AsyncContext startAsync(final HttpServletRequest req) {
+		try {
+			if (!req.isAsyncSupported()) {
+				return null;
+			}
+			return req.startAsync();
+		}
+		catch (AbstractMethodError e) {
+			// Containers that predate the final Servlet 3.0 API do not implement it
+			return null;
+		}
+	}
+
+	/**
+	 * Processes the completed asynchronous result of a call
+	 *
+	 * @param call The completed call
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws HandledException If the result failed and its exception was handled
+	 * @throws NoViewRendererException If the result is a view that no view renderer could render
+	 * @throws ViewRenderingException If the result is a view that fail to render
+	 * @throws IOException IO failure while manipulating the response
+	 * @throws InvocationTargetException The failure of the result, if it was not handled
+	 * @throws NoSuchRequestParameterException If the result failed because a parameter could not be found
+	 */
+	@SuppressWarnings("unchecked")
+	private void resume(final AsyncCall call, final HttpServletRequest req, final HttpServletResponse res) throws HandledException, NoViewRendererException, ViewRenderingException, IOException, InvocationTargetException, NoSuchRequestParameterException {
+		if (call.isTimedOut()) {
+			res.sendError(503, "Asynchronous result timed out");
+			return ;
+		}
+
+		final Throwable failure = call.getFailure();
+		if (failure == null) {
+			final Object value = call.getValue();
+			// An invocation run on an executor may itself return an asynchronous result
+			if (value != null && AsyncCall.isAsync(value)) {
+				suspend(new AsyncCall(call.infos), value, req, res);
+				return ;
+			}
+			processResult(call.infos, value, req, res);
+			return ;
+		}
+
+		if (failure instanceof HandledException) {
+			throw (HandledException) failure;
+		}
+		if (failure instanceof NoSuchRequestParameterException) {
+			throw (NoSuchRequestParameterException) failure;
+		}
+		if (failure instanceof InvocationTargetException) {
+			throw (InvocationTargetException) failure;
+		}
+		if (failure instanceof Exception) {
+			assert this.exceptionServiceProvider != null;
+			final ExceptionHandler<Exception> handler = (ExceptionHandler<Exception>) this.exceptionServiceProvider.get().getHandler(((Exception) failure).getClass());
+			if (handler != null && handler.handle((Exception) failure)) {
+				throw new HandledException(failure);
+			}
+		}
+		throw new InvocationTargetException(failure);
 	}
 
 	/**
@@ -239,7 +559,6 @@ public final class ControllersServer {
 	 * @throws ServletException When an exception that was not handled by SourGuice is thrown
 	 * @throws IOException If an input or output exception occurs
 	 */
-	@SuppressWarnings({"PMD.EmptyCatchBlock", "PMD.PreserveStackTrace"})
 	protected void serve(HttpServletRequest req, final HttpServletResponse res) throws ServletException, IOException {
 
 		assert req != null;
@@ -250,6 +569,18 @@ public final class ControllersServer {
 			req = new NoJsessionidHttpRequest(req);
 		}
 
+		// If the request is dispatched again because its asynchronous result has completed, processes the result
+		final Object pending = req.getAttribute(ASYNC_CALL_REQUEST_ATTRIBUTE);
+		if (pending instanceof AsyncCall) {
+			req.removeAttribute(ASYNC_CALL_REQUEST_ATTRIBUTE);
+			final AsyncCall call = (AsyncCall) pending;
+			assert call.infos.urlMatch != null;
+			assert this.pathVariablesProvider != null;
+			this.pathVariablesProvider.get().set(call.infos.urlMatch, call.infos.invocation.matchRef);
+			handle(req, res, call, null);
+			return ;
+		}
+
 		// Gets the best invocation of all controller handlers
 		ControllerInvocationInfos infos = null;
 		for (final ControllerHandler<?> handler : this.handlers) {
@@ -267,8 +598,29 @@ public final class ControllersServer {
 		// Stores the MatchResult into the RequestScoped Container so it can be later retrieved with guice injection
 		req.setAttribute(MATCH_RESULT_REQUEST_ATTRIBUTE, infos.urlMatch);
 
+		handle(req, res, null, infos);
+	}
+
+	/**
+	 * Makes a call, or resumes an asynchronous call, and handles its errors
+	 *
+	 * @param req The HTTP Request
+	 * @param res The HTTP Response
+	 * @param call The asynchronous call to resume, or null to make a new call
+	 * @param infos The infos of the invocation to call, if call is null
+	 * @throws ServletException When an exception that was not handled by SourGuice is thrown
+	 * @throws IOException If an input or output exception occurs
+	 */
+	@SuppressWarnings({"PMD.EmptyCatchBlock", "PMD.PreserveStackTrace"})
+	private void handle(final HttpServletRequest req, final HttpServletResponse res, final @CheckForNull AsyncCall call, final @CheckForNull ControllerInvocationInfos infos) throws ServletException, IOException {
 		try {
-			makeCall(infos, res);
+			if (call != null) {
+				resume(call, req, res);
+			}
+			else {
+				assert infos != null;
+				makeCall(infos, req, res);
+			}
 		}
 		catch (NoSuchRequestParameterException e) {
 			// If a parameter is missing from the request, sends a 400 error
@@ -0,0 +1,195 @@
+package com.github.sourguice.mvc.controller;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.Enumeration;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.inject.OutOfScopeException;
+import com.google.inject.servlet.GuiceFilter;
+
+/**
+ * Carries the Guice request context of the current thread to the thread that runs a task,
+ * so that request scoped objects (including the request and the response themselves) can be injected in the task.
+ *
+ * Guice-Servlet 3.0 keeps the request context in a private thread local of {@link GuiceFilter} and has no public API
+ * to transfer it to another thread, so the thread local and its context class are accessed by reflection.
+ * If they cannot be accessed, {@link #capture()} returns null and the caller must run the task on the request thread.
+ *
+ * Once the request has completed, the transfer must be {@link #invalidate() invalidated}:
+ * wrapped tasks that start afterwards do not run, and tasks that are still running cannot reach request scoped objects anymore
+ * (the transferred request refuses to access its attributes, in which Guice stores them), as the container may have recycled the request.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class RequestContextTransfer {
+
+	/**
+	 * The thread local of GuiceFilter that holds the request context, or null if it cannot be accessed
+	 */
+	private static final @CheckForNull ThreadLocal<Object> LOCAL_CONTEXT = localContext();
+
+	/**
+	 * The request context class of GuiceFilter, or null if it cannot be accessed
+	 */
+	private static final @CheckForNull Class<?> CONTEXT_CLASS = contextClass();
+
+	/**
+	 * The request context to install in the thread that runs a task
+	 */
+	private final Object context;
+
+	/**
+	 * Whether the request of the captured context has completed
+	 */
+	private volatile boolean invalid = false;
+
+	/**
+	 * The transferred request: it cannot access its attributes once the transfer has been invalidated
+	 */
+	private final class TransferredRequest extends HttpServletRequestWrapper {
+
+		/**
+		 * @param request The request of the captured context
+		 */
+		TransferredRequest(final HttpServletRequest request) {
+			super(request);
+		}
+
+		/**
+		 * @throws OutOfScopeException If the request has completed
+		 */
+		private void check() {
+			if (RequestContextTransfer.this.invalid) {
+				throw new OutOfScopeException("The request of this context has completed");
+			}
+		}
+
+		@Override
+		public Object getAttribute(final String name) {
+			check();
+			return super.getAttribute(name);
+		}
+
+		@Override
+		public Enumeration<String> getAttributeNames() {
+			check();
+			return super.getAttributeNames();
+		}
+
+		@Override
+		public void setAttribute(final String name, final Object o) {
+			check();
+			super.setAttribute(name, o);
+		}
+
+		@Override
+		public void removeAttribute(final String name) {
+			check();
+			super.removeAttribute(name);
+		}
+	}
+
+	/**
+	 * @param captured The request context of the current thread
+	 * @param contextClass The request context class of GuiceFilter
+	 * @throws ReflectiveOperationException If the request context could not be copied
+	 */
+	private RequestContextTransfer(final Object captured, final Class<?> contextClass) throws ReflectiveOperationException {
+		final Field request = contextClass.getDeclaredField("request");
+		final Field response = contextClass.getDeclaredField("response");
+		request.setAccessible(true);
+		response.setAccessible(true);
+		final Constructor<?> constructor = contextClass.getDeclaredConstructor(HttpServletRequest.class, HttpServletResponse.class);
+		constructor.setAccessible(true);
+		this.context = constructor.newInstance(new TransferredRequest((HttpServletRequest) request.get(captured)), response.get(captured));
+	}
+
+	/**
+	 * @return The thread local of GuiceFilter that holds the request context, or null if it cannot be accessed
+	 */
+	@SuppressWarnings("unchecked")
+	private static @CheckForNull ThreadLocal<Object> localContext() {
+		try {
+			final Field field = GuiceFilter.class.getDeclaredField("localContext");
+			field.setAccessible(true);
+			final Object value = field.get(null);
+			return value instanceof ThreadLocal ? (ThreadLocal<Object>) value : null;
+		}
+		catch (ReflectiveOperationException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The request context class of GuiceFilter, or null if it cannot be accessed
+	 */
+	private static @CheckForNull Class<?> contextClass() {
+		try {
+			return Class.forName(GuiceFilter.class.getName() + "$Context");
+		}
+		catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The request context of the current thread, or null if there is none or if it cannot be accessed
+	 */
+	static @CheckForNull RequestContextTransfer capture() {
+		if (LOCAL_CONTEXT == null || CONTEXT_CLASS == null) {
+			return null;
+		}
+		final Object captured = LOCAL_CONTEXT.get();
+		if (captured == null || !CONTEXT_CLASS.isInstance(captured)) {
+			return null;
+		}
+		try {
+			return new RequestContextTransfer(captured, CONTEXT_CLASS);
+		}
+		catch (ReflectiveOperationException | SecurityException | ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Marks the captured request context as no longer valid, because its request has completed
+	 */
+	void invalidate() {
+		this.invalid = true;
+	}
+
+	/**
+	 * @param task A task
+	 * @return A task that runs the given task in the captured request context
+	 * @throws IllegalStateException (when run) if the transfer has been invalidated
+	 */
+	Runnable wrap(final Runnable task) {
+		final ThreadLocal<Object> local = LOCAL_CONTEXT;
+		assert local != null;
+		return new Runnable() {
+			@Override public void run() {
+				if (RequestContextTransfer.this.invalid) {
+					throw new IllegalStateException("The request of this context has completed");
+				}
+				final Object previous = local.get();
+				local.set(RequestContextTransfer.this.context);
+				try {
+					task.run();
+				}
+				finally {
+					if (previous == null) {
+						local.remove();
+					}
+					else {
+						local.set(previous);
+					}
+				}
+			}
+		};
+	}
+}
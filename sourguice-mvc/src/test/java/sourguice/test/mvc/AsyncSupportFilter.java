@@ -0,0 +1,410 @@
+package sourguice.test.mvc;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Emulates the asynchronous processing of a Servlet 3.0 container on top of the Servlet 2.5 tester,
+ * which would otherwise make every suspended request fall back to its blocking path.
+ *
+ * This filter must be the first of the chain.
+ * The tester thread acts as the container thread: it runs the request dispatch, then waits for the request to complete
+ * and runs its asynchronous dispatches.
+ * Timeouts and errors are reported to the listeners on a timer thread, as a container does.
+ *
+ * A suspended response gets the {@link #SUSPENDED_HEADER} header, so that tests can check that the fallback was not used.
+ * A request with the {@link #ERROR_HEADER} header has an error (such as a client disconnection) reported
+ * the given number of milliseconds after it is first suspended.
+ */
+@SuppressWarnings({"javadoc", "PMD"})
+public class AsyncSupportFilter implements Filter {
+
+	public static final String SUSPENDED_HEADER = "x-async";
+
+	public static final String ERROR_HEADER = "x-async-error";
+
+	static final long DEFAULT_TIMEOUT = 30000;
+
+	static final ScheduledExecutorService TIMER = Executors.newScheduledThreadPool(2, new ThreadFactory() {
+		@Override public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "async-support-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	enum Action { NONE, DISPATCH, COMPLETE }
+
+	static final Runnable FINISHED = new Runnable() {
+		@Override public void run() { /* marker */ }
+	};
+
+	static class AsyncRequest extends HttpServletRequestWrapper implements AsyncContext {
+
+		final HttpServletResponse res;
+		final FilterChain chain;
+		final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+		DispatcherType type = DispatcherType.REQUEST;
+		boolean dispatching = false;
+		boolean started = false;
+		boolean done = false;
+		boolean errorScheduled = false;
+		Action action = Action.NONE;
+		long timeout = DEFAULT_TIMEOUT;
+		List<AsyncListener> listeners = new ArrayList<>();
+		ScheduledFuture<?> timeoutTask = null;
+
+		volatile int errorStatus = 0;
+		volatile Throwable failure = null;
+
+		AsyncRequest(HttpServletRequest req, HttpServletResponse res, FilterChain chain) {
+			super(req);
+			this.res = res;
+			this.chain = chain;
+		}
+
+		// ===================== REQUEST =====================
+
+		@Override public boolean isAsyncSupported() {
+			return true;
+		}
+
+		@Override public synchronized boolean isAsyncStarted() {
+			return this.started && (this.dispatching || this.action == Action.NONE);
+		}
+
+		@Override public synchronized AsyncContext getAsyncContext() {
+			if (!this.started) {
+				throw new IllegalStateException("Asynchronous processing has not started");
+			}
+			return this;
+		}
+
+		@Override public synchronized DispatcherType getDispatcherType() {
+			return this.type;
+		}
+
+		@Override public AsyncContext startAsync() {
+			return startAsync(this, this.res);
+		}
+
+		@Override public AsyncContext startAsync(ServletRequest req, ServletResponse response) {
+			List<AsyncListener> previous;
+			synchronized (this) {
+				if (!this.dispatching || this.started) {
+					throw new IllegalStateException("Cannot start asynchronous processing");
+				}
+				this.started = true;
+				this.action = Action.NONE;
+				this.timeout = DEFAULT_TIMEOUT;
+				previous = this.listeners;
+				this.listeners = new ArrayList<>();
+			}
+			if (!this.res.isCommitted()) {
+				this.res.setHeader(SUSPENDED_HEADER, "suspended");
+			}
+			for (AsyncListener listener : previous) {
+				try {
+					listener.onStartAsync(new AsyncEvent(this, this, this.res));
+				}
+				catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return this;
+		}
+
+		// ===================== ASYNC CONTEXT =====================
+
+		@Override public ServletRequest getRequest() {
+			return this;
+		}
+
+		@Override public ServletResponse getResponse() {
+			return this.res;
+		}
+
+		@Override public boolean hasOriginalRequestAndResponse() {
+			return true;
+		}
+
+		@Override public void dispatch() {
+			synchronized (this) {
+				if (!this.started || this.action != Action.NONE || this.done) {
+					throw new IllegalStateException("Cannot dispatch");
+				}
+				this.action = Action.DISPATCH;
+				cancelTimeout();
+				if (this.dispatching) {
+					return ;
+				}
+			}
+			scheduleDispatch();
+		}
+
+		@Override public void dispatch(String path) {
+			dispatch();
+		}
+
+		@Override public void dispatch(ServletContext context, String path) {
+			dispatch();
+		}
+
+		@Override public void complete() {
+			synchronized (this) {
+				if (!this.started || this.action != Action.NONE || this.done) {
+					throw new IllegalStateException("Cannot complete");
+				}
+				this.action = Action.COMPLETE;
+				cancelTimeout();
+				if (this.dispatching) {
+					return ;
+				}
+			}
+			finish(0);
+		}
+
+		@Override public void start(Runnable run) {
+			new Thread(run, "async-support-start").start();
+		}
+
+		@Override public synchronized void addListener(AsyncListener listener) {
+			this.listeners.add(listener);
+		}
+
+		@Override public void addListener(AsyncListener listener, ServletRequest req, ServletResponse response) {
+			addListener(listener);
+		}
+
+		@Override public <T extends AsyncListener> T createListener(Class<T> clazz) throws ServletException {
+			try {
+				return clazz.newInstance();
+			}
+			catch (ReflectiveOperationException e) {
+				throw new ServletException(e);
+			}
+		}
+
+		@Override public synchronized void setTimeout(long timeout) {
+			this.timeout = timeout;
+		}
+
+		@Override public synchronized long getTimeout() {
+			return this.timeout;
+		}
+
+		// ===================== CONTAINER =====================
+
+		synchronized List<AsyncListener> listeners() {
+			return new ArrayList<>(this.listeners);
+		}
+
+		void cancelTimeout() {
+			if (this.timeoutTask != null) {
+				this.timeoutTask.cancel(false);
+				this.timeoutTask = null;
+			}
+		}
+
+		void scheduleDispatch() {
+			this.tasks.add(new Runnable() {
+				@Override public void run() {
+					dispatch(DispatcherType.ASYNC);
+				}
+			});
+		}
+
+		// Runs a dispatch on the tester thread
+		void dispatch(DispatcherType dispatcherType) {
+			synchronized (this) {
+				this.dispatching = true;
+				this.started = false;
+				this.action = Action.NONE;
+				this.type = dispatcherType;
+			}
+			Throwable thrown = null;
+			try {
+				this.chain.doFilter(this, this.res);
+			}
+			catch (Throwable t) {
+				thrown = t;
+			}
+
+			boolean end = false;
+			synchronized (this) {
+				this.dispatching = false;
+				if (thrown != null && this.started && this.action == Action.NONE) {
+					// Reported to the listeners below
+				}
+				else if (thrown != null || !this.started || this.action == Action.COMPLETE) {
+					this.failure = thrown;
+					end = true;
+				}
+				else if (this.action == Action.DISPATCH) {
+					scheduleDispatch();
+				}
+				else {
+					if (this.timeout > 0) {
+						this.timeoutTask = TIMER.schedule(new Runnable() {
+							@Override public void run() {
+								timeout();
+							}
+						}, this.timeout, TimeUnit.MILLISECONDS);
+					}
+					String error = getHeader(ERROR_HEADER);
+					if (error != null && !this.errorScheduled) {
+						this.errorScheduled = true;
+						TIMER.schedule(new Runnable() {
+							@Override public void run() {
+								error(new IOException("Client disconnected"));
+							}
+						}, Long.parseLong(error), TimeUnit.MILLISECONDS);
+					}
+				}
+			}
+			if (thrown != null && !end) {
+				error(thrown);
+			}
+			else if (end) {
+				finish(0);
+			}
+		}
+
+		void timeout() {
+			synchronized (this) {
+				if (this.done || this.dispatching || this.action != Action.NONE) {
+					return ;
+				}
+				this.timeoutTask = null;
+			}
+			for (AsyncListener listener : listeners()) {
+				try {
+					listener.onTimeout(new AsyncEvent(this, this, this.res));
+				}
+				catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+			endUnlessDone(500);
+		}
+
+		void error(Throwable thrown) {
+			synchronized (this) {
+				if (this.done || this.dispatching || this.action != Action.NONE) {
+					return ;
+				}
+			}
+			for (AsyncListener listener : listeners()) {
+				try {
+					listener.onError(new AsyncEvent(this, this, this.res, thrown));
+				}
+				catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+			endUnlessDone(500);
+		}
+
+		// Completes the request with an error, unless a listener has dispatched or completed it
+		void endUnlessDone(int status) {
+			synchronized (this) {
+				if (this.done || this.action != Action.NONE) {
+					return ;
+				}
+				this.action = Action.COMPLETE;
+				cancelTimeout();
+			}
+			finish(status);
+		}
+
+		void finish(int status) {
+			List<AsyncListener> toNotify;
+			synchronized (this) {
+				if (this.done) {
+					return ;
+				}
+				this.done = true;
+				cancelTimeout();
+				toNotify = new ArrayList<>(this.listeners);
+			}
+			this.errorStatus = status;
+			for (AsyncListener listener : toNotify) {
+				try {
+					listener.onComplete(new AsyncEvent(this, this, this.res));
+				}
+				catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+			this.tasks.add(FINISHED);
+		}
+	}
+
+	@Override
+	public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+		AsyncRequest request = new AsyncRequest((HttpServletRequest) req, (HttpServletResponse) res, chain);
+		request.dispatch(DispatcherType.REQUEST);
+		try {
+			for (;;) {
+				Runnable task = request.tasks.poll(DEFAULT_TIMEOUT * 2, TimeUnit.MILLISECONDS);
+				if (task == null) {
+					throw new ServletException("The asynchronous request never completed");
+				}
+				if (task == FINISHED) {
+					break ;
+				}
+				task.run();
+			}
+		}
+		catch (InterruptedException e) {
+			throw new ServletException(e);
+		}
+
+		Throwable failure = request.failure;
+		if (failure instanceof IOException) {
+			throw (IOException) failure;
+		}
+		if (failure instanceof ServletException) {
+			throw (ServletException) failure;
+		}
+		if (failure instanceof RuntimeException) {
+			throw (RuntimeException) failure;
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		if (failure != null) {
+			throw new ServletException(failure);
+		}
+		if (request.errorStatus != 0 && !res.isCommitted()) {
+			((HttpServletResponse) res).sendError(request.errorStatus);
+		}
+	}
+
+	@Override public void init(FilterConfig filterConfig) { /* Nothing to do */ }
+	@Override public void destroy() { /* Nothing to do */ }
+}
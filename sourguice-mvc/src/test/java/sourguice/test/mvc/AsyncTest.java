@@ -0,0 +1,313 @@
+package sourguice.test.mvc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.annotation.request.RequestParam;
+import com.github.sourguice.exception.ExceptionHandler;
+import com.github.sourguice.mvc.SourGuiceMvc;
+import com.github.sourguice.mvc.annotation.request.AsyncTimeout;
+import com.github.sourguice.mvc.annotation.request.Redirects;
+import com.github.sourguice.mvc.annotation.request.RequestMapping;
+import com.github.sourguice.mvc.annotation.request.Writes;
+import com.github.sourguice.mvc.async.AsyncResult;
+import com.github.sourguice.throwable.exception.UnreachableExceptionHandlerException;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class AsyncTest extends TestBase {
+
+    // ===================== CONTROLLER =====================
+
+    // A future that never completes and counts how many times it was polled
+    public static class NeverFuture implements Future<String> {
+    	final AtomicInteger polls = new AtomicInteger();
+
+		@Override public boolean cancel(boolean mayInterruptIfRunning) { return false; }
+		@Override public boolean isCancelled() { return false; }
+		@Override public boolean isDone() {
+			this.polls.incrementAndGet();
+			return false;
+		}
+		@Override public String get() { throw new UnsupportedOperationException(); }
+		@Override public String get(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+			Thread.sleep(unit.toMillis(timeout));
+			throw new TimeoutException();
+		}
+    }
+
+    static final ConcurrentMap<String, NeverFuture> neverFutures = new ConcurrentHashMap<>();
+
+    @Singleton
+    public static class Controller {
+
+		final ExecutorService executor = Executors.newCachedThreadPool();
+
+		private <T> AsyncResult<T> later(final T value, final Exception failure) {
+			final AsyncResult<T> result = new AsyncResult<>();
+			executor.execute(new Runnable() {
+				@Override public void run() {
+					try {
+						Thread.sleep(20);
+					}
+					catch (InterruptedException e) {
+						return ;
+					}
+					if (failure != null) {
+						result.fail(failure);
+					}
+					else {
+						result.set(value);
+					}
+				}
+			});
+			return result;
+		}
+
+		@RequestMapping(value = "/__startup")
+		public void startup() { /* startup */ }
+
+		@RequestMapping(value = "/writes")
+		@Writes
+		public AsyncResult<String> writes() {
+			return later("Salomon", null);
+		}
+
+		@RequestMapping(value = "/redirects")
+		@Redirects("/{}")
+		public AsyncResult<String> redirects() {
+			return later("Salomon", null);
+		}
+
+		@RequestMapping(value = "/future")
+		@Writes
+		public Future<String> future() {
+			return executor.submit(new Callable<String>() {
+				@Override public String call() throws Exception {
+					Thread.sleep(20);
+					return "Salomon";
+				}
+			});
+		}
+
+		@RequestMapping(value = "/handled")
+		@Writes
+		public AsyncResult<String> handled() {
+			return later(null, new CustomException("Choucroute"));
+		}
+
+		@RequestMapping(value = "/unhandled")
+		@Writes
+		public AsyncResult<String> unhandled() {
+			return later(null, new IllegalStateException("Choucroute"));
+		}
+
+		@RequestMapping(value = "/timeout")
+		@Writes
+		@AsyncTimeout(50)
+		public AsyncResult<String> timeout() {
+			return new AsyncResult<>();
+		}
+
+		@RequestMapping(value = "/never")
+		@Writes
+		@AsyncTimeout(50)
+		public Future<String> never(@RequestParam("id") String id) {
+			NeverFuture future = new NeverFuture();
+			neverFutures.put(id, future);
+			return future;
+		}
+
+		@RequestMapping(value = "/disconnect")
+		@Writes
+		@AsyncTimeout(500)
+		public Future<String> disconnect(@RequestParam("id") String id) {
+			NeverFuture future = new NeverFuture();
+			neverFutures.put(id, future);
+			return future;
+		}
+
+    }
+
+    // ===================== EXCEPTIONS =====================
+
+    @SuppressWarnings("serial")
+	public static class CustomException extends Exception {
+		public CustomException(String message) {
+			super(message);
+		}
+    }
+
+    public static class CustomExceptionHandler implements ExceptionHandler<CustomException> {
+    	Provider<HttpServletResponse> responseProvider;
+
+    	@Inject
+		public CustomExceptionHandler(Provider<HttpServletResponse> responseProvider) {
+			super();
+			this.responseProvider = responseProvider;
+		}
+
+		@Override public boolean handle(CustomException exception) throws IOException {
+			this.responseProvider.get().getWriter().write("Boom:" + exception.getMessage() + "!");
+			return true;
+		}
+    }
+
+    // ===================== MODULE =====================
+
+    public static class ControllerModule extends ServletModule {
+        @Override
+        protected void configureServlets() {
+        	SourGuiceMvc mvc = new SourGuiceMvc(new SourGuice());
+            mvc.control("/*").with(Controller.class);
+            try {
+            	mvc.handleException(CustomException.class).with(CustomExceptionHandler.class);
+            }
+            catch (UnreachableExceptionHandlerException e) {
+            	throw new RuntimeException(e);
+            }
+            install(mvc.module());
+        }
+    }
+
+    @Override
+    protected Module module() {
+        return new ControllerModule();
+    }
+
+    @Override
+    protected boolean isAsyncSupported() {
+    	return true;
+    }
+
+    // ===================== TESTS =====================
+
+
+	public void getWrites() throws Exception {
+		HttpTester request = makeRequest("GET", "/writes");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "Salomon");
+	}
+
+
+	public void getRedirects() throws Exception {
+		HttpTester request = makeRequest("GET", "/redirects");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 302);
+		assertEquals(response.getHeader("Location"), "http://tester/Salomon");
+	}
+
+
+	public void getFuture() throws Exception {
+		HttpTester request = makeRequest("GET", "/future");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "Salomon");
+	}
+
+
+	public void getHandled() throws Exception {
+		HttpTester request = makeRequest("GET", "/handled");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "Boom:Choucroute!");
+	}
+
+
+	public void getUnhandled() throws Exception {
+		HttpTester request = makeRequest("GET", "/unhandled");
+        request.addHeader("x-sj-exc", "java.lang.IllegalStateException");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 500);
+		assertEquals(response.getReason(), "Choucroute");
+	}
+
+
+	public void getTimeout() throws Exception {
+		HttpTester request = makeRequest("GET", "/timeout");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 503);
+		assertEquals(response.getReason(), "Asynchronous result timed out");
+	}
+
+
+	// Polls of a future that is not done must stop once its call has timed out
+	public void getNeverTimeout() throws Exception {
+		String id = UUID.randomUUID().toString();
+		HttpTester response = getResponse(makeRequest("GET", "/never?id=" + id));
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 503);
+		NeverFuture future = neverFutures.remove(id);
+		int polls = future.polls.get();
+		Thread.sleep(200);
+		assertEquals(future.polls.get(), polls);
+	}
+
+	// When the client disconnects, the container reports an error: polls must stop, without waiting for the timeout
+	public void getDisconnect() throws Exception {
+		String id = UUID.randomUUID().toString();
+		HttpTester request = makeRequest("GET", "/disconnect?id=" + id);
+		request.addHeader(AsyncSupportFilter.ERROR_HEADER, "50");
+
+		long start = System.currentTimeMillis();
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		if (isAsyncSupported()) {
+			assertEquals(response.getStatus(), 500);
+			assertTrue(System.currentTimeMillis() - start < 500);
+			NeverFuture future = neverFutures.remove(id);
+			assertTrue(future.polls.get() > 0);
+			int polls = future.polls.get();
+			Thread.sleep(200);
+			assertEquals(future.polls.get(), polls);
+		}
+		else {
+			assertEquals(response.getStatus(), 503);
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package sourguice.test.mvc;
+
+import org.testng.annotations.Test;
+
+// Runs the offloading tests on the blocking fallback, used by containers that cannot suspend requests
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class RunOnFallbackTest extends RunOnTest {
+
+    @Override
+    protected boolean isAsyncSupported() {
+    	return false;
+    }
+
+}
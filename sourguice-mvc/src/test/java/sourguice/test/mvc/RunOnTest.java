@@ -0,0 +1,338 @@
+package sourguice.test.mvc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.annotation.request.RequestParam;
+import com.github.sourguice.mvc.SourGuiceMvc;
+import com.github.sourguice.mvc.annotation.request.AsyncTimeout;
+import com.github.sourguice.mvc.annotation.request.RequestMapping;
+import com.github.sourguice.mvc.annotation.request.RunOn;
+import com.github.sourguice.mvc.annotation.request.Writes;
+import com.github.sourguice.mvc.async.AsyncResult;
+import com.github.sourguice.mvc.async.ControllerExecutors;
+import com.github.sourguice.mvc.async.MeteredExecutor;
+import com.google.inject.Module;
+import com.google.inject.OutOfScopeException;
+import com.google.inject.Singleton;
+import com.google.inject.name.Names;
+import com.google.inject.servlet.RequestScoped;
+import com.google.inject.servlet.ServletModule;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class RunOnTest extends TestBase {
+
+    // ===================== CONTROLLER =====================
+
+    static final AtomicInteger interrupted = new AtomicInteger();
+    static final AtomicInteger outOfScope = new AtomicInteger();
+    static final AtomicInteger queuedRuns = new AtomicInteger();
+
+    @RequestScoped
+    public static class Bean {
+    	public String name = "Salomon";
+    }
+
+    @Singleton
+    public static class Controller {
+
+		@Inject
+		Provider<HttpServletRequest> requestProvider;
+
+		@Inject
+		Provider<Bean> beanProvider;
+
+		@Inject
+		ControllerExecutors executors;
+
+		@RequestMapping(value = "/__startup")
+		public void startup() { /* startup */ }
+
+		@RequestMapping(value = "/io")
+		@Writes
+		@RunOn("io-pool")
+		public String io(@RequestParam("name") String name) {
+			return Thread.currentThread().getName().substring(0, 7) + ":" + name + ":" + requestProvider.get().getHeader("x-name");
+		}
+
+		@RequestMapping(value = "/async")
+		@Writes
+		@RunOn("io-pool")
+		public AsyncResult<String> async() {
+			AsyncResult<String> result = new AsyncResult<>();
+			result.set(Thread.currentThread().getName().substring(0, 7));
+			return result;
+		}
+
+		@RequestMapping(value = "/slow")
+		@Writes
+		@RunOn("io-pool")
+		@AsyncTimeout(100)
+		public String slow() throws InterruptedException {
+			try {
+				Thread.sleep(5000);
+			}
+			catch (InterruptedException e) {
+				interrupted.incrementAndGet();
+				throw e;
+			}
+			return "Salomon";
+		}
+
+		@RequestMapping(value = "/hang")
+		@Writes
+		@RunOn("io-pool")
+		@AsyncTimeout(300)
+		public String hang() throws InterruptedException {
+			return slow();
+		}
+
+		// Keeps running after its request has timed out, then tries to reach a request scoped bean
+		@RequestMapping(value = "/late")
+		@Writes
+		@RunOn("io-pool")
+		@AsyncTimeout(50)
+		public String late() {
+			long end = System.currentTimeMillis() + 300;
+			for (long left = end - System.currentTimeMillis(); left > 0; left = end - System.currentTimeMillis()) {
+				try {
+					Thread.sleep(left);
+				}
+				catch (InterruptedException e) {
+					// Ignores the cancellation
+				}
+			}
+			try {
+				return beanProvider.get().name;
+			}
+			catch (RuntimeException e) {
+				// Guice reports the scope failure as the cause of a provision failure
+				if (e instanceof OutOfScopeException || e.getCause() instanceof OutOfScopeException) {
+					outOfScope.incrementAndGet();
+				}
+				throw e;
+			}
+		}
+
+		@RequestMapping(value = "/block")
+		@Writes
+		@RunOn("single")
+		public String block() throws InterruptedException {
+			Thread.sleep(300);
+			return "Salomon";
+		}
+
+		@RequestMapping(value = "/queued")
+		@Writes
+		@RunOn("single")
+		@AsyncTimeout(50)
+		public String queued() {
+			queuedRuns.incrementAndGet();
+			return "Salomon";
+		}
+
+		@RequestMapping(value = "/virtual")
+		@Writes
+		@RunOn("virtual")
+		public String virtual() {
+			return "Salomon";
+		}
+
+		@RequestMapping(value = "/missing")
+		@Writes
+		@RunOn("io-pool")
+		public String missing(@RequestParam("name") String name) {
+			return name;
+		}
+
+		@RequestMapping(value = "/metrics")
+		@Writes
+		public String metrics() {
+			MeteredExecutor executor = executors.get("io-pool");
+			return executor.getCompletedCount() + ":" + executor.getRejectedCount() + ":" + executors.getUsedExecutors().keySet();
+		}
+
+    }
+
+    // ===================== MODULE =====================
+
+    public static class ControllerModule extends ServletModule {
+        @Override
+        protected void configureServlets() {
+        	ExecutorService ioPool = Executors.newFixedThreadPool(4, new ThreadFactory() {
+        		@Override public Thread newThread(Runnable runnable) {
+        			Thread thread = new Thread(runnable, "io-pool-thread");
+        			thread.setDaemon(true);
+        			return thread;
+        		}
+        	});
+        	bind(ExecutorService.class).annotatedWith(Names.named("io-pool")).toInstance(ioPool);
+        	bind(Executor.class).annotatedWith(Names.named("virtual")).toInstance(ControllerExecutors.newVirtualThreadExecutor());
+        	bind(ExecutorService.class).annotatedWith(Names.named("single")).toInstance(Executors.newSingleThreadExecutor());
+
+        	SourGuiceMvc mvc = new SourGuiceMvc(new SourGuice());
+            mvc.control("/*").with(Controller.class);
+            install(mvc.module());
+        }
+    }
+
+    @Override
+    protected Module module() {
+        return new ControllerModule();
+    }
+
+    @Override
+    protected boolean isAsyncSupported() {
+    	return true;
+    }
+
+    // ===================== TESTS =====================
+
+
+	public void getIo() throws Exception {
+		HttpTester request = makeRequest("GET", "/io?name=Salomon");
+		request.addHeader("x-name", "Brys");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "io-pool:Salomon:Brys");
+	}
+
+
+	public void getAsync() throws Exception {
+		HttpTester request = makeRequest("GET", "/async");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "io-pool");
+	}
+
+
+	public void getVirtual() throws Exception {
+		HttpTester request = makeRequest("GET", "/virtual");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "Salomon");
+	}
+
+
+	public void getMissing() throws Exception {
+		HttpTester request = makeRequest("GET", "/missing");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 400);
+	}
+
+
+	public void getSlow() throws Exception {
+		HttpTester request = makeRequest("GET", "/slow");
+
+		final int before = interrupted.get();
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 503);
+		for (int i = 0; i < 50 && interrupted.get() == before; ++i) {
+			Thread.sleep(10);
+		}
+		assertTrue(interrupted.get() > before);
+	}
+
+	// When the client disconnects, the container reports an error: the invocation must be cancelled without waiting for the timeout
+	public void getDisconnect() throws Exception {
+		HttpTester request = makeRequest("GET", "/hang");
+		request.addHeader(AsyncSupportFilter.ERROR_HEADER, "50");
+
+		final int before = interrupted.get();
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), isAsyncSupported() ? 500 : 503);
+		for (int i = 0; i < 50 && interrupted.get() == before; ++i) {
+			Thread.sleep(10);
+		}
+		assertTrue(interrupted.get() > before);
+	}
+
+	// An invocation that outlives its request cannot reach the request scope anymore
+	public void getLate() throws Exception {
+		HttpTester request = makeRequest("GET", "/late");
+
+		final int before = outOfScope.get();
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 503);
+		for (int i = 0; i < 100 && outOfScope.get() == before; ++i) {
+			Thread.sleep(10);
+		}
+		assertTrue(outOfScope.get() > before);
+	}
+
+	// An invocation still queued when its request times out never runs
+	public void getQueued() throws Exception {
+		synchronized (this) { // Forcing serial testing
+			final int before = queuedRuns.get();
+			Thread blocker = new Thread() {
+				@Override public void run() {
+					try {
+						getResponse(makeRequest("GET", "/block"));
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			blocker.start();
+			Thread.sleep(50);
+
+			HttpTester response = getResponse(makeRequest("GET", "/queued"));
+
+			assertSuspended(response);
+			assertEquals(response.getStatus(), 503);
+			blocker.join();
+			Thread.sleep(50);
+			assertEquals(queuedRuns.get(), before);
+		}
+	}
+
+
+	public void getMetrics() throws Exception {
+		getResponse(makeRequest("GET", "/io?name=Salomon"));
+
+		HttpTester request = makeRequest("GET", "/metrics");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		String[] metrics = response.getContent().split(":");
+		assertTrue(Long.parseLong(metrics[0]) >= 1);
+		assertEquals(metrics[1], "0");
+		assertTrue(metrics[2].contains("io-pool"));
+	}
+
+}
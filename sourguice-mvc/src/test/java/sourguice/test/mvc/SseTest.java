@@ -0,0 +1,279 @@
+package sourguice.test.mvc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.mvc.SourGuiceMvc;
+import com.github.sourguice.mvc.annotation.request.RequestMapping;
+import com.github.sourguice.mvc.sse.SlowConsumerPolicy;
+import com.github.sourguice.mvc.sse.SseEvent;
+import com.github.sourguice.mvc.sse.SseHub;
+import com.github.sourguice.mvc.sse.SseStream;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.ServletModule;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class SseTest extends TestBase {
+
+    // ===================== CONTROLLER =====================
+
+    @Singleton
+    public static class Controller {
+
+		@Inject
+		Provider<HttpServletResponse> responseProvider;
+
+		@RequestMapping(value = "/__startup")
+		public void startup() { /* startup */ }
+
+		@RequestMapping(value = "/stream")
+		public SseStream stream() {
+			SseStream stream = new SseStream();
+			stream.send(new SseEvent("Salomon"));
+			stream.send(new SseEvent("greet", "42", "Hello\nWorld"));
+			stream.close();
+			return stream;
+		}
+
+		private SseStream publish(SseHub hub) {
+			SseStream stream = hub.subscribe();
+			hub.publish(new SseEvent("1"));
+			hub.publish(new SseEvent("2"));
+			hub.publish(new SseEvent("3"));
+			stream.close();
+			HttpServletResponse res = responseProvider.get();
+			res.setHeader("x-sse-dropped", String.valueOf(hub.getDroppedCount()));
+			res.setHeader("x-sse-evicted", String.valueOf(hub.getEvictedCount()));
+			res.setHeader("x-sse-connections", String.valueOf(hub.getConnectionCount()));
+			return stream;
+		}
+
+		@RequestMapping(value = "/dropoldest")
+		public SseStream dropoldest() {
+			return publish(new SseHub().setQueueCapacity(2).setSlowConsumerPolicy(SlowConsumerPolicy.DROP_OLDEST));
+		}
+
+		@RequestMapping(value = "/dropnewest")
+		public SseStream dropnewest() {
+			return publish(new SseHub().setQueueCapacity(2).setSlowConsumerPolicy(SlowConsumerPolicy.DROP_NEWEST));
+		}
+
+		@RequestMapping(value = "/evict")
+		public SseStream evict() {
+			return publish(new SseHub().setQueueCapacity(2).setSlowConsumerPolicy(SlowConsumerPolicy.EVICT));
+		}
+
+		@RequestMapping(value = "/heartbeat")
+		public SseStream heartbeat() {
+			final SseStream stream = new SseStream(4, SlowConsumerPolicy.DROP_OLDEST, 20);
+			new Thread() {
+				@Override public void run() {
+					try {
+						Thread.sleep(100);
+					}
+					catch (InterruptedException e) {
+						return ;
+					}
+					stream.send(new SseEvent("Salomon"));
+					stream.close();
+				}
+			}.start();
+			return stream;
+		}
+
+    }
+
+    // ===================== MODULE =====================
+
+    public static class ControllerModule extends ServletModule {
+        @Override
+        protected void configureServlets() {
+        	SourGuiceMvc mvc = new SourGuiceMvc(new SourGuice());
+            mvc.control("/*").with(Controller.class);
+            install(mvc.module());
+        }
+    }
+
+    @Override
+    protected Module module() {
+        return new ControllerModule();
+    }
+
+    @Override
+    protected boolean isAsyncSupported() {
+    	return true;
+    }
+
+    // ===================== TESTS =====================
+
+
+	public void getStream() throws Exception {
+		HttpTester request = makeRequest("GET", "/stream");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContentType(), "text/event-stream;charset=UTF-8");
+		assertEquals(response.getHeader("Cache-Control"), "no-cache");
+		assertEquals(response.getContent(), "data: Salomon\n\nid: 42\nevent: greet\ndata: Hello\ndata: World\n\n");
+	}
+
+
+	public void getDropOldest() throws Exception {
+		HttpTester request = makeRequest("GET", "/dropoldest");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "data: 2\n\ndata: 3\n\n");
+		assertEquals(response.getHeader("x-sse-dropped"), "1");
+		assertEquals(response.getHeader("x-sse-evicted"), "0");
+		assertEquals(response.getHeader("x-sse-connections"), "0");
+	}
+
+
+	public void getDropNewest() throws Exception {
+		HttpTester request = makeRequest("GET", "/dropnewest");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "data: 1\n\ndata: 2\n\n");
+		assertEquals(response.getHeader("x-sse-dropped"), "1");
+		assertEquals(response.getHeader("x-sse-evicted"), "0");
+	}
+
+
+	public void getEvict() throws Exception {
+		HttpTester request = makeRequest("GET", "/evict");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), null);
+		assertEquals(response.getHeader("x-sse-dropped"), "0");
+		assertEquals(response.getHeader("x-sse-evicted"), "1");
+		assertEquals(response.getHeader("x-sse-connections"), "0");
+	}
+
+
+	public void getHeartbeat() throws Exception {
+		HttpTester request = makeRequest("GET", "/heartbeat");
+
+		HttpTester response = getResponse(request);
+
+		assertSuspended(response);
+		assertEquals(response.getStatus(), 200);
+		String content = response.getContent();
+		assert content.startsWith(":\n\n") : content;
+		assert content.endsWith("data: Salomon\n\n") : content;
+	}
+
+	// A client whose stream is served to a suspended request: if it is stalled, it stops reading until the request completes
+	static class StubClient {
+		final CountDownLatch completed = new CountDownLatch(1);
+		final ByteArrayOutputStream received = new ByteArrayOutputStream();
+		final AsyncContext context;
+		final HttpServletResponse response;
+
+		StubClient(final boolean stalled) {
+			final ServletOutputStream out = new ServletOutputStream() {
+				@Override public void write(int b) throws IOException {
+					if (stalled) {
+						try {
+							completed.await();
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						throw new IOException("Connection closed");
+					}
+					synchronized (received) {
+						received.write(b);
+					}
+				}
+			};
+			this.context = (AsyncContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { AsyncContext.class }, new InvocationHandler() {
+				@Override public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("complete")) {
+						completed.countDown();
+					}
+					return null;
+				}
+			});
+			this.response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { HttpServletResponse.class }, new InvocationHandler() {
+				@Override public Object invoke(Object proxy, Method method, Object[] args) {
+					return method.getName().equals("getOutputStream") ? out : null;
+				}
+			});
+		}
+
+		String content() throws IOException {
+			synchronized (received) {
+				return received.toString("UTF-8");
+			}
+		}
+	}
+
+	public void stalledClient() throws Exception {
+		SseHub hub = new SseHub().setWriteTimeout(200);
+
+		// More stalled clients than the processors, so that they would block a fixed pool of writers
+		List<StubClient> stalled = new ArrayList<>();
+		for (int i = 0; i < Runtime.getRuntime().availableProcessors() * 2 + 2; ++i) {
+			StubClient client = new StubClient(true);
+			hub.subscribe().serve(client.context, client.response);
+			stalled.add(client);
+		}
+		StubClient healthy = new StubClient(false);
+		hub.subscribe().serve(healthy.context, healthy.response);
+
+		hub.publish(new SseEvent("Salomon"));
+		for (int i = 0; i < 50 && healthy.content().isEmpty(); ++i) {
+			Thread.sleep(10);
+		}
+		assertEquals(healthy.content(), "data: Salomon\n\n");
+
+		// Stalled clients are evicted once their write has been blocked for the write timeout
+		for (StubClient client : stalled) {
+			assertTrue(client.completed.await(2, TimeUnit.SECONDS));
+		}
+		assertEquals(hub.getEvictedCount(), stalled.size());
+		assertEquals(hub.getConnectionCount(), 1);
+
+		hub.publish(new SseEvent("Brys"));
+		for (int i = 0; i < 50 && !healthy.content().endsWith("data: Brys\n\n"); ++i) {
+			Thread.sleep(10);
+		}
+		assertEquals(healthy.content(), "data: Salomon\n\ndata: Brys\n\n");
+		hub.closeAll();
+		assertTrue(healthy.completed.await(2, TimeUnit.SECONDS));
+	}
+
+}
@@ -15,6 +15,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.testing.HttpTester;
 import org.eclipse.jetty.testing.ServletTester;
+import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 
@@ -50,6 +51,9 @@ public abstract class TestBase {
 			tester.setContextPath("/");
 			tester.addEventListener(scl);
 			tester.addServlet(DefaultServlet.class, "/");
+			if (isAsyncSupported()) {
+				tester.addFilter(AsyncSupportFilter.class, "/*", 0);
+			}
 			addServletTesterFilter(tester);
 			tester.start();
 			makeStartupRequest(tester);
@@ -96,6 +100,16 @@ public abstract class TestBase {
 		tester.addFilter(TestGuiceFilter.class, "/*", 0);
 	}
 
+	// Whether the testers emulate the asynchronous processing of a Servlet 3.0 container (see AsyncSupportFilter)
+	protected boolean isAsyncSupported() {
+		return false;
+	}
+
+	// Checks that the request was suspended if the testers support it, and that it was handled by the blocking fallback otherwise
+	protected void assertSuspended(HttpTester response) {
+		Assert.assertEquals(response.getHeader(AsyncSupportFilter.SUSPENDED_HEADER) != null, isAsyncSupported(), "Request suspended");
+	}
+
 	@AfterClass
 	public void teardownServletTester() throws Exception {
 		for (ServletTester tester : this.queue)
@@ -150,5 +164,18 @@ public abstract class TestBase {
 		}
 	}
 
+	// The tester cannot parse the response of a HEAD request that has a Content-Length, as it then expects a body
+	protected String getRawResponse(HttpTester request) throws Exception {
+
+		ServletTester tester = this.queue.poll();
+
+		try {
+			return tester.getResponses(request.generate());
+		}
+		finally {
+			this.queue.offer(tester);
+		}
+	}
+
 	abstract protected Module module();
 }
@@ -0,0 +1,51 @@
+package com.github.sourguice.ws;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Utils shared by the JSON and binary writers of the sequences (iterators and iterables) returned by WS methods
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class Sequences {
+
+	/**
+	 * This is a utility repository and cannot be instanciated
+	 */
+	private Sequences() {}
+
+	/**
+	 * @param value An iterator or an iterable
+	 * @return The iterator itself, or the iterator of the iterable
+	 */
+	public static Iterator<?> iterator(final Object value) {
+		return value instanceof Iterator ? (Iterator<?>) value : ((Iterable<?>) value).iterator();
+	}
+
+	/**
+	 * Closes the iterator and the iterable that was iterated, if they are {@link AutoCloseable}.
+	 * This must be called once the sequence has been written, even if the writing failed.
+	 *
+	 * @param it The iterator
+	 * @param value The iterated value (the iterator itself or its iterable)
+	 * @throws IOException If the closing failed
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingGenericException")
+	public static void close(final Iterator<?> it, final Object value) throws IOException {
+		try {
+			if (it instanceof AutoCloseable) {
+				((AutoCloseable) it).close();
+			}
+			if (value != it && value instanceof AutoCloseable) {
+				((AutoCloseable) value).close();
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+}
@@ -1,13 +1,17 @@
 package com.github.sourguice.ws;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 import com.github.sourguice.MultipleBindBuilder;
 import com.github.sourguice.SourGuiceModule;
+import com.github.sourguice.call.SGInvocationFactory;
 import com.github.sourguice.provider.GTPModuleFactory;
 import com.github.sourguice.provider.TypedProvider;
 import com.github.sourguice.provider.TypedProviderMultipleBindBuilder;
+import com.github.sourguice.ws.desc.builder.DescriptionCache;
 import com.google.inject.servlet.ServletModule;
 
 public class SourGuiceWS extends ServletModule {
@@ -27,9 +31,10 @@ public class SourGuiceWS extends ServletModule {
 	protected void configureServlets() {
 		super.configureServlets();
 
+		final SGInvocationFactory invocationFactory = this.sourguice.newInvocationFactory(binder());
 		for (final Map.Entry<String, WSServlet> entry : this.servlets.entrySet()) {
 			serve(entry.getKey()).with(entry.getValue());
-			entry.getValue().initialize();
+			entry.getValue().initialize(invocationFactory);
 		}
 
 		this.gtpFactory.requestInjection(binder());
@@ -38,6 +43,10 @@ public class SourGuiceWS extends ServletModule {
 
 	public static interface ServiceBuilder extends MultipleBindBuilder<Object> {
 		public ServiceBuilder defaultVersion(double version);
+		public ServiceBuilder batchExecutor(Executor executor);
+		public ServiceBuilder maxBatchCalls(int maxCalls);
+		public ServiceBuilder maxBinaryLength(long maxLength);
+		public ServiceBuilder descriptionCache(File file);
 	}
 
 	private class ServiceBuilderImpl extends TypedProviderMultipleBindBuilder<Object> implements ServiceBuilder {
@@ -59,6 +68,30 @@ public class SourGuiceWS extends ServletModule {
 			return this;
 		}
 
+		@Override
+		public ServiceBuilder batchExecutor(final Executor executor) {
+			this.wsServlet.setBatchExecutor(executor);
+			return this;
+		}
+
+		@Override
+		public ServiceBuilder maxBatchCalls(final int maxCalls) {
+			this.wsServlet.setMaxBatchCalls(maxCalls);
+			return this;
+		}
+
+		@Override
+		public ServiceBuilder maxBinaryLength(final long maxLength) {
+			this.wsServlet.setMaxBinaryLength(maxLength);
+			return this;
+		}
+
+		@Override
+		public ServiceBuilder descriptionCache(final File file) {
+			this.wsServlet.setDescriptionCache(new DescriptionCache(file));
+			return this;
+		}
+
 		@Override
 		protected void register(final TypedProvider<? extends Object> controller) {
 			this.wsServlet.add(controller);
@@ -1,35 +1,203 @@
 package com.github.sourguice.ws;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.CheckForNull;
+import javax.inject.Inject;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.github.sourguice.call.SGInvocationFactory;
 import com.github.sourguice.provider.TypedProvider;
+import com.github.sourguice.throwable.invocation.HandledException;
+import com.github.sourguice.throwable.invocation.NoSuchRequestParameterException;
+import com.github.sourguice.utils.Annotations;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.binary.BinaryCodecs;
+import com.github.sourguice.ws.binary.BinaryFormatException;
+import com.github.sourguice.ws.binary.WSBinary;
+import com.github.sourguice.ws.desc.WSSchema;
 import com.github.sourguice.ws.desc.builder.DescriptionBuilder;
+import com.github.sourguice.ws.desc.builder.DescriptionCache;
 import com.github.sourguice.ws.desc.struct.WSDescription;
+import com.github.sourguice.ws.rest.CompiledTypeAdapterFactory;
+import com.github.sourguice.ws.rest.RestBatch;
+import com.github.sourguice.ws.rest.RestInvocation;
+import com.github.sourguice.ws.rest.StreamingTypeAdapterFactory;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.inject.Injector;
 
 @SuppressWarnings("serial")
 public class WSServlet extends HttpServlet {
 
 	public static final String REST = "/rest/";
 
+	/**
+	 * The path of the batch entry point, see {@link RestBatch}
+	 */
+	public static final String BATCH = "/batch";
+
+	/**
+	 * Request header that selects the API version of the JSON objects of a REST or batch call
+	 */
+	public static final String VERSION_HEADER = "X-WS-Version";
+
 	private final Map<String, TypedProvider<?>> controllers = new HashMap<>();
 
 	public final WSDescription description = new WSDescription();
 
+	/**
+	 * The Gson instance that serializes the schema and provides the REST JSON adapters, compiled for each WS type,
+	 * which streams the iterators and iterables returned by WS methods
+	 */
+	private final Gson gson = new GsonBuilder()
+		.registerTypeAdapterFactory(new CompiledTypeAdapterFactory())
+		.registerTypeAdapterFactory(new StreamingTypeAdapterFactory())
+		.create();
+
+	/**
+	 * The registry of the binary codecs of the REST parameters and return types
+	 */
+	private final BinaryCodecs codecs = new BinaryCodecs();
+
+	/**
+	 * The serialized schema of the description, created at initialization
+	 */
+	private @CheckForNull WSSchema schema = null;
+
+	/**
+	 * The REST invocations, by "endpoint/method" path, built at startup
+	 */
+	private final Map<String, RestInvocation> restInvocations = new HashMap<>();
+
+	/**
+	 * The executor on which batched calls run, created at initialization if none was given
+	 */
+	private @CheckForNull Executor batchExecutor = null;
+
+	/**
+	 * The maximum number of calls in a batch
+	 */
+	private int maxBatchCalls = 64;
+
+	/**
+	 * The maximum length of a binary request body, in bytes
+	 */
+	private long maxBinaryLength = WSBinary.DEFAULT_MAX_LENGTH;
+
+	/**
+	 * The cache of the description, or null if the description is always built
+	 */
+	private @CheckForNull DescriptionCache descriptionCache = null;
+
+	/**
+	 * The batch entry point, created at initialization
+	 */
+	private @CheckForNull RestBatch batch = null;
+
 	public void add(final TypedProvider<?> controller) {
 		this.controllers.put(controller.getTypeLiteral().getRawType().getName(), controller);
 	}
 
-	private void doRest(final String pathInfo, final HttpServletRequest req, final HttpServletResponse res) throws IOException {
-		res.getWriter().write("REST");
+	/**
+	 * Sets, for the current thread, the API version requested by the {@link #VERSION_HEADER} header, if any
+	 *
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @return Whether the version is valid (if it is not, an error has been sent)
+	 * @throws IOException If an output exception occurs
+	 */
+	private static boolean setVersion(final HttpServletRequest req, final HttpServletResponse res) throws IOException {
+		final String version = req.getHeader(VERSION_HEADER);
+		if (version != null) {
+			try {
+				CompiledTypeAdapterFactory.setVersion(Double.parseDouble(version));
+			}
+			catch (NumberFormatException e) {
+				res.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid version: " + version);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calls the method whose "endpoint/method" path is given
+	 *
+	 * @param path The path of the method, relative to {@link #REST}
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws IOException If an input or output exception occurs
+	 * @throws ServletException When an exception that was not handled by SourGuice is thrown
+	 */
+	@SuppressWarnings({"PMD.EmptyCatchBlock", "PMD.PreserveStackTrace"})
+	private void doRest(final String path, final HttpServletRequest req, final HttpServletResponse res) throws IOException, ServletException {
+		final RestInvocation invocation = this.restInvocations.get(path);
+		if (invocation == null) {
+			res.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return ;
+		}
+
+		res.setHeader("Access-Control-Allow-Origin", "*");
+
+		if (!setVersion(req, res)) {
+			return ;
+		}
+		try {
+			final Object[] arguments;
+			if ("GET".equals(req.getMethod())) {
+				arguments = invocation.decode(req);
+			}
+			else if (WSBinary.isIn(req.getContentType())) {
+				if (!invocation.acceptsBinary()) {
+					res.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "The parameters of this method cannot be sent in binary");
+					return ;
+				}
+				final int length = req.getContentLength();
+				if (length > this.maxBinaryLength) {
+					res.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+					return ;
+				}
+				arguments = invocation.decode(req.getInputStream(), length >= 0 ? length : this.maxBinaryLength);
+			}
+			else {
+				if (req.getCharacterEncoding() == null) {
+					req.setCharacterEncoding("UTF-8");
+				}
+				arguments = invocation.decode(req.getReader());
+			}
+			invocation.call(arguments, res, WSBinary.isIn(req.getHeader("Accept")));
+		}
+		catch (JsonParseException | BinaryFormatException e) {
+			res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		}
+		catch (NoSuchRequestParameterException e) {
+			res.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+		}
+		catch (HandledException e) {
+			// Exception was handled by SourGuice, it is safe (and expected) to ignore
+		}
+		catch (InvocationTargetException e) {
+			throw new ServletException(e.getCause());
+		}
+		finally {
+			CompiledTypeAdapterFactory.clearVersion();
+		}
 	}
 
 	private void doExplorer(final HttpServletRequest req, final HttpServletResponse res) throws IOException {
@@ -44,21 +212,134 @@ public class WSServlet extends HttpServlet {
 			doExplorer(req, res);
 		}
 		else if (pathInfo.equals("/schema")) {
-			res.setHeader("Access-Control-Allow-Origin", "*");
-			res.setContentType("application/json");
-			new Gson().toJson(this.description, res.getWriter());
+			if (this.schema == null) {
+				throw new UnsupportedOperationException("WSServlet has not been initialized");
+			}
+			this.schema.serve(req, res);
 		}
 		else if (pathInfo.startsWith(REST)) {
-			doRest(req.getPathInfo().substring(REST.length()), req, res);
+			doRest(pathInfo.substring(REST.length()), req, res);
 		}
 		else {
 			super.doGet(req, res);
 		}
 	}
 
-	public void initialize() {
-		final DescriptionBuilder builder = new DescriptionBuilder(this.description);
-		builder.build(this.controllers.values());
+	@Override
+	protected void doPost(final HttpServletRequest req, final HttpServletResponse res) throws ServletException, IOException {
+		final String pathInfo = req.getPathInfo();
+
+		if (pathInfo != null && pathInfo.startsWith(REST)) {
+			doRest(pathInfo.substring(REST.length()), req, res);
+		}
+		else if (BATCH.equals(pathInfo)) {
+			if (this.batch == null) {
+				throw new UnsupportedOperationException("WSServlet has not been initialized");
+			}
+			res.setHeader("Access-Control-Allow-Origin", "*");
+			if (setVersion(req, res)) {
+				try {
+					this.batch.serve(req, res);
+				}
+				finally {
+					CompiledTypeAdapterFactory.clearVersion();
+				}
+			}
+		}
+		else {
+			super.doPost(req, res);
+		}
+	}
+
+	/**
+	 * @param executor The executor on which batched calls run in parallel (it should be bounded)
+	 */
+	public void setBatchExecutor(final Executor executor) {
+		this.batchExecutor = executor;
+	}
+
+	/**
+	 * @param maxCalls The maximum number of calls in a batch
+	 */
+	public void setMaxBatchCalls(final int maxCalls) {
+		this.maxBatchCalls = maxCalls;
+	}
+
+	/**
+	 * @param maxLength The maximum length of a binary request body, in bytes
+	 */
+	public void setMaxBinaryLength(final long maxLength) {
+		this.maxBinaryLength = maxLength;
+	}
+
+	/**
+	 * @param cache The cache from which the description is loaded when the WS classes did not change
+	 */
+	public void setDescriptionCache(final DescriptionCache cache) {
+		this.descriptionCache = cache;
+	}
+
+	/**
+	 * @return A pool of daemon threads, one per processor, with a bounded queue
+	 */
+	private static Executor defaultBatchExecutor() {
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads * 64), new ThreadFactory() {
+			@Override public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "SourGuice-WS-Batch");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Builds (or loads from its cache) the description, its serialized schema, the REST invocation of each WS method and the batch entry point
+	 *
+	 * @param invocationFactory The factory responsible for creating the invocations
+	 */
+	public void initialize(final SGInvocationFactory invocationFactory) {
+		final List<Class<?>> endpointClasses = new ArrayList<>();
+		for (final TypedProvider<?> controller : this.controllers.values()) {
+			endpointClasses.add(controller.getTypeLiteral().getRawType());
+		}
+		if (this.descriptionCache == null || !this.descriptionCache.load(this.description, endpointClasses)) {
+			final DescriptionBuilder builder = new DescriptionBuilder(this.description);
+			builder.build(this.controllers.values());
+			if (this.descriptionCache != null) {
+				this.descriptionCache.store(this.description, endpointClasses, builder.getInvolvedClasses());
+			}
+		}
+		this.schema = new WSSchema(this.description, this.gson);
+
+		for (final TypedProvider<?> controller : this.controllers.values()) {
+			final String endpoint = DescriptionBuilder.endpointName(controller.getTypeLiteral().getRawType());
+			for (final Method method : controller.getTypeLiteral().getRawType().getMethods()) {
+				final WSMethod anno = Annotations.getOneRecursive(WSMethod.class, method.getAnnotations());
+				if (anno != null) {
+					this.restInvocations.put(endpoint + "/" + DescriptionBuilder.methodName(method, anno), new RestInvocation(controller, method, this.gson, this.codecs, invocationFactory));
+				}
+			}
+		}
+
+		if (this.batchExecutor == null) {
+			this.batchExecutor = defaultBatchExecutor();
+		}
+		this.batch = new RestBatch(this.restInvocations, this.batchExecutor, this.maxBatchCalls);
+	}
+
+	/**
+	 * Checks the scope of the endpoints, once the injector is created, to know which methods can be batched outside of the request thread
+	 *
+	 * @param injector The Guice injector that provides the endpoints
+	 */
+	@Inject
+	public void setInjector(final Injector injector) {
+		for (final RestInvocation invocation : this.restInvocations.values()) {
+			invocation.checkScope(injector);
+		}
 	}
 
 }
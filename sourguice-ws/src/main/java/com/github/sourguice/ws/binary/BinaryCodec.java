@@ -0,0 +1,88 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Encodes and decodes the values of a type in the SourGuice WS binary format.
+ * Codecs are stateless and are created once per type by {@link BinaryCodecs}.
+ *
+ * @param <T> The type of the values
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public abstract class BinaryCodec<T> {
+
+	/**
+	 * Writes a non null value
+	 *
+	 * @param out The output to write to
+	 * @param value The value to write
+	 * @throws IOException If an output exception occurred
+	 */
+	public abstract void write(BinaryOutput out, T value) throws IOException;
+
+	/**
+	 * Reads a non null value
+	 *
+	 * @param in The input to read from
+	 * @return The read value
+	 * @throws IOException If an input exception occurred or the data is invalid
+	 */
+	public abstract T read(BinaryInput in) throws IOException;
+
+	/**
+	 * A codec is created for every type, but some types (interfaces, Object, java.* classes, or any type that contains one of them)
+	 * have no binary encoding: their codec fails when it is used.
+	 *
+	 * @return Whether the values of the type can be encoded
+	 */
+	public final boolean isSupported() {
+		return isSupported(new HashSet<BinaryCodec<?>>());
+	}
+
+	/**
+	 * @param visited The codecs that are already being checked (so that recursive types are only checked once)
+	 * @return Whether the values of the type can be encoded
+	 */
+	boolean isSupported(final Set<BinaryCodec<?>> visited) {
+		return true;
+	}
+
+	/**
+	 * Writes a presence byte (0 for null, 1 otherwise) followed by the value if it is not null
+	 *
+	 * @param out The output to write to
+	 * @param value The value to write
+	 * @throws IOException If an output exception occurred
+	 */
+	public final void writeNullable(final BinaryOutput out, final @CheckForNull T value) throws IOException {
+		if (value == null) {
+			out.writeByte(0);
+			return ;
+		}
+		out.writeByte(1);
+		write(out, value);
+	}
+
+	/**
+	 * Reads a value written by {@link #writeNullable(BinaryOutput, Object)}
+	 *
+	 * @param in The input to read from
+	 * @return The read value or null
+	 * @throws IOException If an input exception occurred or the data is invalid
+	 */
+	public final @CheckForNull T readNullable(final BinaryInput in) throws IOException {
+		switch (in.readByte()) {
+		case 0:
+			return null;
+		case 1:
+			return read(in);
+		default:
+			throw new BinaryFormatException("Invalid presence byte");
+		}
+	}
+}
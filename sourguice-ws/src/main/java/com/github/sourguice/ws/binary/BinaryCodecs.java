@@ -0,0 +1,644 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.ws.Sequences;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Creates and caches the {@link BinaryCodec} of each type.
+ *
+ * Codecs are created once per type, the first time a type is requested (which, for WS methods, is at startup).
+ * A type that cannot be encoded does not prevent its codec from being created: the codec fails when it is used,
+ * and {@link BinaryCodec#isSupported()} tells it beforehand.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class BinaryCodecs {
+
+	/**
+	 * The maximum number of elements of a collection, a map or an array (protects against corrupted sizes)
+	 */
+	static final int MAX_ELEMENTS = 16 * 1024 * 1024;
+
+	/**
+	 * The maximum length of a string or of a byte array, in bytes
+	 */
+	static final int MAX_BYTES = 16 * 1024 * 1024;
+
+	/**
+	 * The codecs that were already created
+	 */
+	private final Map<TypeLiteral<?>, BinaryCodec<?>> codecs = new HashMap<>();
+
+	/**
+	 * Constructor, registers the codecs of primitive types
+	 */
+	@SuppressWarnings("PMD.AvoidUsingShortType")
+	public BinaryCodecs() {
+		register(BOOLEAN, boolean.class, Boolean.class);
+		register(BYTE, byte.class, Byte.class);
+		register(CHAR, char.class, Character.class);
+		register(SHORT, short.class, Short.class);
+		register(INT, int.class, Integer.class);
+		register(LONG, long.class, Long.class);
+		register(FLOAT, float.class, Float.class);
+		register(DOUBLE, double.class, Double.class);
+		register(STRING, String.class);
+		register(DATE, Date.class);
+		register(BYTES, byte[].class);
+	}
+
+	/**
+	 * @param size The size of the array
+	 * @return A new array of codecs
+	 */
+	@SuppressWarnings("unchecked")
+	public static BinaryCodec<Object>[] newArray(final int size) {
+		return (BinaryCodec<Object>[]) new BinaryCodec<?>[size];
+	}
+
+	/**
+	 * @param codec The codec to register
+	 * @param types The types handled by the codec
+	 */
+	private void register(final BinaryCodec<?> codec, final Class<?>... types) {
+		for (final Class<?> type : types) {
+			this.codecs.put(TypeLiteral.get(type), codec);
+		}
+	}
+
+	/**
+	 * @param type The type to encode or decode
+	 * @return The codec of the type
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized BinaryCodec<Object> get(final Type type) {
+		Type resolved = type;
+		while (resolved instanceof WildcardType) {
+			resolved = ((WildcardType) resolved).getUpperBounds()[0];
+		}
+		final TypeLiteral<?> literal = TypeLiteral.get(resolved);
+		BinaryCodec<?> codec = this.codecs.get(literal);
+		if (codec == null) {
+			codec = create(literal);
+		}
+		return (BinaryCodec<Object>) codec;
+	}
+
+	/**
+	 * Creates and registers the codec of a type that has not been requested yet
+	 *
+	 * @param literal The type
+	 * @return The codec of the type
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private BinaryCodec<?> create(final TypeLiteral<?> literal) {
+		final Class<?> raw = literal.getRawType();
+		BinaryCodec<?> codec;
+		if (raw.isEnum()) {
+			codec = new EnumCodec(raw);
+		}
+		else if (raw.isArray()) {
+			final Type componentType = literal.getType() instanceof GenericArrayType ? ((GenericArrayType) literal.getType()).getGenericComponentType() : raw.getComponentType();
+			codec = new ArrayCodec(raw.getComponentType(), get(componentType));
+		}
+		else if (Collection.class.isAssignableFrom(raw)) {
+			final Type elementType = ((ParameterizedType) literal.getSupertype((Class) Collection.class).getType()).getActualTypeArguments()[0];
+			codec = new CollectionCodec(raw, get(elementType));
+		}
+		else if (Map.class.isAssignableFrom(raw)) {
+			final Type[] args = ((ParameterizedType) literal.getSupertype((Class) Map.class).getType()).getActualTypeArguments();
+			codec = new MapCodec(raw, get(args[0]), get(args[1]));
+		}
+		else if (Iterator.class.isAssignableFrom(raw) || Iterable.class.isAssignableFrom(raw)) {
+			final Class<?> sequence = Iterator.class.isAssignableFrom(raw) ? Iterator.class : Iterable.class;
+			final Type sequenceType = literal.getSupertype((Class) sequence).getType();
+			final Type elementType = sequenceType instanceof ParameterizedType ? ((ParameterizedType) sequenceType).getActualTypeArguments()[0] : Object.class;
+			codec = new SequenceCodec(raw, get(elementType));
+		}
+		else if (raw.equals(Object.class) || raw.isInterface() || raw.getName().startsWith("java.")) {
+			codec = new UnsupportedCodec(literal);
+		}
+		else {
+			final ObjectCodec<?> objectCodec = new ObjectCodec<>(literal);
+			// Registered before being initialized so that recursive types find it
+			this.codecs.put(literal, objectCodec);
+			objectCodec.initialize(this);
+			return objectCodec;
+		}
+		this.codecs.put(literal, codec);
+		return codec;
+	}
+
+	/**
+	 * Codec of a type that cannot be encoded: fails when used
+	 */
+	private static final class UnsupportedCodec extends BinaryCodec<Object> {
+		/**
+		 * The type
+		 */
+		private final TypeLiteral<?> type;
+
+		/**
+		 * @param type The type
+		 */
+		UnsupportedCodec(final TypeLiteral<?> type) {
+			this.type = type;
+		}
+
+		@Override public void write(final BinaryOutput out, final Object value) throws IOException {
+			throw new UnsupportedOperationException("No binary encoding for " + this.type);
+		}
+		@Override public Object read(final BinaryInput in) throws IOException {
+			throw new UnsupportedOperationException("No binary encoding for " + this.type);
+		}
+		@Override boolean isSupported(final Set<BinaryCodec<?>> visited) {
+			return false;
+		}
+	}
+
+	/**
+	 * Enums are encoded as the varint of their ordinal
+	 */
+	private static final class EnumCodec extends BinaryCodec<Enum<?>> {
+		/**
+		 * The constants of the enum
+		 */
+		private final Enum<?>[] constants;
+
+		/**
+		 * @param cls The enum class
+		 */
+		EnumCodec(final Class<?> cls) {
+			this.constants = (Enum<?>[]) cls.getEnumConstants();
+		}
+
+		@Override public void write(final BinaryOutput out, final Enum<?> value) throws IOException {
+			out.writeVarint(value.ordinal());
+		}
+		@Override public Enum<?> read(final BinaryInput in) throws IOException {
+			return this.constants[in.readSize(this.constants.length - 1)];
+		}
+	}
+
+	/**
+	 * Arrays are encoded as their size followed by each nullable element
+	 */
+	private static final class ArrayCodec extends BinaryCodec<Object> {
+		/**
+		 * The component class
+		 */
+		private final Class<?> component;
+
+		/**
+		 * The codec of the elements
+		 */
+		private final BinaryCodec<Object> elements;
+
+		/**
+		 * @param component The component class
+		 * @param elements The codec of the elements
+		 */
+		ArrayCodec(final Class<?> component, final BinaryCodec<Object> elements) {
+			this.component = component;
+			this.elements = elements;
+		}
+
+		@Override public void write(final BinaryOutput out, final Object value) throws IOException {
+			final int length = Array.getLength(value);
+			out.writeVarint(length);
+			for (int i = 0; i < length; ++i) {
+				this.elements.writeNullable(out, Array.get(value, i));
+			}
+		}
+		@Override public Object read(final BinaryInput in) throws IOException {
+			final int length = in.readLength(MAX_ELEMENTS);
+			final boolean primitive = this.component.isPrimitive();
+			final List<Object> list = new ArrayList<>();
+			for (int i = 0; i < length; ++i) {
+				final Object element = this.elements.readNullable(in);
+				if (element == null && primitive) {
+					throw new BinaryFormatException("Null element in a primitive array");
+				}
+				list.add(element);
+			}
+			final Object array = Array.newInstance(this.component, length);
+			for (int i = 0; i < length; ++i) {
+				Array.set(array, i, list.get(i));
+			}
+			return array;
+		}
+		@Override boolean isSupported(final Set<BinaryCodec<?>> visited) {
+			return this.elements.isSupported(visited);
+		}
+	}
+
+	/**
+	 * Collections are encoded as their size followed by each nullable element
+	 */
+	private static final class CollectionCodec extends BinaryCodec<Collection<Object>> {
+		/**
+		 * The constructor of the collection, or null to use the default implementation
+		 */
+		private final @CheckForNull Constructor<?> constructor;
+
+		/**
+		 * The default implementation to use: 0 for ArrayList, 1 for LinkedHashSet, 2 for TreeSet, 3 for ArrayDeque
+		 */
+		private final int implementation;
+
+		/**
+		 * The codec of the elements
+		 */
+		private final BinaryCodec<Object> elements;
+
+		/**
+		 * @param raw The collection class
+		 * @param elements The codec of the elements
+		 */
+		CollectionCodec(final Class<?> raw, final BinaryCodec<Object> elements) {
+			this.constructor = concreteConstructor(raw);
+			if (SortedSet.class.isAssignableFrom(raw)) {
+				this.implementation = 2;
+			}
+			else if (Set.class.isAssignableFrom(raw)) {
+				this.implementation = 1;
+			}
+			else if (Queue.class.isAssignableFrom(raw)) {
+				this.implementation = 3;
+			}
+			else {
+				this.implementation = 0;
+			}
+			this.elements = elements;
+		}
+		@Override public void write(final BinaryOutput out, final Collection<Object> value) throws IOException {
+			out.writeVarint(value.size());
+			for (final Object element : value) {
+				this.elements.writeNullable(out, element);
+			}
+		}
+		@SuppressWarnings("unchecked")
+		@Override public Collection<Object> read(final BinaryInput in) throws IOException {
+			final int size = in.readLength(MAX_ELEMENTS);
+			final Collection<Object> collection;
+			if (this.constructor != null) {
+				collection = (Collection<Object>) newInstance(this.constructor);
+			}
+			else {
+				switch (this.implementation) {
+				case 1:
+					collection = new LinkedHashSet<>();
+					break ;
+				case 2:
+					collection = new TreeSet<>();
+					break ;
+				case 3:
+					collection = new ArrayDeque<>();
+					break ;
+				default:
+					collection = new ArrayList<>();
+					break ;
+				}
+			}
+			for (int i = 0; i < size; ++i) {
+				collection.add(this.elements.readNullable(in));
+			}
+			return collection;
+		}
+		@Override boolean isSupported(final Set<BinaryCodec<?>> visited) {
+			return this.elements.isSupported(visited);
+		}
+	}
+
+	/**
+	 * Iterators and (non collection) iterables are encoded as chunks, each chunk being its size followed by each nullable element,
+	 * and a last empty chunk. This allows to stream them without knowing their size: the output is flushed after each chunk.
+	 * They are decoded as lists (or iterators of lists).
+	 */
+	private static final class SequenceCodec extends BinaryCodec<Object> {
+		/**
+		 * The maximum number of elements of a chunk
+		 */
+		private static final int CHUNK_SIZE = 256;
+
+		/**
+		 * The sequence class
+		 */
+		private final Class<?> raw;
+
+		/**
+		 * The codec of the elements
+		 */
+		private final BinaryCodec<Object> elements;
+
+		/**
+		 * @param raw The sequence class
+		 * @param elements The codec of the elements
+		 */
+		SequenceCodec(final Class<?> raw, final BinaryCodec<Object> elements) {
+			this.raw = raw;
+			this.elements = elements;
+		}
+
+		@Override public void write(final BinaryOutput out, final Object value) throws IOException {
+			final Iterator<?> it = Sequences.iterator(value);
+			try {
+				final Object[] chunk = new Object[CHUNK_SIZE];
+				int count;
+				do {
+					count = 0;
+					while (count < CHUNK_SIZE && it.hasNext()) {
+						chunk[count++] = it.next();
+					}
+					out.writeVarint(count);
+					for (int i = 0; i < count; ++i) {
+						this.elements.writeNullable(out, chunk[i]);
+					}
+					out.flush();
+				}
+				while (count > 0);
+			}
+			finally {
+				Sequences.close(it, value);
+			}
+		}
+		@Override public Object read(final BinaryInput in) throws IOException {
+			final boolean iterator = Iterator.class.isAssignableFrom(this.raw);
+			if (!this.raw.equals(iterator ? Iterator.class : Iterable.class)) {
+				throw new BinaryFormatException("Cannot instanciate " + this.raw.getName());
+			}
+			final ArrayList<Object> list = new ArrayList<>();
+			for (int count = in.readLength(CHUNK_SIZE); count != 0; count = in.readLength(CHUNK_SIZE)) {
+				if (list.size() + count > MAX_ELEMENTS) {
+					throw new BinaryFormatException("Too many elements");
+				}
+				for (int i = 0; i < count; ++i) {
+					list.add(this.elements.readNullable(in));
+				}
+			}
+			return iterator ? list.iterator() : list;
+		}
+		@Override boolean isSupported(final Set<BinaryCodec<?>> visited) {
+			return this.elements.isSupported(visited);
+		}
+	}
+
+	/**
+	 * Maps are encoded as their size followed by each nullable key and nullable value
+	 */
+	private static final class MapCodec extends BinaryCodec<Map<Object, Object>> {
+		/**
+		 * The constructor of the map, or null to use the default implementation
+		 */
+		private final @CheckForNull Constructor<?> constructor;
+
+		/**
+		 * Whether the default implementation is a TreeMap (otherwise a LinkedHashMap)
+		 */
+		private final boolean sorted;
+
+		/**
+		 * The codec of the keys
+		 */
+		private final BinaryCodec<Object> keys;
+
+		/**
+		 * The codec of the values
+		 */
+		private final BinaryCodec<Object> values;
+
+		/**
+		 * @param raw The map class
+		 * @param keys The codec of the keys
+		 * @param values The codec of the values
+		 */
+		MapCodec(final Class<?> raw, final BinaryCodec<Object> keys, final BinaryCodec<Object> values) {
+			this.constructor = concreteConstructor(raw);
+			this.sorted = SortedMap.class.isAssignableFrom(raw);
+			this.keys = keys;
+			this.values = values;
+		}
+		@Override public void write(final BinaryOutput out, final Map<Object, Object> value) throws IOException {
+			out.writeVarint(value.size());
+			for (final Map.Entry<Object, Object> entry : value.entrySet()) {
+				this.keys.writeNullable(out, entry.getKey());
+				this.values.writeNullable(out, entry.getValue());
+			}
+		}
+		@SuppressWarnings("unchecked")
+		@Override public Map<Object, Object> read(final BinaryInput in) throws IOException {
+			final int size = in.readLength(MAX_ELEMENTS);
+			final Map<Object, Object> map;
+			if (this.constructor != null) {
+				map = (Map<Object, Object>) newInstance(this.constructor);
+			}
+			else if (this.sorted) {
+				map = new TreeMap<>();
+			}
+			else {
+				map = new LinkedHashMap<>();
+			}
+			for (int i = 0; i < size; ++i) {
+				final Object key = this.keys.readNullable(in);
+				map.put(key, this.values.readNullable(in));
+			}
+			return map;
+		}
+		@Override boolean isSupported(final Set<BinaryCodec<?>> visited) {
+			return this.keys.isSupported(visited) && this.values.isSupported(visited);
+		}
+	}
+
+	/**
+	 * @param raw A class
+	 * @return The accessible no-arg constructor of the class, or null if it is abstract or has none
+	 */
+	static @CheckForNull Constructor<?> concreteConstructor(final Class<?> raw) {
+		if (raw.isInterface() || Modifier.isAbstract(raw.getModifiers())) {
+			return null;
+		}
+		try {
+			final Constructor<?> constructor = raw.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			return constructor;
+		}
+		catch (NoSuchMethodException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param constructor A no-arg constructor
+	 * @return A new instance
+	 * @throws IOException If the instance could not be created
+	 */
+	static Object newInstance(final Constructor<?> constructor) throws IOException {
+		try {
+			return constructor.newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IOException("Could not instanciate " + constructor.getDeclaringClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Booleans are encoded on one byte
+	 */
+	private static final BinaryCodec<Boolean> BOOLEAN = new BinaryCodec<Boolean>() {
+		@Override public void write(final BinaryOutput out, final Boolean value) throws IOException {
+			out.writeByte(value.booleanValue() ? 1 : 0);
+		}
+		@Override public Boolean read(final BinaryInput in) throws IOException {
+			return Boolean.valueOf(in.readByte() != 0);
+		}
+	};
+
+	/**
+	 * Bytes are encoded raw
+	 */
+	private static final BinaryCodec<Byte> BYTE = new BinaryCodec<Byte>() {
+		@Override public void write(final BinaryOutput out, final Byte value) throws IOException {
+			out.writeByte(value.byteValue());
+		}
+		@Override public Byte read(final BinaryInput in) throws IOException {
+			return Byte.valueOf((byte) in.readByte());
+		}
+	};
+
+	/**
+	 * Chars are encoded as a varint
+	 */
+	private static final BinaryCodec<Character> CHAR = new BinaryCodec<Character>() {
+		@Override public void write(final BinaryOutput out, final Character value) throws IOException {
+			out.writeVarint(value.charValue());
+		}
+		@Override public Character read(final BinaryInput in) throws IOException {
+			return Character.valueOf((char) in.readSize(Character.MAX_VALUE));
+		}
+	};
+
+	/**
+	 * Shorts are encoded as a zigzag varint
+	 */
+	@SuppressWarnings("PMD.AvoidUsingShortType")
+	private static final BinaryCodec<Short> SHORT = new BinaryCodec<Short>() {
+		@Override public void write(final BinaryOutput out, final Short value) throws IOException {
+			out.writeZigZag(value.shortValue());
+		}
+		@Override public Short read(final BinaryInput in) throws IOException {
+			return Short.valueOf((short) in.readZigZag());
+		}
+	};
+
+	/**
+	 * Ints are encoded as a zigzag varint
+	 */
+	private static final BinaryCodec<Integer> INT = new BinaryCodec<Integer>() {
+		@Override public void write(final BinaryOutput out, final Integer value) throws IOException {
+			out.writeZigZag(value.intValue());
+		}
+		@Override public Integer read(final BinaryInput in) throws IOException {
+			return Integer.valueOf((int) in.readZigZag());
+		}
+	};
+
+	/**
+	 * Longs are encoded as a zigzag varint
+	 */
+	private static final BinaryCodec<Long> LONG = new BinaryCodec<Long>() {
+		@Override public void write(final BinaryOutput out, final Long value) throws IOException {
+			out.writeZigZag(value.longValue());
+		}
+		@Override public Long read(final BinaryInput in) throws IOException {
+			return Long.valueOf(in.readZigZag());
+		}
+	};
+
+	/**
+	 * Floats are encoded on 4 bytes
+	 */
+	private static final BinaryCodec<Float> FLOAT = new BinaryCodec<Float>() {
+		@Override public void write(final BinaryOutput out, final Float value) throws IOException {
+			out.writeFloat(value.floatValue());
+		}
+		@Override public Float read(final BinaryInput in) throws IOException {
+			return Float.valueOf(in.readFloat());
+		}
+	};
+
+	/**
+	 * Doubles are encoded on 8 bytes
+	 */
+	private static final BinaryCodec<Double> DOUBLE = new BinaryCodec<Double>() {
+		@Override public void write(final BinaryOutput out, final Double value) throws IOException {
+			out.writeDouble(value.doubleValue());
+		}
+		@Override public Double read(final BinaryInput in) throws IOException {
+			return Double.valueOf(in.readDouble());
+		}
+	};
+
+	/**
+	 * Strings are encoded as their UTF-8 length followed by their UTF-8 bytes
+	 */
+	private static final BinaryCodec<String> STRING = new BinaryCodec<String>() {
+		@Override public void write(final BinaryOutput out, final String value) throws IOException {
+			out.writeString(value);
+		}
+		@Override public String read(final BinaryInput in) throws IOException {
+			return in.readString(MAX_BYTES);
+		}
+	};
+
+	/**
+	 * Dates are encoded as the zigzag varint of their milliseconds since epoch
+	 */
+	private static final BinaryCodec<Date> DATE = new BinaryCodec<Date>() {
+		@Override public void write(final BinaryOutput out, final Date value) throws IOException {
+			out.writeZigZag(value.getTime());
+		}
+		@Override public Date read(final BinaryInput in) throws IOException {
+			return new Date(in.readZigZag());
+		}
+	};
+
+	/**
+	 * Byte arrays are encoded as their length followed by their raw bytes
+	 */
+	private static final BinaryCodec<byte[]> BYTES = new BinaryCodec<byte[]>() {
+		@Override public void write(final BinaryOutput out, final byte[] value) throws IOException {
+			out.writeVarint(value.length);
+			out.write(value, 0, value.length);
+		}
+		@Override public byte[] read(final BinaryInput in) throws IOException {
+			return in.readBytes(MAX_BYTES);
+		}
+	};
+}
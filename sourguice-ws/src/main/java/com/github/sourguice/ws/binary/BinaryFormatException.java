@@ -0,0 +1,27 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+
+/**
+ * Thrown when binary data does not respect the SourGuice WS binary format
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class BinaryFormatException extends IOException {
+
+	private static final long serialVersionUID = 6414389672450165912L;
+
+	/**
+	 * @param message The description of the error
+	 */
+	public BinaryFormatException(final String message) {
+		super(message);
+	}
+
+	/**
+	 * @param cause The cause of the error
+	 */
+	public BinaryFormatException(final Throwable cause) {
+		super(cause);
+	}
+}
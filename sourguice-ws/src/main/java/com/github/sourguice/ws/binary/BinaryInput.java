@@ -0,0 +1,241 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Buffered reader of the SourGuice WS binary format primitives, see {@link BinaryOutput}.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class BinaryInput {
+
+	/**
+	 * The size of the first allocation of a byte array of unknown content,
+	 * the array then grows as its bytes are actually read
+	 */
+	private static final int FIRST_ALLOCATION = 64 * 1024;
+
+	/**
+	 * The stream to read from
+	 */
+	private final InputStream in;
+
+	/**
+	 * The maximum number of bytes that can be read from the stream
+	 */
+	private final long maxLength;
+
+	/**
+	 * The number of bytes read from the stream before the ones that are in the buffer
+	 */
+	private long offset = 0;
+
+	/**
+	 * The read buffer
+	 */
+	private final byte[] buffer = new byte[8192];
+
+	/**
+	 * The position of the next byte to read in the buffer
+	 */
+	private int position = 0;
+
+	/**
+	 * The number of bytes in the buffer
+	 */
+	private int limit = 0;
+
+	/**
+	 * @param in The stream to read from
+	 * @param maxLength The maximum number of bytes that can be read from the stream (for example, the Content-Length of a request)
+	 */
+	public BinaryInput(final InputStream in, final long maxLength) {
+		this.in = in;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * @param in The stream to read from, which is trusted: its length is not bounded
+	 */
+	public BinaryInput(final InputStream in) {
+		this(in, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Fills the buffer
+	 *
+	 * @return Whether there is at least one byte to read
+	 * @throws IOException If an input exception occurred
+	 */
+	private boolean fill() throws IOException {
+		this.offset += this.limit;
+		this.position = 0;
+		this.limit = 0;
+		final long left = this.maxLength - this.offset;
+		if (left <= 0) {
+			return false;
+		}
+		this.limit = this.in.read(this.buffer, 0, (int) Math.min(this.buffer.length, left));
+		if (this.limit < 0) {
+			this.limit = 0;
+		}
+		return this.limit > 0;
+	}
+
+	/**
+	 * @return Whether the end of the stream has been reached
+	 * @throws IOException If an input exception occurred
+	 */
+	public boolean isAtEnd() throws IOException {
+		return this.position == this.limit && !fill();
+	}
+
+	/**
+	 * @return The next byte, unsigned
+	 * @throws IOException If an input exception occurred or the end of the stream has been reached
+	 */
+	public int readByte() throws IOException {
+		if (this.position == this.limit && !fill()) {
+			throw new BinaryFormatException("Unexpected end of binary data");
+		}
+		return this.buffer[this.position++] & 0xFF;
+	}
+
+	/**
+	 * @param bytes The array to fill
+	 * @throws IOException If an input exception occurred or the end of the stream has been reached
+	 */
+	public void readFully(final byte[] bytes) throws IOException {
+		int off = 0;
+		while (off < bytes.length) {
+			if (this.position == this.limit && !fill()) {
+				throw new BinaryFormatException("Unexpected end of binary data");
+			}
+			final int len = Math.min(bytes.length - off, this.limit - this.position);
+			System.arraycopy(this.buffer, this.position, bytes, off, len);
+			this.position += len;
+			off += len;
+		}
+	}
+
+	/**
+	 * @return The next unsigned varint
+	 * @throws IOException If an input exception occurred or the varint is malformed
+	 */
+	public long readVarint() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final int byt = readByte();
+			value |= (long) (byt & 0x7F) << shift;
+			if ((byt & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new BinaryFormatException("Malformed varint");
+	}
+
+	/**
+	 * @param max The maximum accepted value
+	 * @return The next unsigned varint, as a size
+	 * @throws IOException If an input exception occurred or the size is greater than max
+	 */
+	public int readSize(final int max) throws IOException {
+		final long size = readVarint();
+		if (size < 0 || size > max) {
+			throw new BinaryFormatException("Invalid size " + size);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * @return The maximum number of bytes that can still be read
+	 */
+	public long remaining() {
+		return this.maxLength - this.offset - this.position;
+	}
+
+	/**
+	 * Reads the length of something whose every unit takes at least one byte (bytes, elements of a sequence, etc.).
+	 * Such a length cannot be greater than the number of bytes that can still be read,
+	 * so a corrupted or forged length is rejected before anything is allocated for it.
+	 *
+	 * @param max The maximum accepted value
+	 * @return The next unsigned varint, as a length
+	 * @throws IOException If an input exception occurred or the length is greater than max or than the remaining bytes
+	 */
+	public int readLength(final int max) throws IOException {
+		final int length = readSize(max);
+		if (length > remaining()) {
+			throw new BinaryFormatException("Length " + length + " exceeds the remaining data");
+		}
+		return length;
+	}
+
+	/**
+	 * @return The next signed zigzag varint
+	 * @throws IOException If an input exception occurred or the varint is malformed
+	 */
+	public long readZigZag() throws IOException {
+		final long value = readVarint();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * @return The next 4 bytes float
+	 * @throws IOException If an input exception occurred
+	 */
+	public float readFloat() throws IOException {
+		final int bits = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * @return The next 8 bytes double
+	 * @throws IOException If an input exception occurred
+	 */
+	public double readDouble() throws IOException {
+		long bits = 0;
+		for (int i = 0; i < 8; ++i) {
+			bits = (bits << 8) | readByte();
+		}
+		return Double.longBitsToDouble(bits);
+	}
+
+	/**
+	 * Reads a length followed by as many bytes.
+	 * The array grows as the bytes are actually read, so a forged length does not allocate more than what has been received.
+	 *
+	 * @param max The maximum accepted length
+	 * @return The next byte array
+	 * @throws IOException If an input exception occurred, the length is invalid or the end of the stream has been reached
+	 */
+	public byte[] readBytes(final int max) throws IOException {
+		final int length = readLength(max);
+		byte[] bytes = new byte[Math.min(length, FIRST_ALLOCATION)];
+		int off = 0;
+		while (off < length) {
+			if (off == bytes.length) {
+				bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+			}
+			if (this.position == this.limit && !fill()) {
+				throw new BinaryFormatException("Unexpected end of binary data");
+			}
+			final int len = Math.min(bytes.length - off, this.limit - this.position);
+			System.arraycopy(this.buffer, this.position, bytes, off, len);
+			this.position += len;
+			off += len;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param max The maximum accepted UTF-8 length
+	 * @return The next string
+	 * @throws IOException If an input exception occurred or the length is invalid
+	 */
+	public String readString(final int max) throws IOException {
+		return new String(readBytes(max), BinaryOutput.UTF_8);
+	}
+}
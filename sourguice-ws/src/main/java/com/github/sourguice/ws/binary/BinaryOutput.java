@@ -0,0 +1,150 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Buffered writer of the SourGuice WS binary format primitives.
+ *
+ * Integers are written as varints (7 bits per byte, least significant group first),
+ * signed integers are zigzag encoded first so that small negative numbers stay small.
+ * Floating point numbers are written as their fixed size big endian IEEE 754 bits.
+ * Strings are written as the varint length of their UTF-8 bytes followed by the bytes.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class BinaryOutput {
+
+	/**
+	 * The charset of strings
+	 */
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * The stream to write to
+	 */
+	private final OutputStream out;
+
+	/**
+	 * The write buffer
+	 */
+	private final byte[] buffer = new byte[8192];
+
+	/**
+	 * The number of bytes in the buffer
+	 */
+	private int count = 0;
+
+	/**
+	 * @param out The stream to write to
+	 */
+	public BinaryOutput(final OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the buffer to the stream
+	 *
+	 * @throws IOException If an output exception occurred
+	 */
+	private void flushBuffer() throws IOException {
+		if (this.count > 0) {
+			this.out.write(this.buffer, 0, this.count);
+			this.count = 0;
+		}
+	}
+
+	/**
+	 * @param value The byte to write
+	 * @throws IOException If an output exception occurred
+	 */
+	public void writeByte(final int value) throws IOException {
+		if (this.count == this.buffer.length) {
+			flushBuffer();
+		}
+		this.buffer[this.count++] = (byte) value;
+	}
+
+	/**
+	 * @param bytes The bytes to write
+	 * @param off The offset of the first byte to write
+	 * @param len The number of bytes to write
+	 * @throws IOException If an output exception occurred
+	 */
+	public void write(final byte[] bytes, final int off, final int len) throws IOException {
+		if (len > this.buffer.length - this.count) {
+			flushBuffer();
+			if (len > this.buffer.length) {
+				this.out.write(bytes, off, len);
+				return ;
+			}
+		}
+		System.arraycopy(bytes, off, this.buffer, this.count, len);
+		this.count += len;
+	}
+
+	/**
+	 * @param value The unsigned value to write as a varint
+	 * @throws IOException If an output exception occurred
+	 */
+	public void writeVarint(final long value) throws IOException {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		writeByte((int) remaining);
+	}
+
+	/**
+	 * @param value The signed value to write as a zigzag varint
+	 * @throws IOException If an output exception occurred
+	 */
+	public void writeZigZag(final long value) throws IOException {
+		writeVarint((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * @param value The float to write on 4 bytes
+	 * @throws IOException If an output exception occurred
+	 */
+	public void writeFloat(final float value) throws IOException {
+		final int bits = Float.floatToIntBits(value);
+		writeByte(bits >>> 24);
+		writeByte(bits >>> 16);
+		writeByte(bits >>> 8);
+		writeByte(bits);
+	}
+
+	/**
+	 * @param value The double to write on 8 bytes
+	 * @throws IOException If an output exception occurred
+	 */
+	public void writeDouble(final double value) throws IOException {
+		final long bits = Double.doubleToLongBits(value);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			writeByte((int) (bits >>> shift));
+		}
+	}
+
+	/**
+	 * @param value The string to write
+	 * @throws IOException If an output exception occurred
+	 */
+	public void writeString(final String value) throws IOException {
+		final byte[] bytes = value.getBytes(UTF_8);
+		writeVarint(bytes.length);
+		write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Writes the buffered bytes and flushes the stream
+	 *
+	 * @throws IOException If an output exception occurred
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		this.out.flush();
+	}
+}
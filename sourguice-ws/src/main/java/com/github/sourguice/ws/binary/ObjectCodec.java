@@ -0,0 +1,179 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.ws.annotation.WSSubclasses;
+import com.github.sourguice.ws.desc.builder.DescriptionBuilder;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Codec of a described object type.
+ *
+ * The field table is derived from the description: the properties of the class and of its described parents,
+ * sorted by name, are numbered from 1.
+ * An object is encoded as its type id (0 for the declared type, i for the i-th class of its @{@link WSSubclasses}),
+ * followed by the (field id, value) pair of each non null property and by a 0 terminator.
+ *
+ * @param <T> The type of the objects
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+final class ObjectCodec<T> extends BinaryCodec<T> {
+
+	/**
+	 * The type of the objects
+	 */
+	private final TypeLiteral<T> type;
+
+	/**
+	 * The properties, the property of id i is at index i - 1
+	 */
+	private Field[] fields = new Field[0];
+
+	/**
+	 * The codec of each property
+	 */
+	private BinaryCodec<Object>[] codecs;
+
+	/**
+	 * The declared subclasses, the subclass of type id i is at index i - 1
+	 */
+	private Class<?>[] subclasses = new Class<?>[0];
+
+	/**
+	 * The codec of each declared subclass
+	 */
+	private BinaryCodec<Object>[] subclassCodecs;
+
+	/**
+	 * The no-arg constructor of the type, or null if it cannot be instantiated
+	 */
+	private @CheckForNull Constructor<?> constructor;
+
+	/**
+	 * @param type The type of the objects
+	 */
+	ObjectCodec(final TypeLiteral<T> type) {
+		this.type = type;
+		this.codecs = BinaryCodecs.newArray(0);
+		this.subclassCodecs = BinaryCodecs.newArray(0);
+	}
+
+	/**
+	 * Resolves the field table and the codecs of the properties and of the subclasses.
+	 * This is separated from the constructor so that the codec can be registered before it resolves recursive types.
+	 *
+	 * @param registry The registry of codecs
+	 */
+	void initialize(final BinaryCodecs registry) {
+		final List<Field> properties = new ArrayList<>();
+		for (Class<?> cls = this.type.getRawType(); cls != null; cls = DescriptionBuilder.describedParent(cls)) {
+			for (final Field field : cls.getDeclaredFields()) {
+				if (DescriptionBuilder.isProperty(field)) {
+					field.setAccessible(true);
+					properties.add(field);
+				}
+			}
+		}
+		Collections.sort(properties, new Comparator<Field>() {
+			@Override public int compare(final Field left, final Field right) {
+				return DescriptionBuilder.propertyName(left).compareTo(DescriptionBuilder.propertyName(right));
+			}
+		});
+
+		final BinaryCodec<Object>[] fieldCodecs = BinaryCodecs.newArray(properties.size());
+		for (int i = 0; i < fieldCodecs.length; ++i) {
+			fieldCodecs[i] = registry.get(this.type.getFieldType(properties.get(i)).getType());
+		}
+		this.fields = properties.toArray(new Field[properties.size()]);
+		this.codecs = fieldCodecs;
+
+		final WSSubclasses anno = this.type.getRawType().getAnnotation(WSSubclasses.class);
+		if (anno != null) {
+			this.subclasses = anno.value();
+			this.subclassCodecs = BinaryCodecs.newArray(this.subclasses.length);
+			for (int i = 0; i < this.subclasses.length; ++i) {
+				this.subclassCodecs[i] = registry.get(this.subclasses[i]);
+			}
+		}
+
+		this.constructor = BinaryCodecs.concreteConstructor(this.type.getRawType());
+	}
+
+	@Override
+	boolean isSupported(final Set<BinaryCodec<?>> visited) {
+		if (!visited.add(this)) {
+			return true;
+		}
+		for (final BinaryCodec<Object> codec : this.codecs) {
+			if (!codec.isSupported(visited)) {
+				return false;
+			}
+		}
+		for (final BinaryCodec<Object> codec : this.subclassCodecs) {
+			if (!codec.isSupported(visited)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void write(final BinaryOutput out, final T value) throws IOException {
+		final Class<?> cls = value.getClass();
+		if (!cls.equals(this.type.getRawType())) {
+			for (int i = 0; i < this.subclasses.length; ++i) {
+				if (this.subclasses[i].isAssignableFrom(cls)) {
+					out.writeVarint(i + 1);
+					this.subclassCodecs[i].write(out, value);
+					return ;
+				}
+			}
+		}
+		out.writeVarint(0);
+		try {
+			for (int i = 0; i < this.fields.length; ++i) {
+				final Object property = this.fields[i].get(value);
+				if (property != null) {
+					out.writeVarint(i + 1);
+					this.codecs[i].write(out, property);
+				}
+			}
+		}
+		catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+		out.writeVarint(0);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public T read(final BinaryInput in) throws IOException {
+		final int typeId = in.readSize(this.subclasses.length);
+		if (typeId > 0) {
+			return (T) this.subclassCodecs[typeId - 1].read(in);
+		}
+		if (this.constructor == null) {
+			throw new BinaryFormatException("Cannot instanciate " + this.type);
+		}
+		final T value = (T) BinaryCodecs.newInstance(this.constructor);
+		try {
+			for (int id = in.readSize(this.fields.length); id != 0; id = in.readSize(this.fields.length)) {
+				this.fields[id - 1].set(value, this.codecs[id - 1].read(in));
+			}
+		}
+		catch (IllegalAccessException | IllegalArgumentException e) {
+			throw new BinaryFormatException(e);
+		}
+		return value;
+	}
+}
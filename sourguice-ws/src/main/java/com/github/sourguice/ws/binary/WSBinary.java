@@ -0,0 +1,36 @@
+package com.github.sourguice.ws.binary;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * The SourGuice WS binary format, negotiated through the Content-Type and Accept headers.
+ *
+ * A request body in binary is the (parameter id, value) pair of each non null parameter followed by a 0 terminator,
+ * the id of a parameter being its position in the method arguments plus one.
+ * A response body in binary is a presence byte (0 for null, 1 otherwise) followed by the returned value.
+ * Values are encoded by the {@link BinaryCodec}s provided by {@link BinaryCodecs}.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class WSBinary {
+
+	/**
+	 * The MIME type of the binary format
+	 */
+	public static final String MIME = "application/x-sourguice-binary";
+
+	/**
+	 * The default maximum length of a binary request body, in bytes
+	 */
+	public static final long DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+
+	private WSBinary() {}
+
+	/**
+	 * @param header The value of a Content-Type or an Accept header
+	 * @return Whether the header designates the binary format
+	 */
+	public static boolean isIn(final @CheckForNull String header) {
+		return header != null && header.contains(MIME);
+	}
+}
@@ -0,0 +1,129 @@
+package com.github.sourguice.ws.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.ws.WSServlet;
+
+/**
+ * Minimal Java client that calls WS methods using the binary format.
+ *
+ * It uses the same {@link BinaryCodecs} as the server, so the classes exchanged with the server must be shared.
+ * A client is thread safe and should be reused, as it caches the codecs.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class WSBinaryClient {
+
+	/**
+	 * An argument of a call
+	 */
+	public static final class Argument {
+
+		/**
+		 * The position of the argument in the method parameters
+		 */
+		final int position;
+
+		/**
+		 * The declared type of the parameter
+		 */
+		final Type type;
+
+		/**
+		 * The value of the argument
+		 */
+		final @CheckForNull Object value;
+
+		/**
+		 * @param position The position of the argument in the method parameters
+		 * @param type The declared type of the parameter
+		 * @param value The value of the argument
+		 */
+		Argument(final int position, final Type type, final @CheckForNull Object value) {
+			this.position = position;
+			this.type = type;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The URL of the WS servlet
+	 */
+	private final String url;
+
+	/**
+	 * The codecs of the exchanged types
+	 */
+	private final BinaryCodecs codecs = new BinaryCodecs();
+
+	/**
+	 * @param url The URL of the WS servlet (without trailing slash)
+	 */
+	public WSBinaryClient(final String url) {
+		this.url = url;
+	}
+
+	/**
+	 * @param position The position of the argument in the method parameters
+	 * @param type The declared type of the parameter
+	 * @param value The value of the argument
+	 * @return The argument to give to {@link #call(String, String, Type, Argument...)}
+	 */
+	public static Argument arg(final int position, final Type type, final @CheckForNull Object value) {
+		return new Argument(position, type, value);
+	}
+
+	/**
+	 * Calls a WS method
+	 *
+	 * @param endpoint The name of the endpoint
+	 * @param method The name of the method
+	 * @param returnType The declared return type of the method (void.class if the method returns nothing)
+	 * @param args The arguments of the call
+	 * @return What the method returned
+	 * @throws IOException If the connection failed, or the server did not answer 200 or 204, or did not answer in binary
+	 */
+	public @CheckForNull Object call(final String endpoint, final String method, final Type returnType, final Argument... args) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(this.url + WSServlet.REST + endpoint + "/" + method).openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", WSBinary.MIME);
+			connection.setRequestProperty("Accept", WSBinary.MIME);
+
+			final BinaryOutput out = new BinaryOutput(connection.getOutputStream());
+			for (final Argument arg : args) {
+				if (arg.value != null) {
+					out.writeVarint(arg.position + 1);
+					this.codecs.get(arg.type).write(out, arg.value);
+				}
+			}
+			out.writeVarint(0);
+			out.flush();
+			connection.getOutputStream().close();
+
+			final int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NO_CONTENT) {
+				return null;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("WS call " + endpoint + "/" + method + " failed: " + status + " " + connection.getResponseMessage());
+			}
+			if (!WSBinary.isIn(connection.getContentType())) {
+				throw new IOException("WS call " + endpoint + "/" + method + " did not answer in binary: its return type has no binary encoding");
+			}
+			try (InputStream in = connection.getInputStream()) {
+				return this.codecs.get(returnType).readNullable(new BinaryInput(in));
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,2 @@
+@com.github.sourguice.annotation.EverythingIsNonnullAndTaintedByDefault
+package com.github.sourguice.ws.binary;
@@ -0,0 +1,346 @@
+package com.github.sourguice.ws.desc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.ws.desc.struct.Versioned;
+import com.github.sourguice.ws.desc.struct.WSDescription;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * The serialized JSON schema of a {@link WSDescription}, computed once and served as bytes.
+ *
+ * The description is serialized to a JSON tree when the schema is created.
+ * Each API version requested gets its own variant, from which the elements that are not valid for this version
+ * (according to their {@link Versioned#since} and {@link Versioned#until}) have been removed.
+ * A variant holds the identity and gzip encoded bytes and a strong ETag for each, so serving a schema is only writing bytes,
+ * or answering 304 Not Modified to a client that already has it.
+ *
+ * All versions that lie between the same since / until bounds produce the same schema, so they share the same variant:
+ * the number of variants is bounded by the number of distinct bounds in the description.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class WSSchema {
+
+	/**
+	 * The charset of the JSON schema
+	 */
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Request parameter that selects the API version of the schema
+	 */
+	public static final String VERSION_PARAMETER = "version";
+
+	/**
+	 * A serialized schema
+	 */
+	private static final class Variant {
+		/**
+		 * The JSON bytes
+		 */
+		final byte[] identity;
+
+		/**
+		 * The gzip encoded JSON bytes
+		 */
+		final byte[] gzip;
+
+		/**
+		 * The strong ETag of the JSON bytes
+		 */
+		final String etag;
+
+		/**
+		 * The strong ETag of the gzip encoded bytes
+		 */
+		final String gzipEtag;
+
+		/**
+		 * @param json The JSON tree of the schema
+		 */
+		Variant(final JsonElement json) {
+			this.identity = json.toString().getBytes(UTF_8);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(this.identity.length / 4 + 64);
+			try (final GZIPOutputStream gzipStream = new GZIPOutputStream(out)) {
+				gzipStream.write(this.identity);
+			}
+			catch (IOException e) {
+				// Never happens in memory
+				throw new UnsupportedOperationException(e);
+			}
+			this.gzip = out.toByteArray();
+			final String hash = hash(this.identity);
+			this.etag = "\"" + hash + "\"";
+			this.gzipEtag = "\"" + hash + "-gz\"";
+		}
+	}
+
+	/**
+	 * The JSON tree of the full description
+	 */
+	private final JsonElement tree;
+
+	/**
+	 * The variant of the full description, served when no version is requested
+	 */
+	private final Variant full;
+
+	/**
+	 * All distinct "since" bounds of the description, sorted
+	 */
+	private final double[] sinces;
+
+	/**
+	 * All distinct "until" bounds of the description, sorted
+	 */
+	private final double[] untils;
+
+	/**
+	 * The variants that have already been computed, by bound interval (see {@link #intervalOf(double)})
+	 */
+	private final ConcurrentMap<Long, Variant> variants = new ConcurrentHashMap<>();
+
+	/**
+	 * Serializes a description
+	 *
+	 * @param description The description to serialize
+	 * @param gson The Gson instance to use
+	 */
+	public WSSchema(final WSDescription description, final Gson gson) {
+		this.tree = gson.toJsonTree(description);
+		this.full = new Variant(this.tree);
+
+		final TreeSet<Double> sinceSet = new TreeSet<>();
+		final TreeSet<Double> untilSet = new TreeSet<>();
+		collectBounds(this.tree, sinceSet, untilSet);
+		this.sinces = toArray(sinceSet);
+		this.untils = toArray(untilSet);
+	}
+
+	/**
+	 * @param set A set of doubles
+	 * @return The doubles of the set, in the set's order
+	 */
+	private static double[] toArray(final TreeSet<Double> set) {
+		final double[] ret = new double[set.size()];
+		int i = 0;
+		for (final Double value : set) {
+			ret[i++] = value.doubleValue();
+		}
+		return ret;
+	}
+
+	/**
+	 * @param bytes The bytes to hash
+	 * @return The hexadecimal SHA-1 of the bytes
+	 */
+	static String hash(final byte[] bytes) {
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+			final StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (final byte byt : digest) {
+				hex.append(Character.forDigit((byt >> 4) & 0xF, 16)).append(Character.forDigit(byt & 0xF, 16));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// SHA-1 is available in every JVM
+			throw new UnsupportedOperationException(e);
+		}
+	}
+
+	/**
+	 * Collects all since / until bounds of a JSON tree
+	 *
+	 * @param element The JSON tree
+	 * @param sinceSet Where to add the since bounds
+	 * @param untilSet Where to add the until bounds
+	 */
+	private static void collectBounds(final JsonElement element, final TreeSet<Double> sinceSet, final TreeSet<Double> untilSet) {
+		if (element.isJsonArray()) {
+			for (final JsonElement child : element.getAsJsonArray()) {
+				collectBounds(child, sinceSet, untilSet);
+			}
+		}
+		else if (element.isJsonObject()) {
+			final JsonObject object = element.getAsJsonObject();
+			final Double since = bound(object, "since");
+			if (since != null) {
+				sinceSet.add(since);
+			}
+			final Double until = bound(object, "until");
+			if (until != null) {
+				untilSet.add(until);
+			}
+			for (final Map.Entry<String, JsonElement> entry : object.entrySet()) {
+				collectBounds(entry.getValue(), sinceSet, untilSet);
+			}
+		}
+	}
+
+	/**
+	 * @param object A JSON object
+	 * @param name "since" or "until"
+	 * @return The bound, or null if the object is not bounded
+	 */
+	private static @CheckForNull Double bound(final JsonObject object, final String name) {
+		final JsonElement value = object.get(name);
+		if (value != null && value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber()) {
+			return Double.valueOf(value.getAsDouble());
+		}
+		return null;
+	}
+
+	/**
+	 * Copies a JSON tree without the objects that are not valid for the given version
+	 *
+	 * @param element The JSON tree
+	 * @param version The API version
+	 * @return The filtered copy, or null if the element itself is not valid for this version
+	 */
+	private static @CheckForNull JsonElement filter(final JsonElement element, final double version) {
+		if (element.isJsonArray()) {
+			final JsonArray array = new JsonArray();
+			for (final JsonElement child : element.getAsJsonArray()) {
+				final JsonElement copy = filter(child, version);
+				if (copy != null) {
+					array.add(copy);
+				}
+			}
+			return array;
+		}
+		if (element.isJsonObject()) {
+			final JsonObject object = element.getAsJsonObject();
+			final Double since = bound(object, "since");
+			final Double until = bound(object, "until");
+			if ((since != null && version < since.doubleValue()) || (until != null && version > until.doubleValue())) {
+				return null;
+			}
+			final JsonObject copy = new JsonObject();
+			for (final Map.Entry<String, JsonElement> entry : object.entrySet()) {
+				final JsonElement child = filter(entry.getValue(), version);
+				if (child != null) {
+					copy.add(entry.getKey(), child);
+				}
+			}
+			return copy;
+		}
+		return element;
+	}
+
+	/**
+	 * Computes the bound interval of a version: two versions in the same interval see exactly the same elements
+	 *
+	 * @param version The API version
+	 * @return The interval, as (number of since bounds below or at version, number of until bounds strictly below version)
+	 */
+	private long intervalOf(final double version) {
+		int sinceIndex = Arrays.binarySearch(this.sinces, version);
+		sinceIndex = sinceIndex >= 0 ? sinceIndex + 1 : -sinceIndex - 1;
+		int untilIndex = Arrays.binarySearch(this.untils, version);
+		untilIndex = untilIndex >= 0 ? untilIndex : -untilIndex - 1;
+		return ((long) sinceIndex << 32) | untilIndex;
+	}
+
+	/**
+	 * @param version The API version
+	 * @return The variant of this version, computed the first time a version of its interval is requested
+	 */
+	private Variant variantOf(final double version) {
+		final Long interval = Long.valueOf(intervalOf(version));
+		Variant variant = this.variants.get(interval);
+		if (variant == null) {
+			final JsonElement filtered = filter(this.tree, version);
+			variant = new Variant(filtered == null ? new JsonObject() : filtered);
+			final Variant previous = this.variants.putIfAbsent(interval, variant);
+			if (previous != null) {
+				variant = previous;
+			}
+		}
+		return variant;
+	}
+
+	/**
+	 * @param ifNoneMatch The If-None-Match header of the request
+	 * @param etag The ETag of the response
+	 * @return Whether the client already has the response
+	 */
+	private static boolean matches(final @CheckForNull String ifNoneMatch, final String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		if (ifNoneMatch.trim().equals("*")) {
+			return true;
+		}
+		for (final String tag : ifNoneMatch.split(",")) {
+			if (tag.trim().equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Serves the schema: the variant of the requested version (parameter {@link #VERSION_PARAMETER}), or the full schema.
+	 *
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws IOException If an output exception occurs
+	 */
+	public void serve(final HttpServletRequest req, final HttpServletResponse res) throws IOException {
+		final Variant variant;
+		final String versionParam = req.getParameter(VERSION_PARAMETER);
+		if (versionParam == null) {
+			variant = this.full;
+		}
+		else {
+			try {
+				variant = variantOf(Double.parseDouble(versionParam));
+			}
+			catch (NumberFormatException e) {
+				res.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid version: " + versionParam);
+				return ;
+			}
+		}
+
+		final String acceptEncoding = req.getHeader("Accept-Encoding");
+		final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+		final String etag = gzip ? variant.gzipEtag : variant.etag;
+
+		res.setHeader("Access-Control-Allow-Origin", "*");
+		res.setHeader("Vary", "Accept-Encoding");
+		res.setHeader("ETag", etag);
+
+		if (matches(req.getHeader("If-None-Match"), etag)) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return ;
+		}
+
+		final byte[] body = gzip ? variant.gzip : variant.identity;
+		res.setContentType("application/json;charset=UTF-8");
+		if (gzip) {
+			res.setHeader("Content-Encoding", "gzip");
+		}
+		res.setContentLength(body.length);
+		res.getOutputStream().write(body);
+	}
+}
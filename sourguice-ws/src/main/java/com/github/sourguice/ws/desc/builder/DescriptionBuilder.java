@@ -1,26 +1,166 @@
 package com.github.sourguice.ws.desc.builder;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.annotation.CheckForNull;
 
 import com.github.sourguice.provider.TypedProvider;
+import com.github.sourguice.ws.annotation.DisregardParent;
+import com.github.sourguice.ws.annotation.DisregardedParent;
+import com.github.sourguice.ws.annotation.Exclude;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.desc.struct.WSDClass;
+import com.github.sourguice.ws.desc.struct.WSDEndpoint;
+import com.github.sourguice.ws.desc.struct.WSDEnum;
 import com.github.sourguice.ws.desc.struct.WSDescription;
 
+/**
+ * Builds the description of the WS endpoints and of all the types they reach.
+ *
+ * Each type that is reached is described by its own task, on a pool of one thread per processor:
+ * a type is claimed by the first task that reaches it, so it is described only once, and the build ends when no task is left.
+ * The descriptions are gathered in concurrent maps and copied into the {@link WSDescription} at the end of the build.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
 public class DescriptionBuilder {
 
 	protected final WSDescription description;
 
-	private final Set<Class<? extends Enum<?>>> pendingEnums = new HashSet<>();
-	private final Set<Class<?>> pendingTypes = new HashSet<>();
+	/**
+	 * The described object types, by name
+	 */
+	final ConcurrentMap<String, WSDClass> objectTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * The described enums, by name
+	 */
+	final ConcurrentMap<String, WSDEnum> enumTypes = new ConcurrentHashMap<>();
+
+	/**
+	 * The described endpoints, by name
+	 */
+	final ConcurrentMap<String, WSDEndpoint> endpoints = new ConcurrentHashMap<>();
+
+	/**
+	 * The types that were reached, and therefore are or will be described
+	 */
+	private final Set<Class<?>> claimed = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
+
+	/**
+	 * The classes whose declaration is read to build the description
+	 */
+	private final Set<Class<?>> involved = Collections.newSetFromMap(new ConcurrentHashMap<Class<?>, Boolean>());
 
+	/**
+	 * The tasks of the build in progress, or null if no build is in progress
+	 */
+	private @CheckForNull CompletionService<Void> tasks = null;
+
+	/**
+	 * The number of tasks of the build in progress that are submitted and not yet collected
+	 */
+	private final AtomicInteger pending = new AtomicInteger();
 
 	public DescriptionBuilder(final WSDescription description) {
 		this.description = description;
 	}
 
+	/**
+	 * @param cls The class of an endpoint
+	 * @return The name under which the endpoint is described and called
+	 */
+	public static String endpointName(final Class<?> cls) {
+		final WSClass infos = cls.getAnnotation(WSClass.class);
+		if (infos != null && !infos.name().isEmpty()) {
+			if (!Pattern.matches("[a-zA-Z_][a-zA-Z0-9_]*", infos.name())) {
+				throw new AssertionError("WebServices name must be a regular identifier");
+			}
+			return infos.name();
+		}
+		return cls.getSimpleName();
+	}
+
+	/**
+	 * @param method A method of an endpoint
+	 * @param anno The method's annotation
+	 * @return The name under which the method is described and called
+	 */
+	public static String methodName(final Method method, final WSMethod anno) {
+		if (anno.name().isEmpty()) {
+			return method.getName();
+		}
+		return anno.name();
+	}
+
+	/**
+	 * @param field A field of a described class
+	 * @return Whether the field is a property of the class (constants are not properties)
+	 */
+	public static boolean isProperty(final Field field) {
+		return	field.getAnnotation(Exclude.class) == null
+			&&	!field.isSynthetic()
+			&&	!Modifier.isTransient(field.getModifiers())
+			&&	!Modifier.isStatic(field.getModifiers());
+	}
+
+	/**
+	 * @param field A property of a described class
+	 * @return The name of the property
+	 */
+	public static String propertyName(final Field field) {
+		return _Util.getFieldName(field);
+	}
+
+	/**
+	 * @param cls A described class
+	 * @return The parent class that is described as the parent of the class, or null if it has none
+	 */
+	public static @CheckForNull Class<?> describedParent(final Class<?> cls) {
+		final Class<?> parent = cls.getSuperclass();
+		if (	parent != null
+			&&	!parent.equals(Object.class)
+			&&	cls.getAnnotation(DisregardParent.class) == null
+			&&	parent.getAnnotation(DisregardedParent.class) == null
+			) {
+			return parent;
+		}
+		return null;
+	}
+
+	/**
+	 * Submits a task to the build in progress
+	 *
+	 * @param task The task to submit
+	 */
+	private void submit(final Callable<Void> task) {
+		final CompletionService<Void> current = this.tasks;
+		if (current == null) {
+			throw new IllegalStateException("No description build in progress");
+		}
+		this.pending.incrementAndGet();
+		current.submit(task);
+	}
+
 	protected void addToPendingTypes(final Class<?> cls) {
 		if (	!cls.equals(Object.class)
 			&&	!cls.equals(Throwable.class)
@@ -28,34 +168,100 @@ public class DescriptionBuilder {
 			&&	!cls.equals(Exception.class)
 			&&	!cls.equals(RuntimeException.class)
 			&&	!cls.equals(Serializable.class)
+			&&	this.claimed.add(cls)
 			) {
-			this.pendingTypes.add(cls);
+			this.involved.add(cls);
+			submit(new Callable<Void>() {
+				@Override public Void call() {
+					_Class.put(cls, DescriptionBuilder.this);
+					return null;
+				}
+			});
 		}
 	}
 
 	protected void addToPendingEnums(final Class<? extends Enum<?>> cls) {
-		this.pendingEnums.add(cls);
+		if (this.claimed.add(cls)) {
+			this.involved.add(cls);
+			submit(new Callable<Void>() {
+				@Override public Void call() {
+					_Enum.put(cls, DescriptionBuilder.this);
+					return null;
+				}
+			});
+		}
 	}
 
-	public void build(final Collection<TypedProvider<?>> controllers) {
-		for (final TypedProvider<?> type : controllers) {
-			_Endpoint.put(type.getTypeLiteral(), this);
-		}
+	/**
+	 * @param cls A class whose declaration is read to build the description
+	 */
+	void addInvolved(final Class<?> cls) {
+		this.involved.add(cls);
+	}
+
+	/**
+	 * @return The classes whose declaration was read to build the description (endpoints, their parents and all described types)
+	 */
+	public Set<Class<?>> getInvolvedClasses() {
+		return new HashSet<>(this.involved);
+	}
 
-		boolean hasPending = true;
-		while (hasPending) {
-			hasPending = false;
-			for (final Class<? extends Enum<?>> enumClass : new ArrayList<>(this.pendingEnums)) {
-				hasPending = true;
-				_Enum.put(enumClass, this);
-				this.pendingEnums.remove(enumClass);
+	/**
+	 * Builds the description of the given endpoints, describing all reached types in parallel
+	 *
+	 * @param controllers The endpoints to describe
+	 */
+	@SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
+	public void build(final Collection<TypedProvider<?>> controllers) {
+		final ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "SourGuice-WS-Description");
+				thread.setDaemon(true);
+				return thread;
 			}
-			for (final Class<?> objectClass : new ArrayList<>(this.pendingTypes)) {
-				hasPending = true;
-				_Class.put(objectClass, this);
-				this.pendingTypes.remove(objectClass);
+		});
+		final CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+		this.tasks = completion;
+		try {
+			for (final TypedProvider<?> type : controllers) {
+				submit(new Callable<Void>() {
+					@Override public Void call() {
+						_Endpoint.put(type.getTypeLiteral(), DescriptionBuilder.this);
+						return null;
+					}
+				});
+			}
+
+			// Each task submits the tasks of the types it reaches before it completes, so the count is never 0 too early
+			while (this.pending.get() > 0) {
+				try {
+					completion.take().get();
+				}
+				catch (ExecutionException e) {
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while building the description", e);
+				}
+				this.pending.decrementAndGet();
 			}
 		}
+		finally {
+			executor.shutdownNow();
+			this.tasks = null;
+			this.pending.set(0);
+		}
+
+		this.description.objectTypes.putAll(this.objectTypes);
+		this.description.enumTypes.putAll(this.enumTypes);
+		this.description.endpoints.putAll(this.endpoints);
 	}
 
 }
@@ -0,0 +1,342 @@
+package com.github.sourguice.ws.desc.builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.ws.desc.struct.WSDClass;
+import com.github.sourguice.ws.desc.struct.WSDConstant;
+import com.github.sourguice.ws.desc.struct.WSDEndpoint;
+import com.github.sourguice.ws.desc.struct.WSDEnum;
+import com.github.sourguice.ws.desc.struct.WSDescription;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * File cache of a built {@link WSDescription}, so that an unchanged deployment loads its description instead of building it.
+ *
+ * The cached description is keyed by a fingerprint of the bytecode of all the classes that were read to build it
+ * (and of the classes of the builder): if any of these classes changed, or if the endpoints changed, the cache is ignored.
+ * A cache that cannot be read or written is ignored as well: the description is then simply built.
+ * So is a cache whose classes cannot all be fingerprinted (a class whose bytecode cannot be read, such as a generated class, could change unnoticed).
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class DescriptionCache {
+
+	/**
+	 * Logger
+	 */
+	private static final Logger LOGGER = Logger.getLogger(DescriptionCache.class.getName());
+
+	/**
+	 * Version of the cache file format, part of the fingerprint
+	 */
+	private static final String FORMAT = "SourGuice-WS-Description-2";
+
+	/**
+	 * The classes that build the description: their bytecode is part of the fingerprint,
+	 * so that a description cached by another version of SourGuice is not loaded
+	 */
+	private static final List<Class<?>> BUILDER_CLASSES = Arrays.<Class<?>>asList(
+			DescriptionBuilder.class, _Class.class, _Constant.class, _EMethod.class, _EMParam.class,
+			_Endpoint.class, _Enum.class, _TypeParameter.class, _TypeReference.class, _Util.class
+		);
+
+	/**
+	 * Name of the property that holds the class of the value of a cached constant
+	 */
+	private static final String VALUE_CLASS = "valueClass";
+
+	/**
+	 * The content of the cache file
+	 */
+	private static final class Content {
+
+		/**
+		 * The fingerprint of the involved classes
+		 */
+		@CheckForNull String fingerprint;
+
+		/**
+		 * The names of the endpoint classes
+		 */
+		@CheckForNull List<String> endpointClasses;
+
+		/**
+		 * The names of the classes involved in the description
+		 */
+		@CheckForNull List<String> involvedClasses;
+
+		/**
+		 * The described object types
+		 */
+		@CheckForNull Map<String, WSDClass> objectTypes;
+
+		/**
+		 * The described enums
+		 */
+		@CheckForNull Map<String, WSDEnum> enumTypes;
+
+		/**
+		 * The described endpoints
+		 */
+		@CheckForNull Map<String, WSDEndpoint> endpoints;
+	}
+
+	/**
+	 * Reads and writes constants with the class of their value.
+	 * A constant value is declared as an Object, so without its class Gson would read any number back as a Double,
+	 * and a description loaded from the cache would not serialize as the built one (42 would become 42.0).
+	 */
+	private static final class ConstantAdapterFactory implements TypeAdapterFactory {
+
+		/**
+		 * The class loader of the described classes
+		 */
+		private final ClassLoader loader;
+
+		/**
+		 * @param loader The class loader of the described classes
+		 */
+		ConstantAdapterFactory(final ClassLoader loader) {
+			this.loader = loader;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public @CheckForNull <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+			if (!WSDConstant.class.equals(type.getRawType())) {
+				return null;
+			}
+			final TypeAdapter<WSDConstant> delegate = gson.getDelegateAdapter(this, TypeToken.get(WSDConstant.class));
+			final TypeAdapter<JsonElement> trees = gson.getAdapter(JsonElement.class);
+			return (TypeAdapter<T>) new TypeAdapter<WSDConstant>() {
+				@Override public void write(final JsonWriter out, final @CheckForNull WSDConstant constant) throws IOException {
+					if (constant == null) {
+						out.nullValue();
+						return ;
+					}
+					final JsonElement tree = delegate.toJsonTree(constant);
+					if (constant.value != null) {
+						tree.getAsJsonObject().addProperty(VALUE_CLASS, constant.value.getClass().getName());
+					}
+					trees.write(out, tree);
+				}
+				@Override public @CheckForNull WSDConstant read(final JsonReader in) throws IOException {
+					final JsonElement tree = trees.read(in);
+					if (tree == null || !tree.isJsonObject()) {
+						return null;
+					}
+					final JsonElement valueClass = tree.getAsJsonObject().remove(VALUE_CLASS);
+					final JsonElement value = tree.getAsJsonObject().remove("value");
+					final WSDConstant constant = delegate.fromJsonTree(tree);
+					if (valueClass != null && value != null) {
+						try {
+							constant.value = gson.fromJson(value, Class.forName(valueClass.getAsString(), false, ConstantAdapterFactory.this.loader));
+						}
+						catch (ClassNotFoundException e) {
+							throw new JsonParseException(e);
+						}
+					}
+					return constant;
+				}
+			};
+		}
+	}
+
+	/**
+	 * The cache file
+	 */
+	private final File file;
+
+	/**
+	 * @param file The cache file
+	 */
+	public DescriptionCache(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * @param loader The class loader of the described classes
+	 * @return The Gson instance that reads and writes the cache file
+	 */
+	private static Gson gson(final ClassLoader loader) {
+		return new GsonBuilder().registerTypeAdapterFactory(new ConstantAdapterFactory(loader)).create();
+	}
+
+	/**
+	 * @param classes Classes
+	 * @return Their sorted names
+	 */
+	private static List<String> namesOf(final Collection<Class<?>> classes) {
+		final TreeSet<String> names = new TreeSet<>();
+		for (final Class<?> cls : classes) {
+			names.add(cls.getName());
+		}
+		return new ArrayList<>(names);
+	}
+
+	/**
+	 * @param classes The classes to fingerprint
+	 * @return The hexadecimal SHA-1 of the names and bytecode of the classes
+	 * @throws IOException If the bytecode of a class could not be read
+	 */
+	private static String fingerprint(final Collection<Class<?>> classes) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(FORMAT.getBytes(StandardCharsets.UTF_8));
+
+		final List<Class<?>> sorted = new ArrayList<>(classes);
+		sorted.addAll(BUILDER_CLASSES);
+		Collections.sort(sorted, new Comparator<Class<?>>() {
+			@Override public int compare(final Class<?> left, final Class<?> right) {
+				return left.getName().compareTo(right.getName());
+			}
+		});
+
+		final byte[] buffer = new byte[8192];
+		for (final Class<?> cls : sorted) {
+			digest.update(cls.getName().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			final String name = cls.getName();
+			try (InputStream in = cls.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class")) {
+				if (in == null) {
+					throw new IOException("Cannot read the bytecode of " + name);
+				}
+				for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+					digest.update(buffer, 0, read);
+				}
+			}
+		}
+
+		final StringBuilder hex = new StringBuilder();
+		for (final byte b : digest.digest()) {
+			hex.append(String.format("%02x", Integer.valueOf(b & 0xFF)));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Fills the description from the cache, if the cache is valid for the given endpoints
+	 *
+	 * @param description The description to fill
+	 * @param endpointClasses The classes of the endpoints to describe
+	 * @return Whether the description was loaded from the cache (if not, it must be built)
+	 */
+	public boolean load(final WSDescription description, final Collection<Class<?>> endpointClasses) {
+		if (!this.file.isFile() || endpointClasses.isEmpty()) {
+			return false;
+		}
+		final ClassLoader loader = endpointClasses.iterator().next().getClassLoader();
+		try {
+			final Content content;
+			try (Reader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+				content = gson(loader).fromJson(reader, Content.class);
+			}
+			if (	content == null || content.fingerprint == null || content.involvedClasses == null
+				||	content.objectTypes == null || content.enumTypes == null || content.endpoints == null
+				||	!namesOf(endpointClasses).equals(content.endpointClasses)
+				) {
+				return false;
+			}
+
+			final List<Class<?>> involved = new ArrayList<>(content.involvedClasses.size());
+			for (final String name : content.involvedClasses) {
+				involved.add(Class.forName(name, false, loader));
+			}
+			if (!fingerprint(involved).equals(content.fingerprint)) {
+				return false;
+			}
+
+			description.objectTypes.putAll(content.objectTypes);
+			description.enumTypes.putAll(content.enumTypes);
+			description.endpoints.putAll(content.endpoints);
+			return true;
+		}
+		catch (IOException | JsonParseException | ClassNotFoundException | LinkageError e) {
+			LOGGER.log(Level.FINE, "Description cache ignored", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a built description in the cache file (if the file cannot be written, the cache is simply not updated)
+	 *
+	 * @param description The built description
+	 * @param endpointClasses The classes of the described endpoints
+	 * @param involvedClasses The classes that were read to build the description, see {@link DescriptionBuilder#getInvolvedClasses()}
+	 */
+	public void store(final WSDescription description, final Collection<Class<?>> endpointClasses, final Collection<Class<?>> involvedClasses) {
+		// Primitive types have no bytecode and cannot be loaded by name
+		final List<Class<?>> classes = new ArrayList<>(involvedClasses.size());
+		for (final Class<?> cls : involvedClasses) {
+			if (!cls.isPrimitive()) {
+				classes.add(cls);
+			}
+		}
+
+		final Content content = new Content();
+		content.endpointClasses = namesOf(endpointClasses);
+		content.involvedClasses = namesOf(classes);
+		content.objectTypes = new HashMap<>(description.objectTypes);
+		content.enumTypes = new HashMap<>(description.enumTypes);
+		content.endpoints = new HashMap<>(description.endpoints);
+
+		File tmp = null;
+		try {
+			content.fingerprint = fingerprint(classes);
+			final File dir = this.file.getAbsoluteFile().getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				return ;
+			}
+			tmp = File.createTempFile(this.file.getName(), ".tmp", dir);
+			try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+				gson(DescriptionCache.class.getClassLoader()).toJson(content, writer);
+			}
+			Files.move(tmp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			tmp = null;
+		}
+		catch (IOException e) {
+			// The cache is an optimization: failing to write it only means that the next startup will build the description
+			LOGGER.log(Level.WARNING, "Description not cached", e);
+		}
+		finally {
+			if (tmp != null && !tmp.delete()) {
+				tmp.deleteOnExit();
+			}
+		}
+	}
+}
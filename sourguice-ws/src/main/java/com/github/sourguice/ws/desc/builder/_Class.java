@@ -8,8 +8,6 @@ import java.lang.reflect.TypeVariable;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
-import com.github.sourguice.ws.annotation.DisregardParent;
-import com.github.sourguice.ws.annotation.DisregardedParent;
 import com.github.sourguice.ws.annotation.Exclude;
 import com.github.sourguice.ws.annotation.WSSubclasses;
 import com.github.sourguice.ws.desc.struct.WSDClass;
@@ -26,17 +24,15 @@ final class _Class {
 				continue ;
 			}
 
-			final String fieldName = _Util.getFieldName(field);
-
 			if (_Constant.isConstant(field)) {
 				_Constant.put(wsdClass.getConstants(), field, field.getGenericType(), root);
 			}
-			else if (!field.isSynthetic() && !Modifier.isTransient(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+			else if (DescriptionBuilder.isProperty(field)) {
 				final WSDTypeReference typeRef = _TypeReference.make(field.getGenericType(), field, root);
 				if (field.isAnnotationPresent(CheckForNull.class) || field.isAnnotationPresent(Nullable.class)) {
 					typeRef.nullable = Boolean.TRUE;
 				}
-				wsdClass.properties.put(fieldName, typeRef);
+				wsdClass.properties.put(_Util.getFieldName(field), typeRef);
 			}
 		}
 	}
@@ -44,7 +40,7 @@ final class _Class {
 	public static void put(final Class<?> objClass, final DescriptionBuilder root) {
 		final WSDClass wsdClass = new WSDClass();
 		_Util.fillVersioned(wsdClass, objClass);
-		root.description.objectTypes.put(objClass.getName(), wsdClass);
+		root.objectTypes.put(objClass.getName(), wsdClass);
 
 		for (final TypeVariable<?> typeVariable : objClass.getTypeParameters()) {
 			wsdClass.getTypeVariables().add(_TypeParameter.make(typeVariable, root));
@@ -54,11 +50,7 @@ final class _Class {
 			wsdClass.isAbstract = Boolean.TRUE;
 		}
 
-		if (	objClass.getSuperclass() != null
-			&&	!objClass.getSuperclass().equals(Object.class)
-			&&	objClass.getAnnotation(DisregardParent.class) == null
-			&&	objClass.getSuperclass().getAnnotation(DisregardedParent.class) == null
-			) {
+		if (DescriptionBuilder.describedParent(objClass) != null) {
 			final Type superType = TypeLiteral.get(objClass).getSupertype(objClass.getSuperclass()).getType();
 			wsdClass.parent = _TypeReference.make(superType, null, root);
 		}
@@ -23,11 +23,7 @@ final class _EMethod {
 
 		_Util.fillVersioned(wsdeMethod, method);
 
-		String methodName = anno.name();
-		if (methodName.isEmpty()) {
-			methodName = method.getName();
-		}
-		wsdEndpoint.methods.put(methodName, wsdeMethod);
+		wsdEndpoint.methods.put(DescriptionBuilder.methodName(method, anno), wsdeMethod);
 
 		final Annotation[][] paramAnnos = method.getParameterAnnotations();
 		final List<TypeLiteral<?>> paramTypes = type.getParameterTypes(method);
@@ -2,7 +2,6 @@ package com.github.sourguice.ws.desc.builder;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.regex.Pattern;
 
 import com.github.sourguice.utils.Annotations;
 import com.github.sourguice.ws.annotation.WSClass;
@@ -16,12 +15,11 @@ final class _Endpoint {
 
 	private static void putEndpointConstantsAndAddClasses(final WSDEndpoint wsdEndpoint, TypeLiteral<?> type, final DescriptionBuilder root) {
 		while (type != null) {
+			root.addInvolved(type.getRawType());
 			final WSClass lookInfos = type.getRawType().getAnnotation(WSClass.class);
 			if (lookInfos != null) {
 				for (final Class<?> addCls : lookInfos.addKnownClasses()) {
-					if (root.description.objectTypes.containsKey(addCls.getName())) {
-						root.addToPendingTypes(addCls);
-					}
+					root.addToPendingTypes(addCls);
 				}
 			}
 
@@ -40,16 +38,7 @@ final class _Endpoint {
 
 		_Util.fillVersioned(wsdEndpoint, type.getRawType());
 
-		String name = type.getRawType().getSimpleName();
-		final WSClass infos = type.getRawType().getAnnotation(WSClass.class);
-		if (infos != null && !infos.name().isEmpty()) {
-			if (!Pattern.matches("[a-zA-Z_][a-zA-Z0-9_]*", infos.name())) {
-				throw new AssertionError("WebServices name must be a regular identifier");
-			}
-			name = infos.name();
-		}
-
-		root.description.endpoints.put(name, wsdEndpoint);
+		root.endpoints.put(DescriptionBuilder.endpointName(type.getRawType()), wsdEndpoint);
 
 		putEndpointConstantsAndAddClasses(wsdEndpoint, type, root);
 
@@ -15,7 +15,7 @@ final class _Enum {
 			wsdEnum.values.add(cst.toString());
 		}
 
-		root.description.enumTypes.put(cls.getName(), wsdEnum);
+		root.enumTypes.put(cls.getName(), wsdEnum);
 	}
 
 
@@ -8,6 +8,7 @@ import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.Map;
 
 import javax.annotation.CheckForNull;
@@ -55,7 +56,7 @@ final class _TypeReference {
 		return null;
 	}
 
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private static @CheckForNull WSDTypeReference makeTypeReferenceForTransformedClass(final TypeLiteral<?> type, final DescriptionBuilder root) {
 		if (type.getRawType().isEnum()) {
 			final String typeName = type.getRawType().getName();
@@ -63,9 +64,7 @@ final class _TypeReference {
 			final WSDTypeReference reference = new WSDTypeReference(WSDType.ENUM);
 			reference.ref = typeName;
 
-			if (!root.description.enumTypes.containsKey(typeName)) {
-				root.addToPendingEnums((Class<Enum<?>>) type.getRawType());
-			}
+			root.addToPendingEnums((Class<Enum<?>>) type.getRawType());
 			return reference;
 		}
 
@@ -83,6 +82,15 @@ final class _TypeReference {
 			return reference;
 		}
 
+		else if (Iterable.class.isAssignableFrom(type.getRawType()) || Iterator.class.isAssignableFrom(type.getRawType())) {
+			final WSDTypeReference reference = new WSDTypeReference(WSDType.COLLECTION);
+			final Class<?> seqClass = Iterable.class.isAssignableFrom(type.getRawType()) ? Iterable.class : Iterator.class;
+			final Type seqType = type.getSupertype((Class) seqClass).getType();
+			final Type elemType = seqType instanceof ParameterizedType ? ((ParameterizedType) seqType).getActualTypeArguments()[0] : Object.class;
+			reference.getParameterTypes().put("E", make(elemType, null, root));
+			return reference;
+		}
+
 		else if (Map.class.isAssignableFrom(type.getRawType())) {
 			final WSDTypeReference reference = new WSDTypeReference(WSDType.MAP);
 
@@ -107,9 +115,7 @@ final class _TypeReference {
 		if (reference == null) {
 			reference = new WSDTypeReference(WSDType.OBJECT);
 			final String typeName = typeLitteral.getRawType().getName();
-			if (!root.description.objectTypes.containsKey(typeName)) {
-				root.addToPendingTypes(typeLitteral.getRawType());
-			}
+			root.addToPendingTypes(typeLitteral.getRawType());
 			reference.ref = typeName;
 			if (type instanceof ParameterizedType) {
 				final Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
@@ -0,0 +1,405 @@
+package com.github.sourguice.ws.rest;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.ws.desc.builder.DescriptionBuilder;
+import com.github.sourguice.ws.desc.struct.Versioned;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.Until;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Gson factory that compiles, once per WS object type, a JSON adapter specialized for each API version.
+ *
+ * When a type is first requested, its properties (as {@link DescriptionBuilder} sees them) are resolved with their names,
+ * their field adapters and their @{@link Since} / @{@link Until} bounds.
+ * All versions that lie between the same bounds see the same properties, so one property table is built per bound interval:
+ * serializing an object only picks the table of the current version and streams its non null properties.
+ *
+ * The version is the one set on the current thread by {@link #setVersion(double)}.
+ * When no version is set, all properties are serialized, which is what Gson does when it has no version.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class CompiledTypeAdapterFactory implements TypeAdapterFactory {
+
+	/**
+	 * The API version requested by the call being handled by the current thread
+	 */
+	private static final ThreadLocal<Double> VERSION = new ThreadLocal<>();
+
+	/**
+	 * Sets the API version of the call being handled by the current thread
+	 *
+	 * @param version The requested API version
+	 */
+	public static void setVersion(final double version) {
+		VERSION.set(Double.valueOf(version));
+	}
+
+	/**
+	 * Removes the API version of the current thread: all properties will be serialized
+	 */
+	public static void clearVersion() {
+		VERSION.remove();
+	}
+
+	/**
+	 * A property of a compiled type
+	 */
+	private static final class Property {
+
+		/**
+		 * The serialized name of the property
+		 */
+		final String name;
+
+		/**
+		 * The field of the property
+		 */
+		final Field field;
+
+		/**
+		 * The adapter of the declared type of the field
+		 */
+		final TypeAdapter<Object> adapter;
+
+		/**
+		 * Whether the field is of a primitive type (and therefore cannot be set to null)
+		 */
+		final boolean primitive;
+
+		/**
+		 * @param name The serialized name of the property
+		 * @param field The field of the property
+		 * @param adapter The adapter of the declared type of the field
+		 */
+		Property(final String name, final Field field, final TypeAdapter<Object> adapter) {
+			this.name = name;
+			this.field = field;
+			this.adapter = adapter;
+			this.primitive = field.getType().isPrimitive();
+		}
+	}
+
+	/**
+	 * The properties of a type valid for a bound interval
+	 */
+	private static final class Table {
+
+		/**
+		 * The properties, in serialization order
+		 */
+		final Property[] properties;
+
+		/**
+		 * The properties by serialized name
+		 */
+		final Map<String, Property> byName = new HashMap<>();
+
+		/**
+		 * @param properties The properties, in serialization order
+		 */
+		Table(final List<Property> properties) {
+			this.properties = properties.toArray(new Property[properties.size()]);
+			for (final Property property : this.properties) {
+				this.byName.put(property.name, property);
+			}
+		}
+	}
+
+	/**
+	 * The adapter of a compiled type
+	 *
+	 * @param <T> The compiled type
+	 */
+	private static final class CompiledAdapter<T> extends TypeAdapter<T> {
+
+		/**
+		 * The Gson instance that provides the adapters of the runtime subclasses
+		 */
+		private final Gson gson;
+
+		/**
+		 * The compiled type
+		 */
+		private final Class<?> raw;
+
+		/**
+		 * The no-arg constructor of the type
+		 */
+		private final Constructor<?> constructor;
+
+		/**
+		 * The sorted distinct since / until bounds of the type and of its properties
+		 */
+		private final double[] bounds;
+
+		/**
+		 * The property table of each bound interval (index is the number of bounds lower or equal to the version),
+		 * null for intervals in which the type itself does not exist
+		 */
+		private final Table[] tables;
+
+		/**
+		 * The table of all properties, used when no version is requested
+		 */
+		private final Table all;
+
+		/**
+		 * @param gson The Gson instance that provides the adapters of the runtime subclasses
+		 * @param raw The compiled type
+		 * @param constructor The no-arg constructor of the type
+		 * @param bounds The sorted distinct since / until bounds of the type and of its properties
+		 * @param tables The property table of each bound interval
+		 * @param all The table of all properties
+		 */
+		CompiledAdapter(final Gson gson, final Class<?> raw, final Constructor<?> constructor, final double[] bounds, final Table[] tables, final Table all) {
+			this.gson = gson;
+			this.raw = raw;
+			this.constructor = constructor;
+			this.bounds = bounds;
+			this.tables = tables;
+			this.all = all;
+		}
+
+		/**
+		 * @return The property table of the version of the current thread, or null if the type does not exist in this version
+		 */
+		private @CheckForNull Table table() {
+			final Double version = VERSION.get();
+			if (version == null) {
+				return this.all;
+			}
+			int index = Arrays.binarySearch(this.bounds, version.doubleValue());
+			index = index >= 0 ? index + 1 : -index - 1;
+			return this.tables[index];
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public void write(final JsonWriter out, final @CheckForNull T value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return ;
+			}
+			if (!value.getClass().equals(this.raw)) {
+				((TypeAdapter<Object>) this.gson.getAdapter(value.getClass())).write(out, value);
+				return ;
+			}
+			final Table table = table();
+			if (table == null) {
+				out.nullValue();
+				return ;
+			}
+			out.beginObject();
+			try {
+				for (final Property property : table.properties) {
+					final Object propertyValue = property.field.get(value);
+					if (propertyValue != null) {
+						out.name(property.name);
+						property.adapter.write(out, propertyValue);
+					}
+				}
+			}
+			catch (IllegalAccessException e) {
+				throw new AssertionError(e);
+			}
+			out.endObject();
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public @CheckForNull T read(final JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			final Table table = table();
+			if (table == null) {
+				in.skipValue();
+				return null;
+			}
+			final T value;
+			try {
+				value = (T) this.constructor.newInstance();
+			}
+			catch (ReflectiveOperationException e) {
+				throw new JsonSyntaxException("Could not instanciate " + this.raw.getName(), e);
+			}
+			in.beginObject();
+			try {
+				while (in.hasNext()) {
+					final Property property = table.byName.get(in.nextName());
+					if (property == null) {
+						in.skipValue();
+						continue ;
+					}
+					final Object propertyValue = property.adapter.read(in);
+					if (propertyValue != null || !property.primitive) {
+						property.field.set(value, propertyValue);
+					}
+				}
+			}
+			catch (IllegalAccessException e) {
+				throw new AssertionError(e);
+			}
+			catch (IllegalStateException e) {
+				throw new JsonSyntaxException(e);
+			}
+			in.endObject();
+			return value;
+		}
+	}
+
+	/**
+	 * @param cls A class
+	 * @return Whether the class is a WS object type that can be compiled
+	 */
+	private static boolean isCompilable(final Class<?> cls) {
+		final String name = cls.getName();
+		return	!cls.isPrimitive()
+			&&	!cls.isArray()
+			&&	!cls.isEnum()
+			&&	!cls.isInterface()
+			&&	!cls.isAnonymousClass()
+			&&	!cls.isLocalClass()
+			&&	!Modifier.isAbstract(cls.getModifiers())
+			&&	(cls.getEnclosingClass() == null || Modifier.isStatic(cls.getModifiers()))
+			&&	!Iterable.class.isAssignableFrom(cls)
+			&&	!Iterator.class.isAssignableFrom(cls)
+			&&	!Map.class.isAssignableFrom(cls)
+			&&	!name.startsWith("java.")
+			&&	!name.startsWith("javax.")
+			&&	!name.startsWith("com.google.gson.");
+	}
+
+	/**
+	 * @param anno A since annotation
+	 * @return Its version, or null
+	 */
+	private static @CheckForNull Double since(final @CheckForNull Since anno) {
+		return anno == null ? null : Double.valueOf(anno.value());
+	}
+
+	/**
+	 * An until version is included (as stated by {@link Versioned#until}, and as the schema is filtered):
+	 * an element valid until u is valid for every version v &lt;= u, that is for every v &lt; nextUp(u).
+	 * The until bound is therefore kept as the first version in which the element is no longer valid.
+	 *
+	 * @param anno An until annotation
+	 * @return The first version after its version, or null
+	 */
+	private static @CheckForNull Double until(final @CheckForNull Until anno) {
+		return anno == null ? null : Double.valueOf(Math.nextUp(anno.value()));
+	}
+
+	/**
+	 * Whether an element is valid in a bound interval (valid from since included to the exclusive until bound, see {@link #until(Until)})
+	 *
+	 * @param since The since bound of the element, or null
+	 * @param until The until bound of the element, or null
+	 * @param bounds The sorted distinct bounds
+	 * @param interval The index of the interval (the number of bounds lower or equal to the version)
+	 * @return Whether the element is valid
+	 */
+	private static boolean isValid(final @CheckForNull Double since, final @CheckForNull Double until, final double[] bounds, final int interval) {
+		return	(since == null || Arrays.binarySearch(bounds, since.doubleValue()) < interval)
+			&&	(until == null || Arrays.binarySearch(bounds, until.doubleValue()) >= interval);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public @CheckForNull <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+		final Class<?> raw = type.getRawType();
+		if (!isCompilable(raw)) {
+			return null;
+		}
+		final Constructor<?> constructor;
+		try {
+			constructor = raw.getDeclaredConstructor();
+			constructor.setAccessible(true);
+		}
+		catch (NoSuchMethodException | SecurityException e) {
+			return null;
+		}
+
+		final TypeLiteral<?> literal = TypeLiteral.get(type.getType());
+		final List<Property> properties = new ArrayList<>();
+		final List<Double[]> propertyBounds = new ArrayList<>();
+		final TreeSet<Double> boundSet = new TreeSet<>();
+		for (Class<?> cls = raw; cls != null && !cls.equals(Object.class); cls = cls.getSuperclass()) {
+			for (final Field field : cls.getDeclaredFields()) {
+				if (!DescriptionBuilder.isProperty(field)) {
+					continue ;
+				}
+				field.setAccessible(true);
+				final TypeAdapter<Object> adapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(literal.getFieldType(field).getType()));
+				properties.add(new Property(DescriptionBuilder.propertyName(field), field, adapter));
+				final Double[] fieldBounds = { since(field.getAnnotation(Since.class)), until(field.getAnnotation(Until.class)) };
+				propertyBounds.add(fieldBounds);
+			}
+		}
+		final Double classSince = since(raw.getAnnotation(Since.class));
+		final Double classUntil = until(raw.getAnnotation(Until.class));
+		for (final Double[] fieldBounds : propertyBounds) {
+			addBounds(boundSet, fieldBounds[0], fieldBounds[1]);
+		}
+		addBounds(boundSet, classSince, classUntil);
+
+		final double[] bounds = new double[boundSet.size()];
+		int i = 0;
+		for (final Double bound : boundSet) {
+			bounds[i++] = bound.doubleValue();
+		}
+
+		final Table[] tables = new Table[bounds.length + 1];
+		for (int interval = 0; interval < tables.length; ++interval) {
+			if (isValid(classSince, classUntil, bounds, interval)) {
+				final List<Property> valid = new ArrayList<>();
+				for (int p = 0; p < properties.size(); ++p) {
+					if (isValid(propertyBounds.get(p)[0], propertyBounds.get(p)[1], bounds, interval)) {
+						valid.add(properties.get(p));
+					}
+				}
+				tables[interval] = new Table(valid);
+			}
+		}
+
+		return (TypeAdapter<T>) new CompiledAdapter<>(gson, raw, constructor, bounds, tables, new Table(properties));
+	}
+
+	/**
+	 * @param boundSet The set to which add the bounds
+	 * @param since A since bound, or null
+	 * @param until An until bound, or null
+	 */
+	private static void addBounds(final TreeSet<Double> boundSet, final @CheckForNull Double since, final @CheckForNull Double until) {
+		if (since != null) {
+			boundSet.add(since);
+		}
+		if (until != null) {
+			boundSet.add(until);
+		}
+	}
+}
@@ -0,0 +1,560 @@
+package com.github.sourguice.ws.rest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.throwable.invocation.HandledException;
+import com.github.sourguice.throwable.invocation.NoSuchRequestParameterException;
+import com.github.sourguice.utils.Annotations;
+import com.github.sourguice.ws.annotation.WSException;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * Executes multiple REST calls sent in one request.
+ *
+ * The request body is a JSON array of calls, each call being an object with:
+ * <ul>
+ *   <li>"endpoint" and "method": the method to call,</li>
+ *   <li>"params": the arguments, as for a single REST call (optional),</li>
+ *   <li>"id": the identifier of the call in the results and in dependencies (optional, defaults to the call's index),</li>
+ *   <li>"after": the ids of the calls that must have succeeded before this call can start (optional).</li>
+ * </ul>
+ *
+ * Calls whose dependencies are met run in parallel on the executor, except for calls to methods that need the request
+ * (see {@link RestInvocation#isDetached()}), which run on the request thread.
+ * The exceptions thrown by calls that ran on the executor are handled on the request thread.
+ * The response is a JSON array of results, each written (and flushed) as soon as its call finishes,
+ * or in the order of the calls if the request parameter {@link #ORDERED_PARAMETER} is true.
+ * A result is an object with the "id" and the HTTP-like "status" of its call, and either its "result" or its "error".
+ * A call whose dependency failed or can never run is not executed and has the status 424 (Failed Dependency).
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class RestBatch {
+
+	/**
+	 * Request parameter that asks for the results to be written in the order of the calls
+	 */
+	public static final String ORDERED_PARAMETER = "ordered";
+
+	/**
+	 * Status of a call that was not executed because of its dependencies
+	 */
+	private static final int SC_FAILED_DEPENDENCY = 424;
+
+	/**
+	 * A call of the batch
+	 */
+	private static final class Call implements Runnable {
+		/**
+		 * The identifier of the call
+		 */
+		final String id;
+
+		/**
+		 * The ids of the calls this call depends on
+		 */
+		final List<String> after;
+
+		/**
+		 * The calls that depend on this call
+		 */
+		final List<Call> dependents = new ArrayList<>();
+
+		/**
+		 * The number of dependencies that have not finished yet
+		 */
+		int pending = 0;
+
+		/**
+		 * The invocation to call (null if the call could not be resolved)
+		 */
+		@CheckForNull RestInvocation invocation = null;
+
+		/**
+		 * The decoded arguments
+		 */
+		@CheckForNull Object[] arguments = null;
+
+		/**
+		 * The queue in which the call is put when it has been executed on the executor
+		 */
+		@CheckForNull BlockingQueue<Call> completed = null;
+
+		/**
+		 * Whether the call has a result or a status (set when it is finished)
+		 */
+		boolean finished = false;
+
+		/**
+		 * Whether the result of this call has been handled by the request thread
+		 */
+		boolean reported = false;
+
+		/**
+		 * The status of the call
+		 */
+		int status = HttpServletResponse.SC_OK;
+
+		/**
+		 * The result of the call
+		 */
+		@CheckForNull Object result = null;
+
+		/**
+		 * The error message of the call
+		 */
+		@CheckForNull String error = null;
+
+		/**
+		 * The class of the @{@link WSException} thrown by the call
+		 */
+		@CheckForNull String exception = null;
+
+		/**
+		 * The exception thrown by the call when it ran on the executor, to be handled by the request thread
+		 */
+		@CheckForNull InvocationTargetException thrown = null;
+
+		/**
+		 * @param id The identifier of the call
+		 * @param after The ids of the calls this call depends on
+		 */
+		Call(final String id, final List<String> after) {
+			this.id = id;
+			this.after = after;
+		}
+
+		/**
+		 * Marks the call as failed
+		 *
+		 * @param status The status of the failure
+		 * @param error The error message
+		 */
+		void fail(final int status, final @CheckForNull String error) {
+			this.status = status;
+			this.error = error;
+			this.finished = true;
+		}
+
+		/**
+		 * Marks the call as failed because of what its method has thrown
+		 *
+		 * @param e The exception thrown by the method
+		 */
+		void fail(final InvocationTargetException e) {
+			final Throwable cause = e.getCause();
+			if (cause != null && Annotations.getOneTreeRecursive(WSException.class, cause.getClass()) != null) {
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, cause.getMessage());
+				this.exception = cause.getClass().getName();
+			}
+			else {
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal error");
+			}
+		}
+
+		/**
+		 * Executes the call.
+		 * On the executor, the method is invoked detached: the exception it throws is not handled, as exception handlers may need the request,
+		 * it is kept for the request thread to {@link #handle()} it.
+		 */
+		@Override
+		@SuppressWarnings("PMD.AvoidCatchingGenericException")
+		public void run() {
+			assert this.invocation != null;
+			assert this.arguments != null;
+			try {
+				this.result = this.completed != null ? this.invocation.invokeDetached(this.arguments) : this.invocation.invoke(this.arguments);
+				this.status = this.invocation.hasResult() ? HttpServletResponse.SC_OK : HttpServletResponse.SC_NO_CONTENT;
+				this.finished = true;
+			}
+			catch (NoSuchRequestParameterException e) {
+				fail(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			}
+			catch (HandledException e) {
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Handled exception");
+			}
+			catch (InvocationTargetException e) {
+				if (this.completed != null) {
+					this.thrown = e;
+				}
+				else {
+					fail(e);
+				}
+			}
+			catch (IOException | RuntimeException e) {
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal error");
+			}
+			if (this.completed != null) {
+				this.completed.add(this);
+			}
+		}
+
+		/**
+		 * Handles, in the request thread, the exception thrown by the call when it ran on the executor, if any
+		 */
+		@SuppressWarnings("PMD.AvoidCatchingGenericException")
+		void handle() {
+			final InvocationTargetException toHandle = this.thrown;
+			if (toHandle == null) {
+				return ;
+			}
+			this.thrown = null;
+			assert this.invocation != null;
+			try {
+				this.invocation.handle(toHandle);
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Handled exception");
+			}
+			catch (HandledException e) {
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Handled exception");
+			}
+			catch (InvocationTargetException e) {
+				fail(e);
+			}
+			catch (IOException | RuntimeException e) {
+				fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Internal error");
+			}
+		}
+	}
+
+	/**
+	 * The REST invocations, by "endpoint/method" path
+	 */
+	private final Map<String, RestInvocation> invocations;
+
+	/**
+	 * The executor on which the calls run in parallel
+	 */
+	private final Executor executor;
+
+	/**
+	 * The maximum number of calls in one batch
+	 */
+	private final int maxCalls;
+
+	/**
+	 * Constructor
+	 *
+	 * @param invocations The REST invocations, by "endpoint/method" path
+	 * @param executor The executor on which the calls run in parallel (it should be bounded)
+	 * @param maxCalls The maximum number of calls in one batch
+	 */
+	public RestBatch(final Map<String, RestInvocation> invocations, final Executor executor, final int maxCalls) {
+		this.invocations = invocations;
+		this.executor = executor;
+		this.maxCalls = maxCalls;
+	}
+
+	/**
+	 * Reads a call from the batch body
+	 *
+	 * @param reader The reader, positioned on the call object
+	 * @param index The index of the call in the batch
+	 * @return The call
+	 * @throws IOException If an input exception occurred
+	 */
+	private Call readCall(final JsonReader reader, final int index) throws IOException {
+		String id = String.valueOf(index);
+		String endpoint = null;
+		String method = null;
+		JsonElement params = null;
+		final List<String> after = new ArrayList<>();
+
+		reader.beginObject();
+		while (reader.hasNext()) {
+			final String name = reader.nextName();
+			switch (name) {
+				case "id":
+					id = reader.nextString();
+					break ;
+				case "endpoint":
+					endpoint = reader.nextString();
+					break ;
+				case "method":
+					method = reader.nextString();
+					break ;
+				case "params":
+					params = new JsonParser().parse(reader);
+					break ;
+				case "after":
+					reader.beginArray();
+					while (reader.hasNext()) {
+						after.add(reader.nextString());
+					}
+					reader.endArray();
+					break ;
+				default:
+					reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		final Call call = new Call(id, after);
+		call.invocation = this.invocations.get(endpoint + "/" + method);
+		if (call.invocation == null) {
+			call.fail(HttpServletResponse.SC_NOT_FOUND, "No such method: " + endpoint + "/" + method);
+		}
+		else if (params != null && !params.isJsonObject() && !params.isJsonNull()) {
+			call.fail(HttpServletResponse.SC_BAD_REQUEST, "params must be an object");
+		}
+		else {
+			try {
+				call.arguments = call.invocation.decode(params == null || params.isJsonNull() ? new JsonObject() : params.getAsJsonObject());
+			}
+			catch (JsonParseException e) {
+				call.fail(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+			}
+		}
+		return call;
+	}
+
+	/**
+	 * Reads all calls of the batch body
+	 *
+	 * @param req The request
+	 * @return The calls, or null if the body is not a valid batch
+	 * @throws IOException If an input exception occurred
+	 */
+	private @CheckForNull List<Call> readCalls(final HttpServletRequest req) throws IOException {
+		if (req.getCharacterEncoding() == null) {
+			req.setCharacterEncoding("UTF-8");
+		}
+		final List<Call> calls = new ArrayList<>();
+		final JsonReader reader = new JsonReader(req.getReader());
+		try {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				if (calls.size() == this.maxCalls) {
+					return null;
+				}
+				calls.add(readCall(reader, calls.size()));
+			}
+			reader.endArray();
+		}
+		catch (IllegalStateException | MalformedJsonException | EOFException | JsonParseException e) {
+			return null;
+		}
+		return calls;
+	}
+
+	/**
+	 * Links each call to its dependencies
+	 *
+	 * @param calls The calls of the batch
+	 * @return Whether all ids are unique
+	 */
+	private static boolean link(final List<Call> calls) {
+		final Map<String, Call> byId = new HashMap<>();
+		for (final Call call : calls) {
+			if (byId.put(call.id, call) != null) {
+				return false;
+			}
+		}
+		for (final Call call : calls) {
+			for (final String id : call.after) {
+				final Call dependency = byId.get(id);
+				if (dependency == null) {
+					if (!call.finished) {
+						call.fail(SC_FAILED_DEPENDENCY, "No such call: " + id);
+					}
+				}
+				else {
+					dependency.dependents.add(call);
+					++call.pending;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Starts a call whose dependencies are met
+	 *
+	 * @param call The call to start
+	 * @param local The calls to run on the request thread
+	 * @return Whether the call has been sent to the executor
+	 */
+	private boolean start(final Call call, final Deque<Call> local) {
+		assert call.invocation != null;
+		if (call.invocation.isDetached()) {
+			try {
+				this.executor.execute(call);
+				return true;
+			}
+			catch (RejectedExecutionException e) {
+				// The executor is saturated: the call will run on the request thread
+			}
+		}
+		call.completed = null;
+		local.add(call);
+		return false;
+	}
+
+	/**
+	 * Writes the result of a call
+	 *
+	 * @param writer The writer of the response
+	 * @param call The finished call
+	 * @throws IOException If an output exception occurred
+	 */
+	private static void write(final JsonWriter writer, final Call call) throws IOException {
+		writer.beginObject();
+		writer.name("id").value(call.id);
+		writer.name("status").value(call.status);
+		if (call.status == HttpServletResponse.SC_OK) {
+			assert call.invocation != null;
+			writer.name("result");
+			call.invocation.write(writer, call.result);
+		}
+		if (call.error != null) {
+			writer.name("error").value(call.error);
+		}
+		if (call.exception != null) {
+			writer.name("exception").value(call.exception);
+		}
+		writer.endObject();
+		writer.flush();
+	}
+
+	/**
+	 * Serves a batch request
+	 *
+	 * @param req The current HTTP request
+	 * @param res The current HTTP response
+	 * @throws IOException If an input or output exception occurred
+	 */
+	@SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.NPathComplexity"})
+	public void serve(final HttpServletRequest req, final HttpServletResponse res) throws IOException {
+		final List<Call> calls = readCalls(req);
+		if (calls == null) {
+			res.sendError(HttpServletResponse.SC_BAD_REQUEST, "The body must be a JSON array of at most " + this.maxCalls + " calls");
+			return ;
+		}
+		if (!link(calls)) {
+			res.sendError(HttpServletResponse.SC_BAD_REQUEST, "Call ids must be unique");
+			return ;
+		}
+
+		final boolean ordered = Boolean.parseBoolean(req.getParameter(ORDERED_PARAMETER));
+
+		res.setContentType("application/json");
+		res.setCharacterEncoding("UTF-8");
+		final JsonWriter writer = new JsonWriter(res.getWriter());
+		writer.setSerializeNulls(false);
+		writer.beginArray();
+
+		final BlockingQueue<Call> completed = new LinkedBlockingQueue<>();
+		final Deque<Call> local = new ArrayDeque<>();
+		final Deque<Call> finished = new ArrayDeque<>();
+		int running = 0;
+
+		for (final Call call : calls) {
+			if (call.finished) {
+				finished.add(call);
+			}
+			else if (call.pending == 0) {
+				call.completed = completed;
+				if (start(call, local)) {
+					++running;
+				}
+			}
+		}
+
+		int nextToWrite = 0;
+		int remaining = calls.size();
+		while (remaining > 0) {
+			Call call = finished.poll();
+			if (call == null) {
+				call = completed.poll();
+				if (call != null) {
+					--running;
+				}
+			}
+			if (call == null) {
+				call = local.poll();
+				if (call != null) {
+					call.run();
+				}
+			}
+			if (call == null && running > 0) {
+				try {
+					call = completed.take();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a batched call");
+				}
+				--running;
+			}
+			if (call == null) {
+				// Nothing can run anymore: the remaining calls depend on each other
+				for (final Call blocked : calls) {
+					if (!blocked.finished) {
+						blocked.fail(SC_FAILED_DEPENDENCY, "Circular dependency");
+						finished.add(blocked);
+					}
+				}
+				continue ;
+			}
+			if (call.reported) {
+				continue ;
+			}
+
+			call.handle();
+			call.reported = true;
+			--remaining;
+
+			final boolean success = call.status < HttpServletResponse.SC_BAD_REQUEST;
+			for (final Call dependent : call.dependents) {
+				if (dependent.finished) {
+					continue ;
+				}
+				if (!success) {
+					dependent.fail(SC_FAILED_DEPENDENCY, "Failed dependency: " + call.id);
+					finished.add(dependent);
+				}
+				else if (--dependent.pending == 0) {
+					dependent.completed = completed;
+					if (start(dependent, local)) {
+						++running;
+					}
+				}
+			}
+
+			if (!ordered) {
+				write(writer, call);
+			}
+			else {
+				while (nextToWrite < calls.size() && calls.get(nextToWrite).reported) {
+					write(writer, calls.get(nextToWrite));
+					++nextToWrite;
+				}
+			}
+		}
+
+		writer.endArray();
+		writer.flush();
+	}
+}
@@ -0,0 +1,473 @@
+package com.github.sourguice.ws.rest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.CheckForNull;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.github.sourguice.call.ArgumentFetcher;
+import com.github.sourguice.call.ArgumentFetcherFactory;
+import com.github.sourguice.call.SGInvocation;
+import com.github.sourguice.call.SGInvocationFactory;
+import com.github.sourguice.provider.GuiceTypedProvider;
+import com.github.sourguice.provider.TypedProvider;
+import com.github.sourguice.throwable.invocation.HandledException;
+import com.github.sourguice.throwable.invocation.NoSuchRequestParameterException;
+import com.github.sourguice.utils.Annotations;
+import com.github.sourguice.ws.annotation.WSParam;
+import com.github.sourguice.ws.binary.BinaryCodec;
+import com.github.sourguice.ws.binary.BinaryCodecs;
+import com.github.sourguice.ws.binary.BinaryFormatException;
+import com.github.sourguice.ws.binary.BinaryInput;
+import com.github.sourguice.ws.binary.BinaryOutput;
+import com.github.sourguice.ws.binary.WSBinary;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import com.google.inject.Binding;
+import com.google.inject.Injector;
+import com.google.inject.Scope;
+import com.google.inject.Scopes;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+import com.google.inject.spi.DefaultBindingScopingVisitor;
+import com.google.inject.spi.LinkedKeyBinding;
+
+/**
+ * Everything needed to call a WS method through REST, computed once at startup.
+ *
+ * The JSON type adapters and the binary codecs of the parameters and of the return type are resolved when the invocation is created,
+ * so that a call only streams the request body into the parameters and the return value into the response.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class RestInvocation implements ArgumentFetcherFactory {
+
+	/**
+	 * The decoded arguments of the call being executed by the current thread, read by the {@link WSParamArgumentFetcher}s.
+	 * They are not stored in the request, so that multiple calls of the same request can run in parallel.
+	 */
+	static final ThreadLocal<Object[]> ARGUMENTS = new ThreadLocal<>();
+
+	/**
+	 * The provider of the endpoint on which the method is called
+	 */
+	private final TypedProvider<?> controller;
+
+	/**
+	 * The name of the method (used in error messages)
+	 */
+	private final String methodName;
+
+	/**
+	 * The position of each @{@link WSParam} annotated argument, by parameter name
+	 */
+	private final Map<String, Integer> positions = new HashMap<>();
+
+	/**
+	 * The JSON adapter of each argument (null for arguments that are not @{@link WSParam} annotated)
+	 */
+	private final TypeAdapter<?>[] adapters;
+
+	/**
+	 * Whether each argument is a String (such an argument can be given unquoted in a GET parameter)
+	 */
+	private final boolean[] strings;
+
+	/**
+	 * The JSON adapter of the return type, or null if the method returns void
+	 */
+	private final @CheckForNull TypeAdapter<Object> returns;
+
+	/**
+	 * The binary codec of each argument (null for arguments that are not @{@link WSParam} annotated)
+	 */
+	private final BinaryCodec<Object>[] binaryParams;
+
+	/**
+	 * Whether all @{@link WSParam} arguments can be decoded from a binary body
+	 */
+	private final boolean binaryAccepted;
+
+	/**
+	 * The binary codec of the return type, or null if the method returns void or if its return type cannot be encoded in binary
+	 */
+	private final @CheckForNull BinaryCodec<Object> binaryReturns;
+
+	/**
+	 * The invocation itself (method & argument fetchers)
+	 */
+	private final SGInvocation invocation;
+
+	/**
+	 * Whether the method can be called outside of the request thread (see {@link #isDetached()})
+	 */
+	private boolean detached;
+
+	/**
+	 * Constructor
+	 *
+	 * @param controller The provider of the endpoint on which the method is called
+	 * @param method The method to call
+	 * @param gson The Gson instance that provides the JSON adapters
+	 * @param codecs The registry that provides the binary codecs
+	 * @param invocationFactory The factory responsible for creating new invocations
+	 */
+	@SuppressWarnings("unchecked")
+	public RestInvocation(final TypedProvider<?> controller, final Method method, final Gson gson, final BinaryCodecs codecs, final SGInvocationFactory invocationFactory) {
+		this.controller = controller;
+		this.methodName = method.getDeclaringClass().getCanonicalName() + "." + method.getName();
+
+		final TypeLiteral<?> type = controller.getTypeLiteral();
+		final List<TypeLiteral<?>> paramTypes = type.getParameterTypes(method);
+		final Annotation[][] paramAnnos = method.getParameterAnnotations();
+		this.adapters = new TypeAdapter<?>[paramTypes.size()];
+		this.strings = new boolean[paramTypes.size()];
+		this.binaryParams = BinaryCodecs.newArray(paramTypes.size());
+		boolean allWSParams = true;
+		boolean binaryParamsSupported = true;
+		for (int i = 0; i < paramTypes.size(); ++i) {
+			final WSParam wsParam = Annotations.getOneRecursive(WSParam.class, paramAnnos[i]);
+			if (wsParam != null) {
+				this.positions.put(wsParam.value(), Integer.valueOf(i));
+				this.adapters[i] = gson.getAdapter(TypeToken.get(paramTypes.get(i).getType()));
+				this.strings[i] = paramTypes.get(i).getRawType().equals(String.class);
+				this.binaryParams[i] = codecs.get(paramTypes.get(i).getType());
+				binaryParamsSupported &= this.binaryParams[i].isSupported();
+			}
+			else {
+				allWSParams = false;
+			}
+		}
+		this.detached = allWSParams;
+		this.binaryAccepted = binaryParamsSupported;
+
+		if (method.getReturnType().equals(void.class)) {
+			this.returns = null;
+			this.binaryReturns = null;
+		}
+		else {
+			this.returns = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(type.getReturnType(method).getType()));
+			final BinaryCodec<Object> returnCodec = codecs.get(type.getReturnType(method).getType());
+			this.binaryReturns = returnCodec.isSupported() ? returnCodec : null;
+		}
+
+		this.invocation = invocationFactory.newInvocation(type, method, this);
+	}
+
+	@Override
+	public @CheckForNull ArgumentFetcher<?> create(final Method method, final int position, final TypeLiteral<?> argType) {
+		final WSParam wsParam = Annotations.getOneRecursive(WSParam.class, method.getParameterAnnotations()[position]);
+		if (wsParam != null) {
+			return new WSParamArgumentFetcher<>(wsParam.value(), position, argType.getRawType().isPrimitive(), this.methodName);
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes the arguments from a JSON object whose keys are the names of the parameters.
+	 * Each value is streamed directly into its parameter type, unknown keys are ignored.
+	 *
+	 * @param body The reader of the JSON object (an empty body means no argument)
+	 * @return The arguments, indexed by position
+	 * @throws IOException If an input exception occurred
+	 * @throws JsonSyntaxException If the body is not a valid JSON object or a value does not match its parameter type
+	 */
+	public Object[] decode(final Reader body) throws IOException {
+		final Object[] arguments = new Object[this.adapters.length];
+		final JsonReader reader = new JsonReader(body);
+		try {
+			try {
+				reader.peek();
+			}
+			catch (EOFException e) {
+				return arguments;
+			}
+			reader.beginObject();
+			while (reader.hasNext()) {
+				final Integer position = this.positions.get(reader.nextName());
+				if (position == null) {
+					reader.skipValue();
+				}
+				else {
+					arguments[position.intValue()] = this.adapters[position.intValue()].read(reader);
+				}
+			}
+			reader.endObject();
+		}
+		catch (IllegalStateException | MalformedJsonException | EOFException e) {
+			throw new JsonSyntaxException(e);
+		}
+		return arguments;
+	}
+
+	/**
+	 * Decodes the arguments from the request parameters: each parameter value is a (lenient) JSON value,
+	 * except for String parameters whose value is not quoted, which are taken as is.
+	 *
+	 * @param req The request
+	 * @return The arguments, indexed by position
+	 * @throws IOException If an input exception occurred
+	 * @throws JsonSyntaxException If a value is not a single JSON value or does not match its parameter type
+	 */
+	public Object[] decode(final HttpServletRequest req) throws IOException {
+		final Object[] arguments = new Object[this.adapters.length];
+		for (final Map.Entry<String, Integer> entry : this.positions.entrySet()) {
+			final String value = req.getParameter(entry.getKey());
+			if (value == null) {
+				continue ;
+			}
+			final int position = entry.getValue().intValue();
+			if (this.strings[position] && !value.startsWith("\"")) {
+				arguments[position] = value;
+				continue ;
+			}
+			final JsonReader reader = new JsonReader(new StringReader(value));
+			reader.setLenient(true);
+			try {
+				arguments[position] = this.adapters[position].read(reader);
+				if (reader.peek() != JsonToken.END_DOCUMENT) {
+					throw new JsonSyntaxException("Parameter " + entry.getKey() + " is not a single JSON value: " + value);
+				}
+			}
+			catch (IllegalStateException | MalformedJsonException | EOFException e) {
+				throw new JsonSyntaxException(e);
+			}
+		}
+		return arguments;
+	}
+
+	/**
+	 * Decodes the arguments from a binary body, see {@link WSBinary}
+	 *
+	 * @param body The binary body
+	 * @param maxLength The maximum number of bytes to read from the body
+	 * @return The arguments, indexed by position
+	 * @throws IOException If an input exception occurred
+	 * @throws BinaryFormatException If the body is not valid, is longer than maxLength or references an unknown parameter
+	 */
+	public Object[] decode(final InputStream body, final long maxLength) throws IOException {
+		final Object[] arguments = new Object[this.binaryParams.length];
+		final BinaryInput in = new BinaryInput(body, maxLength);
+		for (int id = in.readSize(arguments.length); id != 0; id = in.readSize(arguments.length)) {
+			final BinaryCodec<Object> codec = this.binaryParams[id - 1];
+			if (codec == null) {
+				throw new BinaryFormatException("Parameter " + id + " of " + this.methodName + " is not a WS parameter");
+			}
+			arguments[id - 1] = codec.read(in);
+		}
+		return arguments;
+	}
+
+	/**
+	 * @return Whether the arguments can be decoded from a binary body (otherwise, they must be sent in JSON)
+	 */
+	public boolean acceptsBinary() {
+		return this.binaryAccepted;
+	}
+
+	/**
+	 * Decodes the arguments from an already parsed JSON object whose keys are the names of the parameters
+	 *
+	 * @param params The JSON object
+	 * @return The arguments, indexed by position
+	 * @throws JsonSyntaxException If a value does not match its parameter type
+	 */
+	public Object[] decode(final JsonObject params) {
+		final Object[] arguments = new Object[this.adapters.length];
+		for (final Map.Entry<String, JsonElement> entry : params.entrySet()) {
+			final Integer position = this.positions.get(entry.getKey());
+			if (position != null) {
+				try {
+					arguments[position.intValue()] = this.adapters[position.intValue()].fromJsonTree(entry.getValue());
+				}
+				catch (IllegalStateException e) {
+					throw new JsonSyntaxException(e);
+				}
+			}
+		}
+		return arguments;
+	}
+
+	/**
+	 * Whether the method can be called outside of the request thread, with {@link #invokeDetached(Object[])}:
+	 * it only needs its @{@link WSParam} arguments and its endpoint is unscoped or singleton
+	 * (a scoped endpoint, such as a request scoped one, can only be provided in the request thread).
+	 *
+	 * @return Whether the method does not need the current request to be called
+	 */
+	public boolean isDetached() {
+		return this.detached;
+	}
+
+	/**
+	 * Checks the scope of the endpoint, once the injector is created: the method is not detached if the endpoint is scoped
+	 *
+	 * @param injector The Guice injector that provides the endpoint
+	 */
+	public void checkScope(final Injector injector) {
+		if (this.controller instanceof GuiceTypedProvider) {
+			Binding<?> binding = injector.getBinding(((GuiceTypedProvider<?>) this.controller).getKey());
+			while (binding instanceof LinkedKeyBinding) {
+				if (!isUnscopedOrSingleton(binding)) {
+					this.detached = false;
+					return ;
+				}
+				binding = injector.getBinding(((LinkedKeyBinding<?>) binding).getLinkedKey());
+			}
+			this.detached &= isUnscopedOrSingleton(binding);
+		}
+	}
+
+	/**
+	 * @param binding A binding
+	 * @return Whether the binding is unscoped or singleton
+	 */
+	private static boolean isUnscopedOrSingleton(final Binding<?> binding) {
+		return binding.acceptScopingVisitor(new DefaultBindingScopingVisitor<Boolean>() {
+			@Override public Boolean visitNoScoping() {
+				return Boolean.TRUE;
+			}
+			@Override public Boolean visitEagerSingleton() {
+				return Boolean.TRUE;
+			}
+			@Override public Boolean visitScope(final Scope scope) {
+				return Boolean.valueOf(scope == Scopes.SINGLETON);
+			}
+			@Override public Boolean visitScopeAnnotation(final Class<? extends Annotation> scopeAnnotation) {
+				return Boolean.valueOf(scopeAnnotation == Singleton.class || scopeAnnotation == javax.inject.Singleton.class);
+			}
+			@Override protected Boolean visitOther() {
+				return Boolean.FALSE;
+			}
+		}).booleanValue();
+	}
+
+	/**
+	 * Calls the method with the given arguments
+	 *
+	 * @param arguments The arguments decoded from the request
+	 * @return What the method returned
+	 * @throws NoSuchRequestParameterException If an argument of a primitive type is missing
+	 * @throws InvocationTargetException Any thing that the method call might have thrown
+	 * @throws HandledException If an exception has been caught and handled
+	 * @throws IOException IO failure while handling an exception
+	 */
+	public @CheckForNull Object invoke(final Object[] arguments) throws NoSuchRequestParameterException, InvocationTargetException, HandledException, IOException {
+		ARGUMENTS.set(arguments);
+		try {
+			return this.invocation.invoke(this.controller.get(), true);
+		}
+		finally {
+			ARGUMENTS.remove();
+		}
+	}
+
+	/**
+	 * Calls the method with the given arguments, from any thread, without handling the exception it may throw:
+	 * it must be handled in the request thread with {@link #handle(InvocationTargetException)}.
+	 * The method must be {@link #isDetached() detached}.
+	 *
+	 * @param arguments The arguments decoded from the request
+	 * @return What the method returned
+	 * @throws NoSuchRequestParameterException If an argument of a primitive type is missing
+	 * @throws InvocationTargetException Any thing that the method call might have thrown
+	 */
+	public @CheckForNull Object invokeDetached(final Object[] arguments) throws NoSuchRequestParameterException, InvocationTargetException {
+		ARGUMENTS.set(arguments);
+		try {
+			return this.invocation.invokeUnhandled(this.controller.get());
+		}
+		finally {
+			ARGUMENTS.remove();
+		}
+	}
+
+	/**
+	 * Handles, in the request thread, an exception thrown by {@link #invokeDetached(Object[])}
+	 *
+	 * @param exception The exception thrown by the method
+	 * @throws InvocationTargetException The given exception if it was not handled
+	 * @throws HandledException If the exception has been handled
+	 * @throws IOException IO failure while handling the exception
+	 */
+	public void handle(final InvocationTargetException exception) throws InvocationTargetException, HandledException, IOException {
+		this.invocation.handle(exception, true);
+	}
+
+	/**
+	 * @return Whether the method returns something
+	 */
+	public boolean hasResult() {
+		return this.returns != null;
+	}
+
+	/**
+	 * Writes a value returned by the method
+	 *
+	 * @param writer The JSON writer
+	 * @param ret The returned value
+	 * @throws IOException IO failure while writing
+	 */
+	public void write(final JsonWriter writer, final @CheckForNull Object ret) throws IOException {
+		if (this.returns == null) {
+			writer.nullValue();
+			return ;
+		}
+		this.returns.write(writer, ret);
+	}
+
+	/**
+	 * Calls the method with the given arguments and writes its return value in the response
+	 *
+	 * @param arguments The arguments decoded from the request
+	 * @param res The current HTTP response
+	 * @param binary Whether to write the return value in binary rather than in JSON
+	 * @throws NoSuchRequestParameterException If an argument of a primitive type is missing
+	 * @throws InvocationTargetException Any thing that the method call might have thrown
+	 * @throws HandledException If an exception has been caught and handled
+	 * @throws IOException IO failure while writing the response
+	 */
+	public void call(final Object[] arguments, final HttpServletResponse res, final boolean binary) throws NoSuchRequestParameterException, InvocationTargetException, HandledException, IOException {
+		final Object ret = invoke(arguments);
+
+		if (this.returns == null) {
+			res.setStatus(HttpServletResponse.SC_NO_CONTENT);
+			return ;
+		}
+
+		if (binary && this.binaryReturns != null) {
+			res.setContentType(WSBinary.MIME);
+			final BinaryOutput out = new BinaryOutput(res.getOutputStream());
+			this.binaryReturns.writeNullable(out, ret);
+			out.flush();
+			return ;
+		}
+
+		res.setContentType("application/json");
+		res.setCharacterEncoding("UTF-8");
+		final JsonWriter writer = new JsonWriter(res.getWriter());
+		writer.setLenient(true);
+		writer.setSerializeNulls(false);
+		write(writer, ret);
+		writer.flush();
+	}
+}
@@ -0,0 +1,138 @@
+package com.github.sourguice.ws.rest;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.ws.Sequences;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.inject.TypeLiteral;
+
+/**
+ * Gson factory that writes {@link Iterator}s and (non collection) {@link Iterable}s as JSON arrays, streaming their elements.
+ *
+ * Elements are written as they are produced and the writer is flushed every {@link #CHUNK_SIZE} elements,
+ * so that a WS method can return a lazy sequence (like a database cursor) whose elements are never all in memory,
+ * and whose first elements reach the client before the last ones are produced.
+ * If the iterator (or the iterable) is {@link AutoCloseable}, it is closed once it has been written.
+ *
+ * When read, such a type is materialized as a list.
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public final class StreamingTypeAdapterFactory implements TypeAdapterFactory {
+
+	/**
+	 * The number of elements written between two flushes of the writer
+	 */
+	public static final int CHUNK_SIZE = 256;
+
+	/**
+	 * The adapter of an iterator or an iterable
+	 */
+	private static final class StreamingAdapter extends TypeAdapter<Object> {
+
+		/**
+		 * The adapter of the elements
+		 */
+		private final TypeAdapter<Object> elements;
+
+		/**
+		 * Whether the type is an iterator (otherwise, it is an iterable)
+		 */
+		private final boolean iterator;
+
+		/**
+		 * @param elements The adapter of the elements
+		 * @param iterator Whether the type is an iterator
+		 */
+		StreamingAdapter(final TypeAdapter<Object> elements, final boolean iterator) {
+			this.elements = elements;
+			this.iterator = iterator;
+		}
+
+		@Override
+		public void write(final JsonWriter out, final @CheckForNull Object value) throws IOException {
+			if (value == null) {
+				out.nullValue();
+				return ;
+			}
+			final Iterator<?> it = Sequences.iterator(value);
+			try {
+				out.beginArray();
+				int count = 0;
+				while (it.hasNext()) {
+					this.elements.write(out, it.next());
+					if (++count == CHUNK_SIZE) {
+						out.flush();
+						count = 0;
+					}
+				}
+				out.endArray();
+			}
+			finally {
+				Sequences.close(it, value);
+			}
+		}
+
+		@Override
+		public @CheckForNull Object read(final JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			final List<Object> list = new ArrayList<>();
+			in.beginArray();
+			while (in.hasNext()) {
+				list.add(this.elements.read(in));
+			}
+			in.endArray();
+			return this.iterator ? list.iterator() : list;
+		}
+	}
+
+	/**
+	 * @param raw A class
+	 * @return Whether the class is a sequence that should be streamed (an iterator or an iterable that is not a collection)
+	 */
+	public static boolean isStreamed(final Class<?> raw) {
+		return Iterator.class.isAssignableFrom(raw) || (Iterable.class.isAssignableFrom(raw) && !Collection.class.isAssignableFrom(raw));
+	}
+
+	/**
+	 * @param type An iterator or iterable type
+	 * @return The type of its elements
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Type elementType(final TypeLiteral<?> type) {
+		final Class<?> sequence = Iterator.class.isAssignableFrom(type.getRawType()) ? Iterator.class : Iterable.class;
+		final Type supertype = type.getSupertype((Class) sequence).getType();
+		if (supertype instanceof ParameterizedType) {
+			return ((ParameterizedType) supertype).getActualTypeArguments()[0];
+		}
+		return Object.class;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public @CheckForNull <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+		if (!isStreamed(type.getRawType())) {
+			return null;
+		}
+		final Type elementType = elementType(TypeLiteral.get(type.getType()));
+		final TypeAdapter<Object> elements = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(elementType));
+		return (TypeAdapter<T>) new StreamingAdapter(elements, Iterator.class.isAssignableFrom(type.getRawType()));
+	}
+}
@@ -0,0 +1,62 @@
+package com.github.sourguice.ws.rest;
+
+import javax.annotation.CheckForNull;
+
+import com.github.sourguice.call.ArgumentFetcher;
+import com.github.sourguice.throwable.invocation.NoSuchRequestParameterException;
+import com.github.sourguice.ws.annotation.WSParam;
+
+/**
+ * Fetcher that handles @{@link WSParam} annotated arguments.
+ * The arguments have already been decoded from the request by the {@link RestInvocation}, this only gets the right one.
+ *
+ * @param <T> The type of the argument to fetch
+ *
+ * @author Salomon BRYS <salomon.brys@gmail.com>
+ */
+public class WSParamArgumentFetcher<T> implements ArgumentFetcher<T> {
+
+	/**
+	 * The name of the parameter
+	 */
+	private final String name;
+
+	/**
+	 * The position of the argument
+	 */
+	private final int position;
+
+	/**
+	 * Whether the argument is of a primitive type (and therefore cannot be null)
+	 */
+	private final boolean primitive;
+
+	/**
+	 * The method whose argument we are fetching
+	 */
+	private final String methodName;
+
+	/**
+	 * @param name The name of the parameter
+	 * @param position The position of the argument
+	 * @param primitive Whether the argument is of a primitive type
+	 * @param methodName The name of the method whose argument we are fetching
+	 */
+	public WSParamArgumentFetcher(final String name, final int position, final boolean primitive, final String methodName) {
+		this.name = name;
+		this.position = position;
+		this.primitive = primitive;
+		this.methodName = methodName;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public @CheckForNull T getPrepared() throws NoSuchRequestParameterException {
+		final Object[] arguments = RestInvocation.ARGUMENTS.get();
+		final Object value = arguments == null ? null : arguments[this.position];
+		if (value == null && this.primitive) {
+			throw new NoSuchRequestParameterException(this.name, "WS parameter", this.methodName);
+		}
+		return (T) value;
+	}
+}
@@ -0,0 +1,250 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.exception.ExceptionHandler;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.annotation.WSParam;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.servlet.RequestScoped;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class BatchTest extends TestBase {
+
+    // ===================== ENDPOINT =====================
+
+	@Singleton
+	@WSClass(name = "Test")
+	public static class Endpoint {
+
+		private final ConcurrentMap<String, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+		@WSMethod
+		public int add(@WSParam("a") int a, @WSParam("b") int b) {
+			return a + b;
+		}
+
+		// Returns how many times it has been called with this key, after having slept
+		@WSMethod
+		public int next(@WSParam("key") String key, @WSParam("sleep") int sleep) throws InterruptedException {
+			Thread.sleep(sleep);
+			this.counters.putIfAbsent(key, new AtomicInteger());
+			return this.counters.get(key).incrementAndGet();
+		}
+
+		@WSMethod
+		public int fail() {
+			throw new IllegalStateException("Failure");
+		}
+
+		@WSMethod
+		public int handled(@WSParam("message") String message) throws HandledFailure {
+			throw new HandledFailure(message);
+		}
+	}
+
+	@RequestScoped
+	@WSClass(name = "Scoped")
+	public static class ScopedEndpoint {
+
+		@Inject
+		private HttpServletRequest request;
+
+		@WSMethod
+		public String header(@WSParam("name") String name) {
+			return this.request.getHeader(name);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	public static class HandledFailure extends Exception {
+		public HandledFailure(String message) {
+			super(message);
+		}
+	}
+
+	// Needs the request, so it can only handle an exception on the request thread
+	public static class HandledFailureHandler implements ExceptionHandler<HandledFailure> {
+
+		private final Provider<HttpServletRequest> requestProvider;
+
+		@Inject
+		public HandledFailureHandler(Provider<HttpServletRequest> requestProvider) {
+			this.requestProvider = requestProvider;
+		}
+
+		@Override
+		public boolean handle(HandledFailure exception) {
+			this.requestProvider.get().setAttribute("handled", exception.getMessage());
+			return true;
+		}
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuice sourguice = new SourGuice();
+		sourguice.handleException(HandledFailure.class).with(HandledFailureHandler.class);
+		SourGuiceWS ws = new SourGuiceWS(sourguice);
+		ws.service("/ws/*").maxBatchCalls(8).with(Endpoint.class);
+		ws.service("/ws/*").with(ScopedEndpoint.class);
+		return ws;
+	}
+
+    // ===================== UTILS =====================
+
+	private HttpTester batch(String uri, String body) throws Exception {
+		HttpTester request = makeRequest("POST", uri);
+		request.setHeader("Content-Type", "application/json");
+		request.setContent(body);
+		return getResponse(request);
+	}
+
+	private JsonArray results(String uri, String body) throws Exception {
+		HttpTester response = batch(uri, body);
+		assertEquals(response.getStatus(), 200);
+		return new JsonParser().parse(response.getContent()).getAsJsonArray();
+	}
+
+	private static Map<String, JsonObject> byId(JsonArray results) {
+		Map<String, JsonObject> byId = new HashMap<>();
+		for (JsonElement result : results) {
+			byId.put(result.getAsJsonObject().get("id").getAsString(), result.getAsJsonObject());
+		}
+		return byId;
+	}
+
+    // ===================== TESTS =====================
+
+	public void batchCalls() throws Exception {
+		JsonArray results = results("/ws/batch", "["
+				+ "{\"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}},"
+				+ "{\"id\": \"second\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 20, \"b\": 22}},"
+				+ "{\"endpoint\": \"Test\", \"method\": \"unknown\"},"
+				+ "{\"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": \"one\"}}"
+			+ "]");
+
+		assertEquals(results.size(), 4);
+		Map<String, JsonObject> byId = byId(results);
+		assertEquals(byId.get("0").get("status").getAsInt(), 200);
+		assertEquals(byId.get("0").get("result").getAsInt(), 3);
+		assertEquals(byId.get("second").get("result").getAsInt(), 42);
+		assertEquals(byId.get("2").get("status").getAsInt(), 404);
+		assertEquals(byId.get("3").get("status").getAsInt(), 400);
+	}
+
+	public void batchDependency() throws Exception {
+		String key = UUID.randomUUID().toString();
+		JsonArray results = results("/ws/batch", "["
+				+ "{\"id\": \"b\", \"endpoint\": \"Test\", \"method\": \"next\", \"params\": {\"key\": \"" + key + "\", \"sleep\": 0}, \"after\": [\"a\"]},"
+				+ "{\"id\": \"a\", \"endpoint\": \"Test\", \"method\": \"next\", \"params\": {\"key\": \"" + key + "\", \"sleep\": 100}}"
+			+ "]");
+
+		Map<String, JsonObject> byId = byId(results);
+		assertEquals(byId.get("a").get("result").getAsInt(), 1);
+		assertEquals(byId.get("b").get("result").getAsInt(), 2);
+	}
+
+	public void batchFailedDependency() throws Exception {
+		JsonArray results = results("/ws/batch", "["
+				+ "{\"id\": \"a\", \"endpoint\": \"Test\", \"method\": \"fail\"},"
+				+ "{\"id\": \"b\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}, \"after\": [\"a\"]},"
+				+ "{\"id\": \"c\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}, \"after\": [\"b\"]},"
+				+ "{\"id\": \"d\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}, \"after\": [\"e\"]},"
+				+ "{\"id\": \"e\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}, \"after\": [\"d\"]}"
+			+ "]");
+
+		Map<String, JsonObject> byId = byId(results);
+		assertEquals(byId.get("a").get("status").getAsInt(), 500);
+		assertEquals(byId.get("b").get("status").getAsInt(), 424);
+		assertEquals(byId.get("c").get("status").getAsInt(), 424);
+		assertEquals(byId.get("d").get("status").getAsInt(), 424);
+		assertEquals(byId.get("e").get("status").getAsInt(), 424);
+	}
+
+	public void batchOrdered() throws Exception {
+		String key = UUID.randomUUID().toString();
+		JsonArray results = results("/ws/batch?ordered=true", "["
+				+ "{\"id\": \"slow\", \"endpoint\": \"Test\", \"method\": \"next\", \"params\": {\"key\": \"" + key + "\", \"sleep\": 100}},"
+				+ "{\"id\": \"fast\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}},"
+				+ "{\"id\": \"last\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}, \"after\": [\"fast\"]}"
+			+ "]");
+
+		assertEquals(results.size(), 3);
+		assertEquals(results.get(0).getAsJsonObject().get("id").getAsString(), "slow");
+		assertEquals(results.get(1).getAsJsonObject().get("id").getAsString(), "fast");
+		assertEquals(results.get(2).getAsJsonObject().get("id").getAsString(), "last");
+	}
+
+	public void batchRequestScoped() throws Exception {
+		HttpTester request = makeRequest("POST", "/ws/batch");
+		request.setHeader("Content-Type", "application/json");
+		request.setHeader("x-batch", "Salomon");
+		request.setContent("["
+				+ "{\"id\": \"a\", \"endpoint\": \"Scoped\", \"method\": \"header\", \"params\": {\"name\": \"x-batch\"}},"
+				+ "{\"id\": \"b\", \"endpoint\": \"Scoped\", \"method\": \"header\", \"params\": {\"name\": \"x-batch\"}}"
+			+ "]");
+		HttpTester response = getResponse(request);
+		assertEquals(response.getStatus(), 200);
+
+		Map<String, JsonObject> byId = byId(new JsonParser().parse(response.getContent()).getAsJsonArray());
+		assertEquals(byId.get("a").get("status").getAsInt(), 200);
+		assertEquals(byId.get("a").get("result").getAsString(), "Salomon");
+		assertEquals(byId.get("b").get("status").getAsInt(), 200);
+		assertEquals(byId.get("b").get("result").getAsString(), "Salomon");
+	}
+
+	public void batchExceptionHandler() throws Exception {
+		JsonArray results = results("/ws/batch", "["
+				+ "{\"id\": \"a\", \"endpoint\": \"Test\", \"method\": \"handled\", \"params\": {\"message\": \"Boom\"}},"
+				+ "{\"id\": \"b\", \"endpoint\": \"Test\", \"method\": \"add\", \"params\": {\"a\": 1, \"b\": 2}, \"after\": [\"a\"]}"
+			+ "]");
+
+		Map<String, JsonObject> byId = byId(results);
+		assertEquals(byId.get("a").get("status").getAsInt(), 500);
+		assertEquals(byId.get("a").get("error").getAsString(), "Handled exception");
+		assertEquals(byId.get("b").get("status").getAsInt(), 424);
+	}
+
+	public void batchInvalid() throws Exception {
+		assertEquals(batch("/ws/batch", "{\"endpoint\": \"Test\"}").getStatus(), 400);
+		assertEquals(batch("/ws/batch", "[{\"id\": \"a\", \"endpoint\": \"Test\", \"method\": \"fail\"}, {\"id\": \"a\", \"endpoint\": \"Test\", \"method\": \"fail\"}]").getStatus(), 400);
+	}
+
+	public void batchTooManyCalls() throws Exception {
+		StringBuilder body = new StringBuilder("[");
+		for (int i = 0; i < 9; ++i) {
+			body.append(i == 0 ? "" : ",").append("{\"endpoint\": \"Test\", \"method\": \"add\"}");
+		}
+		body.append("]");
+
+		assertEquals(batch("/ws/batch", body.toString()).getStatus(), 400);
+	}
+
+}
@@ -0,0 +1,283 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.jetty.testing.ServletTester;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.annotation.WSParam;
+import com.github.sourguice.ws.binary.BinaryCodec;
+import com.github.sourguice.ws.binary.BinaryCodecs;
+import com.github.sourguice.ws.binary.BinaryFormatException;
+import com.github.sourguice.ws.binary.BinaryInput;
+import com.github.sourguice.ws.binary.BinaryOutput;
+import com.github.sourguice.ws.binary.WSBinary;
+import com.github.sourguice.ws.binary.WSBinaryClient;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class BinaryTest extends TestBase {
+
+	private final Queue<String> urls = new ConcurrentLinkedQueue<>();
+
+	private final BinaryCodecs codecs = new BinaryCodecs();
+
+    // ===================== ENDPOINT =====================
+
+	public static enum Color { RED, GREEN }
+
+	public static class Person {
+		public int age;
+		public long id;
+		public String name;
+		public Color color;
+		public Date birth;
+		public byte[] picture;
+		public int[] scores;
+		public List<String> nicknames;
+		public Map<String, Integer> counts;
+		public Person friend;
+	}
+
+	@Singleton
+	@WSClass(name = "Test")
+	public static class Endpoint {
+
+		@WSMethod
+		public Person person(@WSParam("name") String name, @WSParam("age") int age) {
+			Person person = new Person();
+			person.name = name;
+			person.age = age;
+			person.nicknames = Arrays.asList(name.toLowerCase(), name.toUpperCase());
+			return person;
+		}
+
+		@WSMethod
+		public BigDecimal decimal() {
+			return new BigDecimal("1.5");
+		}
+
+		@WSMethod
+		public String scale(@WSParam("value") BigDecimal value) {
+			return value.toPlainString();
+		}
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuiceWS ws = new SourGuiceWS(new SourGuice());
+		ws.service("/ws/*").with(Endpoint.class);
+		return ws;
+	}
+
+	@BeforeClass(dependsOnMethods = "startupServletTester")
+	public void startupSocketConnectors() throws Exception {
+		for (ServletTester tester : this.queue) {
+			this.urls.add(tester.createSocketConnector(true) + "/ws");
+		}
+	}
+
+    // ===================== UTILS =====================
+
+	private byte[] encode(TypeLiteral<?> type, Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryOutput out = new BinaryOutput(bytes);
+		this.codecs.get(type.getType()).writeNullable(out, value);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private Object decode(TypeLiteral<?> type, byte[] bytes) throws IOException {
+		return this.codecs.get(type.getType()).readNullable(new BinaryInput(new ByteArrayInputStream(bytes), bytes.length));
+	}
+
+	private byte[] varint(long value, byte... then) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryOutput out = new BinaryOutput(bytes);
+		out.writeVarint(value);
+		out.flush();
+		bytes.write(then);
+		return bytes.toByteArray();
+	}
+
+	private String url() {
+		String url = this.urls.poll();
+		this.urls.offer(url);
+		return url;
+	}
+
+	private HttpURLConnection post(String path, String contentType, String accept, byte[] body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url() + path).openConnection();
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		connection.setRequestProperty("Content-Type", contentType);
+		connection.setRequestProperty("Accept", accept);
+		try (OutputStream out = connection.getOutputStream()) {
+			out.write(body);
+		}
+		return connection;
+	}
+
+	private static String read(HttpURLConnection connection) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = connection.getInputStream()) {
+			byte[] buffer = new byte[1024];
+			for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return new String(bytes.toByteArray(), "UTF-8");
+	}
+
+    // ===================== TESTS =====================
+
+	public void roundTrip() throws Exception {
+		Person person = new Person();
+		person.age = -42;
+		person.id = Long.MAX_VALUE;
+		person.name = "Salomon é中";
+		person.color = Color.GREEN;
+		person.birth = new Date(123456789000L);
+		person.picture = new byte[] { 0, -1, 42 };
+		person.scores = new int[] { 1, -2, 300000 };
+		person.nicknames = new ArrayList<>(Arrays.asList("Sal", null, "Brys"));
+		person.counts = new LinkedHashMap<>();
+		person.counts.put("a", Integer.valueOf(1));
+		person.counts.put("b", null);
+		person.friend = new Person();
+		person.friend.name = "Friend";
+
+		Person read = (Person) decode(TypeLiteral.get(Person.class), encode(TypeLiteral.get(Person.class), person));
+
+		assertEquals(read.age, -42);
+		assertEquals(read.id, Long.MAX_VALUE);
+		assertEquals(read.name, person.name);
+		assertEquals(read.color, Color.GREEN);
+		assertEquals(read.birth, person.birth);
+		assertEquals(read.picture, person.picture);
+		assertEquals(read.scores, person.scores);
+		assertEquals(read.nicknames, person.nicknames);
+		assertEquals(read.counts, person.counts);
+		assertEquals(read.friend.name, "Friend");
+		assertNull(read.friend.friend);
+		assertNull(decode(TypeLiteral.get(Person.class), encode(TypeLiteral.get(Person.class), null)));
+	}
+
+	public void forgedStringLength() throws Exception {
+		byte[] bytes = varint(Integer.MAX_VALUE, (byte) 'a', (byte) 'b');
+		try {
+			this.codecs.get(String.class).read(new BinaryInput(new ByteArrayInputStream(bytes), bytes.length));
+			fail("Forged length accepted");
+		}
+		catch (BinaryFormatException e) {
+			// expected
+		}
+	}
+
+	public void forgedStringLengthOfUnboundedStream() throws Exception {
+		byte[] bytes = varint(Integer.MAX_VALUE, (byte) 'a', (byte) 'b');
+		try {
+			this.codecs.get(String.class).read(new BinaryInput(new ByteArrayInputStream(bytes)));
+			fail("Forged length accepted");
+		}
+		catch (BinaryFormatException e) {
+			// expected
+		}
+	}
+
+	public void forgedCollectionSize() throws Exception {
+		byte[] bytes = varint(10 * 1024 * 1024, (byte) 0, (byte) 0);
+		try {
+			this.codecs.get(new TypeLiteral<List<String>>() {}.getType()).read(new BinaryInput(new ByteArrayInputStream(bytes), bytes.length));
+			fail("Forged size accepted");
+		}
+		catch (BinaryFormatException e) {
+			// expected
+		}
+	}
+
+	public void truncatedBytes() throws Exception {
+		byte[] bytes = varint(100000, (byte) 1, (byte) 2);
+		try {
+			this.codecs.get(byte[].class).read(new BinaryInput(new ByteArrayInputStream(bytes)));
+			fail("Truncated bytes accepted");
+		}
+		catch (BinaryFormatException e) {
+			// expected
+		}
+	}
+
+	public void isSupported() throws Exception {
+		assertTrue(this.codecs.get(Person.class).isSupported());
+		assertTrue(this.codecs.get(new TypeLiteral<Map<String, List<Person>>>() {}.getType()).isSupported());
+		assertFalse(this.codecs.get(Object.class).isSupported());
+		assertFalse(this.codecs.get(Runnable.class).isSupported());
+		assertFalse(this.codecs.get(BigDecimal.class).isSupported());
+		assertFalse(this.codecs.get(new TypeLiteral<List<BigDecimal>>() {}.getType()).isSupported());
+	}
+
+	public void clientCall() throws Exception {
+		WSBinaryClient client = new WSBinaryClient(url());
+
+		Person person = (Person) client.call("Test", "person", Person.class, WSBinaryClient.arg(0, String.class, "Salomon"), WSBinaryClient.arg(1, int.class, Integer.valueOf(42)));
+
+		assertEquals(person.name, "Salomon");
+		assertEquals(person.age, 42);
+		assertEquals(person.nicknames, Arrays.asList("salomon", "SALOMON"));
+	}
+
+	public void unsupportedReturnFallsBackToJson() throws Exception {
+		HttpURLConnection connection = post("/rest/Test/decimal", "application/json", WSBinary.MIME, new byte[0]);
+
+		assertEquals(connection.getResponseCode(), 200);
+		assertTrue(connection.getContentType().startsWith("application/json"));
+		assertEquals(read(connection), "1.5");
+	}
+
+	public void unsupportedParameter() throws Exception {
+		HttpURLConnection connection = post("/rest/Test/scale", WSBinary.MIME, WSBinary.MIME, new byte[] { 0 });
+
+		assertEquals(connection.getResponseCode(), 415);
+	}
+
+	public void forgedBody() throws Exception {
+		byte[] body = varint(1, varint(Integer.MAX_VALUE, (byte) 'a'));
+		HttpURLConnection connection = post("/rest/Test/person", WSBinary.MIME, WSBinary.MIME, body);
+
+		assertEquals(connection.getResponseCode(), 400);
+	}
+
+}
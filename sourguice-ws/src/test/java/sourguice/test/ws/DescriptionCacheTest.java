@@ -0,0 +1,118 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.eclipse.jetty.testing.ServletTester;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSConstant;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.desc.builder.DescriptionCache;
+import com.github.sourguice.ws.desc.struct.WSDescription;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class DescriptionCacheTest extends TestBase {
+
+	private final File cache = new File(System.getProperty("java.io.tmpdir"), "sourguice-ws-test-" + System.nanoTime() + ".json");
+
+    // ===================== ENDPOINT =====================
+
+	public static class Person {
+		@WSConstant
+		public static final int ANSWER = 42;
+
+		@WSConstant
+		public static final long BIG = 9007199254740993L;
+
+		@WSConstant
+		public static final String NAME = "Salomon";
+
+		public String name = NAME;
+	}
+
+	@Singleton
+	@WSClass(name = "Test")
+	public static class Endpoint {
+
+		@WSMethod
+		public Person person() {
+			return new Person();
+		}
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuiceWS ws = new SourGuiceWS(new SourGuice());
+		ws.service("/ws/*").descriptionCache(this.cache).with(Endpoint.class);
+		return ws;
+	}
+
+	@AfterClass
+	public void deleteCache() {
+		this.cache.delete();
+	}
+
+    // ===================== TESTS =====================
+
+	// The first tester built the description and stored it, the others loaded it from the cache.
+	// Each tester is used directly, so this test must not run in parallel with itself.
+	@Test(invocationCount = 1)
+	public void getSchemas() throws Exception {
+		assertTrue(this.cache.isFile());
+
+		String etag = null;
+		String content = null;
+		for (ServletTester tester : this.queue) {
+			HttpTester response = getResponse(tester, makeRequest("GET", "/ws/schema"));
+
+			assertEquals(response.getStatus(), 200);
+			if (etag == null) {
+				etag = response.getHeader("ETag");
+				content = response.getContent();
+			}
+			else {
+				assertEquals(response.getHeader("ETag"), etag);
+				assertEquals(response.getContent(), content);
+			}
+		}
+		assertTrue(content.contains("42"));
+		assertTrue(!content.contains("42.0"));
+		assertTrue(content.contains("9007199254740993"));
+		assertTrue(content.contains("\"Salomon\""));
+	}
+
+	// A class whose bytecode cannot be read cannot be fingerprinted: the description is not cached
+	public void unreadableClass() throws Exception {
+		File file = new File(System.getProperty("java.io.tmpdir"), "sourguice-ws-test-" + System.nanoTime() + ".json");
+		try {
+			Class<?> generated = Proxy.getProxyClass(getClass().getClassLoader(), Runnable.class);
+			DescriptionCache descriptionCache = new DescriptionCache(file);
+			descriptionCache.store(new WSDescription(), Collections.<Class<?>>singletonList(Endpoint.class), Arrays.<Class<?>>asList(Endpoint.class, generated));
+			assertFalse(file.exists());
+			assertFalse(descriptionCache.load(new WSDescription(), Collections.<Class<?>>singletonList(Endpoint.class)));
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.annotation.WSParam;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class RestTest extends TestBase {
+
+    // ===================== ENDPOINT =====================
+
+	@Singleton
+	@WSClass(name = "Test")
+	public static class Endpoint {
+
+		@WSMethod
+		public String hello(@WSParam("name") String name) {
+			return "Hello " + name;
+		}
+
+		@WSMethod
+		public int add(@WSParam("a") int a, @WSParam("b") int b) {
+			return a + b;
+		}
+
+		@WSMethod
+		public void nothing() { /* nothing */ }
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuiceWS ws = new SourGuiceWS(new SourGuice());
+		ws.service("/ws/*").with(Endpoint.class);
+		return ws;
+	}
+
+    // ===================== TESTS =====================
+
+	public void getUnquotedString() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/hello?name=hello%20world");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "\"Hello hello world\"");
+	}
+
+	public void getQuotedString() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/hello?name=%22Salomon%22");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "\"Hello Salomon\"");
+	}
+
+	public void getInts() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/add?a=21&b=21");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "42");
+	}
+
+	public void getTrailingInput() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/add?a=21%2021&b=21");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 400);
+	}
+
+	public void getMultipleValues() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/add?a=21,22&b=21");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 400);
+	}
+
+	public void getMissingPrimitive() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/add?a=21");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 400);
+	}
+
+	public void postJson() throws Exception {
+		HttpTester request = makeRequest("POST", "/ws/rest/Test/add");
+		request.setHeader("Content-Type", "application/json");
+		request.setContent("{\"a\": 21, \"unknown\": [1, 2], \"b\": 21}");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "42");
+	}
+
+	public void postInvalidJson() throws Exception {
+		HttpTester request = makeRequest("POST", "/ws/rest/Test/add");
+		request.setHeader("Content-Type", "application/json");
+		request.setContent("{\"a\": 21, \"b\": ");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 400);
+	}
+
+	public void postVoid() throws Exception {
+		HttpTester request = makeRequest("POST", "/ws/rest/Test/nothing");
+		request.setHeader("Content-Type", "application/json");
+		request.setContent("");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 204);
+	}
+
+	public void getUnknownMethod() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/unknown");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 404);
+	}
+
+}
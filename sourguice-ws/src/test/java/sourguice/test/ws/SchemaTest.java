@@ -0,0 +1,126 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.annotation.WSParam;
+import com.google.gson.annotations.Since;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class SchemaTest extends TestBase {
+
+    // ===================== ENDPOINT =====================
+
+	public static class Person {
+		public String name;
+
+		@Since(2.0)
+		public String nickname;
+	}
+
+	// Not reachable from the methods: only described because it is a known class of the endpoint
+	public static class Pet {
+		public String species;
+	}
+
+	@Singleton
+	@WSClass(name = "Test", addKnownClasses = Pet.class)
+	public static class Endpoint {
+
+		@WSMethod
+		public Person hello(@WSParam("name") String name) {
+			Person person = new Person();
+			person.name = name;
+			return person;
+		}
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuiceWS ws = new SourGuiceWS(new SourGuice());
+		ws.service("/ws/*").with(Endpoint.class);
+		return ws;
+	}
+
+    // ===================== TESTS =====================
+
+	public void getSchema() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/schema");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertNotNull(response.getHeader("ETag"));
+		assertEquals(response.getHeader("Vary"), "Accept-Encoding");
+		assertTrue(response.getContent().contains("\"hello\""));
+		assertTrue(response.getContent().contains("\"nickname\""));
+		assertTrue(response.getContent().contains("\"species\""));
+	}
+
+	public void getNotModified() throws Exception {
+		HttpTester response = getResponse(makeRequest("GET", "/ws/schema"));
+		String etag = response.getHeader("ETag");
+
+		HttpTester request = makeRequest("GET", "/ws/schema");
+		request.setHeader("If-None-Match", "\"other\", " + etag);
+
+		response = getResponse(request);
+
+		assertEquals(response.getStatus(), 304);
+		assertEquals(response.getHeader("ETag"), etag);
+	}
+
+	public void getGzip() throws Exception {
+		HttpTester identity = getResponse(makeRequest("GET", "/ws/schema"));
+
+		HttpTester request = makeRequest("GET", "/ws/schema");
+		request.setHeader("Accept-Encoding", "gzip, deflate");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getHeader("Content-Encoding"), "gzip");
+		assertFalse(response.getHeader("ETag").equals(identity.getHeader("ETag")));
+
+		request = makeRequest("GET", "/ws/schema");
+		request.setHeader("Accept-Encoding", "gzip");
+		request.setHeader("If-None-Match", response.getHeader("ETag"));
+
+		assertEquals(getResponse(request).getStatus(), 304);
+	}
+
+	public void getVersions() throws Exception {
+		HttpTester v1 = getResponse(makeRequest("GET", "/ws/schema?version=1.0"));
+		HttpTester v15 = getResponse(makeRequest("GET", "/ws/schema?version=1.5"));
+		HttpTester v2 = getResponse(makeRequest("GET", "/ws/schema?version=2.0"));
+
+		assertEquals(v1.getStatus(), 200);
+		assertFalse(v1.getContent().contains("\"nickname\""));
+		assertTrue(v2.getContent().contains("\"nickname\""));
+		assertEquals(v15.getHeader("ETag"), v1.getHeader("ETag"));
+		assertFalse(v2.getHeader("ETag").equals(v1.getHeader("ETag")));
+	}
+
+	public void getInvalidVersion() throws Exception {
+		HttpTester response = getResponse(makeRequest("GET", "/ws/schema?version=two"));
+
+		assertEquals(response.getStatus(), 400);
+	}
+
+}
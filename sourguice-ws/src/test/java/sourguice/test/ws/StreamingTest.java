@@ -0,0 +1,141 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.github.sourguice.ws.annotation.WSParam;
+import com.github.sourguice.ws.binary.BinaryCodec;
+import com.github.sourguice.ws.binary.BinaryCodecs;
+import com.github.sourguice.ws.binary.BinaryInput;
+import com.github.sourguice.ws.binary.BinaryOutput;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+import com.google.inject.TypeLiteral;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class StreamingTest extends TestBase {
+
+	static final AtomicInteger closed = new AtomicInteger();
+
+    // ===================== ENDPOINT =====================
+
+	public static class Range implements Iterator<Integer>, Closeable {
+		private int next = 0;
+		private final int count;
+
+		public Range(int count) {
+			this.count = count;
+		}
+
+		@Override public boolean hasNext() {
+			return this.next < this.count;
+		}
+
+		@Override public Integer next() {
+			return Integer.valueOf(this.next++);
+		}
+
+		@Override public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override public void close() {
+			closed.incrementAndGet();
+		}
+	}
+
+	@Singleton
+	@WSClass(name = "Test")
+	public static class Endpoint {
+
+		@WSMethod
+		public Iterator<Integer> range(@WSParam("count") int count) {
+			return new Range(count);
+		}
+
+		@WSMethod
+		public Iterable<String> names() {
+			List<String> names = new ArrayList<>();
+			names.add("Salomon");
+			names.add("Brys");
+			return names;
+		}
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuiceWS ws = new SourGuiceWS(new SourGuice());
+		ws.service("/ws/*").with(Endpoint.class);
+		return ws;
+	}
+
+    // ===================== TESTS =====================
+
+	public void getIterator() throws Exception {
+		int before = closed.get();
+
+		HttpTester response = getResponse(makeRequest("GET", "/ws/rest/Test/range?count=1000"));
+
+		assertEquals(response.getStatus(), 200);
+		JsonArray array = new JsonParser().parse(response.getContent()).getAsJsonArray();
+		assertEquals(array.size(), 1000);
+		for (int i = 0; i < 1000; ++i) {
+			assertEquals(array.get(i).getAsInt(), i);
+		}
+		assertTrue(closed.get() > before);
+	}
+
+	public void getEmptyIterator() throws Exception {
+		HttpTester response = getResponse(makeRequest("GET", "/ws/rest/Test/range?count=0"));
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "[]");
+	}
+
+	public void getIterable() throws Exception {
+		HttpTester response = getResponse(makeRequest("GET", "/ws/rest/Test/names"));
+
+		assertEquals(response.getStatus(), 200);
+		assertEquals(response.getContent(), "[\"Salomon\",\"Brys\"]");
+	}
+
+	@SuppressWarnings("unchecked")
+	public void binaryIterator() throws Exception {
+		BinaryCodec<Object> codec = new BinaryCodecs().get(new TypeLiteral<Iterator<Integer>>() {}.getType());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryOutput out = new BinaryOutput(bytes);
+		codec.write(out, new Range(600));
+		out.flush();
+
+		Iterator<Integer> read = (Iterator<Integer>) codec.read(new BinaryInput(new ByteArrayInputStream(bytes.toByteArray())));
+		for (int i = 0; i < 600; ++i) {
+			assertEquals(read.next().intValue(), i);
+		}
+		assertFalse(read.hasNext());
+	}
+
+}
@@ -0,0 +1,115 @@
+package sourguice.test.ws;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.eclipse.jetty.testing.HttpTester;
+import org.testng.annotations.Test;
+
+import sourguice.test.mvc.TestBase;
+
+import com.github.sourguice.SourGuice;
+import com.github.sourguice.ws.SourGuiceWS;
+import com.github.sourguice.ws.WSServlet;
+import com.github.sourguice.ws.annotation.WSClass;
+import com.github.sourguice.ws.annotation.WSMethod;
+import com.google.gson.annotations.Since;
+import com.google.gson.annotations.Until;
+import com.google.inject.Module;
+import com.google.inject.Singleton;
+
+@SuppressWarnings({"javadoc", "static-method", "PMD"})
+@Test(invocationCount = TestBase.INVOCATION_COUNT, threadPoolSize = TestBase.THREAD_POOL_SIZE)
+public class VersionTest extends TestBase {
+
+    // ===================== ENDPOINT =====================
+
+	public static class Person {
+		public String name = "Salomon";
+
+		@Until(2.0)
+		public String oldName = "Old";
+
+		@Since(2.0)
+		public String newName = "New";
+	}
+
+	@Singleton
+	@WSClass(name = "Test")
+	public static class Endpoint {
+
+		@WSMethod
+		public Person person() {
+			return new Person();
+		}
+	}
+
+    // ===================== MODULE =====================
+
+	@Override
+	protected Module module() {
+		SourGuiceWS ws = new SourGuiceWS(new SourGuice());
+		ws.service("/ws/*").with(Endpoint.class);
+		return ws;
+	}
+
+    // ===================== TESTS =====================
+
+	private String getPerson(String version) throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/person");
+		if (version != null) {
+			request.setHeader(WSServlet.VERSION_HEADER, version);
+		}
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		return response.getContent();
+	}
+
+	public void getNoVersion() throws Exception {
+		assertEquals(getPerson(null), "{\"name\":\"Salomon\",\"oldName\":\"Old\",\"newName\":\"New\"}");
+	}
+
+	public void getBeforeUntil() throws Exception {
+		assertEquals(getPerson("1.5"), "{\"name\":\"Salomon\",\"oldName\":\"Old\"}");
+	}
+
+	public void getAtUntil() throws Exception {
+		assertEquals(getPerson("2.0"), "{\"name\":\"Salomon\",\"oldName\":\"Old\",\"newName\":\"New\"}");
+	}
+
+	public void getAfterUntil() throws Exception {
+		assertEquals(getPerson("2.5"), "{\"name\":\"Salomon\",\"newName\":\"New\"}");
+	}
+
+	public void getInvalidVersion() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/rest/Test/person");
+		request.setHeader(WSServlet.VERSION_HEADER, "two");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 400);
+	}
+
+	public void getSchemaAtUntil() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/schema?version=2.0");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertTrue(response.getContent().contains("\"oldName\""));
+		assertTrue(response.getContent().contains("\"newName\""));
+	}
+
+	public void getSchemaAfterUntil() throws Exception {
+		HttpTester request = makeRequest("GET", "/ws/schema?version=2.5");
+
+		HttpTester response = getResponse(request);
+
+		assertEquals(response.getStatus(), 200);
+		assertTrue(!response.getContent().contains("\"oldName\""));
+		assertTrue(response.getContent().contains("\"newName\""));
+	}
+
+}